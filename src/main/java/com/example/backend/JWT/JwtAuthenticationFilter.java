@@ -3,6 +3,8 @@ package com.example.backend.JWT;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -26,6 +28,14 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    // Токен в параметре URL — для клиентов, которые не могут передать заголовок Authorization (тайлы карты в <img>,
+    // EventSource в браузере). Так принимается только токен с областью (JwtService.generateScopedToken)
+    // и только на адресах этой области
+    public static final String ACCESS_TOKEN_PARAMETER = "access_token";
+    private static final Map<String, Pattern> SCOPE_PATHS = Map.of(
+            JwtService.SCOPE_TILES, Pattern.compile("/api/sentinel/tiles/[^/]+/\\d+/\\d+/\\d+\\.png"),
+            JwtService.SCOPE_NOTIFICATIONS, Pattern.compile("/api/notifications/stream"));
+
     private final JwtService jwtService;
     private final UserRepository userRepository;
 
@@ -38,15 +48,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                         
         final String authHeader = request.getHeader("Authorization");
         log.info("JWT Filter: Request URL: {}", request.getRequestURI());
+        final boolean bearer = authHeader != null && authHeader.startsWith("Bearer ");
+        final String queryToken = "GET".equals(request.getMethod()) ? request.getParameter(ACCESS_TOKEN_PARAMETER) : null;
                                         
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (!bearer && queryToken == null) {
             log.warn("JWT Filter: No Bearer token found or Authorization header missing. Proceeding without authentication.");
             filterChain.doFilter(request, response);
             return;
         }
     
-        final String jwtToken = authHeader.substring(7);
-        log.info("JWT Filter: Extracted token: {}", jwtToken);
+        // Сам токен не логируется: из query string он годится для входа до истечения срока
+        final String jwtToken = bearer ? authHeader.substring(7) : queryToken;
         
         try {
             final String userEmail = jwtService.extractUsername(jwtToken); // <--- ИЗМЕНЕНО: Объявлено final здесь
@@ -61,9 +73,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 });
             }
             
-            log.info("JWT Filter: Extracted email: {} and roles: {} from token.", userEmail, roles);
+            final String scope = jwtService.extractScope(jwtToken);
+            log.info("JWT Filter: Extracted email: {}, roles: {} and scope: {} from {} token.",
+                    userEmail, roles, scope, bearer ? "header" : "query");
         
-            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            if (!isScopeAccepted(scope, bearer, request.getRequestURI().substring(request.getContextPath().length()))) {
+                log.warn("JWT Filter: Token with scope {} is not accepted for {}. Proceeding without authentication.", scope, request.getRequestURI());
+            } else if (SecurityContextHolder.getContext().getAuthentication() == null) {
                 if (roles.contains("ROLE_ADMIN")) { // Проверяем, содержит ли токен роль ADMIN
                     // Если токен содержит роль ADMIN, создаем временного пользователя ADMIN
                     User adminUser = User.builder()
@@ -116,4 +132,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
         filterChain.doFilter(request, response);
     }
+
+    // Обычный токен — только в заголовке; токен с областью — только в параметре URL и только на её адресах
+    private static boolean isScopeAccepted(String scope, boolean bearer, String path) {
+        if (scope == null) {
+            return bearer;
+        }
+        Pattern paths = SCOPE_PATHS.get(scope);
+        return !bearer && paths != null && paths.matcher(path).matches();
+    }
 }
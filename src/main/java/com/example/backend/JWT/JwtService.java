@@ -24,6 +24,10 @@ import io.jsonwebtoken.security.Keys;
 @Service
 public class JwtService {
 
+    public static final String SCOPE_TILES = "tiles";
+    public static final String SCOPE_NOTIFICATIONS = "notifications";
+    private static final String SCOPE_CLAIM = "scope";
+
     @Value("${jwt.secret:}")
     private String SECRET_KEY_STRING;
 
@@ -116,6 +120,24 @@ private Key getSignInKey() {
         return Optional.empty();
     }
 
+    // Короткоживущий токен для URL (тайлы карты в <img>): действует только на эндпоинтах своей области
+    public String generateScopedToken(UserDetails userDetails, String scope, long expirationMs) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(SCOPE_CLAIM, scope);
+        return Jwts.builder()
+                .setClaims(claims)
+                .setSubject(userDetails.getUsername())
+                .setIssuedAt(new Date(System.currentTimeMillis()))
+                .setExpiration(new Date(System.currentTimeMillis() + expirationMs))
+                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    // Область токена; null — обычный токен входа
+    public String extractScope(String token) {
+        return extractClaim(token, claims -> claims.get(SCOPE_CLAIM, String.class));
+    }
+
     public boolean isTokenValid(String token, UserDetails userDetails) {
         final String username = extractUsername(token);
         return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
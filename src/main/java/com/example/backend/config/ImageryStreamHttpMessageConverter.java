@@ -0,0 +1,52 @@
+package com.example.backend.config;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.ImageryStream;
+
+/**
+ * Пишет {@link ImageryStream} прямо в поток ответа сервлета. Конвертер выбирается по классу тела,
+ * поэтому работает и для ResponseEntity внутри CompletableFuture (Spring Boot подхватывает бин сам).
+ */
+@Component
+public class ImageryStreamHttpMessageConverter extends AbstractHttpMessageConverter<ImageryStream> {
+
+    public ImageryStreamHttpMessageConverter() {
+        super(MediaType.IMAGE_PNG, MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ImageryStream.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ImageryStream readInternal(Class<? extends ImageryStream> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("ImageryStream is write-only", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(ImageryStream stream, MediaType contentType) {
+        long length = stream.getContentLength();
+        return length >= 0 ? length : null;
+    }
+
+    @Override
+    protected void writeInternal(ImageryStream stream, HttpOutputMessage outputMessage) throws IOException {
+        try (stream) {
+            stream.transferTo(outputMessage.getBody());
+        }
+    }
+}
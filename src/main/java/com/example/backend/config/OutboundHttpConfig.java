@@ -0,0 +1,68 @@
+package com.example.backend.config;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.backend.util.OutboundHttpInterceptor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * Общий исходящий HTTP-клиент (Sentinel Hub, OpenAI): один пул keep-alive соединений,
+ * лимит одновременных запросов на хост и метрики. Сервисы с другими таймаутами получают
+ * производный клиент через {@link OkHttpClient#newBuilder()} — пул и лимиты при этом общие.
+ */
+@Configuration
+public class OutboundHttpConfig {
+
+    @Value("${outbound.http.max-idle-connections:32}")
+    private int maxIdleConnections;
+
+    @Value("${outbound.http.keep-alive:PT5M}")
+    private Duration keepAlive;
+
+    @Value("${outbound.http.max-per-host:32}")
+    private int maxPerHost;
+
+    @Value("${outbound.http.acquire-timeout:PT30S}")
+    private Duration acquireTimeout;
+
+    @Value("${outbound.http.connect-timeout:PT10S}")
+    private Duration connectTimeout;
+
+    @Value("${outbound.http.read-timeout:PT60S}")
+    private Duration readTimeout;
+
+    // Предел на весь вызов: соединение, отправку и чтение ответа вместе
+    @Value("${outbound.http.call-timeout:PT2M}")
+    private Duration callTimeout;
+
+    @Bean
+    public OkHttpClient outboundHttpClient(MeterRegistry meterRegistry) {
+        ConnectionPool pool = new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+        Gauge.builder("outbound.http.pool.connections", pool, ConnectionPool::connectionCount)
+                .tag("state", "total").register(meterRegistry);
+        Gauge.builder("outbound.http.pool.connections", pool, ConnectionPool::idleConnectionCount)
+                .tag("state", "idle").register(meterRegistry);
+        // Лимит диспетчера действует только на асинхронные вызовы; синхронные ограничивает перехватчик
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxPerHost);
+        return new OkHttpClient.Builder()
+                .connectionPool(pool)
+                .dispatcher(dispatcher)
+                .addInterceptor(new OutboundHttpInterceptor(maxPerHost, acquireTimeout, meterRegistry))
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .writeTimeout(readTimeout)
+                .callTimeout(callTimeout)
+                .build();
+    }
+}
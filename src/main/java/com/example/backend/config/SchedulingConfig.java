@@ -0,0 +1,10 @@
+package com.example.backend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Включает @Scheduled-задачи (ночной прогрев кэша снимков)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,6 +1,7 @@
 package com.example.backend.config;
 
 import com.example.backend.JWT.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,6 +17,11 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.header.writers.CacheControlHeadersWriter;
+import org.springframework.security.web.header.writers.DelegatingRequestMatcherHeaderWriter;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.RegexRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -27,6 +33,10 @@ import java.util.List;
 @EnableMethodSecurity // Включаем поддержку @PreAuthorize
 public class SecurityConfig {
 
+    // Ответы, которые сами выставляют Cache-Control и ETag: изображения /process-image и PNG тайлов карты
+    private static final RequestMatcher SELF_CACHED_RESPONSES = RegexRequestMatcher.regexMatcher(
+            "/api/sentinel/(process-image|tiles/[^/]+/\\d+/\\d+/\\d+\\.png)(\\?.*)?");
+
     private final JwtAuthenticationFilter jwtAuthFilter;
     private final UserDetailsService userDetailsService;
 
@@ -36,6 +46,9 @@ public class SecurityConfig {
             .csrf().disable() // Отключаем CSRF для REST API
             .cors(cors -> cors.configurationSource(corsConfigurationSource())) // Настраиваем CORS
             .authorizeHttpRequests(auth -> auth
+                // Асинхронные ответы (CompletableFuture, SSE) завершаются повторной ASYNC-диспетчеризацией. Доступ уже
+                // проверен на исходном запросе, а JWT-контекст без сессии на неё не переносится
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 // Разрешаем доступ к Swagger UI и API документации
                 .requestMatchers(
                     "/swagger-ui/**",
@@ -63,6 +76,13 @@ public class SecurityConfig {
             .sessionManagement(sess -> sess
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS) // Используем безсессионную аутентификацию (JWT)
             )
+            .headers(headers -> headers
+                // Для асинхронных ответов заголовки Spring Security пишутся до ответа контроллера, и no-store
+                // добавлялся бы к его Cache-Control. Поэтому запрет кэширования — для всех, кроме изображений и тайлов
+                .cacheControl(cache -> cache.disable())
+                .addHeaderWriter(new DelegatingRequestMatcherHeaderWriter(
+                    new NegatedRequestMatcher(SELF_CACHED_RESPONSES), new CacheControlHeadersWriter()))
+            )
             .authenticationProvider(authenticationProvider()) // Указываем наш провайдер аутентификации
             .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class) // Добавляем JWT фильтр перед стандартным
             .formLogin().disable() // Отключаем стандартную форму входа
@@ -84,8 +104,11 @@ public class SecurityConfig {
         ));
         
         config.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
-        config.setAllowedHeaders(List.of("Authorization", "Content-Type", "X-Requested-With"));
-        config.setExposedHeaders(List.of("Authorization"));
+        // If-None-Match — условные GET изображений и тайлов по ETag; Last-Event-ID — переподключение потока уведомлений
+        config.setAllowedHeaders(List.of("Authorization", "Content-Type", "X-Requested-With", "If-None-Match", "Last-Event-ID"));
+        // Заголовки ответа, которые может прочитать фронтенд на другом домене
+        config.setExposedHeaders(List.of("Authorization", "Warning", "X-Imagery-Stale-Since", "Retry-After", "ETag",
+                "X-Nearest-Clear-Date"));
         config.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
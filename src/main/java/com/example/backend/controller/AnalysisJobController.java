@@ -0,0 +1,121 @@
+package com.example.backend.controller;
+
+import java.net.URI;
+import java.util.UUID;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.backend.dto.AnalysisJobDto;
+import com.example.backend.dto.JobRequestDto;
+import com.example.backend.entiity.User;
+import com.example.backend.exception.JobLimitExceededException;
+import com.example.backend.service.AnalysisJobService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Фоновые задания анализа: постановка в очередь, опрос статуса, результат и отмена.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@Slf4j
+public class AnalysisJobController {
+
+    private final AnalysisJobService analysisJobService;
+
+    public AnalysisJobController(AnalysisJobService analysisJobService) {
+        this.analysisJobService = analysisJobService;
+    }
+
+    /**
+     * Ставит задание в очередь и сразу возвращает его статус (202, Location — адрес для опроса).
+     * @param requestDto DTO с видом анализа (STATISTICS, TIME_SERIES, ZONING, IMAGERY), ID полигонов и параметрами анализа.
+     * @param user Аутентифицированный пользователь.
+     * @return Статус задания; 429, если у пользователя уже слишком много заданий в очереди и в работе.
+     */
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> submit(@RequestBody JobRequestDto requestDto, @AuthenticationPrincipal User user) {
+        log.info("AnalysisJobController: Received {} job request for {} polygons", requestDto.getType(),
+                requestDto.getPolygonIds() == null ? 0 : requestDto.getPolygonIds().size());
+        try {
+            AnalysisJobDto job = analysisJobService.submit(requestDto, user);
+            return ResponseEntity.accepted().location(URI.create(job.getStatusUrl())).body(job);
+        } catch (SecurityException e) {
+            log.warn("Security exception during job submission: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid job request: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (JobLimitExceededException e) {
+            log.info("Job limit reached for user {}: {}", user.getId(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Последние задания текущего пользователя, новые первыми.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getJobs(@RequestParam(defaultValue = "20") int limit, @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(analysisJobService.getJobs(user, limit));
+    }
+
+    /**
+     * Статус и прогресс задания; после завершения — ссылка на результат.
+     */
+    @GetMapping(value = "/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getJob(@PathVariable UUID jobId, @AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok(analysisJobService.getJob(jobId, user));
+        } catch (SecurityException e) {
+            log.warn("Security exception during job status request: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Результат завершённого задания: ID полигона -> результат шага в формате синхронного эндпоинта
+     * или {"error": "..."}. Пока задание не завершено — 409.
+     */
+    @GetMapping(value = "/{jobId}/result", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getResult(@PathVariable UUID jobId, @AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(analysisJobService.getResult(jobId, user));
+        } catch (SecurityException e) {
+            log.warn("Security exception during job result request: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Отменяет задание: из очереди — сразу, в работе — без ожидания текущего полигона, его результат не сохраняется.
+     */
+    @DeleteMapping(value = "/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> cancel(@PathVariable UUID jobId, @AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok(analysisJobService.cancel(jobId, user));
+        } catch (SecurityException e) {
+            log.warn("Security exception during job cancellation: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+}
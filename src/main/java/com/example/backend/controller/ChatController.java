@@ -62,8 +62,10 @@ public class ChatController {
     public ChatController(PolygonService polygonService, JwtService jwtService,
                           ChatMessageRepository chatMessageRepository,
                           PolygonAreaRepository polygonAreaRepository,
-                          UserRepository userRepository) { // Добавлено в конструктор
-        this.httpClient = new OkHttpClient.Builder()
+                          UserRepository userRepository, // Добавлено в конструктор
+                          OkHttpClient outboundHttpClient) {
+        // Общий пул соединений и лимиты исходящего клиента, таймауты — свои
+        this.httpClient = outboundHttpClient.newBuilder()
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
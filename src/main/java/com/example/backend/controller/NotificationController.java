@@ -0,0 +1,59 @@
+package com.example.backend.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.backend.entiity.User;
+import com.example.backend.service.NotificationService;
+
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@RequestMapping("/api/notifications")
+@Slf4j
+public class NotificationController {
+
+    private final NotificationService notificationService;
+
+    public NotificationController(NotificationService notificationService) {
+        this.notificationService = notificationService;
+    }
+
+    /**
+     * Токен для потока событий в браузере: new EventSource("/api/notifications/stream?access_token=" + token).
+     * EventSource не передаёт заголовок Authorization; токен действует только на адресе потока и до expiresAt.
+     */
+    @GetMapping(value = "/token", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getStreamToken(@AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok(notificationService.issueStreamToken(user));
+        } catch (SecurityException e) {
+            log.warn("Security exception during notification token request: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Поток событий текущего пользователя (text/event-stream):
+     * job — фоновое задание завершено (статус задания и ссылка на результат);
+     * imagery — снимок полигона прогрет и лежит в кэше;
+     * statistics — посчитана новая статистика полигона;
+     * scene — над полигоном появились новые ясные снимки.
+     * Помимо заголовка Authorization принимается параметр access_token с токеном из /token.
+     * @param lastEventId ID последнего полученного события; пропущенные события досылаются.
+     * @param user Аутентифицированный пользователь.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                             @AuthenticationPrincipal User user) {
+        log.info("NotificationController: User {} subscribed to notifications, Last-Event-ID {}", user.getId(), lastEventId);
+        return notificationService.subscribe(user.getId(), lastEventId);
+    }
+}
@@ -1,18 +1,67 @@
 package com.example.backend.controller;
 
+import com.example.backend.dto.BatchImageryRequestDto;
+import com.example.backend.dto.ChangeDetectionRequestDto;
+import com.example.backend.dto.MultiImageryRequestDto;
+import com.example.backend.dto.PolygonStatisticsRequestDto;
 import com.example.backend.dto.SentinelAnalysisRequestDto; // Создадим этот DTO ниже
+import com.example.backend.dto.ZoningRequestDto;
+import com.example.backend.exception.NoUsableSceneException;
+import com.example.backend.exception.SentinelHubCircuitOpenException;
+import com.example.backend.exception.SentinelHubRateLimitException;
+import com.example.backend.exception.SentinelHubUnavailableException;
+import com.example.backend.model.ColorRamp;
+import com.example.backend.model.ImageryResult;
+import com.example.backend.model.ImageryVersion;
+import com.example.backend.model.RasterFormat;
+import com.example.backend.model.ResolutionMode;
+import com.example.backend.service.BatchImageryService;
+import com.example.backend.service.ChangeDetectionService;
+import com.example.backend.service.MapTileService;
+import com.example.backend.service.OutputResolutionPolicy;
+import com.example.backend.service.PaletteRegistry;
+import com.example.backend.service.PolygonService;
+import com.example.backend.service.PolygonStatisticsService;
+import com.example.backend.service.SceneAvailabilityService;
+import com.example.backend.service.SentinelHubRequestScheduler;
 import com.example.backend.service.SentinelHubService;
+import com.example.backend.service.TimeSeriesService;
+import com.example.backend.service.ZoningService;
+import com.example.backend.util.RasterUtils;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 // import org.springframework.web.bind.annotation.CrossOrigin; // Удален импорт CrossOrigin
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import com.example.backend.entiity.User; // Убедитесь, что импорт User правильный
 
 @RestController
@@ -22,20 +71,51 @@ import com.example.backend.entiity.User; // Убедитесь, что импо
 public class SentinelHubController {
 
     private final SentinelHubService sentinelHubService;
+    private final BatchImageryService batchImageryService;
+    private final PolygonStatisticsService polygonStatisticsService;
+    private final TimeSeriesService timeSeriesService;
+    private final PaletteRegistry paletteRegistry;
+    private final OutputResolutionPolicy outputResolutionPolicy;
+    private final PolygonService polygonService;
+    private final MapTileService mapTileService;
+    private final ChangeDetectionService changeDetectionService;
+    private final SceneAvailabilityService sceneAvailabilityService;
+    private final ZoningService zoningService;
+
+    // Срок кэширования у клиента изображений за давно прошедшие интервалы (они не меняются)
+    @Value("${sentinelhub.http-cache.immutable-max-age:P365D}")
+    private Duration immutableMaxAge;
 
     @Autowired
-    public SentinelHubController(SentinelHubService sentinelHubService) {
+    public SentinelHubController(SentinelHubService sentinelHubService, BatchImageryService batchImageryService,
+                                 PolygonStatisticsService polygonStatisticsService, TimeSeriesService timeSeriesService,
+                                 PaletteRegistry paletteRegistry, OutputResolutionPolicy outputResolutionPolicy,
+                                 PolygonService polygonService, MapTileService mapTileService,
+                                 ChangeDetectionService changeDetectionService,
+                                 SceneAvailabilityService sceneAvailabilityService, ZoningService zoningService) {
         this.sentinelHubService = sentinelHubService;
+        this.batchImageryService = batchImageryService;
+        this.polygonStatisticsService = polygonStatisticsService;
+        this.timeSeriesService = timeSeriesService;
+        this.paletteRegistry = paletteRegistry;
+        this.outputResolutionPolicy = outputResolutionPolicy;
+        this.polygonService = polygonService;
+        this.mapTileService = mapTileService;
+        this.changeDetectionService = changeDetectionService;
+        this.sceneAvailabilityService = sceneAvailabilityService;
+        this.zoningService = zoningService;
     }
 
     /**
      * Эндпоинт для запроса обработанного изображения (например, NDVI) для полигона.
-     * @param requestDto DTO с GeoJSON полигона, типом анализа, датами и размерами изображения.
+     * @param requestDto DTO с GeoJSON полигона, типом анализа, датами и режимом выбора размера изображения.
      * @param user Аутентифицированный пользователь.
-     * @return Изображение PNG в виде массива байтов.
+     * @return Изображение PNG в виде массива байтов (или растр индекса в формате UINT8/FLOAT16, если он запрошен);
+     *         ответ формируется асинхронно, без удержания потока Tomcat.
      */
-    @PostMapping(value = "/process-image", produces = MediaType.IMAGE_PNG_VALUE)
-    public ResponseEntity<?> getProcessedImage(@RequestBody SentinelAnalysisRequestDto requestDto, @AuthenticationPrincipal User user) {
+    @PostMapping(value = "/process-image", produces = {MediaType.IMAGE_PNG_VALUE, RasterFormat.INDEX_RASTER_MEDIA_TYPE})
+    public CompletableFuture<ResponseEntity<?>> getProcessedImage(@RequestBody SentinelAnalysisRequestDto requestDto,
+                                                                  @AuthenticationPrincipal User user) {
         log.info("SentinelHubController: Received request for processed image for analysis type: {}", requestDto.getAnalysisType());
 
         if (user == null) {
@@ -53,20 +133,610 @@ public class SentinelHubController {
             // если SecurityConfig разрешает доступ.
         }
 
+        // Условные запросы (304) допустимы только для GET: POST всегда получает тело
+        return imageResponse(requestDto, null);
+    }
+
+    /**
+     * Тот же запрос изображения в виде GET — кэшируется браузером.
+     * Полигон задаётся либо ID сохранённого полигона, либо GeoJSON в параметре polygonGeoJson.
+     * Для интервалов, закончившихся раньше settle-days дней назад, ответ помечается неизменяемым;
+     * If-None-Match с текущим ETag даёт 304 без обращения к Sentinel Hub.
+     */
+    @GetMapping(value = "/process-image", produces = {MediaType.IMAGE_PNG_VALUE, RasterFormat.INDEX_RASTER_MEDIA_TYPE})
+    public CompletableFuture<ResponseEntity<?>> getProcessedImage(@RequestParam(required = false) UUID polygonId,
+                                                                  @RequestParam(required = false) String polygonGeoJson,
+                                                                  @RequestParam String analysisType,
+                                                                  @RequestParam String dateFrom,
+                                                                  @RequestParam String dateTo,
+                                                                  @RequestParam(required = false) ResolutionMode resolutionMode,
+                                                                  @RequestParam(defaultValue = "0") int width,
+                                                                  @RequestParam(defaultValue = "0") int height,
+                                                                  @RequestParam(required = false) Integer maxPixels,
+                                                                  @RequestParam(required = false) String palette,
+                                                                  @RequestParam(required = false) Double opacity,
+                                                                  @RequestParam(required = false) RasterFormat format,
+                                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                                  @AuthenticationPrincipal User user) {
+        log.info("SentinelHubController: Received GET image request for polygon {}, analysis type: {}", polygonId, analysisType);
+        SentinelAnalysisRequestDto requestDto = new SentinelAnalysisRequestDto();
         try {
-            byte[] imageBytes = sentinelHubService.getProcessedImage(
-                    requestDto.getPolygonGeoJson(),
-                    requestDto.getAnalysisType(),
-                    requestDto.getDateFrom(),
-                    requestDto.getDateTo(),
-                    requestDto.getWidth(),
-                    requestDto.getHeight()
-            );
-            log.info("Successfully returned processed image.");
-            return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).body(imageBytes);
+            if ((polygonId == null) == (polygonGeoJson == null)) {
+                throw new IllegalArgumentException("Укажите либо polygonId, либо polygonGeoJson.");
+            }
+            requestDto.setPolygonGeoJson(polygonId != null ? polygonService.getPolygonForUser(polygonId, user).getGeoJson() : polygonGeoJson);
+        } catch (SecurityException e) {
+            log.warn("Security exception during image request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid image request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        }
+        requestDto.setAnalysisType(analysisType);
+        requestDto.setDateFrom(dateFrom);
+        requestDto.setDateTo(dateTo);
+        requestDto.setResolutionMode(resolutionMode);
+        requestDto.setWidth(width);
+        requestDto.setHeight(height);
+        requestDto.setMaxPixels(maxPixels);
+        requestDto.setPalette(palette);
+        requestDto.setOpacity(opacity);
+        requestDto.setFormat(format);
+        return imageResponse(requestDto, ifNoneMatch);
+    }
+
+    /**
+     * Общая часть POST и GET /process-image: условный запрос по ETag, изображение и заголовки кэширования.
+     * @param ifNoneMatch If-None-Match запроса GET; для POST — null.
+     */
+    private CompletableFuture<ResponseEntity<?>> imageResponse(SentinelAnalysisRequestDto requestDto, String ifNoneMatch) {
+        try {
+            int[] size = outputResolutionPolicy.resolve(requestDto.getPolygonGeoJson(), requestDto.getResolutionMode(),
+                    requestDto.getWidth(), requestDto.getHeight(), requestDto.getMaxPixels());
+            ImageryVersion version = sentinelHubService.getImageVersion(requestDto.getPolygonGeoJson(), requestDto.getAnalysisType(),
+                    requestDto.getDateFrom(), requestDto.getDateTo(), size[0], size[1],
+                    requestDto.getPalette(), requestDto.getOpacity(), requestDto.getFormat(), immutableMaxAge);
+            if (version.getEtag() != null && etagMatches(ifNoneMatch, version.getEtag())) {
+                // Клиенту уже известна эта версия: ни Sentinel Hub, ни тело из кэша не нужны
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(version.getEtag())
+                        .cacheControl(cacheControl(version))
+                        .build());
+            }
+            // Интервал без пригодного снимка не стоит запроса к Process API: сразу 404 с ближайшей ясной датой.
+            // Индекс снимков нужен только перед таким запросом — изображение из кэша отдаётся без проверки
+            boolean cached = sentinelHubService.isImageCached(requestDto.getPolygonGeoJson(), requestDto.getAnalysisType(),
+                    requestDto.getDateFrom(), requestDto.getDateTo(), size[0], size[1],
+                    requestDto.getPalette(), requestDto.getOpacity(), requestDto.getFormat());
+            CompletableFuture<Void> sceneCheck = cached
+                    ? CompletableFuture.completedFuture(null)
+                    : sceneAvailabilityService.requireUsableScene(
+                            requestDto.getPolygonGeoJson(), requestDto.getDateFrom(), requestDto.getDateTo());
+            if (formatOf(requestDto) == RasterFormat.PNG
+                    && sentinelHubService.isStreamable(requestDto.getAnalysisType(), requestDto.getPalette(), requestDto.getOpacity(), size[0], size[1])) {
+                // Крупное изображение идёт клиенту потоком; если Sentinel Hub недоступен — обычный путь с устаревшей копией
+                CompletableFuture<Void> requestCompleted = asyncRequestCompletion();
+                return sceneCheck
+                        .thenCompose(ignored -> sentinelHubService.openImageStreamAsync(requestDto.getPolygonGeoJson(),
+                                        requestDto.getAnalysisType(), requestDto.getDateFrom(), requestDto.getDateTo(), size[0], size[1])
+                                .<ResponseEntity<?>>thenApply(stream -> {
+                                    // Обычно поток закрывает конвертер после записи. Если запрос завершился раньше
+                                    // (таймаут, обрыв соединения), открытый ответ Sentinel Hub держал бы соединение
+                                    // и разрешение на хост — закрываем его по завершении запроса в любом случае
+                                    requestCompleted.thenRun(stream::close);
+                                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                                            .contentType(MediaType.IMAGE_PNG)
+                                            .cacheControl(cacheControl(version));
+                                    if (version.getEtag() != null) {
+                                        response.eTag(version.getEtag());
+                                    }
+                                    return response.body(stream);
+                                })
+                                .exceptionallyCompose(error -> SentinelHubRequestScheduler.isUpstreamFailure(error)
+                                        ? bufferedImageResponse(requestDto, size, version)
+                                        : CompletableFuture.failedFuture(error)))
+                        .exceptionally(this::errorResponse);
+            }
+            return sceneCheck
+                    .thenCompose(ignored -> bufferedImageResponse(requestDto, size, version))
+                    .exceptionally(this::errorResponse);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid image request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
         } catch (Exception e) {
-            log.error("Error processing Sentinel Hub image request: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error processing image: " + e.getMessage());
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    /**
+     * Завершается, когда завершена асинхронная обработка текущего запроса: после записи ответа, по таймауту
+     * или при обрыве соединения. Spring отменяет возвращённый CompletableFuture по таймауту, но не стадии,
+     * от которых он зависит, — ресурсы, открытые ими позже, освобождаются по этому сигналу.
+     */
+    private static CompletableFuture<Void> asyncRequestCompletion() {
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+        WebAsyncUtils.getAsyncManager(request).registerDeferredResultInterceptor(SentinelHubController.class.getName(),
+                new DeferredResultProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest webRequest, DeferredResult<T> deferredResult) {
+                        completed.complete(null);
+                    }
+                });
+        return completed;
+    }
+
+    /**
+     * Изображение целиком в памяти: индексы раскрашиваются локально из кэшированного растра
+     * (или отдаются значениями в формате UINT8/FLOAT16), при недоступном Sentinel Hub отдаётся устаревшая копия.
+     */
+    private CompletableFuture<ResponseEntity<?>> bufferedImageResponse(SentinelAnalysisRequestDto requestDto, int[] size,
+                                                                       ImageryVersion version) {
+        RasterFormat format = formatOf(requestDto);
+        MediaType contentType = MediaType.parseMediaType(format.getMediaType());
+        CompletableFuture<ImageryResult> image = format == RasterFormat.PNG
+                ? sentinelHubService.getImageAsync(
+                        requestDto.getPolygonGeoJson(),
+                        requestDto.getAnalysisType(),
+                        requestDto.getDateFrom(),
+                        requestDto.getDateTo(),
+                        size[0],
+                        size[1],
+                        requestDto.getPalette(),
+                        requestDto.getOpacity())
+                : sentinelHubService.getIndexRasterImageAsync(
+                        requestDto.getPolygonGeoJson(),
+                        requestDto.getAnalysisType(),
+                        requestDto.getDateFrom(),
+                        requestDto.getDateTo(),
+                        size[0],
+                        size[1],
+                        format);
+        return image
+                .thenApply(result -> {
+                    if (result.isStale()) {
+                        // Sentinel Hub недоступен — отдан последний снимок из кэша
+                        return ResponseEntity.ok()
+                                .contentType(contentType)
+                                .cacheControl(CacheControl.noCache())
+                                .header(HttpHeaders.WARNING, "110 - \"Response is Stale\"")
+                                .header("X-Imagery-Stale-Since", result.getStaleSince().toString())
+                                .body(result.getImage());
+                    }
+                    log.info("Successfully returned processed image.");
+                    // Для текущего интервала версия появляется только после записи в кэш
+                    ImageryVersion current = version.isImmutable() ? version : sentinelHubService.getImageVersion(
+                            requestDto.getPolygonGeoJson(), requestDto.getAnalysisType(), requestDto.getDateFrom(),
+                            requestDto.getDateTo(), size[0], size[1], requestDto.getPalette(), requestDto.getOpacity(),
+                            requestDto.getFormat(), immutableMaxAge);
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .contentType(contentType)
+                            .cacheControl(cacheControl(current));
+                    if (current.getEtag() != null) {
+                        response.eTag(current.getEtag());
+                    }
+                    return response.body(result.getImage());
+                });
+    }
+
+    private static RasterFormat formatOf(SentinelAnalysisRequestDto requestDto) {
+        return requestDto.getFormat() == null ? RasterFormat.PNG : requestDto.getFormat();
+    }
+
+    /**
+     * Эндпоинт для запроса нескольких типов анализа одного полигона за один вызов Sentinel Hub.
+     * @param requestDto DTO с GeoJSON полигона, набором типов анализа, датами и режимом выбора размера изображения.
+     * @param user Аутентифицированный пользователь.
+     * @return JSON: тип анализа -> PNG в Base64.
+     */
+    @PostMapping(value = "/process-image/multi", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> getProcessedImagesForTypes(@RequestBody MultiImageryRequestDto requestDto, @AuthenticationPrincipal User user) {
+        log.info("SentinelHubController: Received multi-output image request for analysis types: {}", requestDto.getAnalysisTypes());
+        if (requestDto.getAnalysisTypes() == null || requestDto.getAnalysisTypes().isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Не указаны типы анализа."));
+        }
+        try {
+            int[] size = outputResolutionPolicy.resolve(requestDto.getPolygonGeoJson(), requestDto.getResolutionMode(),
+                    requestDto.getWidth(), requestDto.getHeight(), requestDto.getMaxPixels());
+            return sentinelHubService.getProcessedImagesAsync(
+                            requestDto.getPolygonGeoJson(),
+                            requestDto.getAnalysisTypes(),
+                            requestDto.getDateFrom(),
+                            requestDto.getDateTo(),
+                            size[0],
+                            size[1])
+                    .<ResponseEntity<?>>thenApply(images -> {
+                        Map<String, String> encoded = new LinkedHashMap<>();
+                        images.forEach((type, png) -> encoded.put(type, Base64.getEncoder().encodeToString(png)));
+                        return ResponseEntity.ok(encoded);
+                    })
+                    .exceptionally(this::errorResponse);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid multi-output image request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    /**
+     * Эндпоинт пакетного получения изображений для списка полигонов хозяйства.
+     * Близкие полигоны запрашиваются у Sentinel Hub одним запросом и вырезаются локально.
+     * @param requestDto DTO со списком ID полигонов, типом анализа, датами и разрешением.
+     * @param user Аутентифицированный пользователь.
+     * @return PNG каждого полигона в Base64 и число выполненных запросов к Sentinel Hub.
+     */
+    @PostMapping(value = "/process-image/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> getProcessedImages(@RequestBody BatchImageryRequestDto requestDto, @AuthenticationPrincipal User user) {
+        log.info("SentinelHubController: Received batch image request for {} polygons, analysis type: {}",
+                requestDto.getPolygonIds() == null ? 0 : requestDto.getPolygonIds().size(), requestDto.getAnalysisType());
+        try {
+            return batchImageryService.getProcessedImages(
+                            requestDto.getPolygonIds(),
+                            requestDto.getAnalysisType(),
+                            requestDto.getDateFrom(),
+                            requestDto.getDateTo(),
+                            requestDto.getResolutionMeters(),
+                            user)
+                    .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                    .exceptionally(this::errorResponse);
+        } catch (SecurityException e) {
+            log.warn("Security exception during batch image request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid batch image request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    /**
+     * Эндпоинт статистики индекса по полигону: среднее, минимум, максимум, стандартное отклонение,
+     * процентили, гистограмма и доля пикселей с данными. Повторный запрос отдаётся из базы.
+     * @param requestDto DTO с ID полигона, индексом (NDVI, NDWI, MOISTURE_INDEX, NDSI), датами и разрешением.
+     * @param user Аутентифицированный пользователь.
+     * @return Статистика в JSON.
+     */
+    @PostMapping(value = "/statistics", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> getStatistics(@RequestBody PolygonStatisticsRequestDto requestDto, @AuthenticationPrincipal User user) {
+        log.info("SentinelHubController: Received statistics request for polygon {}, analysis type: {}",
+                requestDto.getPolygonId(), requestDto.getAnalysisType());
+        try {
+            return polygonStatisticsService.getStatistics(
+                            requestDto.getPolygonId(),
+                            requestDto.getAnalysisType(),
+                            requestDto.getDateFrom(),
+                            requestDto.getDateTo(),
+                            requestDto.getResolutionMeters(),
+                            user)
+                    .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                    .exceptionally(this::errorResponse);
+        } catch (SecurityException e) {
+            log.warn("Security exception during statistics request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid statistics request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    /**
+     * Эндпоинт изменения индекса полигона между двумя датами: разность (после − до) раскрашивается
+     * расходящейся шкалой, площадь изменившихся пикселей считается в гектарах.
+     * Растры значений берутся из кэша, у Sentinel Hub запрашивается только недостающий.
+     * @param requestDto DTO с ID полигона, индексом, двумя датами, интервалом снимка и порогом изменения.
+     * @param user Аутентифицированный пользователь.
+     * @return Площади изменений, сводка по разности и PNG разности в Base64.
+     */
+    @PostMapping(value = "/change-detection", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> detectChange(@RequestBody ChangeDetectionRequestDto requestDto, @AuthenticationPrincipal User user) {
+        log.info("SentinelHubController: Received change detection request for polygon {}, {} -> {}",
+                requestDto.getPolygonId(), requestDto.getDateBefore(), requestDto.getDateAfter());
+        try {
+            return changeDetectionService.detectChange(
+                            requestDto.getPolygonId(),
+                            requestDto.getAnalysisType(),
+                            requestDto.getDateBefore(),
+                            requestDto.getDateAfter(),
+                            requestDto.getWindowDays(),
+                            requestDto.getThreshold(),
+                            requestDto.getResolutionMeters(),
+                            requestDto.getPalette(),
+                            requestDto.getOpacity(),
+                            user)
+                    .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                    .exceptionally(this::errorResponse);
+        } catch (SecurityException e) {
+            log.warn("Security exception during change detection request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid change detection request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    /**
+     * Эндпоинт зон управления поля: пиксели индекса на дату делятся k-means на заданное число зон,
+     * зоны возвращаются полигонами с площадью — основа карты дифференцированного внесения.
+     * Растр значений берётся из кэша, у Sentinel Hub запрашивается только при его отсутствии.
+     * @param requestDto DTO с ID полигона, индексом, датой, интервалом снимка и числом зон.
+     * @param user Аутентифицированный пользователь.
+     * @return Зоны по возрастанию индекса: GeoJSON, площадь в гектарах и значения индекса.
+     */
+    @PostMapping(value = "/zones", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> delineateZones(@RequestBody ZoningRequestDto requestDto, @AuthenticationPrincipal User user) {
+        log.info("SentinelHubController: Received zoning request for polygon {}, {} zones on {}",
+                requestDto.getPolygonId(), requestDto.getZones(), requestDto.getDate());
+        try {
+            return zoningService.delineate(
+                            requestDto.getPolygonId(),
+                            requestDto.getAnalysisType(),
+                            requestDto.getDate(),
+                            requestDto.getWindowDays(),
+                            requestDto.getZones(),
+                            requestDto.getResolutionMeters(),
+                            user)
+                    .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                    .exceptionally(this::errorResponse);
+        } catch (SecurityException e) {
+            log.warn("Security exception during zoning request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid zoning request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    /**
+     * Все ранее посчитанные статистики полигона (без обращения к Sentinel Hub).
+     */
+    @GetMapping(value = "/statistics/{polygonId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getStoredStatistics(@PathVariable UUID polygonId, @AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok(polygonStatisticsService.getStoredStatistics(polygonId, user));
+        } catch (SecurityException e) {
+            log.warn("Security exception during stored statistics request: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Эндпоинт временного ряда индекса по полигону (по умолчанию NDVI) за интервал дат.
+     * У Sentinel Hub запрашиваются только даты, которых ещё нет в хранилище.
+     * @param polygonId ID полигона.
+     * @param analysisType Индекс: NDVI, NDWI, MOISTURE_INDEX или NDSI.
+     * @param dateFrom Начальная дата (YYYY-MM-DD).
+     * @param dateTo Конечная дата (YYYY-MM-DD).
+     * @param user Аутентифицированный пользователь.
+     * @return Ряд в колоночном виде: массив дат и массивы статистик.
+     */
+    @GetMapping(value = "/timeseries/{polygonId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> getTimeSeries(@PathVariable UUID polygonId,
+                                                              @RequestParam(defaultValue = "NDVI") String analysisType,
+                                                              @RequestParam String dateFrom,
+                                                              @RequestParam String dateTo,
+                                                              @AuthenticationPrincipal User user) {
+        log.info("SentinelHubController: Received time series request for polygon {}, analysis type: {}, {}..{}",
+                polygonId, analysisType, dateFrom, dateTo);
+        try {
+            return timeSeriesService.getTimeSeries(polygonId, analysisType, dateFrom, dateTo, user)
+                    .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                    .exceptionally(this::errorResponse);
+        } catch (SecurityException e) {
+            log.warn("Security exception during time series request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid time series request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    /**
+     * Эндпоинт съёмок Sentinel-2 над полигоном за интервал дат: облачность гранулы по Catalog API,
+     * облачность над полем по слою SCL (если он уже запрашивался) и пригодность снимка.
+     * @param polygonId ID полигона.
+     * @param dateFrom Начальная дата (YYYY-MM-DD).
+     * @param dateTo Конечная дата (YYYY-MM-DD).
+     * @param user Аутентифицированный пользователь.
+     * @return Съёмки в колоночном виде и ближайшая ясная дата, если пригодных снимков в интервале нет.
+     */
+    @GetMapping(value = "/scenes/{polygonId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> getScenes(@PathVariable UUID polygonId,
+                                                          @RequestParam String dateFrom,
+                                                          @RequestParam String dateTo,
+                                                          @AuthenticationPrincipal User user) {
+        log.info("SentinelHubController: Received scenes request for polygon {}, {}..{}", polygonId, dateFrom, dateTo);
+        try {
+            return sceneAvailabilityService.getScenes(polygonId, dateFrom, dateTo, user)
+                    .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                    .exceptionally(this::errorResponse);
+        } catch (SecurityException e) {
+            log.warn("Security exception during scenes request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid scenes request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    /**
+     * Токен для URL тайлов: загрузчики тайлов карт (Leaflet, OpenLayers) запрашивают их через &lt;img&gt; и не передают
+     * заголовок Authorization, поэтому тайлы запрашиваются с параметром access_token. Токен действует только
+     * на адресах тайлов и до expiresAt.
+     */
+    @GetMapping(value = "/tiles/token", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getTileToken(@AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok(mapTileService.issueTileToken(user));
+        } catch (SecurityException e) {
+            log.warn("Security exception during tile token request: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Тайл карты XYZ (256×256, Web Mercator) с индексом за интервал дат, замаскированный по полигонам пользователя.
+     * Мелкие масштабы собираются из закэшированных тайлов крупных, поэтому панорамирование и смена масштаба
+     * не вызывают повторных запросов к Sentinel Hub. Помимо заголовка Authorization принимается параметр
+     * access_token с токеном из /tiles/token — для шаблона URL слоя карты.
+     * @param analysisType Индекс: NDVI, NDWI, MOISTURE_INDEX или NDSI.
+     * @param ifNoneMatch ETag из предыдущего ответа (есть только у тайлов прошедших интервалов).
+     * @param user Аутентифицированный пользователь.
+     * @return PNG тайла; вне полигонов — прозрачный.
+     */
+    @GetMapping(value = "/tiles/{analysisType}/{z}/{x}/{y}.png", produces = MediaType.IMAGE_PNG_VALUE)
+    public CompletableFuture<ResponseEntity<?>> getTile(@PathVariable String analysisType,
+                                                        @PathVariable int z,
+                                                        @PathVariable int x,
+                                                        @PathVariable int y,
+                                                        @RequestParam String dateFrom,
+                                                        @RequestParam String dateTo,
+                                                        @RequestParam(required = false) String palette,
+                                                        @RequestParam(required = false) Double opacity,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                        @AuthenticationPrincipal User user) {
+        log.debug("SentinelHubController: Received tile request {} {}/{}/{}, {}..{}", analysisType, z, x, y, dateFrom, dateTo);
+        try {
+            ImageryVersion version = mapTileService.getTileVersion(analysisType, z, x, y, dateFrom, dateTo, palette, opacity, user);
+            if (version.getEtag() != null && etagMatches(ifNoneMatch, version.getEtag())) {
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(version.getEtag())
+                        .cacheControl(cacheControl(version))
+                        .build());
+            }
+            return mapTileService.getTileAsync(analysisType, z, x, y, dateFrom, dateTo, palette, opacity, user)
+                    .<ResponseEntity<?>>thenApply(png -> {
+                        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                                .contentType(MediaType.IMAGE_PNG)
+                                .cacheControl(cacheControl(version));
+                        if (version.getEtag() != null) {
+                            response.eTag(version.getEtag());
+                        }
+                        return response.body(png);
+                    })
+                    .exceptionally(this::errorResponse);
+        } catch (SecurityException e) {
+            log.warn("Security exception during tile request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid tile request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    /**
+     * Список цветовых шкал для индексов с опорными точками (для легенды на клиенте).
+     */
+    @GetMapping(value = "/palettes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getPalettes() {
+        Map<String, Object> palettes = new LinkedHashMap<>();
+        paletteRegistry.getAll().forEach(ramp -> palettes.put(ramp.getName(), ramp.getStops()));
+        return ResponseEntity.ok(palettes);
+    }
+
+    /**
+     * Легенда шкалы в виде PNG-полосы от min (слева) до max (справа).
+     */
+    @GetMapping(value = "/palettes/{name}/legend", produces = MediaType.IMAGE_PNG_VALUE)
+    public ResponseEntity<?> getPaletteLegend(@PathVariable String name,
+                                              @RequestParam(defaultValue = "-1") float min,
+                                              @RequestParam(defaultValue = "1") float max,
+                                              @RequestParam(defaultValue = "256") int width,
+                                              @RequestParam(defaultValue = "16") int height,
+                                              @RequestParam(required = false) Double opacity) {
+        try {
+            if (width <= 0 || height <= 0 || width > 4096 || height > 1024) {
+                throw new IllegalArgumentException("Недопустимый размер легенды.");
+            }
+            ColorRamp ramp = paletteRegistry.get(name);
+            if (opacity != null) {
+                ramp = ramp.withOpacity(opacity);
+            }
+            return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG)
+                    .body(RasterUtils.encodePng(RasterUtils.renderLegend(ramp, min, max, width, height)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Cache-Control по версии изображения; без срока — только с повторной проверкой.
+     * Всегда private: эндпоинты требуют Authorization, и общий кэш (CDN) не должен отдавать ответ другим клиентам.
+     */
+    private CacheControl cacheControl(ImageryVersion version) {
+        if (version.getMaxAge().isZero()) {
+            return CacheControl.noCache();
+        }
+        CacheControl cacheControl = CacheControl.maxAge(version.getMaxAge()).cachePrivate();
+        return version.isImmutable() ? cacheControl.immutable() : cacheControl;
+    }
+
+    /**
+     * If-None-Match: "*" или список ETag через запятую; слабые (W/) сравниваются без префикса.
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Преобразует ошибку получения изображения в ответ: 429 с Retry-After при превышении лимита
+     * Sentinel Hub, 503 при переполненной очереди, 404 с ближайшей ясной датой, если пригодного снимка нет,
+     * 500 во всех остальных случаях.
+     */
+    private ResponseEntity<?> errorResponse(Throwable error) {
+        Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (e instanceof SentinelHubRateLimitException rateLimit) {
+            log.warn("Sentinel Hub rate limit reached: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, rateLimit.getRetryAfter().toSeconds())))
+                    .body("Error processing image: " + e.getMessage());
+        }
+        if (e instanceof SentinelHubCircuitOpenException circuitOpen) {
+            log.warn("Sentinel Hub circuit open: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, circuitOpen.getRetryAfter().toSeconds())))
+                    .body("Error processing image: " + e.getMessage());
+        }
+        if (e instanceof NoUsableSceneException noScene) {
+            log.info("No usable scene: {}", e.getMessage());
+            ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.NOT_FOUND);
+            if (noScene.getNearestClearDate() != null) {
+                response.header("X-Nearest-Clear-Date", noScene.getNearestClearDate().toString());
+            }
+            return response.body(e.getMessage());
+        }
+        if (e instanceof SentinelHubUnavailableException) {
+            log.warn("Sentinel Hub request rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Error processing image: " + e.getMessage());
         }
+        log.error("Error processing Sentinel Hub image request: {}", e.getMessage(), e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error processing image: " + e.getMessage());
     }
 }
@@ -0,0 +1,15 @@
+package com.example.backend.dto;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccessTokenDto {
+    private String token;      // Передаётся в параметре URL access_token
+    private Instant expiresAt; // После этого момента клиент запрашивает новый токен
+}
@@ -0,0 +1,47 @@
+package com.example.backend.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import com.example.backend.entiity.AnalysisJob;
+import com.example.backend.model.JobStatus;
+import com.example.backend.model.JobType;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalysisJobDto {
+    private UUID id;
+    private JobType type;
+    private JobStatus status;
+    private int totalSteps;       // Полигонов в задании
+    private int completedSteps;   // Из них обработано (включая завершившиеся ошибкой)
+    private int failedSteps;
+    private double progress;      // completedSteps / totalSteps
+    private String error;         // Причина FAILED
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String statusUrl;
+    private String resultUrl;     // null, пока задание не завершено
+
+    public AnalysisJobDto(AnalysisJob job) {
+        this.id = job.getId();
+        this.type = job.getType();
+        this.status = job.getStatus();
+        this.totalSteps = job.getTotalSteps();
+        this.completedSteps = job.getCompletedSteps();
+        this.failedSteps = job.getFailedSteps();
+        this.progress = job.getTotalSteps() == 0 ? 0.0 : (double) job.getCompletedSteps() / job.getTotalSteps();
+        this.error = job.getError();
+        this.createdAt = job.getCreatedAt();
+        this.startedAt = job.getStartedAt();
+        this.finishedAt = job.getFinishedAt();
+        this.statusUrl = "/api/jobs/" + job.getId();
+        this.resultUrl = job.getStatus().isFinished() ? statusUrl + "/result" : null;
+    }
+}
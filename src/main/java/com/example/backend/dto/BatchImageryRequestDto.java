@@ -0,0 +1,15 @@
+package com.example.backend.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import lombok.Data;
+
+@Data
+public class BatchImageryRequestDto {
+    private List<UUID> polygonIds;  // ID полигонов (PolygonArea), для которых нужны изображения
+    private String analysisType;    // Тип анализа (NDVI, TRUE_COLOR и т.д.)
+    private String dateFrom;        // Начальная дата (YYYY-MM-DD)
+    private String dateTo;          // Конечная дата (YYYY-MM-DD)
+    private Double resolutionMeters; // Размер пикселя в метрах (по умолчанию 10 м — родное разрешение Sentinel-2)
+}
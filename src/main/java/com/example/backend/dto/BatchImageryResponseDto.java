@@ -0,0 +1,16 @@
+package com.example.backend.dto;
+
+import java.util.Map;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchImageryResponseDto {
+    private Map<UUID, String> images; // PNG каждого полигона в Base64
+    private int upstreamRequests;     // Сколько запросов к Sentinel Hub понадобилось (по числу кластеров)
+}
@@ -0,0 +1,36 @@
+package com.example.backend.dto;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeDetectionDto {
+    private UUID polygonId;
+    private String analysisType;
+    private LocalDate beforeFrom;      // Интервал первого снимка
+    private LocalDate beforeTo;
+    private LocalDate afterFrom;       // Интервал второго снимка
+    private LocalDate afterTo;
+    private double resolutionMeters;   // Фактический размер пикселя (для больших полигонов крупнее запрошенного)
+    private double threshold;
+    private int totalPixels;           // Пикселей внутри полигона
+    private int validPixels;           // Из них с данными на обоих снимках
+    private double validFraction;      // validPixels / totalPixels
+    private Double meanChange;         // null, если валидных пикселей нет
+    private Double minChange;
+    private Double maxChange;
+    private double increasedHectares;  // Площадь, где индекс вырос не меньше чем на threshold
+    private double decreasedHectares;  // Площадь, где индекс упал не меньше чем на threshold
+    private double changedHectares;    // Сумма двух предыдущих
+    private double validHectares;      // Площадь пикселей с данными на обоих снимках
+    private String palette;
+    private String image;              // PNG разности в Base64, вне полигона прозрачно
+}
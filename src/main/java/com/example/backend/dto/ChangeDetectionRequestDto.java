@@ -0,0 +1,18 @@
+package com.example.backend.dto;
+
+import java.util.UUID;
+
+import lombok.Data;
+
+@Data
+public class ChangeDetectionRequestDto {
+    private UUID polygonId;          // ID полигона (PolygonArea)
+    private String analysisType;     // Индекс: NDVI (по умолчанию), NDWI, MOISTURE_INDEX или NDSI
+    private String dateBefore;       // Дата первого снимка (YYYY-MM-DD)
+    private String dateAfter;        // Дата второго снимка (YYYY-MM-DD)
+    private Integer windowDays;      // Снимок берётся за windowDays дней, заканчивающихся датой (наименее облачный)
+    private Double threshold;        // Изменение индекса по модулю, начиная с которого пиксель считается изменившимся
+    private Double resolutionMeters; // Размер пикселя в метрах (по умолчанию 10 м)
+    private String palette;          // Шкала раскраски разности (по умолчанию CHANGE)
+    private Double opacity;          // Прозрачность 0..1
+}
@@ -0,0 +1,21 @@
+package com.example.backend.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.example.backend.model.JobType;
+
+import lombok.Data;
+
+@Data
+public class JobRequestDto {
+    private JobType type;            // STATISTICS, TIME_SERIES, ZONING или IMAGERY
+    private List<UUID> polygonIds;   // Полигоны (PolygonArea); каждый — отдельный шаг задания
+    private String analysisType;     // Индекс: NDVI (по умолчанию), NDWI, MOISTURE_INDEX или NDSI; IMAGERY — любой тип анализа
+    private String dateFrom;         // STATISTICS, TIME_SERIES, IMAGERY: начальная дата (YYYY-MM-DD)
+    private String dateTo;           // STATISTICS, TIME_SERIES, IMAGERY: конечная дата (YYYY-MM-DD)
+    private String date;             // ZONING: дата снимка (YYYY-MM-DD)
+    private Integer windowDays;      // ZONING: снимок за windowDays дней, заканчивающихся датой
+    private Integer zones;           // ZONING: число зон
+    private Double resolutionMeters; // STATISTICS, ZONING: размер пикселя в метрах (по умолчанию 10 м)
+}
@@ -0,0 +1,20 @@
+package com.example.backend.dto;
+
+import java.util.List;
+
+import com.example.backend.model.ResolutionMode;
+
+import lombok.Data;
+
+@Data
+public class MultiImageryRequestDto {
+    private String polygonGeoJson;         // GeoJSON строка геометрии полигона
+    private List<String> analysisTypes;    // Набор типов анализа (NDVI, NDWI, MOISTURE_INDEX, TRUE_COLOR ...)
+    private String dateFrom;               // Начальная дата (YYYY-MM-DD)
+    private String dateTo;                 // Конечная дата (YYYY-MM-DD)
+    private int width;                     // Ширина изображения (режим FIXED)
+    private int height;                    // Высота изображения (режим FIXED)
+    private ResolutionMode resolutionMode; // Необязательно: AUTO — размер по охвату полигона (~10 м/пиксель), FIXED — width/height;
+                                           // по умолчанию AUTO, если width/height не заданы
+    private Integer maxPixels;             // Необязательно: предел width * height
+}
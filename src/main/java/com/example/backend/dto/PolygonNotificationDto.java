@@ -0,0 +1,28 @@
+package com.example.backend.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Тело SSE-событий imagery и scene по полигону.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PolygonNotificationDto {
+    private UUID polygonId;
+    private String analysisType;  // imagery: тип снимка
+    private String dateFrom;      // imagery: интервал снимка
+    private String dateTo;
+    private List<LocalDate> dates; // scene: даты новых ясных снимков
+}
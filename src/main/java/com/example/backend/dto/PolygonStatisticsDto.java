@@ -0,0 +1,65 @@
+package com.example.backend.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+import com.example.backend.entiity.PolygonIndexStatistics;
+import com.example.backend.model.IndexStatistics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PolygonStatisticsDto {
+    private UUID polygonId;
+    private String analysisType;
+    private LocalDate dateFrom;
+    private LocalDate dateTo;
+    private double resolutionMeters;
+    private int totalPixels;      // Пикселей внутри полигона
+    private int validPixels;      // Из них с данными (dataMask = 1)
+    private double validFraction; // validPixels / totalPixels
+    private Double mean;          // null, если валидных пикселей нет
+    private Double min;
+    private Double max;
+    private Double stdDev;
+    private Double p10;
+    private Double p25;
+    private Double p50;
+    private Double p75;
+    private Double p90;
+    private float histogramMin;   // Границы гистограммы (корзины равной ширины)
+    private float histogramMax;
+    private int[] histogram;
+    private LocalDateTime computedAt;
+
+    public PolygonStatisticsDto(PolygonIndexStatistics statistics) {
+        this.polygonId = statistics.getPolygonArea().getId();
+        this.analysisType = statistics.getAnalysisType();
+        this.dateFrom = statistics.getDateFrom();
+        this.dateTo = statistics.getDateTo();
+        this.resolutionMeters = statistics.getResolutionMeters();
+        this.totalPixels = statistics.getTotalPixels();
+        this.validPixels = statistics.getValidPixels();
+        this.validFraction = statistics.getTotalPixels() == 0 ? 0.0 : (double) statistics.getValidPixels() / statistics.getTotalPixels();
+        this.mean = statistics.getMean();
+        this.min = statistics.getMin();
+        this.max = statistics.getMax();
+        this.stdDev = statistics.getStdDev();
+        this.p10 = statistics.getP10();
+        this.p25 = statistics.getP25();
+        this.p50 = statistics.getP50();
+        this.p75 = statistics.getP75();
+        this.p90 = statistics.getP90();
+        this.histogramMin = IndexStatistics.HISTOGRAM_MIN;
+        this.histogramMax = IndexStatistics.HISTOGRAM_MAX;
+        this.histogram = statistics.getHistogram().isEmpty() ? new int[0]
+                : Arrays.stream(statistics.getHistogram().split(",")).mapToInt(Integer::parseInt).toArray();
+        this.computedAt = statistics.getComputedAt();
+    }
+}
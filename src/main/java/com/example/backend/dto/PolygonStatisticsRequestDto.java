@@ -0,0 +1,14 @@
+package com.example.backend.dto;
+
+import java.util.UUID;
+
+import lombok.Data;
+
+@Data
+public class PolygonStatisticsRequestDto {
+    private UUID polygonId;          // ID полигона (PolygonArea)
+    private String analysisType;     // Индекс: NDVI, NDWI, MOISTURE_INDEX или NDSI
+    private String dateFrom;         // Начальная дата (YYYY-MM-DD)
+    private String dateTo;           // Конечная дата (YYYY-MM-DD)
+    private Double resolutionMeters; // Размер пикселя в метрах (по умолчанию 10 м)
+}
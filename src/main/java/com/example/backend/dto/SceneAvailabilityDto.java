@@ -0,0 +1,25 @@
+package com.example.backend.dto;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Съёмки над полигоном в колоночном виде: i-й элемент каждого массива относится к dates[i].
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SceneAvailabilityDto {
+    private UUID polygonId;
+    private LocalDate dateFrom;
+    private LocalDate dateTo;
+    private LocalDate[] dates;            // Даты съёмки по возрастанию
+    private Float[] cloudCover;           // Облачность гранулы 0..1 по Catalog API; null — неизвестна
+    private Float[] fieldCloudFraction;   // Облака и тени над полем 0..1 по слою SCL; null — SCL за эту дату не запрашивался
+    private boolean[] usable;
+    private LocalDate nearestClearDate;   // Ближайшая ясная дата, если в интервале пригодных снимков нет
+}
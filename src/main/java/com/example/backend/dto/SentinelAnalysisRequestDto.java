@@ -1,14 +1,23 @@
 // src/main/java/com/example/backend/dto/SentinelAnalysisRequestDto.java
 package com.example.backend.dto;
 
+import com.example.backend.model.RasterFormat;
+import com.example.backend.model.ResolutionMode;
+
 import lombok.Data;
 
 @Data
 public class SentinelAnalysisRequestDto {
-    private String polygonGeoJson; // GeoJSON строка геометрии полигона
-    private String analysisType;   // Тип анализа (NDVI, TRUE_COLOR и т.д.)
-    private String dateFrom;       // Начальная дата (YYYY-MM-DD)
-    private String dateTo;         // Конечная дата (YYYY-MM-DD)
-    private int width;             // Ширина изображения
-    private int height;            // Высота изображения
+    private String polygonGeoJson;         // GeoJSON строка геометрии полигона
+    private String analysisType;           // Тип анализа (NDVI, TRUE_COLOR и т.д.)
+    private String dateFrom;               // Начальная дата (YYYY-MM-DD)
+    private String dateTo;                 // Конечная дата (YYYY-MM-DD)
+    private int width;                     // Ширина изображения (режим FIXED)
+    private int height;                    // Высота изображения (режим FIXED)
+    private ResolutionMode resolutionMode; // Необязательно: AUTO — размер по охвату полигона (~10 м/пиксель), FIXED — width/height;
+                                           // по умолчанию AUTO, если width/height не заданы
+    private Integer maxPixels;             // Необязательно: предел width * height
+    private String palette;                // Необязательно: цветовая шкала для индексов (NDVI, RED_YELLOW_GREEN, VIRIDIS ...)
+    private Double opacity;                // Необязательно: прозрачность 0..1 для индексов
+    private RasterFormat format;           // Необязательно: PNG (по умолчанию); UINT8/FLOAT16 — значения индекса без раскраски
 }
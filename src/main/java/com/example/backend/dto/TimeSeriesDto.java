@@ -0,0 +1,26 @@
+package com.example.backend.dto;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Временной ряд в колоночном виде: i-й элемент каждого массива относится к dates[i].
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeSeriesDto {
+    private UUID polygonId;
+    private String analysisType;
+    private LocalDate[] dates;      // Даты съёмки по возрастанию
+    private float[] mean;
+    private float[] min;
+    private float[] max;
+    private float[] stdDev;
+    private float[] validFraction;  // Доля пикселей полигона без облаков
+    private int upstreamRequests;   // Сколько запросов к Sentinel Hub понадобилось для недостающих дат
+}
@@ -0,0 +1,21 @@
+package com.example.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ZoneDto {
+    private int zone;            // 1 — зона с наименьшим индексом
+    private double centroid;     // Центр кластера k-means
+    private double meanIndex;    // Среднее значение индекса пикселей зоны (после сглаживания)
+    private double minIndex;
+    private double maxIndex;
+    private int pixels;
+    private double hectares;     // Площадь полигонов зоны, обрезанных по границе поля
+    private String geoJson;      // Polygon или MultiPolygon
+}
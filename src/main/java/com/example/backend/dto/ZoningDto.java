@@ -0,0 +1,25 @@
+package com.example.backend.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ZoningDto {
+    private UUID polygonId;
+    private String analysisType;
+    private LocalDate dateFrom;        // Интервал снимка
+    private LocalDate dateTo;
+    private double resolutionMeters;   // Фактический размер пикселя (для больших полигонов крупнее запрошенного)
+    private int totalPixels;           // Пикселей внутри полигона
+    private int validPixels;           // Из них с данными (остальные не попали ни в одну зону)
+    private List<ZoneDto> zones;       // По возрастанию индекса; зоны без пикселей не выводятся
+}
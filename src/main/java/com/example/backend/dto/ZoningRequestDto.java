@@ -0,0 +1,15 @@
+package com.example.backend.dto;
+
+import java.util.UUID;
+
+import lombok.Data;
+
+@Data
+public class ZoningRequestDto {
+    private UUID polygonId;          // ID полигона (PolygonArea)
+    private String analysisType;     // Индекс: NDVI (по умолчанию), NDWI, MOISTURE_INDEX или NDSI
+    private String date;             // Дата снимка (YYYY-MM-DD)
+    private Integer windowDays;      // Снимок берётся за windowDays дней, заканчивающихся датой (наименее облачный)
+    private Integer zones;           // Число зон (по умолчанию 3)
+    private Double resolutionMeters; // Размер пикселя в метрах (по умолчанию 10 м)
+}
@@ -0,0 +1,99 @@
+package com.example.backend.entiity;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import com.example.backend.model.JobStatus;
+import com.example.backend.model.JobType;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Фоновое задание анализа по одному или нескольким полигонам. Шаг задания — один полигон;
+ * результаты шагов накапливаются в result, поэтому после перезапуска сервера задание продолжается
+ * с первого необработанного полигона.
+ */
+@Entity
+@Table(name = "analysis_jobs", indexes = {
+        @Index(name = "idx_analysis_jobs_status", columnList = "status, created_at"),
+        @Index(name = "idx_analysis_jobs_user", columnList = "user_id, created_at")})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalysisJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE) // Задания удаляются вместе с пользователем
+    @JsonIgnore
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 32)
+    private JobType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private JobStatus status;
+
+    @Column(name = "parameters", nullable = false, columnDefinition = "TEXT") // JobRequestDto в JSON
+    private String parameters;
+
+    // JSON-объект: ID полигона -> результат шага или {"error": "..."}
+    @Column(name = "result", columnDefinition = "TEXT")
+    private String result;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+    @Column(name = "total_steps", nullable = false)
+    private int totalSteps;
+
+    @Column(name = "completed_steps", nullable = false)
+    private int completedSteps;
+
+    @Column(name = "failed_steps", nullable = false)
+    private int failedSteps;
+
+    // Сколько раз задание запускалось (больше одного — продолжено после перезапуска сервера)
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "cancel_requested", nullable = false)
+    private boolean cancelRequested;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
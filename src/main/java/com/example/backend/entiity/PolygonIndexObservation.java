@@ -0,0 +1,67 @@
+package com.example.backend.entiity;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Точка временного ряда индекса: статистика по полигону за одну дату съёмки.
+ */
+@Entity
+@Table(name = "polygon_index_observations", uniqueConstraints = @UniqueConstraint(
+        columnNames = {"polygon_id", "analysis_type", "acquisition_date"}))
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PolygonIndexObservation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "polygon_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE) // Производные данные удаляются вместе с полигоном
+    private PolygonArea polygonArea;
+
+    @Column(name = "analysis_type", nullable = false)
+    private String analysisType;
+
+    @Column(name = "acquisition_date", nullable = false)
+    private LocalDate acquisitionDate;
+
+    @Column(name = "mean_value", nullable = false)
+    private float mean;
+
+    @Column(name = "min_value", nullable = false)
+    private float min;
+
+    @Column(name = "max_value", nullable = false)
+    private float max;
+
+    @Column(name = "std_dev", nullable = false)
+    private float stdDev;
+
+    @Column(name = "valid_fraction", nullable = false) // Доля пикселей без облаков
+    private float validFraction;
+}
@@ -0,0 +1,102 @@
+package com.example.backend.entiity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Сохранённая статистика индекса по полигону за интервал дат — повторный запрос не идёт в Sentinel Hub.
+ */
+@Entity
+@Table(name = "polygon_index_statistics", uniqueConstraints = @UniqueConstraint(
+        columnNames = {"polygon_id", "analysis_type", "date_from", "date_to", "resolution_meters"}))
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PolygonIndexStatistics {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "polygon_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE) // Производные данные удаляются вместе с полигоном
+    @JsonIgnore
+    private PolygonArea polygonArea;
+
+    @Column(name = "analysis_type", nullable = false) // Основное имя типа (NDVI, NDWI, ...), без псевдонимов
+    private String analysisType;
+
+    @Column(name = "date_from", nullable = false)
+    private LocalDate dateFrom;
+
+    @Column(name = "date_to", nullable = false)
+    private LocalDate dateTo;
+
+    @Column(name = "resolution_meters", nullable = false)
+    private double resolutionMeters;
+
+    @Column(name = "total_pixels", nullable = false)
+    private int totalPixels;
+
+    @Column(name = "valid_pixels", nullable = false)
+    private int validPixels;
+
+    // Значения ниже null, если валидных пикселей нет
+    @Column(name = "mean_value")
+    private Double mean;
+
+    @Column(name = "min_value")
+    private Double min;
+
+    @Column(name = "max_value")
+    private Double max;
+
+    @Column(name = "std_dev")
+    private Double stdDev;
+
+    @Column(name = "p10")
+    private Double p10;
+
+    @Column(name = "p25")
+    private Double p25;
+
+    @Column(name = "p50")
+    private Double p50;
+
+    @Column(name = "p75")
+    private Double p75;
+
+    @Column(name = "p90")
+    private Double p90;
+
+    @Column(name = "histogram", columnDefinition = "TEXT", nullable = false) // Счётчики корзин через запятую
+    private String histogram;
+
+    @Column(name = "computed_at", nullable = false)
+    private LocalDateTime computedAt;
+}
@@ -0,0 +1,54 @@
+package com.example.backend.entiity;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Интервал дат, уже запрошенный у Sentinel Hub для временного ряда полигона.
+ * Нужен, чтобы не перезапрашивать дни, в которые снимков не было.
+ */
+@Entity
+@Table(name = "polygon_time_series_coverage")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PolygonTimeSeriesCoverage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "polygon_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE) // Производные данные удаляются вместе с полигоном
+    private PolygonArea polygonArea;
+
+    @Column(name = "analysis_type", nullable = false)
+    private String analysisType;
+
+    @Column(name = "covered_from", nullable = false)
+    private LocalDate coveredFrom;
+
+    @Column(name = "covered_to", nullable = false)
+    private LocalDate coveredTo;
+}
@@ -0,0 +1,53 @@
+package com.example.backend.entiity;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Съёмка Sentinel-2 над областью (bbox полигона, округлённый наружу) за одну дату и её облачность.
+ * Облачность снимка берётся из Catalog API (по всей грануле), облачность над самим полем —
+ * из слоя SCL, если изображение SCENE_CLASSIFICATION за этот день уже запрашивалось.
+ */
+@Entity
+@Table(name = "scene_availability", uniqueConstraints = @UniqueConstraint(
+        columnNames = {"area_key", "acquisition_date"}))
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SceneAvailability {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "area_key", nullable = false, length = 64)
+    private String areaKey;
+
+    @Column(name = "acquisition_date", nullable = false)
+    private LocalDate acquisitionDate;
+
+    @Column(name = "cloud_cover") // Доля облаков по грануле 0..1 (Catalog API)
+    private Float cloudCover;
+
+    @Column(name = "field_cloud_fraction") // Доля облаков и теней над полем 0..1 (SCL)
+    private Float fieldCloudFraction;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,43 @@
+package com.example.backend.entiity;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Интервал дат, уже просмотренный в Catalog API для области.
+ * Нужен, чтобы не искать заново дни, в которые съёмки не было.
+ */
+@Entity
+@Table(name = "scene_catalog_coverage")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SceneCatalogCoverage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "area_key", nullable = false, length = 64)
+    private String areaKey;
+
+    @Column(name = "covered_from", nullable = false)
+    private LocalDate coveredFrom;
+
+    @Column(name = "covered_to", nullable = false)
+    private LocalDate coveredTo;
+}
@@ -0,0 +1,11 @@
+package com.example.backend.exception;
+
+/**
+ * У пользователя уже максимум заданий в очереди и в работе. Преобразуется в HTTP 429.
+ */
+public class JobLimitExceededException extends RuntimeException {
+
+    public JobLimitExceededException(String message) {
+        super(message);
+    }
+}
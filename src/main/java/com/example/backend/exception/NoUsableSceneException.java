@@ -0,0 +1,24 @@
+package com.example.backend.exception;
+
+import java.time.LocalDate;
+
+/**
+ * За интервал дат над полигоном нет снимка без облаков (или съёмки не было вовсе),
+ * поэтому запрос в Process API не отправлялся. Преобразуется в HTTP 404 с ближайшей ясной датой, если она есть.
+ */
+public class NoUsableSceneException extends RuntimeException {
+
+    private final LocalDate nearestClearDate;
+
+    public NoUsableSceneException(String message, LocalDate nearestClearDate) {
+        super(message);
+        this.nearestClearDate = nearestClearDate;
+    }
+
+    /**
+     * Ближайшая к интервалу дата ясного снимка; null, если такой в окне поиска нет.
+     */
+    public LocalDate getNearestClearDate() {
+        return nearestClearDate;
+    }
+}
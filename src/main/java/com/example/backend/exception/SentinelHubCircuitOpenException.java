@@ -0,0 +1,21 @@
+package com.example.backend.exception;
+
+import java.time.Duration;
+
+/**
+ * Вызов Sentinel Hub не выполнялся: автомат защиты разомкнут после серии ошибок апстрима.
+ * Преобразуется в HTTP 503 с заголовком Retry-After.
+ */
+public class SentinelHubCircuitOpenException extends SentinelHubUnavailableException {
+
+    private final Duration retryAfter;
+
+    public SentinelHubCircuitOpenException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
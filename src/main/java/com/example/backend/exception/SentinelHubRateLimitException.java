@@ -0,0 +1,25 @@
+package com.example.backend.exception;
+
+import java.time.Duration;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Sentinel Hub продолжает отвечать 429 после всех повторов.
+ * Клиент получает 429 и заголовок Retry-After вместо 500.
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class SentinelHubRateLimitException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public SentinelHubRateLimitException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.backend.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Запрос к Sentinel Hub не может быть выполнен сейчас (например, очередь исходящих запросов переполнена).
+ * Преобразуется в HTTP 503 (Service Unavailable).
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class SentinelHubUnavailableException extends RuntimeException {
+
+    public SentinelHubUnavailableException(String message) {
+        super(message);
+    }
+
+    public SentinelHubUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.backend.model;
+
+import java.util.List;
+
+import org.locationtech.jts.geom.Envelope;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * Неизменяемый шаблон запроса Process API для одного типа анализа.
+ * <p>
+ * Всё, что не зависит от конкретного запроса, сериализуется в JSON один раз при создании:
+ * evalscript (уже экранированный), фильтр данных и описание выходов. Запрос собирается
+ * последовательной записью фрагментов в переиспользуемый буфер потока, без дерева Jackson
+ * и без повторного разбора геометрии.
+ */
+public final class AnalysisTemplate {
+
+    private static final String DATA_COLLECTION = "sentinel-2-l2a";
+    private static final String MOSAICKING_ORDER = "leastCC";
+    private static final int INITIAL_BUFFER = 16 * 1024;
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    // {"input":{"bounds":{"geometry":
+    private static final String INPUT_PREFIX = "{\"input\":{\"bounds\":{\"geometry\":";
+    // {"input":{"bounds":{"bbox":[
+    private static final String INPUT_BBOX_PREFIX = "{\"input\":{\"bounds\":{\"bbox\":[";
+    // ],"geometry":
+    private static final String BBOX_GEOMETRY = "],\"geometry\":";
+    // T00:00:00Z","to":"
+    private static final String TIME_RANGE_MIDDLE = "T00:00:00Z\",\"to\":\"";
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_BUFFER));
+
+    private final String name;
+    private final String evalscript;
+    private final List<String> outputIdentifiers;
+    private final String outputFormat;
+
+    // },"data":[{"type":"sentinel-2-l2a","dataFilter":{"timeRange":{"from":"
+    private final String dataFilterPrefix;
+    // T23:59:59Z"},"mosaickingOrder":"leastCC"}}]},"output":{"width":
+    private final String dataFilterSuffix;
+    // ,"responses":[...]},
+    private final String outputSpec;
+    // "evalscript":"..."}
+    private final String evalscriptFragment;
+
+    public AnalysisTemplate(String name, String evalscript, List<String> outputIdentifiers) {
+        this(name, evalscript, outputIdentifiers, "image/png");
+    }
+
+    /**
+     * @param outputFormat MIME-тип каждого выхода: "image/png" для цветных изображений,
+     *                     "image/tiff" для значений индекса (FLOAT32).
+     */
+    public AnalysisTemplate(String name, String evalscript, List<String> outputIdentifiers, String outputFormat) {
+        this.name = name;
+        this.evalscript = evalscript;
+        this.outputIdentifiers = List.copyOf(outputIdentifiers);
+        this.outputFormat = outputFormat;
+        this.dataFilterPrefix = "},\"data\":[{\"type\":\"" + DATA_COLLECTION + "\",\"dataFilter\":{\"timeRange\":{\"from\":\"";
+        this.dataFilterSuffix = "T23:59:59Z\"},\"mosaickingOrder\":\"" + MOSAICKING_ORDER + "\"}}]},\"output\":{\"width\":";
+
+        StringBuilder responses = new StringBuilder(",\"responses\":[");
+        for (int i = 0; i < outputIdentifiers.size(); i++) {
+            if (i > 0) {
+                responses.append(',');
+            }
+            responses.append("{\"identifier\":\"").append(quote(outputIdentifiers.get(i)))
+                    .append("\",\"format\":{\"type\":\"").append(quote(outputFormat)).append("\"}}");
+        }
+        this.outputSpec = responses.append("]},").toString();
+        this.evalscriptFragment = "\"evalscript\":\"" + quote(evalscript) + "\"}";
+    }
+
+    /**
+     * Собирает тело запроса Process API.
+     *
+     * @param geometryJson Компактный GeoJSON геометрии (уже проверенный, см. {@link ImageryRequestKey}).
+     * @param dateFrom Начальная дата (YYYY-MM-DD).
+     * @param dateTo Конечная дата (YYYY-MM-DD).
+     */
+    public String writeRequest(String geometryJson, String dateFrom, String dateTo, int width, int height) {
+        return writeRequest(geometryJson, null, dateFrom, dateTo, width, height);
+    }
+
+    /**
+     * Собирает тело запроса Process API для участка bbox геометрии: выход покрывает ровно bbox,
+     * пиксели вне геометрии маскируются (так запрашиваются тайлы большого полигона).
+     *
+     * @param bbox Охват выхода в WGS84; null — охват самой геометрии.
+     */
+    public String writeRequest(String geometryJson, Envelope bbox, String dateFrom, String dateTo, int width, int height) {
+        requireIsoDate(dateFrom);
+        requireIsoDate(dateTo);
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        if (bbox == null) {
+            buffer.append(INPUT_PREFIX);
+        } else {
+            buffer.append(INPUT_BBOX_PREFIX)
+                    .append(bbox.getMinX()).append(',').append(bbox.getMinY()).append(',')
+                    .append(bbox.getMaxX()).append(',').append(bbox.getMaxY())
+                    .append(BBOX_GEOMETRY);
+        }
+        buffer.append(geometryJson)
+                .append(dataFilterPrefix).append(dateFrom)
+                .append(TIME_RANGE_MIDDLE).append(dateTo)
+                .append(dataFilterSuffix).append(width)
+                .append(",\"height\":").append(height)
+                .append(outputSpec)
+                .append(evalscriptFragment);
+        String body = buffer.toString();
+        // Не держим в потоке гигантский буфер после запроса с огромной геометрией
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return body;
+    }
+
+    private static void requireIsoDate(String date) {
+        boolean valid = date != null && date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-';
+        for (int i = 0; valid && i < 10; i++) {
+            valid = i == 4 || i == 7 || Character.isDigit(date.charAt(i));
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Date must be in YYYY-MM-DD format: " + date);
+        }
+    }
+
+    private static String quote(String value) {
+        return new String(JsonStringEncoder.getInstance().quoteAsString(value));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEvalscript() {
+        return evalscript;
+    }
+
+    public List<String> getOutputIdentifiers() {
+        return outputIdentifiers;
+    }
+
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.backend.model;
+
+import java.util.List;
+
+/**
+ * Цветовая шкала для значений индекса: опорные точки с цветами RGBA (0..1) и линейная
+ * интерполяция между ними — так же, как ColorRampVisualizer и colorBlend в evalscript.
+ * <p>
+ * При создании шкала разворачивается в таблицу из {@link #LUT_SIZE} готовых цветов ARGB
+ * на отрезке [первая точка, последняя точка], поэтому раскраска пикселя — одно обращение к массиву.
+ */
+public final class ColorRamp {
+
+    public static final int LUT_SIZE = 1024;
+
+    private final String name;
+    private final float[] positions;
+    private final float[][] colors;
+    private final double opacity;
+    private final float min;
+    private final float scale;
+    private final int[] lut;
+
+    /**
+     * @param positions Значения индекса по возрастанию.
+     * @param colors    Цвет {r, g, b, a} в диапазоне 0..1 для каждой точки.
+     */
+    public ColorRamp(String name, float[] positions, float[][] colors) {
+        this(name, positions, colors, 1.0);
+    }
+
+    private ColorRamp(String name, float[] positions, float[][] colors, double opacity) {
+        if (positions.length < 2 || positions.length != colors.length) {
+            throw new IllegalArgumentException("Color ramp needs at least two stops with a colour each: " + name);
+        }
+        this.name = name;
+        this.positions = positions;
+        this.colors = colors;
+        this.opacity = opacity;
+        this.min = positions[0];
+        this.scale = (LUT_SIZE - 1) / (positions[positions.length - 1] - positions[0]);
+        this.lut = new int[LUT_SIZE];
+        int stop = 0;
+        for (int i = 0; i < LUT_SIZE; i++) {
+            float value = min + i / scale;
+            while (stop < positions.length - 2 && value > positions[stop + 1]) {
+                stop++;
+            }
+            float t = (value - positions[stop]) / (positions[stop + 1] - positions[stop]);
+            t = Math.max(0f, Math.min(1f, t));
+            float[] from = colors[stop];
+            float[] to = colors[stop + 1];
+            lut[i] = argb(from[0] + (to[0] - from[0]) * t,
+                    from[1] + (to[1] - from[1]) * t,
+                    from[2] + (to[2] - from[2]) * t,
+                    (from[3] + (to[3] - from[3]) * t) * opacity);
+        }
+    }
+
+    /**
+     * Та же шкала с альфа-каналом, умноженным на opacity (0..1).
+     */
+    public ColorRamp withOpacity(double opacity) {
+        if (opacity < 0 || opacity > 1) {
+            throw new IllegalArgumentException("Opacity must be between 0 and 1: " + opacity);
+        }
+        return new ColorRamp(name, positions, colors, opacity);
+    }
+
+    /**
+     * Цвет ARGB для значения индекса; NaN (нет данных) — полностью прозрачный.
+     * Значения за пределами шкалы получают цвет крайней точки.
+     */
+    public int colorOf(float value) {
+        if (Float.isNaN(value)) {
+            return 0;
+        }
+        int index = (int) ((value - min) * scale + 0.5f);
+        return lut[index < 0 ? 0 : Math.min(index, LUT_SIZE - 1)];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getOpacity() {
+        return opacity;
+    }
+
+    /**
+     * Опорные точки для легенды: значение и цвет "#RRGGBBAA" (с учётом opacity).
+     */
+    public List<Stop> getStops() {
+        Stop[] stops = new Stop[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            int color = argb(colors[i][0], colors[i][1], colors[i][2], colors[i][3] * opacity);
+            stops[i] = new Stop(positions[i], String.format("#%06X%02X", color & 0xFFFFFF, color >>> 24));
+        }
+        return List.of(stops);
+    }
+
+    private static int argb(double r, double g, double b, double a) {
+        return channel(a) << 24 | channel(r) << 16 | channel(g) << 8 | channel(b);
+    }
+
+    private static int channel(double value) {
+        return (int) Math.round(Math.max(0.0, Math.min(1.0, value)) * 255);
+    }
+
+    public record Stop(float value, String color) {
+    }
+}
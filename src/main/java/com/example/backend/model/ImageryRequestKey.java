@@ -0,0 +1,140 @@
+package com.example.backend.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Канонический ключ запроса изображения Sentinel Hub.
+ * Хэш строится из нормализованной геометрии, типа анализа, интервала дат и размера,
+ * поэтому одинаковые по смыслу запросы (с разными пробелами или порядком полей в GeoJSON)
+ * получают один и тот же ключ.
+ */
+public final class ImageryRequestKey {
+
+    private final String geometryJson;
+    private final String analysisType;
+    private final String dateFrom;
+    private final String dateTo;
+    private final int width;
+    private final int height;
+    private final String hash;
+    private final String latestHash;
+
+    private ImageryRequestKey(String geometryJson, String analysisType, String dateFrom, String dateTo, int width, int height) {
+        this.geometryJson = geometryJson;
+        this.analysisType = analysisType;
+        this.dateFrom = dateFrom;
+        this.dateTo = dateTo;
+        this.width = width;
+        this.height = height;
+        this.hash = sha256(geometryJson + '|' + analysisType + '|' + dateFrom + '|' + dateTo + '|' + width + 'x' + height);
+        this.latestHash = sha256("latest|" + geometryJson + '|' + analysisType);
+    }
+
+    public static ImageryRequestKey of(ObjectMapper objectMapper, String polygonGeoJson, String analysisType,
+                                       String dateFrom, String dateTo, int width, int height) {
+        return new ImageryRequestKey(normalizeGeometry(objectMapper, polygonGeoJson),
+                analysisType.trim().toUpperCase(Locale.ROOT), dateFrom.trim(), dateTo.trim(), width, height);
+    }
+
+    /**
+     * Оставляет от GeoJSON только "type" и "coordinates" (Feature разворачивается в геометрию)
+     * и сериализует их компактно, без пробелов.
+     */
+    static String normalizeGeometry(ObjectMapper objectMapper, String polygonGeoJson) {
+        try {
+            JsonNode node = objectMapper.readTree(polygonGeoJson);
+            if (node.has("geometry")) {
+                node = node.get("geometry");
+            }
+            ObjectNode canonical = objectMapper.createObjectNode();
+            canonical.set("type", node.path("type"));
+            canonical.set("coordinates", node.path("coordinates"));
+            return objectMapper.writeValueAsString(canonical);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid polygon GeoJSON", e);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Интервал, закончившийся больше settleDays дней назад (по UTC), даёт неизменяемый снимок:
+     * сцены последних дней Sentinel Hub ещё может догрузить.
+     */
+    public boolean isImmutable(int settleDays) {
+        try {
+            return LocalDate.parse(dateTo).isBefore(LocalDate.now(ZoneOffset.UTC).minusDays(settleDays));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    public String getGeometryJson() {
+        return geometryJson;
+    }
+
+    public String getAnalysisType() {
+        return analysisType;
+    }
+
+    public String getDateFrom() {
+        return dateFrom;
+    }
+
+    public String getDateTo() {
+        return dateTo;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Ключ указателя на последний полученный снимок той же геометрии и типа анализа (за любые даты и размер).
+     */
+    public String getLatestHash() {
+        return latestHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ImageryRequestKey other && hash.equals(other.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return analysisType + " " + dateFrom + ".." + dateTo + " " + width + "x" + height + " #" + hash.substring(0, 12);
+    }
+}
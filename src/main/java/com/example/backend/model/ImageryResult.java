@@ -0,0 +1,44 @@
+package com.example.backend.model;
+
+import java.time.Instant;
+
+/**
+ * Изображение для ответа клиенту и признак того, что оно устаревшее:
+ * Sentinel Hub недоступен и отдан последний снимок из кэша.
+ */
+public final class ImageryResult {
+
+    private final byte[] image;
+    private final Instant staleSince;
+
+    private ImageryResult(byte[] image, Instant staleSince) {
+        this.image = image;
+        this.staleSince = staleSince;
+    }
+
+    public static ImageryResult fresh(byte[] image) {
+        return new ImageryResult(image, null);
+    }
+
+    /**
+     * @param fetchedAt Когда отданный снимок был получен от Sentinel Hub.
+     */
+    public static ImageryResult stale(byte[] image, Instant fetchedAt) {
+        return new ImageryResult(image, fetchedAt);
+    }
+
+    public byte[] getImage() {
+        return image;
+    }
+
+    public boolean isStale() {
+        return staleSince != null;
+    }
+
+    /**
+     * Момент получения устаревшего снимка; null для свежего ответа.
+     */
+    public Instant getStaleSince() {
+        return staleSince;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.backend.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Изображение, которое передаётся клиенту потоком, не собираясь целиком в куче
+ * (из дискового кэша или прямо из ответа Sentinel Hub).
+ */
+public interface ImageryStream extends Closeable {
+
+    /**
+     * Длина в байтах; -1, если заранее неизвестна.
+     */
+    long getContentLength();
+
+    /**
+     * Передаёт изображение в out. Вызывается не больше одного раза.
+     */
+    void transferTo(OutputStream out) throws IOException;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,38 @@
+package com.example.backend.model;
+
+import java.time.Duration;
+
+/**
+ * Версия изображения для условных HTTP-запросов: ETag и срок, на который ответ можно кэшировать.
+ * Считается по каноническому ключу запроса, без обращения к Sentinel Hub и без чтения тела из кэша.
+ */
+public final class ImageryVersion {
+
+    private final String etag;
+    private final boolean immutable;
+    private final Duration maxAge;
+
+    public ImageryVersion(String etag, boolean immutable, Duration maxAge) {
+        this.etag = etag;
+        this.immutable = immutable;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * ETag в кавычках; null, если версия неизвестна (текущий интервал ещё не в кэше).
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Интервал дат целиком в прошлом — изображение больше не изменится.
+     */
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+}
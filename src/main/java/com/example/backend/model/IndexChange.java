@@ -0,0 +1,71 @@
+package com.example.backend.model;
+
+/**
+ * Изменение индекса между двумя снимками полигона: растр разности (после − до) по окну полигона
+ * и сводка по пикселям внутри него. Пиксели вне полигона и без данных хотя бы на одном снимке — NaN.
+ * Поля mean/min/max равны NaN, если пикселей с данными на обоих снимках нет.
+ */
+public final class IndexChange {
+
+    private final IndexRaster difference;
+    private final int totalPixels;
+    private final int validPixels;
+    private final double mean;
+    private final double min;
+    private final double max;
+    private final int increasedPixels;
+    private final int decreasedPixels;
+
+    public IndexChange(IndexRaster difference, int totalPixels, int validPixels, double mean, double min, double max,
+                       int increasedPixels, int decreasedPixels) {
+        this.difference = difference;
+        this.totalPixels = totalPixels;
+        this.validPixels = validPixels;
+        this.mean = mean;
+        this.min = min;
+        this.max = max;
+        this.increasedPixels = increasedPixels;
+        this.decreasedPixels = decreasedPixels;
+    }
+
+    public IndexRaster getDifference() {
+        return difference;
+    }
+
+    public int getTotalPixels() {
+        return totalPixels;
+    }
+
+    /**
+     * Пикселей полигона с данными на обоих снимках.
+     */
+    public int getValidPixels() {
+        return validPixels;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Пикселей, где индекс вырос не меньше чем на порог.
+     */
+    public int getIncreasedPixels() {
+        return increasedPixels;
+    }
+
+    /**
+     * Пикселей, где индекс упал не меньше чем на порог.
+     */
+    public int getDecreasedPixels() {
+        return decreasedPixels;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.backend.model;
+
+import java.time.LocalDate;
+
+/**
+ * Статистика индекса по полигону за одну дату съёмки (один интервал P1D Statistical API).
+ */
+public final class IndexObservation {
+
+    private final LocalDate date;
+    private final float mean;
+    private final float min;
+    private final float max;
+    private final float stdDev;
+    private final float validFraction;
+
+    public IndexObservation(LocalDate date, float mean, float min, float max, float stdDev, float validFraction) {
+        this.date = date;
+        this.mean = mean;
+        this.min = min;
+        this.max = max;
+        this.stdDev = stdDev;
+        this.validFraction = validFraction;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public float getMean() {
+        return mean;
+    }
+
+    public float getMin() {
+        return min;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    public float getStdDev() {
+        return stdDev;
+    }
+
+    /**
+     * Доля пикселей полигона без облаков и с данными, 0..1.
+     */
+    public float getValidFraction() {
+        return validFraction;
+    }
+}
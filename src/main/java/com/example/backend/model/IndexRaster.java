@@ -0,0 +1,61 @@
+package com.example.backend.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Растр значений индекса (NDVI, NDWI и т.д.) в виде плоского массива float по строкам сверху вниз.
+ * Пиксели без данных (dataMask = 0) хранятся как NaN.
+ */
+public final class IndexRaster {
+
+    private final int width;
+    private final int height;
+    private final float[] values;
+
+    public IndexRaster(int width, int height, float[] values) {
+        if (values.length != width * height) {
+            throw new IllegalArgumentException("Raster size mismatch: " + width + "x" + height + " vs " + values.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.values = values;
+    }
+
+    /**
+     * Сериализует растр для кэша: ширина, высота (int) и значения float подряд.
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + values.length * 4);
+        buffer.putInt(width).putInt(height);
+        buffer.asFloatBuffer().put(values);
+        return buffer.array();
+    }
+
+    public static IndexRaster fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        float[] values = new float[width * height];
+        buffer.asFloatBuffer().get(values);
+        return new IndexRaster(width, height, values);
+    }
+
+    public float get(int x, int y) {
+        return values[y * width + x];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Внутренний массив без копирования — вызывающий код не должен его изменять.
+     */
+    public float[] getValues() {
+        return values;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.backend.model;
+
+/**
+ * Статистика значений индекса внутри полигона.
+ * Поля mean/min/max/stdDev/percentiles равны NaN, если валидных пикселей нет (например, всё под облаками).
+ */
+public final class IndexStatistics {
+
+    // Нормализованные индексы лежат в [-1, 1]; гистограмма строится по этому диапазону
+    public static final float HISTOGRAM_MIN = -1.0f;
+    public static final float HISTOGRAM_MAX = 1.0f;
+    public static final int HISTOGRAM_BINS = 20;
+    public static final double[] PERCENTILES = {10, 25, 50, 75, 90};
+
+    private final int totalPixels;
+    private final int validPixels;
+    private final double mean;
+    private final double min;
+    private final double max;
+    private final double stdDev;
+    private final double[] percentiles;
+    private final int[] histogram;
+
+    public IndexStatistics(int totalPixels, int validPixels, double mean, double min, double max, double stdDev,
+                           double[] percentiles, int[] histogram) {
+        this.totalPixels = totalPixels;
+        this.validPixels = validPixels;
+        this.mean = mean;
+        this.min = min;
+        this.max = max;
+        this.stdDev = stdDev;
+        this.percentiles = percentiles;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Доля пикселей полигона с данными (не облако/не вне снимка), 0..1.
+     */
+    public double getValidFraction() {
+        return totalPixels == 0 ? 0.0 : (double) validPixels / totalPixels;
+    }
+
+    public int getTotalPixels() {
+        return totalPixels;
+    }
+
+    public int getValidPixels() {
+        return validPixels;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getStdDev() {
+        return stdDev;
+    }
+
+    /**
+     * Значения процентилей в порядке {@link #PERCENTILES}.
+     */
+    public double[] getPercentiles() {
+        return percentiles;
+    }
+
+    public int[] getHistogram() {
+        return histogram;
+    }
+}
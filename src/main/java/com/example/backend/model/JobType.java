@@ -0,0 +1,15 @@
+package com.example.backend.model;
+
+/**
+ * Вид фонового анализа: каждый полигон задания обрабатывается тем же сервисом, что и синхронный эндпоинт.
+ */
+public enum JobType {
+    /** Статистика индекса за интервал dateFrom..dateTo (POST /api/sentinel/statistics). */
+    STATISTICS,
+    /** Временной ряд индекса за сезон dateFrom..dateTo (GET /api/sentinel/timeseries). */
+    TIME_SERIES,
+    /** Зоны управления на дату date (POST /api/sentinel/zones). */
+    ZONING,
+    /** Изображение полигона за интервал dateFrom..dateTo: в кэш, в результат — ссылка на GET /api/sentinel/process-image. */
+    IMAGERY
+}
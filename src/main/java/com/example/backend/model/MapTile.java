@@ -0,0 +1,99 @@
+package com.example.backend.model;
+
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Тайл XYZ (slippy map) в проекции Web Mercator: масштаб z, столбец x (с запада на восток)
+ * и строка y (с севера на юг), размер {@link #SIZE}×{@link #SIZE} пикселей.
+ */
+public final class MapTile {
+
+    public static final int SIZE = 256;
+    // Предел широты Web Mercator
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private final int z;
+    private final int x;
+    private final int y;
+
+    public MapTile(int z, int x, int y) {
+        if (z < 0 || z > 30) {
+            throw new IllegalArgumentException("Недопустимый масштаб тайла: " + z);
+        }
+        int count = 1 << z;
+        if (x < 0 || x >= count || y < 0 || y >= count) {
+            throw new IllegalArgumentException("Тайл " + z + "/" + x + "/" + y + " вне сетки масштаба " + z + ".");
+        }
+        this.z = z;
+        this.x = x;
+        this.y = y;
+    }
+
+    public MapTile parent() {
+        return new MapTile(z - 1, x >> 1, y >> 1);
+    }
+
+    /**
+     * Один из четырёх тайлов следующего масштаба: dx, dy — 0 или 1 (запад/восток, север/юг).
+     */
+    public MapTile child(int dx, int dy) {
+        return new MapTile(z + 1, (x << 1) + dx, (y << 1) + dy);
+    }
+
+    /**
+     * Тайл масштаба zoom (не больше z), которому принадлежит этот.
+     */
+    public MapTile ancestor(int zoom) {
+        int shift = z - zoom;
+        return new MapTile(zoom, x >> shift, y >> shift);
+    }
+
+    /**
+     * Границы тайла в EPSG:4326.
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(longitude(0), longitude(SIZE), latitude(SIZE), latitude(0));
+    }
+
+    /**
+     * Долгота точки с координатой pixelX (0..SIZE) внутри тайла.
+     */
+    public double longitude(double pixelX) {
+        return (x + pixelX / SIZE) / (1 << z) * 360.0 - 180.0;
+    }
+
+    /**
+     * Широта точки с координатой pixelY (0..SIZE, сверху вниз) внутри тайла.
+     */
+    public double latitude(double pixelY) {
+        double n = Math.PI * (1 - 2 * (y + pixelY / SIZE) / (1 << z));
+        return Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, Math.toDegrees(Math.atan(Math.sinh(n)))));
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MapTile other && z == other.z && x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return (z * 31 + x) * 31 + y;
+    }
+
+    @Override
+    public String toString() {
+        return z + "/" + x + "/" + y;
+    }
+}
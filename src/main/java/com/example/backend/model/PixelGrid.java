@@ -0,0 +1,91 @@
+package com.example.backend.model;
+
+import org.locationtech.jts.geom.Envelope;
+
+import com.example.backend.util.GeometryUtils;
+
+/**
+ * Регулярная сетка пикселей в EPSG:4326: левый верхний угол, размер пикселя в градусах и размер растра.
+ * Строки растра идут сверху вниз (от maxY к minY), как в PNG, который возвращает Process API.
+ */
+public final class PixelGrid {
+
+    private final double minX;
+    private final double maxY;
+    private final double pixelWidth;
+    private final double pixelHeight;
+    private final int width;
+    private final int height;
+
+    public PixelGrid(double minX, double maxY, double pixelWidth, double pixelHeight, int width, int height) {
+        this.minX = minX;
+        this.maxY = maxY;
+        this.pixelWidth = pixelWidth;
+        this.pixelHeight = pixelHeight;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Сетка с шагом resolutionMeters, выровненная по кратным шагу координатам и покрывающая envelope.
+     * Долготный шаг считается на широте referenceLatitude, чтобы у соседних полигонов сетки совпадали.
+     */
+    public static PixelGrid aligned(Envelope envelope, double resolutionMeters, double referenceLatitude) {
+        double pixelHeight = resolutionMeters / GeometryUtils.METERS_PER_DEGREE;
+        double pixelWidth = resolutionMeters / (GeometryUtils.METERS_PER_DEGREE * Math.cos(Math.toRadians(referenceLatitude)));
+        double minX = Math.floor(envelope.getMinX() / pixelWidth) * pixelWidth;
+        double maxX = Math.ceil(envelope.getMaxX() / pixelWidth) * pixelWidth;
+        double minY = Math.floor(envelope.getMinY() / pixelHeight) * pixelHeight;
+        double maxY = Math.ceil(envelope.getMaxY() / pixelHeight) * pixelHeight;
+        int width = Math.max(1, (int) Math.round((maxX - minX) / pixelWidth));
+        int height = Math.max(1, (int) Math.round((maxY - minY) / pixelHeight));
+        return new PixelGrid(minX, maxY, pixelWidth, pixelHeight, width, height);
+    }
+
+    public Envelope getEnvelope() {
+        return new Envelope(minX, minX + width * pixelWidth, maxY - height * pixelHeight, maxY);
+    }
+
+    /**
+     * Окно пикселей этой сетки, покрывающее envelope: {x, y, width, height}, обрезанное по границам растра.
+     */
+    public int[] window(Envelope envelope) {
+        int x0 = Math.max(0, (int) Math.floor((envelope.getMinX() - minX) / pixelWidth + 1e-9));
+        int x1 = Math.min(width, (int) Math.ceil((envelope.getMaxX() - minX) / pixelWidth - 1e-9));
+        int y0 = Math.max(0, (int) Math.floor((maxY - envelope.getMaxY()) / pixelHeight + 1e-9));
+        int y1 = Math.min(height, (int) Math.ceil((maxY - envelope.getMinY()) / pixelHeight - 1e-9));
+        return new int[] {x0, y0, Math.max(1, x1 - x0), Math.max(1, y1 - y0)};
+    }
+
+    public double centerX(int column) {
+        return minX + (column + 0.5) * pixelWidth;
+    }
+
+    public double centerY(int row) {
+        return maxY - (row + 0.5) * pixelHeight;
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public double getPixelWidth() {
+        return pixelWidth;
+    }
+
+    public double getPixelHeight() {
+        return pixelHeight;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.backend.model;
+
+/**
+ * Формат ответа /process-image.
+ * <p>
+ * UINT8 и FLOAT16 — одноканальный растр значений индекса для клиентов, которые раскрашивают
+ * его сами (палитра на GPU); устройство описано в {@link com.example.backend.util.IndexRasterCodec}.
+ */
+public enum RasterFormat {
+    // Раскрашенное изображение RGBA
+    PNG("image/png"),
+    // Индекс, квантованный в 1 байт на пиксель; 0 — нет данных
+    UINT8(RasterFormat.INDEX_RASTER_MEDIA_TYPE),
+    // Индекс в половинной точности, 2 байта на пиксель; NaN — нет данных
+    FLOAT16(RasterFormat.INDEX_RASTER_MEDIA_TYPE);
+
+    public static final String INDEX_RASTER_MEDIA_TYPE = "application/x-index-raster";
+
+    private final String mediaType;
+
+    RasterFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.backend.model;
+
+/**
+ * Как выбирается размер выходного изображения.
+ */
+public enum ResolutionMode {
+    // Размер считается по геодезическому охвату полигона и целевому размеру пикселя (10 м у Sentinel-2)
+    AUTO,
+    // Размер задаёт клиент (width/height), но с теми же жёсткими ограничениями
+    FIXED
+}
@@ -0,0 +1,25 @@
+package com.example.backend.model;
+
+import java.time.LocalDate;
+
+/**
+ * Снимок Sentinel-2 из Catalog API: дата съёмки и облачность гранулы (0..1).
+ */
+public final class SceneAcquisition {
+
+    private final LocalDate date;
+    private final float cloudCover;
+
+    public SceneAcquisition(LocalDate date, float cloudCover) {
+        this.date = date;
+        this.cloudCover = cloudCover;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public float getCloudCover() {
+        return cloudCover;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.backend.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Неизменяемый временной ряд индекса одного полигона в колоночном виде: отсортированный массив дат
+ * (дни от эпохи) и по массиву float на каждую статистику. Чтение диапазона — два бинарных поиска
+ * и копирование срезов.
+ * <p>
+ * Покрытие — отсортированные непересекающиеся интервалы дней [from, to], которые уже запрошены
+ * у Sentinel Hub; дни внутри покрытия без наблюдений — дни без пригодных снимков.
+ */
+public final class TimeSeries {
+
+    public static final TimeSeries EMPTY = new TimeSeries(new int[0], new float[0], new float[0], new float[0],
+            new float[0], new float[0], new int[0]);
+
+    private final int[] days;
+    private final float[] mean;
+    private final float[] min;
+    private final float[] max;
+    private final float[] stdDev;
+    private final float[] validFraction;
+    // Пары [from, to] включительно, в днях от эпохи
+    private final int[] coverage;
+
+    public TimeSeries(int[] days, float[] mean, float[] min, float[] max, float[] stdDev, float[] validFraction, int[] coverage) {
+        this.days = days;
+        this.mean = mean;
+        this.min = min;
+        this.max = max;
+        this.stdDev = stdDev;
+        this.validFraction = validFraction;
+        this.coverage = coverage;
+    }
+
+    /**
+     * Интервалы [from, to] внутри запрошенного, которые ещё не покрыты.
+     */
+    public List<LocalDate[]> missingRanges(LocalDate from, LocalDate to) {
+        List<LocalDate[]> missing = new ArrayList<>();
+        long cursor = from.toEpochDay();
+        long end = to.toEpochDay();
+        for (int i = 0; i < coverage.length && cursor <= end; i += 2) {
+            if (coverage[i + 1] < cursor) {
+                continue;
+            }
+            if (coverage[i] > end) {
+                break;
+            }
+            if (coverage[i] > cursor) {
+                missing.add(new LocalDate[] {LocalDate.ofEpochDay(cursor), LocalDate.ofEpochDay(coverage[i] - 1)});
+            }
+            cursor = Math.max(cursor, coverage[i + 1] + 1L);
+        }
+        if (cursor <= end) {
+            missing.add(new LocalDate[] {LocalDate.ofEpochDay(cursor), LocalDate.ofEpochDay(end)});
+        }
+        return missing;
+    }
+
+    /**
+     * Новый ряд с добавленными наблюдениями (совпадающие даты заменяются) и расширенным покрытием.
+     *
+     * @param covered Интервалы [from, to], которые теперь считаются полностью запрошенными.
+     */
+    public TimeSeries merge(List<IndexObservation> observations, List<LocalDate[]> covered) {
+        IndexObservation[] sorted = observations.toArray(new IndexObservation[0]);
+        Arrays.sort(sorted, (a, b) -> a.getDate().compareTo(b.getDate()));
+        int capacity = days.length + sorted.length;
+        int[] newDays = new int[capacity];
+        float[] newMean = new float[capacity];
+        float[] newMin = new float[capacity];
+        float[] newMax = new float[capacity];
+        float[] newStdDev = new float[capacity];
+        float[] newValid = new float[capacity];
+
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < days.length || j < sorted.length) {
+            int incomingDay = j < sorted.length ? (int) sorted[j].getDate().toEpochDay() : Integer.MAX_VALUE;
+            if (i < days.length && days[i] < incomingDay) {
+                newDays[n] = days[i];
+                newMean[n] = mean[i];
+                newMin[n] = min[i];
+                newMax[n] = max[i];
+                newStdDev[n] = stdDev[i];
+                newValid[n] = validFraction[i];
+                i++;
+            } else {
+                if (i < days.length && days[i] == incomingDay) {
+                    i++; // Свежее наблюдение за тот же день заменяет старое
+                }
+                IndexObservation o = sorted[j++];
+                if (n > 0 && newDays[n - 1] == incomingDay) {
+                    n--;
+                }
+                newDays[n] = incomingDay;
+                newMean[n] = o.getMean();
+                newMin[n] = o.getMin();
+                newMax[n] = o.getMax();
+                newStdDev[n] = o.getStdDev();
+                newValid[n] = o.getValidFraction();
+            }
+            n++;
+        }
+        return new TimeSeries(Arrays.copyOf(newDays, n), Arrays.copyOf(newMean, n), Arrays.copyOf(newMin, n),
+                Arrays.copyOf(newMax, n), Arrays.copyOf(newStdDev, n), Arrays.copyOf(newValid, n), mergeCoverage(covered));
+    }
+
+    /**
+     * Срез ряда по датам [from, to] включительно.
+     */
+    public TimeSeries slice(LocalDate from, LocalDate to) {
+        int start = lowerBound((int) from.toEpochDay());
+        int end = lowerBound((int) to.toEpochDay() + 1);
+        return new TimeSeries(Arrays.copyOfRange(days, start, end), Arrays.copyOfRange(mean, start, end),
+                Arrays.copyOfRange(min, start, end), Arrays.copyOfRange(max, start, end),
+                Arrays.copyOfRange(stdDev, start, end), Arrays.copyOfRange(validFraction, start, end), coverage);
+    }
+
+    private int lowerBound(int day) {
+        int index = Arrays.binarySearch(days, day);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int[] mergeCoverage(List<LocalDate[]> added) {
+        List<int[]> intervals = new ArrayList<>();
+        for (int i = 0; i < coverage.length; i += 2) {
+            intervals.add(new int[] {coverage[i], coverage[i + 1]});
+        }
+        for (LocalDate[] range : added) {
+            intervals.add(new int[] {(int) range[0].toEpochDay(), (int) range[1].toEpochDay()});
+        }
+        intervals.sort((a, b) -> Integer.compare(a[0], b[0]));
+        int[] merged = new int[intervals.size() * 2];
+        int n = 0;
+        for (int[] interval : intervals) {
+            // Соседние дни тоже склеиваются: [1, 5] + [6, 9] = [1, 9]
+            if (n > 0 && interval[0] <= merged[n - 1] + 1) {
+                merged[n - 1] = Math.max(merged[n - 1], interval[1]);
+            } else {
+                merged[n++] = interval[0];
+                merged[n++] = interval[1];
+            }
+        }
+        return Arrays.copyOf(merged, n);
+    }
+
+    public int size() {
+        return days.length;
+    }
+
+    public LocalDate getDate(int index) {
+        return LocalDate.ofEpochDay(days[index]);
+    }
+
+    public float[] getMean() {
+        return mean;
+    }
+
+    public float[] getMin() {
+        return min;
+    }
+
+    public float[] getMax() {
+        return max;
+    }
+
+    public float[] getStdDev() {
+        return stdDev;
+    }
+
+    public float[] getValidFraction() {
+        return validFraction;
+    }
+}
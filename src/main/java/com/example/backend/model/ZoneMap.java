@@ -0,0 +1,76 @@
+package com.example.backend.model;
+
+/**
+ * Растр зон полигона по окну сетки: номер зоны на пиксель (1..zoneCount, по возрастанию индекса)
+ * или 0 — пиксель вне полигона либо без данных. Строки сверху вниз, как в {@link PixelGrid}.
+ */
+public final class ZoneMap {
+
+    private final int x0;
+    private final int y0;
+    private final int width;
+    private final int height;
+    private final byte[] labels;
+    private final double[] centroids;
+    private final int totalPixels;
+
+    public ZoneMap(int x0, int y0, int width, int height, byte[] labels, double[] centroids, int totalPixels) {
+        if (labels.length != width * height) {
+            throw new IllegalArgumentException("Zone map size mismatch: " + width + "x" + height + " vs " + labels.length);
+        }
+        this.x0 = x0;
+        this.y0 = y0;
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.centroids = centroids;
+        this.totalPixels = totalPixels;
+    }
+
+    /**
+     * Столбец сетки, с которого начинается окно.
+     */
+    public int getX0() {
+        return x0;
+    }
+
+    /**
+     * Строка сетки, с которой начинается окно.
+     */
+    public int getY0() {
+        return y0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Внутренний массив без копирования; меняет его только сглаживание в {@link com.example.backend.util.RasterZoning}.
+     */
+    public byte[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Центры кластеров k-means; центр зоны n — centroids[n - 1].
+     */
+    public double[] getCentroids() {
+        return centroids;
+    }
+
+    public int getZoneCount() {
+        return centroids.length;
+    }
+
+    /**
+     * Пикселей внутри полигона, включая пиксели без данных.
+     */
+    public int getTotalPixels() {
+        return totalPixels;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.backend.entiity.AnalysisJob;
+import com.example.backend.model.JobStatus;
+
+import jakarta.transaction.Transactional;
+
+/**
+ * Смена статуса задания — условными UPDATE, чтобы отмена из API и рабочий поток не затирали изменения друг друга.
+ */
+public interface AnalysisJobRepository extends JpaRepository<AnalysisJob, UUID> {
+
+    List<AnalysisJob> findByStatusOrderByCreatedAtAsc(JobStatus status, Pageable pageable);
+
+    List<AnalysisJob> findByStatus(JobStatus status);
+
+    List<AnalysisJob> findByUser_IdOrderByCreatedAtDesc(Long userId, Pageable pageable);
+
+    long countByUser_IdAndStatusIn(Long userId, Collection<JobStatus> statuses);
+
+    /**
+     * Переводит задание из очереди в работу; 0 — задание уже взято или отменено.
+     */
+    @Modifying
+    @Transactional
+    @Query("update AnalysisJob j set j.status = com.example.backend.model.JobStatus.RUNNING, j.startedAt = :now,"
+            + " j.attempts = j.attempts + 1 where j.id = :id and j.status = com.example.backend.model.JobStatus.QUEUED")
+    int claim(@Param("id") UUID id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("update AnalysisJob j set j.completedSteps = :completed, j.failedSteps = :failed, j.result = :result"
+            + " where j.id = :id")
+    int updateProgress(@Param("id") UUID id, @Param("completed") int completed, @Param("failed") int failed,
+                       @Param("result") String result);
+
+    @Modifying
+    @Transactional
+    @Query("update AnalysisJob j set j.status = :status, j.error = :error, j.finishedAt = :now"
+            + " where j.id = :id and j.status = com.example.backend.model.JobStatus.RUNNING")
+    int finish(@Param("id") UUID id, @Param("status") JobStatus status, @Param("error") String error,
+               @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("update AnalysisJob j set j.status = com.example.backend.model.JobStatus.CANCELLED, j.cancelRequested = true,"
+            + " j.finishedAt = :now where j.id = :id and j.status = com.example.backend.model.JobStatus.QUEUED")
+    int cancelQueued(@Param("id") UUID id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("update AnalysisJob j set j.cancelRequested = true"
+            + " where j.id = :id and j.status = com.example.backend.model.JobStatus.RUNNING")
+    int requestCancel(@Param("id") UUID id);
+
+    /**
+     * Задания, прерванные остановкой сервера: возвращаются в очередь, пока не исчерпаны попытки.
+     */
+    @Modifying
+    @Transactional
+    @Query("update AnalysisJob j set j.status = com.example.backend.model.JobStatus.QUEUED"
+            + " where j.status = com.example.backend.model.JobStatus.RUNNING and j.cancelRequested = false"
+            + " and j.attempts < :maxAttempts")
+    int requeueInterrupted(@Param("maxAttempts") int maxAttempts);
+
+    @Modifying
+    @Transactional
+    @Query("update AnalysisJob j set j.status = case when j.cancelRequested = true"
+            + " then com.example.backend.model.JobStatus.CANCELLED else com.example.backend.model.JobStatus.FAILED end,"
+            + " j.error = :error, j.finishedAt = :now where j.status = com.example.backend.model.JobStatus.RUNNING")
+    int abandonInterrupted(@Param("error") String error, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("delete from AnalysisJob j where j.status in :statuses and j.finishedAt < :before")
+    int deleteFinishedBefore(@Param("statuses") Collection<JobStatus> statuses, @Param("before") LocalDateTime before);
+}
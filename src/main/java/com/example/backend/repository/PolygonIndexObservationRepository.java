@@ -0,0 +1,22 @@
+package com.example.backend.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.backend.entiity.PolygonIndexObservation;
+
+import jakarta.transaction.Transactional;
+
+public interface PolygonIndexObservationRepository extends JpaRepository<PolygonIndexObservation, UUID> {
+
+    List<PolygonIndexObservation> findByPolygonArea_IdAndAnalysisTypeOrderByAcquisitionDate(UUID polygonId, String analysisType);
+
+    List<PolygonIndexObservation> findByPolygonArea_IdAndAnalysisTypeAndAcquisitionDateBetween(
+            UUID polygonId, String analysisType, LocalDate from, LocalDate to);
+
+    @Transactional
+    void deleteByPolygonArea_Id(UUID polygonId);
+}
@@ -0,0 +1,23 @@
+package com.example.backend.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.backend.entiity.PolygonIndexStatistics;
+
+import jakarta.transaction.Transactional;
+
+public interface PolygonIndexStatisticsRepository extends JpaRepository<PolygonIndexStatistics, UUID> {
+
+    Optional<PolygonIndexStatistics> findByPolygonArea_IdAndAnalysisTypeAndDateFromAndDateToAndResolutionMeters(
+            UUID polygonId, String analysisType, LocalDate dateFrom, LocalDate dateTo, double resolutionMeters);
+
+    List<PolygonIndexStatistics> findByPolygonArea_IdOrderByDateFromDesc(UUID polygonId);
+
+    @Transactional
+    void deleteByPolygonArea_Id(UUID polygonId);
+}
@@ -0,0 +1,18 @@
+package com.example.backend.repository;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.backend.entiity.PolygonTimeSeriesCoverage;
+
+import jakarta.transaction.Transactional;
+
+public interface PolygonTimeSeriesCoverageRepository extends JpaRepository<PolygonTimeSeriesCoverage, UUID> {
+
+    List<PolygonTimeSeriesCoverage> findByPolygonArea_IdAndAnalysisType(UUID polygonId, String analysisType);
+
+    @Transactional
+    void deleteByPolygonArea_Id(UUID polygonId);
+}
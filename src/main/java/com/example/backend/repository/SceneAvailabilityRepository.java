@@ -0,0 +1,17 @@
+package com.example.backend.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.backend.entiity.SceneAvailability;
+
+public interface SceneAvailabilityRepository extends JpaRepository<SceneAvailability, UUID> {
+
+    List<SceneAvailability> findByAreaKeyAndAcquisitionDateBetweenOrderByAcquisitionDate(String areaKey, LocalDate from, LocalDate to);
+
+    Optional<SceneAvailability> findByAreaKeyAndAcquisitionDate(String areaKey, LocalDate acquisitionDate);
+}
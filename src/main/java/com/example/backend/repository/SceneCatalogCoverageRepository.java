@@ -0,0 +1,13 @@
+package com.example.backend.repository;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.backend.entiity.SceneCatalogCoverage;
+
+public interface SceneCatalogCoverageRepository extends JpaRepository<SceneCatalogCoverage, UUID> {
+
+    List<SceneCatalogCoverage> findByAreaKey(String areaKey);
+}
@@ -0,0 +1,33 @@
+package com.example.backend.service;
+
+import org.locationtech.jts.geom.Envelope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.PixelGrid;
+
+/**
+ * Выбирает сетку пикселей для анализа полигона по значениям индекса: статистика, временные ряды,
+ * изменения между датами, зоны управления.
+ * <p>
+ * Сетка выровнена по кратным шагу координатам с долготным шагом на широте центра полигона.
+ * Если при заданном шаге сторона растра больше max-side-pixels (ограничение Process API на запрос),
+ * шаг увеличивается в целое число раз.
+ */
+@Component
+public class AnalysisGridPolicy {
+
+    @Value("${sentinelhub.analysis.max-side-pixels:2500}")
+    private int maxSidePixels;
+
+    public PixelGrid gridFor(Envelope envelope, double resolutionMeters) {
+        PixelGrid grid = PixelGrid.aligned(envelope, resolutionMeters, envelope.centre().y);
+        int largest = Math.max(grid.getWidth(), grid.getHeight());
+        if (largest > maxSidePixels) {
+            // +1 пиксель на выравнивание сетки по кратным шагу координатам
+            double scale = Math.ceil((double) (largest + 1) / maxSidePixels);
+            grid = PixelGrid.aligned(envelope, resolutionMeters * scale, envelope.centre().y);
+        }
+        return grid;
+    }
+}
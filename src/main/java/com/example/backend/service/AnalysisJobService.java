@@ -0,0 +1,489 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.example.backend.dto.AnalysisJobDto;
+import com.example.backend.dto.JobRequestDto;
+import com.example.backend.entiity.AnalysisJob;
+import com.example.backend.entiity.User;
+import com.example.backend.exception.JobLimitExceededException;
+import com.example.backend.model.ImageryVersion;
+import com.example.backend.model.JobStatus;
+import com.example.backend.model.JobType;
+import com.example.backend.model.ResolutionMode;
+import com.example.backend.repository.AnalysisJobRepository;
+import com.example.backend.repository.UserRepository;
+import com.example.backend.util.DateUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Фоновые задания анализа: клиент получает ID задания сразу, а статистика за сезон, зоны
+ * или изображения для всего хозяйства считаются в ограниченном пуле workers потоков без таймаутов HTTP.
+ * <p>
+ * Очередь — сами записи analysis_jobs со статусом QUEUED: диспетчер берёт самые старые задания,
+ * пока есть свободные потоки, пропуская пользователей, у которых уже max-running-per-user заданий в работе.
+ * Каждый шаг (полигон) выполняется существующим сервисом, результаты сохраняются раз в progress-interval,
+ * поэтому после перезапуска сервера прерванное задание продолжается с несохранённых полигонов.
+ * Отметки о заданиях в работе хранятся в памяти процесса — рассчитано на один экземпляр сервера.
+ */
+@Service
+@Slf4j
+public class AnalysisJobService {
+
+    private static final Set<JobStatus> ACTIVE = EnumSet.of(JobStatus.QUEUED, JobStatus.RUNNING);
+    private static final Set<JobStatus> FINISHED = EnumSet.of(JobStatus.SUCCEEDED, JobStatus.FAILED, JobStatus.CANCELLED);
+
+    @Value("${jobs.workers:2}")
+    private int workers;
+
+    @Value("${jobs.max-active-per-user:10}")
+    private int maxActivePerUser;
+
+    @Value("${jobs.max-running-per-user:1}")
+    private int maxRunningPerUser;
+
+    @Value("${jobs.max-polygons:500}")
+    private int maxPolygons;
+
+    // Таймаут одного шага; зависший запрос к Sentinel Hub не держит поток задания бесконечно
+    @Value("${jobs.step-timeout:PT10M}")
+    private Duration stepTimeout;
+
+    // Сколько раз задание запускается заново после перезапуска сервера, прежде чем считается неудавшимся
+    @Value("${jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${jobs.retention:P7D}")
+    private Duration retention;
+
+    // Как часто сохранять прогресс и результаты шагов: результат переписывается целиком, поэтому не после каждого
+    // полигона. После перезапуска сервера несохранённые шаги выполняются заново
+    @Value("${jobs.progress-interval:PT5S}")
+    private Duration progressInterval;
+
+    private final AnalysisJobRepository jobRepository;
+    private final UserRepository userRepository;
+    private final PolygonService polygonService;
+    private final PolygonStatisticsService polygonStatisticsService;
+    private final TimeSeriesService timeSeriesService;
+    private final ZoningService zoningService;
+    private final SentinelHubService sentinelHubService;
+    private final OutputResolutionPolicy outputResolutionPolicy;
+    private final NotificationService notificationService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    // Задание в работе -> ID владельца (для лимита заданий в работе на пользователя)
+    private final Map<UUID, Long> running = new ConcurrentHashMap<>();
+    // Текущий шаг задания в работе. Отмена задания только перестаёт его ждать: запросы к Sentinel Hub,
+    // уже начатые шагом, не прерываются и доводятся до конца (их результат остаётся в кэше изображений)
+    private final Map<UUID, CompletableFuture<?>> currentSteps = new ConcurrentHashMap<>();
+    private final Set<UUID> cancelled = ConcurrentHashMap.newKeySet();
+    private ExecutorService executor;
+
+    public AnalysisJobService(AnalysisJobRepository jobRepository, UserRepository userRepository,
+                              PolygonService polygonService, PolygonStatisticsService polygonStatisticsService,
+                              TimeSeriesService timeSeriesService, ZoningService zoningService,
+                              SentinelHubService sentinelHubService, OutputResolutionPolicy outputResolutionPolicy,
+                              NotificationService notificationService, ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry) {
+        this.jobRepository = jobRepository;
+        this.userRepository = userRepository;
+        this.polygonService = polygonService;
+        this.polygonStatisticsService = polygonStatisticsService;
+        this.timeSeriesService = timeSeriesService;
+        this.zoningService = zoningService;
+        this.sentinelHubService = sentinelHubService;
+        this.outputResolutionPolicy = outputResolutionPolicy;
+        this.notificationService = notificationService;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "analysis-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("analysis.jobs.running", running, Map::size).register(meterRegistry);
+        // До первого запуска диспетчера: иначе задание, взятое им, вернулось бы в очередь повторно
+        int requeued = jobRepository.requeueInterrupted(maxAttempts);
+        int abandoned = jobRepository.abandonInterrupted("Задание прервано перезапуском сервера " + maxAttempts + " раз.", LocalDateTime.now());
+        if (requeued > 0 || abandoned > 0) {
+            log.info("Analysis jobs after restart: {} requeued, {} abandoned", requeued, abandoned);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        // Прерванные задания остаются RUNNING и возвращаются в очередь при следующем запуске
+        executor.shutdownNow();
+    }
+
+    /**
+     * Ставит задание в очередь. Доступ к каждому полигону проверяется сразу (SecurityException),
+     * как и параметры вида анализа (IllegalArgumentException).
+     *
+     * @throws JobLimitExceededException Если у пользователя уже max-active-per-user заданий в очереди и в работе.
+     */
+    public AnalysisJobDto submit(JobRequestDto request, User user) {
+        if (request.getType() == null) {
+            throw new IllegalArgumentException("Не указан вид анализа.");
+        }
+        if (request.getPolygonIds() == null || request.getPolygonIds().isEmpty()) {
+            throw new IllegalArgumentException("Не указаны полигоны.");
+        }
+        // Повторы ID дали бы одинаковые шаги
+        List<UUID> polygonIds = List.copyOf(new LinkedHashSet<>(request.getPolygonIds()));
+        if (polygonIds.size() > maxPolygons) {
+            throw new IllegalArgumentException("Слишком много полигонов в задании: " + polygonIds.size() + " (максимум " + maxPolygons + ").");
+        }
+        validate(request);
+        for (UUID polygonId : polygonIds) {
+            polygonService.getPolygonForUser(polygonId, user);
+        }
+        if (jobRepository.countByUser_IdAndStatusIn(user.getId(), ACTIVE) >= maxActivePerUser) {
+            throw new JobLimitExceededException("Уже " + maxActivePerUser + " заданий в очереди и в работе; дождитесь их завершения.");
+        }
+        request.setPolygonIds(polygonIds);
+        AnalysisJob job = jobRepository.save(AnalysisJob.builder()
+                .user(user)
+                .type(request.getType())
+                .status(JobStatus.QUEUED)
+                .parameters(toJson(request))
+                .totalSteps(polygonIds.size())
+                .createdAt(LocalDateTime.now())
+                .build());
+        log.info("Analysis job {} queued: {} for {} polygons, user {}", job.getId(), job.getType(), polygonIds.size(), user.getId());
+        dispatch();
+        return new AnalysisJobDto(job);
+    }
+
+    public AnalysisJobDto getJob(UUID jobId, User user) {
+        return new AnalysisJobDto(loadJob(jobId, user));
+    }
+
+    /**
+     * Последние задания пользователя, новые первыми.
+     */
+    public List<AnalysisJobDto> getJobs(User user, int limit) {
+        return jobRepository.findByUser_IdOrderByCreatedAtDesc(user.getId(), PageRequest.of(0, Math.max(1, Math.min(limit, 100))))
+                .stream()
+                .map(AnalysisJobDto::new)
+                .toList();
+    }
+
+    /**
+     * Результаты шагов завершённого задания (JSON-объект: ID полигона -> результат или {"error": "..."}).
+     *
+     * @throws IllegalStateException Если задание ещё не завершено.
+     */
+    public String getResult(UUID jobId, User user) {
+        AnalysisJob job = loadJob(jobId, user);
+        if (!job.getStatus().isFinished()) {
+            throw new IllegalStateException("Задание ещё не завершено: " + job.getStatus() + ".");
+        }
+        return job.getResult() == null ? "{}" : job.getResult();
+    }
+
+    /**
+     * Задание из очереди отменяется сразу; задание в работе перестаёт ждать текущий шаг (его результат
+     * не сохраняется), результаты уже обработанных полигонов сохраняются. Повторная отмена и отмена завершённого задания ничего не меняют.
+     */
+    public AnalysisJobDto cancel(UUID jobId, User user) {
+        AnalysisJob job = loadJob(jobId, user);
+        if (jobRepository.cancelQueued(jobId, LocalDateTime.now()) > 0) {
+            notifyFinished(jobId);
+        } else if (jobRepository.requestCancel(jobId) > 0) {
+            cancelled.add(jobId);
+            CompletableFuture<?> step = currentSteps.get(jobId);
+            if (step != null) {
+                // Освобождает поток задания; CompletableFuture не прерывает работу, от которой зависит
+                step.cancel(false);
+            }
+        }
+        log.info("Analysis job {} cancellation requested by user {}", jobId, user.getId());
+        return jobRepository.findById(jobId).map(AnalysisJobDto::new).orElseGet(() -> new AnalysisJobDto(job));
+    }
+
+    /**
+     * Запускает задания, оставшиеся в очереди (и возвращённые в неё при старте) с прошлого запуска сервера.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        dispatch();
+    }
+
+    /**
+     * Страховочный опрос очереди: задание запускается и при постановке в очередь, и по завершении другого задания.
+     */
+    @Scheduled(fixedDelayString = "${jobs.poll-interval:PT10S}")
+    public void poll() {
+        dispatch();
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.cleanup-interval:PT1H}")
+    public void cleanup() {
+        int deleted = jobRepository.deleteFinishedBefore(FINISHED, LocalDateTime.now().minus(retention));
+        if (deleted > 0) {
+            log.info("Deleted {} finished analysis jobs older than {}", deleted, retention);
+        }
+    }
+
+    private synchronized void dispatch() {
+        int free = workers - running.size();
+        if (free <= 0) {
+            return;
+        }
+        // Запас на задания пользователей, упёршихся в лимит
+        List<AnalysisJob> queued = jobRepository.findByStatusOrderByCreatedAtAsc(JobStatus.QUEUED, PageRequest.of(0, workers * 10));
+        Map<Long, Integer> perUser = new HashMap<>();
+        running.values().forEach(userId -> perUser.merge(userId, 1, Integer::sum));
+        for (AnalysisJob job : queued) {
+            if (free == 0) {
+                break;
+            }
+            Long userId = job.getUser().getId();
+            if (perUser.getOrDefault(userId, 0) >= maxRunningPerUser) {
+                continue;
+            }
+            if (jobRepository.claim(job.getId(), LocalDateTime.now()) == 0) {
+                continue;
+            }
+            running.put(job.getId(), userId);
+            perUser.merge(userId, 1, Integer::sum);
+            free--;
+            UUID jobId = job.getId();
+            executor.execute(() -> run(jobId));
+        }
+    }
+
+    private void run(UUID jobId) {
+        JobStatus status = JobStatus.FAILED;
+        String error = null;
+        try {
+            AnalysisJob job = jobRepository.findById(jobId)
+                    .orElseThrow(() -> new IllegalStateException("Задание удалено."));
+            User user = userRepository.findById(job.getUser().getId())
+                    .orElseThrow(() -> new IllegalStateException("Пользователь задания удалён."));
+            JobRequestDto request = objectMapper.readValue(job.getParameters(), JobRequestDto.class);
+            ObjectNode results = job.getResult() == null ? objectMapper.createObjectNode()
+                    : (ObjectNode) objectMapper.readTree(job.getResult());
+            int completed = job.getCompletedSteps();
+            int failed = job.getFailedSteps();
+            log.info("Analysis job {} started: {} steps, {} already done, attempt {}", jobId, job.getTotalSteps(), completed, job.getAttempts());
+            long savedAt = System.nanoTime();
+            boolean unsaved = false;
+            for (UUID polygonId : request.getPolygonIds()) {
+                if (cancelled.contains(jobId) || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                String key = polygonId.toString();
+                if (results.has(key)) {
+                    continue;
+                }
+                try {
+                    results.set(key, objectMapper.valueToTree(runStep(jobId, request, polygonId, user)));
+                } catch (InterruptedException e) {
+                    // Остановка сервера: шаг не засчитан и будет выполнен после перезапуска
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (StepFailedException e) {
+                    if (cancelled.contains(jobId)) {
+                        break;
+                    }
+                    failed++;
+                    results.putObject(key).put("error", e.getMessage());
+                    log.warn("Analysis job {} step for polygon {} failed: {}", jobId, polygonId, e.getMessage());
+                }
+                completed++;
+                unsaved = true;
+                if (System.nanoTime() - savedAt >= progressInterval.toNanos()) {
+                    jobRepository.updateProgress(jobId, completed, failed, objectMapper.writeValueAsString(results));
+                    savedAt = System.nanoTime();
+                    unsaved = false;
+                }
+            }
+            if (Thread.currentThread().isInterrupted() && !cancelled.contains(jobId)) {
+                // Шаги после последнего сохранения выполнятся заново после перезапуска
+                log.info("Analysis job {} interrupted by shutdown after {} of {} steps", jobId, completed, job.getTotalSteps());
+                return;
+            }
+            if (unsaved) {
+                jobRepository.updateProgress(jobId, completed, failed, objectMapper.writeValueAsString(results));
+            }
+            if (cancelled.contains(jobId)) {
+                status = JobStatus.CANCELLED;
+            } else if (failed == job.getTotalSteps()) {
+                error = "Ни один полигон не обработан; причины — в результате задания.";
+            } else {
+                status = JobStatus.SUCCEEDED;
+            }
+            log.info("Analysis job {} finished {}: {} of {} steps failed", jobId, status, failed, job.getTotalSteps());
+            jobRepository.finish(jobId, status, error, LocalDateTime.now());
+            notifyFinished(jobId);
+        } catch (Exception e) {
+            log.error("Analysis job {} failed: {}", jobId, e.getMessage(), e);
+            jobRepository.finish(jobId, JobStatus.FAILED, e.getMessage(), LocalDateTime.now());
+            notifyFinished(jobId);
+        } finally {
+            currentSteps.remove(jobId);
+            cancelled.remove(jobId);
+            running.remove(jobId);
+            if (!executor.isShutdown()) {
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Один полигон задания тем же сервисом, что и синхронный эндпоинт.
+     */
+    private Object runStep(UUID jobId, JobRequestDto request, UUID polygonId, User user)
+            throws InterruptedException, StepFailedException {
+        String analysisType = request.getAnalysisType() == null ? "NDVI" : request.getAnalysisType();
+        CompletableFuture<?> step;
+        try {
+            step = switch (request.getType()) {
+                case STATISTICS -> polygonStatisticsService.getStatistics(polygonId, analysisType,
+                        request.getDateFrom(), request.getDateTo(), request.getResolutionMeters(), user);
+                case TIME_SERIES -> timeSeriesService.getTimeSeries(polygonId, analysisType,
+                        request.getDateFrom(), request.getDateTo(), user);
+                case ZONING -> zoningService.delineate(polygonId, analysisType, request.getDate(),
+                        request.getWindowDays(), request.getZones(), request.getResolutionMeters(), user);
+                case IMAGERY -> imageryStep(polygonId, analysisType, request, user);
+            };
+        } catch (RuntimeException e) {
+            // Полигон удалён или передан другому пользователю после постановки в очередь
+            throw new StepFailedException(e.getMessage());
+        }
+        currentSteps.put(jobId, step);
+        try {
+            return step.get(stepTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new StepFailedException(cause.getMessage());
+        } catch (TimeoutException e) {
+            step.cancel(false);
+            throw new StepFailedException("Шаг не завершился за " + stepTimeout + ".");
+        } catch (CancellationException e) {
+            throw new StepFailedException("Отменено.");
+        } finally {
+            currentSteps.remove(jobId);
+        }
+    }
+
+    /**
+     * Шаг IMAGERY: изображение полигона загружается в кэш изображений тем же запросом, что и у GET /process-image
+     * с автоматическим размером. В результат задания попадают только ссылка на этот GET и ETag — сами PNG
+     * остаются в кэше и не раздувают запись задания.
+     */
+    private CompletableFuture<ObjectNode> imageryStep(UUID polygonId, String analysisType, JobRequestDto request, User user) {
+        String geoJson = polygonService.getPolygonForUser(polygonId, user).getGeoJson();
+        int[] size = outputResolutionPolicy.resolve(geoJson, ResolutionMode.AUTO, 0, 0, null);
+        return sentinelHubService.getImageAsync(geoJson, analysisType, request.getDateFrom(), request.getDateTo(),
+                        size[0], size[1], null, null)
+                .thenApply(image -> {
+                    ImageryVersion version = sentinelHubService.getImageVersion(geoJson, analysisType, request.getDateFrom(),
+                            request.getDateTo(), size[0], size[1], null, null, null, Duration.ZERO);
+                    ObjectNode entry = objectMapper.createObjectNode();
+                    entry.put("url", UriComponentsBuilder.fromPath("/api/sentinel/process-image")
+                            .queryParam("polygonId", polygonId)
+                            .queryParam("analysisType", analysisType)
+                            .queryParam("dateFrom", request.getDateFrom())
+                            .queryParam("dateTo", request.getDateTo())
+                            .encode()
+                            .toUriString());
+                    entry.put("etag", version.getEtag());
+                    entry.put("width", size[0]);
+                    entry.put("height", size[1]);
+                    if (image.isStale()) {
+                        // Sentinel Hub был недоступен — в кэше последний снимок, ссылка отдаст его же
+                        entry.put("staleSince", image.getStaleSince().toString());
+                    }
+                    return entry;
+                });
+    }
+
+    // Событие job в SSE-поток владельца: клиенту не нужно опрашивать статус
+    private void notifyFinished(UUID jobId) {
+        jobRepository.findById(jobId).ifPresent(job ->
+                notificationService.send(job.getUser().getId(), NotificationService.JOB, new AnalysisJobDto(job)));
+    }
+
+    private AnalysisJob loadJob(UUID jobId, User user) {
+        AnalysisJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Задание не найдено."));
+        boolean admin = "ADMIN".equals(user.getRole()) || "SUPER_ADMIN".equals(user.getRole());
+        if (!admin && !job.getUser().getId().equals(user.getId())) {
+            throw new SecurityException("У вас нет доступа к заданию " + jobId + ".");
+        }
+        return job;
+    }
+
+    // Проверка параметров до постановки в очередь, чтобы ошибка пришла сразу, а не в каждом шаге
+    private static void validate(JobRequestDto request) {
+        if (request.getType() == JobType.ZONING) {
+            DateUtils.parseDate(request.getDate());
+            return;
+        }
+        LocalDate from = DateUtils.parseDate(request.getDateFrom());
+        LocalDate to = DateUtils.parseDate(request.getDateTo());
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Дата окончания раньше даты начала.");
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сохранить параметры задания: " + e.getMessage(), e);
+        }
+    }
+
+    // Ошибка одного шага: записывается в результат полигона, задание продолжается
+    private static final class StepFailedException extends Exception {
+
+        StepFailedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.backend.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.AnalysisTemplate;
+
+/**
+ * Неизменяемый реестр шаблонов запросов Process API по типам анализа.
+ * Строится один раз при старте; каждый тип доступен под основным именем и под своими псевдонимами
+ * (например, "3_NDVI" и "3_NDVI-L1C" для NDVI).
+ */
+@Component
+public class AnalysisTemplateRegistry {
+
+    private final Map<String, AnalysisTemplate> byAlias = new HashMap<>();
+    private final List<AnalysisTemplate> templates = new ArrayList<>();
+    private final Map<String, AnalysisTemplate> indexByName = new HashMap<>();
+    private final Map<String, String> statisticalByName = new HashMap<>();
+
+    public AnalysisTemplateRegistry() {
+        register("NDVI", List.of("3_NDVI", "3_NDVI-L1C"),
+                // Evalscript для NDVI с цветовой палитрой и явной прозрачностью
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [\"B04\", \"B08\", \"dataMask\"],\n" + // Используем dataMask\n" +
+                       "    output: [\n" +
+                       "      { id: \"default\", bands: 4, sampleType: \"UINT8\" } // RGBA, 8-bit unsigned integer\n" +
+                       "    ]\n" +
+                       "  };\n" +
+                       "}\n" +
+                       "\n" +
+                       "// Плавный градиент NDVI с явным альфа-каналом\n" +
+                       "const ramp = [\n" +
+                       "  [-1.0, [0.0, 0.0, 0.0, 0]], // Полностью прозрачный для значений < -0.5\n" +
+                       "  [-0.5, [0.0, 0.0, 0.0, 0]], // Полностью прозрачный для значений < -0.5\n" +
+                       "  [ 0.0, [0.9, 0.9, 0.9, 0.5]], // Полупрозрачный серый для голой почвы/воды\n" +
+                       "  [ 0.1, [0.8, 0.78,0.51, 1]], // Светло-желтый для редкой растительности\n" +
+                       "  [ 0.2, [0.57,0.75,0.32, 1]],\n" +
+                       "  [ 0.3, [0.44,0.64,0.25, 1]],\n" +
+                       "  [ 0.4, [0.31,0.54,0.18, 1]],\n" +
+                       "  [ 0.5, [0.19,0.43,0.11, 1]],\n" +
+                       "  [ 0.6, [0.06,0.33,0.04, 1]],\n" +
+                       "  [ 1.0, [0.0, 0.27, 0.0, 1]]\n" +
+                       "];\n" +
+                       "const visualizer = new ColorRampVisualizer(ramp);\n" +
+                       "\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  let ndvi = index(samples.B08, samples.B04);\n" +
+                       "  let rgb_with_alpha = visualizer.process(ndvi); // Получаем RGBA от visualizer\n" +
+                       "  \n" +
+                       "  // Финальный альфа-канал: произведение альфа из visualizer и dataMask, масштабированное до 0-255\n" +
+                       "  let finalAlpha = rgb_with_alpha[3] * samples.dataMask * 255;\n" +
+                       "\n" +
+                       "  return {\n" +
+                       "    default: [rgb_with_alpha[0] * 255, rgb_with_alpha[1] * 255, rgb_with_alpha[2] * 255, finalAlpha] // Масштабируем RGB на 255\n" +
+                       "  };\n" +
+                       "}");
+
+        register("TRUE_COLOR", List.of("1_TRUE_COLOR", "1_TRUE-COLOR-L1C"),
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [{ bands: [\"B02\", \"B03\", \"B04\", \"dataMask\"] }],\n" +
+                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
+                       "  };\n" +
+                       "}\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  // Масштабирование для лучшей визуализации (умножаем на 255)\n" +
+                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
+                       "  return [samples.B04 * 255, samples.B03 * 255, samples.B02 * 255, samples.dataMask * 255];\n" +
+                       "}");
+
+        register("FALSE_COLOR", List.of("2_FALSE_COLOR", "2_FALSE-COLOR-L1C"),
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [{ bands: [\"B08\", \"B04\", \"B03\", \"dataMask\"] }],\n" +
+                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
+                       "  };\n" +
+                       "}\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  // Масштабирование для лучшей визуализации (умножаем на 255)\n" +
+                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
+                       "  return [samples.B08 * 255, samples.B04 * 255, samples.B03 * 255, samples.dataMask * 255];\n" +
+                       "}");
+
+        register("FALSE_COLOR_URBAN", List.of("4-FALSE-COLOR-URBAN", "4-FALSE-COLOR-URBAN-L1C"),
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [{ bands: [\"B11\", \"B08\", \"B04\", \"dataMask\"] }],\n" +
+                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
+                       "  };\n" +
+                       "}\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  // Масштабирование для лучшей визуализации (умножаем на 255)\n" +
+                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
+                       "  return [samples.B11 * 255, samples.B08 * 255, samples.B04 * 255, samples.dataMask * 255];\n" +
+                       "}");
+
+        register("MOISTURE_INDEX", List.of("5-MOISTURE-INDEX1", "5-MOISTURE-INDEX1-L1C"),
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [{ bands: [\"B08\", \"B11\", \"dataMask\"] }],\n" +
+                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
+                       "  };\n" +
+                       "}\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  let val = (samples.B08 - samples.B11) / (samples.B08 + samples.B11);\n" +
+                       "  // Цветовая палитра для индекса влажности (пример)\n" +
+                       "  let color = colorBlend(val, [-1, -0.2, 0, 0.2, 0.4, 0.6, 0.8, 1], [\n" +
+                       "    [0, 0, 0, 0], // Прозрачный\n" +
+                       "    [0.9, 0.9, 0.9, 1], // Белый (сухо)\n" +
+                       "    [0.9, 0.7, 0.7, 1], // Розовый\n" +
+                       "    [0.7, 0.5, 0.5, 1], // Светло-красный\n" +
+                       "    [0.5, 0.3, 0.3, 1], // Красный\n" +
+                       "    [0.3, 0.1, 0.1, 1], // Темно-красный\n" +
+                       "    [0.1, 0.0, 0.0, 1], // Очень темно-красный\n" +
+                       "    [0.0, 0.0, 0.0, 1]  // Черный (очень влажно)\n" +
+                       "  ]);\n" +
+                       "  // Умножаем альфа-канал от colorBlend на samples.dataMask для финальной прозрачности\n" +
+                       "  return [color[0] * 255, color[1] * 255, color[2] * 255, color[3] * samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
+                       "}");
+
+        register("NDSI", List.of("8-NDSI", "8-NDSI-L1C"),
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [{ bands: [\"B03\", \"B11\", \"dataMask\"] }],\n" +
+                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
+                       "  };\n" +
+                       "}\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  let val = (samples.B03 - samples.B11) / (samples.B03 + samples.B11);\n" +
+                       "  // Цветовая палитра для NDSI (пример: от снега к отсутствию снега)\n" +
+                       "  let color = colorBlend(val, [-1, 0, 0.2, 0.4, 0.6, 1], [\n" +
+                       "    [0, 0, 0, 0], // Прозрачный\n" +
+                       "    [0.7, 0.7, 0.7, 1], // Серый (вода)\n" +
+                       "    [0.5, 0.8, 0.9, 1], // Голубоватый (не снег)\n" +
+                       "    [0.8, 0.9, 1.0, 1], // Светло-голубой (возможен снег)\n" +
+                       "    [0.9, 0.9, 1.0, 1], // Белый (снег)\n" +
+                       "    [1.0, 1.0, 1.0, 1]  // Ярко-белый (чистый снег)\n" +
+                       "  ]);\n" +
+                       "  // Умножаем альфа-канал от colorBlend на samples.dataMask для финальной прозрачности\n" +
+                       "  return [color[0] * 255, color[1] * 255, color[2] * 255, color[3] * samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
+                       "}");
+
+        register("NDWI", List.of("7-NDWI", "7-NDWI-L1C"),
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [{ bands: [\"B03\", \"B08\", \"dataMask\"] }],\n" +
+                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
+                       "  };\n" +
+                       "}\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  let val = (samples.B03 - samples.B08) / (samples.B03 + samples.B08);\n" +
+                       "  // Цветовая палитра для NDWI (пример: от воды к суше)\n" +
+                       "  let color = colorBlend(val, [-1, -0.2, 0, 0.2, 0.4, 0.6, 1], [\n" +
+                       "    [0, 0, 0, 0], // Прозрачный\n" +
+                       "    [0.9, 0.9, 0.9, 1], // Белый (суша)\n" +
+                       "    [0.7, 0.7, 0.9, 1], // Светло-синий\n" +
+                       "    [0.5, 0.5, 0.9, 1], // Средне-синий\n" +
+                       "    [0.3, 0.3, 0.7, 1], // Темно-синий\n" +
+                       "    [0.1, 0.1, 0.5, 1], // Очень темно-синий\n" +
+                       "    [0.0, 0.0, 0.3, 1]  // Самый темный синий (чистая вода)\n" +
+                       "  ]);\n" +
+                       "  // Умножаем альфа-канал от colorBlend на samples.dataMask для финальной прозрачности\n" +
+                       "  return [color[0] * 255, color[1] * 255, color[2] * 255, color[3] * samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
+                       "}");
+
+        register("SWIR", List.of("6-SWIR", "6-SWIR-L1C"),
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [{ bands: [\"B12\", \"B11\", \"B08\", \"dataMask\"] }],\n" +
+                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
+                       "  };\n" +
+                       "}\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  // Масштабирование для лучшей визуализации (умножаем на 255)\n" +
+                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
+                       "  return [samples.B12 * 255, samples.B11 * 255, samples.B08 * 255, samples.dataMask * 255];\n" +
+                       "}");
+
+        register("SCENE_CLASSIFICATION", List.of("SCENE-CLASSIFICATION"),
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [{ bands: [\"SCL\", \"dataMask\"] }],\n" + // Добавил dataMask в input
+                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
+                       "  };\n" +
+                       "}\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  let scl = samples.SCL;\n" +
+                       "  let color = [0, 0, 0, 0]; // Прозрачный по умолчанию\n" +
+                       "  if (scl === 1) color = [0.65, 0.65, 0.65, 1]; // Saturated / Defective\n" +
+                       "  else if (scl === 2) color = [0.8, 0.8, 0.8, 1]; // Dark Area Pixels\n" +
+                       "  else if (scl === 3) color = [0.9, 0.9, 0.9, 1]; // Cloud Shadows\n" +
+                       "  else if (scl === 4) color = [0.1, 0.5, 0.1, 1]; // Vegetation\n" +
+                       "  else if (scl === 5) color = [0.8, 0.6, 0.2, 1]; // Not-Vegetated\n" +
+                       "  else if (scl === 6) color = [0.1, 0.1, 0.8, 1]; // Water\n" +
+                       "  else if (scl === 7) color = [0.9, 0.9, 0.1, 1]; // Unclassified\n" +
+                       "  else if (scl === 8) color = [0.7, 0.7, 0.7, 1]; // Medium Probability Clouds\n" +
+                       "  else if (scl === 9) color = [0.9, 0.9, 0.9, 1]; // High Probability Clouds\n" +
+                       "  else if (scl === 10) color = [0.9, 0.9, 0.9, 1]; // Cirrus\n" +
+                       "  else if (scl === 11) color = [0.9, 0.9, 0.9, 1]; // Snow / Ice\n" +
+                       "  // Умножаем альфа-канал от SCL на samples.dataMask для финальной прозрачности\n" +
+                       "  return [color[0] * 255, color[1] * 255, color[2] * 255, color[3] * samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
+                       "}");
+
+        register("HIGHLIGHT_OPTIMIZED_NATURAL_COLOR", List.of("2_TONEMAPPED_NATURAL_COLOR", "2_TONEMAPPED-NATURAL-COLOR-L1C"),
+                // Highlight Optimized Natural Color (2_TONEMAPPED_NATURAL_COLOR)
+                // Используем тот же evalscript, что и для True Color,
+                // так как тональная компрессия обычно делается на стороне клиента или
+                // требует более сложного evalscript, который выходит за рамки простого примера.
+                // Для базового представления, это будет выглядеть как Natural Color.
+                "//VERSION=3\n" +
+                       "function setup() {\n" +
+                       "  return {\n" +
+                       "    input: [{ bands: [\"B02\", \"B03\", \"B04\", \"dataMask\"] }],\n" +
+                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
+                       "  };\n" +
+                       "}\n" +
+                       "function evaluatePixel(samples) {\n" +
+                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
+                       "  return [samples.B04 * 255, samples.B03 * 255, samples.B02 * 255, samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
+                       "}");
+
+        // Значения индексов (FLOAT32) для статистики; формулы совпадают с цветными скриптами выше
+        registerIndex("NDVI", "B08", "B04");
+        registerIndex("MOISTURE_INDEX", "B08", "B11");
+        registerIndex("NDSI", "B03", "B11");
+        registerIndex("NDWI", "B03", "B08");
+    }
+
+    /**
+     * Возвращает шаблон для типа анализа (регистр не важен).
+     * @throws IllegalArgumentException если тип не поддерживается.
+     */
+    public AnalysisTemplate get(String analysisType) {
+        AnalysisTemplate template = analysisType == null ? null : byAlias.get(analysisType.trim().toUpperCase(Locale.ROOT));
+        if (template == null) {
+            throw new IllegalArgumentException("Unsupported analysis type: " + analysisType);
+        }
+        return template;
+    }
+
+    /**
+     * Возвращает шаблон, который отдаёт сами значения индекса (FLOAT32 TIFF, NaN вне dataMask).
+     * @throws IllegalArgumentException если тип не является нормализованным индексом.
+     */
+    public AnalysisTemplate getIndex(String analysisType) {
+        AnalysisTemplate template = indexByName.get(get(analysisType).getName());
+        if (template == null) {
+            throw new IllegalArgumentException("Analysis type has no index values: " + analysisType);
+        }
+        return template;
+    }
+
+    /**
+     * Есть ли у типа анализа числовой индекс (и значит, его можно раскрасить локально).
+     */
+    public boolean hasIndex(String analysisType) {
+        AnalysisTemplate template = analysisType == null ? null : byAlias.get(analysisType.trim().toUpperCase(Locale.ROOT));
+        return template != null && indexByName.containsKey(template.getName());
+    }
+
+    /**
+     * Evalscript для Statistical API: значение индекса и dataMask, из которого исключены облака,
+     * тени облаков и снег по классификации сцены (SCL), чтобы они не искажали временной ряд.
+     * @throws IllegalArgumentException если тип не является нормализованным индексом.
+     */
+    public String getStatisticalEvalscript(String analysisType) {
+        return statisticalByName.get(getIndex(analysisType).getName());
+    }
+
+    public List<AnalysisTemplate> getAll() {
+        return Collections.unmodifiableList(templates);
+    }
+
+    private void register(String name, List<String> aliases, String evalscript) {
+        AnalysisTemplate template = new AnalysisTemplate(name, evalscript, List.of("default"));
+        templates.add(template);
+        byAlias.put(name, template);
+        aliases.forEach(alias -> byAlias.put(alias, template));
+    }
+
+    private void registerIndex(String name, String first, String second) {
+        String evalscript = "//VERSION=3\n" +
+                "function setup() {\n" +
+                "  return {\n" +
+                "    input: [\"" + first + "\", \"" + second + "\", \"dataMask\"],\n" +
+                "    output: { bands: 1, sampleType: \"FLOAT32\" }\n" +
+                "  };\n" +
+                "}\n" +
+                "function evaluatePixel(samples) {\n" +
+                "  if (samples.dataMask === 0) return [NaN];\n" +
+                "  return [index(samples." + first + ", samples." + second + ")];\n" +
+                "}";
+        indexByName.put(name, new AnalysisTemplate(name, evalscript, List.of("default"), "image/tiff"));
+
+        // SCL: 3 — тень облака, 8/9 — облака, 10 — перистые облака, 11 — снег
+        statisticalByName.put(name, "//VERSION=3\n" +
+                "function setup() {\n" +
+                "  return {\n" +
+                "    input: [{ bands: [\"" + first + "\", \"" + second + "\", \"SCL\", \"dataMask\"] }],\n" +
+                "    output: [\n" +
+                "      { id: \"default\", bands: 1, sampleType: \"FLOAT32\" },\n" +
+                "      { id: \"dataMask\", bands: 1 }\n" +
+                "    ]\n" +
+                "  };\n" +
+                "}\n" +
+                "const excluded = [3, 8, 9, 10, 11];\n" +
+                "function evaluatePixel(samples) {\n" +
+                "  const clear = excluded.indexOf(samples.SCL) < 0 ? 1 : 0;\n" +
+                "  return {\n" +
+                "    default: [index(samples." + first + ", samples." + second + ")],\n" +
+                "    dataMask: [samples.dataMask * clear]\n" +
+                "  };\n" +
+                "}");
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.backend.service;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.BatchImageryResponseDto;
+import com.example.backend.entiity.PolygonArea;
+import com.example.backend.entiity.User;
+import com.example.backend.model.PixelGrid;
+import com.example.backend.util.GeometryUtils;
+import com.example.backend.util.RasterUtils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Пакетное получение изображений для многих полигонов хозяйства.
+ * <p>
+ * Близко расположенные полигоны объединяются в кластеры с общим bbox; на каждый кластер
+ * уходит один запрос Process API, а растр каждого полигона вырезается и маскируется локально.
+ * Сетка пикселей выровнена по кратным шагу координатам, а долготный шаг считается на середине
+ * широтной полосы полигона (а не кластера), поэтому окно полигона не зависит от соседей и совпадает
+ * с тем, что вернул бы пакетный запрос из одного этого полигона с тем же разрешением.
+ */
+@Service
+@Slf4j
+public class BatchImageryService {
+
+    private static final double DEFAULT_RESOLUTION_METERS = 10.0;
+
+    // Ограничение Process API на сторону выходного изображения
+    @Value("${sentinelhub.batch.max-cluster-pixels:2500}")
+    private int maxClusterPixels;
+
+    // Полигоны дальше этого расстояния друг от друга не объединяются в один запрос
+    @Value("${sentinelhub.batch.max-gap-meters:2000}")
+    private double maxGapMeters;
+
+    @Value("${sentinelhub.batch.max-polygons:500}")
+    private int maxPolygons;
+
+    // Ширина широтной полосы с общим долготным шагом сетки; в кластер объединяются полигоны одной полосы
+    @Value("${sentinelhub.batch.latitude-band-degrees:0.25}")
+    private double latitudeBandDegrees;
+
+    private final PolygonService polygonService;
+    private final SentinelHubService sentinelHubService;
+    private final GeometryUtils geometryUtils;
+    private final Counter polygonCounter;
+    private final Counter upstreamCounter;
+
+    public BatchImageryService(PolygonService polygonService, SentinelHubService sentinelHubService,
+                               GeometryUtils geometryUtils, MeterRegistry meterRegistry) {
+        this.polygonService = polygonService;
+        this.sentinelHubService = sentinelHubService;
+        this.geometryUtils = geometryUtils;
+        this.polygonCounter = Counter.builder("sentinel.imagery.batch.polygons").register(meterRegistry);
+        this.upstreamCounter = Counter.builder("sentinel.imagery.batch.upstream-requests").register(meterRegistry);
+    }
+
+    public CompletableFuture<BatchImageryResponseDto> getProcessedImages(List<UUID> polygonIds, String analysisType,
+                                                                        String dateFrom, String dateTo,
+                                                                        Double resolutionMeters, User user) {
+        if (polygonIds == null || polygonIds.isEmpty()) {
+            throw new IllegalArgumentException("Список полигонов пуст.");
+        }
+        if (polygonIds.size() > maxPolygons) {
+            throw new IllegalArgumentException("Слишком много полигонов в одном запросе (максимум " + maxPolygons + ").");
+        }
+        double resolution = resolutionMeters == null || resolutionMeters <= 0 ? DEFAULT_RESOLUTION_METERS : resolutionMeters;
+
+        List<Item> items = loadItems(polygonIds, user);
+        List<Cluster> clusters = cluster(items, resolution);
+        polygonCounter.increment(items.size());
+        upstreamCounter.increment(clusters.size());
+        log.info("Batch imagery: {} polygons grouped into {} upstream requests", items.size(), clusters.size());
+
+        List<CompletableFuture<Map<UUID, byte[]>>> futures = new ArrayList<>();
+        for (Cluster cluster : clusters) {
+            PixelGrid grid = PixelGrid.aligned(cluster.envelope, resolution, cluster.referenceLatitude);
+            futures.add(sentinelHubService.getProcessedImageAsync(
+                            geometryUtils.envelopeToGeoJson(grid.getEnvelope()), analysisType, dateFrom, dateTo,
+                            grid.getWidth(), grid.getHeight())
+                    .thenApplyAsync(png -> clip(png, grid, cluster.items)));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            Map<UUID, String> images = new LinkedHashMap<>();
+            Map<UUID, byte[]> all = new LinkedHashMap<>();
+            futures.forEach(future -> all.putAll(future.join()));
+            // Сохраняем порядок, в котором клиент перечислил полигоны
+            for (UUID id : polygonIds) {
+                byte[] png = all.get(id);
+                if (png != null) {
+                    images.put(id, Base64.getEncoder().encodeToString(png));
+                }
+            }
+            return new BatchImageryResponseDto(images, clusters.size());
+        });
+    }
+
+    private List<Item> loadItems(List<UUID> polygonIds, User user) {
+        List<Item> items = new ArrayList<>();
+        for (PolygonArea polygon : polygonService.getPolygonsForUser(polygonIds, user)) {
+            Geometry geometry = geometryUtils.fromGeoJson(polygon.getGeoJson());
+            Envelope envelope = geometry.getEnvelopeInternal();
+            items.add(new Item(polygon.getId(), geometry, envelope, referenceLatitude(envelope)));
+        }
+        return items;
+    }
+
+    /**
+     * Середина широтной полосы, в которую попадает центр полигона. Зависит только от самого полигона,
+     * поэтому его сетка одинакова в любом кластере; погрешность долготного шага внутри полосы 0.25°
+     * на широтах Казахстана не превышает 0.3%.
+     */
+    private double referenceLatitude(Envelope envelope) {
+        return (Math.floor(envelope.centre().y / latitudeBandDegrees) + 0.5) * latitudeBandDegrees;
+    }
+
+    /**
+     * Жадная кластеризация: полигон присоединяется к кластеру той же широтной полосы, который растёт меньше всего,
+     * если итоговый bbox не превышает лимит Process API и полигон не дальше maxGapMeters.
+     */
+    private List<Cluster> cluster(List<Item> items, double resolution) {
+        List<Item> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparingDouble(item -> item.envelope.getMinX()));
+        double maxGapDegrees = maxGapMeters / GeometryUtils.METERS_PER_DEGREE;
+
+        List<Cluster> clusters = new ArrayList<>();
+        for (Item item : sorted) {
+            Cluster best = null;
+            double bestGrowth = Double.MAX_VALUE;
+            for (Cluster cluster : clusters) {
+                if (cluster.referenceLatitude != item.referenceLatitude
+                        || cluster.envelope.distance(item.envelope) > maxGapDegrees) {
+                    continue;
+                }
+                Envelope merged = new Envelope(cluster.envelope);
+                merged.expandToInclude(item.envelope);
+                PixelGrid grid = PixelGrid.aligned(merged, resolution, cluster.referenceLatitude);
+                if (grid.getWidth() > maxClusterPixels || grid.getHeight() > maxClusterPixels) {
+                    continue;
+                }
+                double growth = merged.getArea() - cluster.envelope.getArea();
+                if (growth < bestGrowth) {
+                    best = cluster;
+                    bestGrowth = growth;
+                }
+            }
+            if (best == null) {
+                best = new Cluster(new Envelope(item.envelope), item.referenceLatitude);
+                clusters.add(best);
+            } else {
+                best.envelope.expandToInclude(item.envelope);
+            }
+            best.items.add(item);
+        }
+        return clusters;
+    }
+
+    private Map<UUID, byte[]> clip(byte[] png, PixelGrid grid, List<Item> items) {
+        BufferedImage source = RasterUtils.decodePng(png);
+        Map<UUID, byte[]> result = new LinkedHashMap<>();
+        for (Item item : items) {
+            BufferedImage clipped = RasterUtils.cropAndMask(source, grid, grid.window(item.envelope), item.geometry);
+            result.put(item.id, RasterUtils.encodePng(clipped));
+        }
+        return result;
+    }
+
+    private record Item(UUID id, Geometry geometry, Envelope envelope, double referenceLatitude) {
+    }
+
+    private static final class Cluster {
+        private final Envelope envelope;
+        private final double referenceLatitude;
+        private final List<Item> items = new ArrayList<>();
+
+        private Cluster(Envelope envelope, double referenceLatitude) {
+            this.envelope = envelope;
+            this.referenceLatitude = referenceLatitude;
+        }
+    }
+}
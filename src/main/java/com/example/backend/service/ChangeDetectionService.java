@@ -0,0 +1,152 @@
+package com.example.backend.service;
+
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.locationtech.jts.geom.Geometry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.ChangeDetectionDto;
+import com.example.backend.entiity.PolygonArea;
+import com.example.backend.entiity.User;
+import com.example.backend.model.ColorRamp;
+import com.example.backend.model.IndexChange;
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.PixelGrid;
+import com.example.backend.util.DateUtils;
+import com.example.backend.util.GeometryUtils;
+import com.example.backend.util.RasterStatistics;
+import com.example.backend.util.RasterUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Изменение индекса полигона между двумя датами (полегание, град, сбой полива).
+ * <p>
+ * Для каждой даты берётся наименее облачный снимок за windowDays дней, заканчивающихся этой датой.
+ * Растры значений запрашиваются по той же выровненной сетке, что и статистика полигона, поэтому
+ * уже закэшированный растр переиспользуется и у Sentinel Hub запрашивается только недостающий.
+ * Разность и площади считаются локально по массивам float.
+ */
+@Service
+@Slf4j
+public class ChangeDetectionService {
+
+    private static final double DEFAULT_RESOLUTION_METERS = 10.0;
+    private static final double SQUARE_METERS_PER_HECTARE = 10_000.0;
+
+    @Value("${sentinelhub.change.window-days:5}")
+    private int defaultWindowDays;
+
+    @Value("${sentinelhub.change.max-window-days:31}")
+    private int maxWindowDays;
+
+    @Value("${sentinelhub.change.threshold:0.1}")
+    private double defaultThreshold;
+
+    private final PolygonService polygonService;
+    private final SentinelHubService sentinelHubService;
+    private final AnalysisTemplateRegistry templateRegistry;
+    private final PaletteRegistry paletteRegistry;
+    private final GeometryUtils geometryUtils;
+    private final AnalysisGridPolicy analysisGridPolicy;
+
+    public ChangeDetectionService(PolygonService polygonService, SentinelHubService sentinelHubService,
+                                  AnalysisTemplateRegistry templateRegistry, PaletteRegistry paletteRegistry,
+                                  GeometryUtils geometryUtils, AnalysisGridPolicy analysisGridPolicy) {
+        this.polygonService = polygonService;
+        this.sentinelHubService = sentinelHubService;
+        this.templateRegistry = templateRegistry;
+        this.paletteRegistry = paletteRegistry;
+        this.geometryUtils = geometryUtils;
+        this.analysisGridPolicy = analysisGridPolicy;
+    }
+
+    /**
+     * @param analysisType Индекс; null — NDVI.
+     * @param windowDays Длина интервала снимка для каждой даты; null — sentinelhub.change.window-days.
+     * @param threshold Порог изменения по модулю; null — sentinelhub.change.threshold.
+     * @param palette Шкала раскраски разности; null — {@link PaletteRegistry#CHANGE}.
+     */
+    public CompletableFuture<ChangeDetectionDto> detectChange(UUID polygonId, String analysisType, String dateBefore,
+                                                              String dateAfter, Integer windowDays, Double threshold,
+                                                              Double resolutionMeters, String palette, Double opacity,
+                                                              User user) {
+        LocalDate before = DateUtils.parseDate(dateBefore);
+        LocalDate after = DateUtils.parseDate(dateAfter);
+        int window = windowDays == null ? defaultWindowDays : windowDays;
+        if (window < 1 || window > maxWindowDays) {
+            throw new IllegalArgumentException("Интервал снимка должен быть от 1 до " + maxWindowDays + " дней.");
+        }
+        // Интервалы не должны пересекаться, иначе оба снимка могут оказаться одним и тем же
+        if (after.minusDays(window).isBefore(before)) {
+            throw new IllegalArgumentException("Вторая дата должна быть позже первой не меньше чем на " + window + " дн.");
+        }
+        double limit = threshold == null ? defaultThreshold : threshold;
+        // При нулевом пороге неизменившиеся пиксели считались бы выросшими; проверяется уже во float, как в расчёте
+        if (!((float) limit > 0)) {
+            throw new IllegalArgumentException("Порог изменения должен быть положительным.");
+        }
+        String indexName = templateRegistry.getIndex(analysisType == null ? "NDVI" : analysisType).getName();
+        ColorRamp ramp = paletteRegistry.get(palette == null ? PaletteRegistry.CHANGE : palette);
+        ColorRamp colors = opacity != null ? ramp.withOpacity(opacity) : ramp;
+        double resolution = resolutionMeters == null || resolutionMeters <= 0 ? DEFAULT_RESOLUTION_METERS : resolutionMeters;
+        PolygonArea polygon = polygonService.getPolygonForUser(polygonId, user);
+
+        Geometry geometry = geometryUtils.fromGeoJson(polygon.getGeoJson());
+        PixelGrid grid = analysisGridPolicy.gridFor(geometry.getEnvelopeInternal(), resolution);
+        String gridGeoJson = geometryUtils.envelopeToGeoJson(grid.getEnvelope());
+        LocalDate beforeFrom = before.minusDays(window - 1);
+        LocalDate afterFrom = after.minusDays(window - 1);
+        // Оба растра запрашиваются параллельно; закэшированный отдаётся сразу
+        CompletableFuture<IndexRaster> beforeRaster = sentinelHubService.getIndexRasterAsync(gridGeoJson, indexName,
+                beforeFrom.toString(), before.toString(), grid.getWidth(), grid.getHeight());
+        CompletableFuture<IndexRaster> afterRaster = sentinelHubService.getIndexRasterAsync(gridGeoJson, indexName,
+                afterFrom.toString(), after.toString(), grid.getWidth(), grid.getHeight());
+
+        return beforeRaster.thenCombineAsync(afterRaster, (first, second) -> {
+            IndexChange change = RasterStatistics.difference(first, second, grid, geometry, (float) limit);
+            double pixelHectares = pixelAreaSquareMeters(grid) / SQUARE_METERS_PER_HECTARE;
+            log.debug("Change for polygon {} {} {}..{}: {} of {} pixels valid", polygonId, indexName, before, after,
+                    change.getValidPixels(), change.getTotalPixels());
+            return ChangeDetectionDto.builder()
+                    .polygonId(polygonId)
+                    .analysisType(indexName)
+                    .beforeFrom(beforeFrom)
+                    .beforeTo(before)
+                    .afterFrom(afterFrom)
+                    .afterTo(after)
+                    .resolutionMeters(grid.getPixelHeight() * GeometryUtils.METERS_PER_DEGREE)
+                    .threshold(limit)
+                    .totalPixels(change.getTotalPixels())
+                    .validPixels(change.getValidPixels())
+                    .validFraction(change.getTotalPixels() == 0 ? 0.0 : (double) change.getValidPixels() / change.getTotalPixels())
+                    .meanChange(orNull(change.getMean()))
+                    .minChange(orNull(change.getMin()))
+                    .maxChange(orNull(change.getMax()))
+                    .increasedHectares(change.getIncreasedPixels() * pixelHectares)
+                    .decreasedHectares(change.getDecreasedPixels() * pixelHectares)
+                    .changedHectares((change.getIncreasedPixels() + change.getDecreasedPixels()) * pixelHectares)
+                    .validHectares(change.getValidPixels() * pixelHectares)
+                    .palette(ramp.getName())
+                    .image(Base64.getEncoder().encodeToString(
+                            RasterUtils.encodePng(RasterUtils.render(change.getDifference(), colors))))
+                    .build();
+        });
+    }
+
+    // Площадь пикселя на широте центра сетки
+    private static double pixelAreaSquareMeters(PixelGrid grid) {
+        double latitude = grid.getEnvelope().centre().y;
+        double width = grid.getPixelWidth() * GeometryUtils.METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        double height = grid.getPixelHeight() * GeometryUtils.METERS_PER_DEGREE;
+        return width * height;
+    }
+
+    private static Double orNull(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.precision.GeometryPrecisionReducer;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.util.GeometryUtils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Подготовка геометрии полигона перед отправкой в Sentinel Hub.
+ * <p>
+ * Контур упрощается с сохранением топологии (допуск — доля размера выходного пикселя:
+ * вершины мельче пикселя на маску всё равно не влияют), а координаты округляются
+ * до coordinate-decimals знаков (6 знаков — около 0,1 м). Результат кэшируется по геометрии
+ * и ступени допуска, поэтому для сохранённого полигона считается один раз. Охват полигона (от него зависит
+ * ступень) кэшируется по исходной строке, так что при попадании в кэш GeoJSON не разбирается вовсе.
+ */
+@Component
+@Slf4j
+public class GeometryPreparer {
+
+    @Value("${sentinelhub.geometry.simplify:true}")
+    private boolean simplify;
+
+    // Допуск упрощения в долях выходного пикселя
+    @Value("${sentinelhub.geometry.tolerance-pixels:0.5}")
+    private double tolerancePixels;
+
+    @Value("${sentinelhub.geometry.coordinate-decimals:6}")
+    private int coordinateDecimals;
+
+    @Value("${sentinelhub.geometry.max-cached:10000}")
+    private int maxCached;
+
+    private final GeometryUtils geometryUtils;
+    private final DistributionSummary verticesBefore;
+    private final DistributionSummary verticesAfter;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    // sha256(геометрия):ступень допуска -> подготовленный GeoJSON; LRU по доступу
+    private final Map<String, String> prepared = new LinkedHashMap<>(256, 0.75f, true);
+    // sha256(геометрия) -> охват исходного полигона; LRU по доступу
+    private final Map<String, Envelope> envelopes = new LinkedHashMap<>(256, 0.75f, true);
+
+    public GeometryPreparer(GeometryUtils geometryUtils, MeterRegistry meterRegistry) {
+        this.geometryUtils = geometryUtils;
+        this.verticesBefore = DistributionSummary.builder("sentinel.geometry.vertices").tag("stage", "original").register(meterRegistry);
+        this.verticesAfter = DistributionSummary.builder("sentinel.geometry.vertices").tag("stage", "prepared").register(meterRegistry);
+        this.hitCounter = Counter.builder("sentinel.geometry.prepare.cache").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("sentinel.geometry.prepare.cache").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Геометрия для запроса Process API с выходом width x height.
+     *
+     * @return Компактный GeoJSON Polygon/MultiPolygon.
+     */
+    public String prepare(String polygonGeoJson, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Размер изображения должен быть положительным.");
+        }
+        return prepare(polygonGeoJson, envelope -> Math.min(envelope.getWidth() / width, envelope.getHeight() / height));
+    }
+
+    /**
+     * Геометрия для запроса с известным размером пикселя (например, Statistical API).
+     *
+     * @param pixelSizeDegrees Размер пикселя в градусах.
+     */
+    public String prepare(String polygonGeoJson, double pixelSizeDegrees) {
+        return prepare(polygonGeoJson, envelope -> pixelSizeDegrees);
+    }
+
+    /**
+     * Охват исходного полигона в градусах; GeoJSON разбирается только при первом обращении.
+     */
+    public Envelope envelope(String polygonGeoJson) {
+        if (polygonGeoJson == null) {
+            throw new IllegalArgumentException("Не указана геометрия полигона.");
+        }
+        return new Envelope(envelope(sha256(polygonGeoJson), polygonGeoJson, null));
+    }
+
+    private String prepare(String polygonGeoJson, ToDoubleFunction<Envelope> pixelSize) {
+        if (polygonGeoJson == null) {
+            throw new IllegalArgumentException("Не указана геометрия полигона.");
+        }
+        String hash = sha256(polygonGeoJson);
+        Geometry[] parsed = new Geometry[1];
+        double pixel = pixelSize.applyAsDouble(envelope(hash, polygonGeoJson, parsed));
+        // Ступень допуска — степень двойки: близкие размеры изображения разделяют одну запись кэша
+        int step = pixel > 0 && simplify ? Math.getExponent(pixel * tolerancePixels) : Integer.MIN_VALUE;
+        String key = hash + ':' + step;
+        synchronized (prepared) {
+            String cached = prepared.get(key);
+            if (cached != null) {
+                hitCounter.increment();
+                return cached;
+            }
+        }
+        missCounter.increment();
+
+        Geometry geometry = parsed[0] != null ? parsed[0] : geometryUtils.fromGeoJson(polygonGeoJson);
+        Geometry result = geometry;
+        // Самопересекающийся контур не трогаем: округление не гарантирует для него корректный результат
+        if (geometry.isValid()) {
+            if (step != Integer.MIN_VALUE) {
+                result = TopologyPreservingSimplifier.simplify(result, Math.scalb(1.0, step));
+            }
+            result = GeometryPrecisionReducer.reduce(result, new PrecisionModel(Math.pow(10, coordinateDecimals)));
+            if (result.isEmpty() || result.getArea() <= 0) {
+                // Полигон меньше пикселя: упрощение его схлопнуло, отправляем как есть
+                result = geometry;
+            }
+        }
+        String json = geometryUtils.toGeoJson(result);
+        verticesBefore.record(geometry.getNumPoints());
+        verticesAfter.record(result.getNumPoints());
+        if (result.getNumPoints() < geometry.getNumPoints()) {
+            log.debug("Geometry prepared: {} -> {} vertices", geometry.getNumPoints(), result.getNumPoints());
+        }
+
+        synchronized (prepared) {
+            prepared.put(key, json);
+            if (prepared.size() > maxCached) {
+                prepared.remove(prepared.keySet().iterator().next());
+            }
+        }
+        return json;
+    }
+
+    // Разобранная при промахе геометрия возвращается через parsed, чтобы вызывающий не разбирал её второй раз
+    private Envelope envelope(String hash, String polygonGeoJson, Geometry[] parsed) {
+        synchronized (envelopes) {
+            Envelope cached = envelopes.get(hash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Geometry geometry = geometryUtils.fromGeoJson(polygonGeoJson);
+        if (parsed != null) {
+            parsed[0] = geometry;
+        }
+        Envelope envelope = geometry.getEnvelopeInternal();
+        synchronized (envelopes) {
+            envelopes.put(hash, envelope);
+            if (envelopes.size() > maxCached) {
+                envelopes.remove(envelopes.keySet().iterator().next());
+            }
+        }
+        return envelope;
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package com.example.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.ImageryStream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Двухуровневый кэш изображений Sentinel Hub.
+ * <p>
+ * Первый уровень — LRU в куче, ограниченный суммарным размером в байтах.
+ * Второй уровень — файлы на диске (переживают перезапуск), ограниченные общим объёмом;
+ * при переполнении удаляются записи, к которым дольше всего не обращались.
+ * Каждый файл начинается с 8 байт — момента истечения срока (epoch millis),
+ * для неизменяемых снимков это {@link Long#MAX_VALUE}.
+ * <p>
+ * Крупные записи можно отдавать и записывать потоком ({@link #openStream}, {@link #openWriter}), не читая их в кучу.
+ * <p>
+ * Истёкшие файлы не удаляются при чтении, а остаются до вытеснения по объёму: пока Sentinel Hub
+ * недоступен, их можно отдать как устаревший ответ через {@link #getStale}.
+ */
+@Component
+@Slf4j
+public class ImageryCache {
+
+    private static final int HEADER_BYTES = Long.BYTES;
+    private static final String FILE_SUFFIX = ".bin";
+
+    @Value("${sentinelhub.cache.memory.max-bytes:67108864}")
+    private long memoryMaxBytes;
+
+    @Value("${sentinelhub.cache.disk.dir:data/imagery-cache}")
+    private String diskDir;
+
+    @Value("${sentinelhub.cache.disk.max-bytes:1073741824}")
+    private long diskMaxBytes;
+
+    private final LinkedHashMap<String, MemoryEntry> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+
+    private final Map<String, DiskEntry> diskIndex = new ConcurrentHashMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+    // Подмена файлов и вытеснение идут под одной блокировкой: иначе вытеснение по старому снимку индекса
+    // удалило бы файл, который другой поток только что установил
+    private final Object diskLock = new Object();
+    private Path diskPath;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter memoryEvictions;
+    private final Counter diskEvictions;
+
+    public ImageryCache(MeterRegistry meterRegistry) {
+        this.memoryHits = Counter.builder("sentinel.imagery.cache.hits").tag("tier", "memory").register(meterRegistry);
+        this.diskHits = Counter.builder("sentinel.imagery.cache.hits").tag("tier", "disk").register(meterRegistry);
+        this.misses = Counter.builder("sentinel.imagery.cache.misses").register(meterRegistry);
+        this.memoryEvictions = Counter.builder("sentinel.imagery.cache.evictions").tag("tier", "memory").register(meterRegistry);
+        this.diskEvictions = Counter.builder("sentinel.imagery.cache.evictions").tag("tier", "disk").register(meterRegistry);
+        Gauge.builder("sentinel.imagery.cache.size.bytes", this, cache -> cache.memoryBytesSnapshot())
+                .tag("tier", "memory").register(meterRegistry);
+        Gauge.builder("sentinel.imagery.cache.size.bytes", diskBytes, AtomicLong::get)
+                .tag("tier", "disk").register(meterRegistry);
+    }
+
+    @PostConstruct
+    void loadDiskIndex() {
+        diskPath = Paths.get(diskDir).toAbsolutePath();
+        try {
+            Files.createDirectories(diskPath);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(diskPath, "*" + FILE_SUFFIX)) {
+                for (Path file : files) {
+                    String key = file.getFileName().toString();
+                    key = key.substring(0, key.length() - FILE_SUFFIX.length());
+                    long size = Files.size(file);
+                    diskIndex.put(key, new DiskEntry(size, Files.getLastModifiedTime(file).toMillis()));
+                    diskBytes.addAndGet(size);
+                }
+            }
+            log.info("Imagery disk cache at {}: {} entries, {} bytes", diskPath, diskIndex.size(), diskBytes.get());
+            evictDiskIfNeeded();
+        } catch (IOException e) {
+            log.error("Failed to initialise imagery disk cache at {}: {}", diskPath, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ищет запись сначала в памяти, затем на диске. Запись с диска поднимается в память.
+     */
+    public Optional<byte[]> get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            MemoryEntry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    touchDisk(key, now);
+                    memoryHits.increment();
+                    return Optional.of(entry.data);
+                }
+                removeFromMemory(key);
+            }
+        }
+
+        DiskEntry diskEntry = diskIndex.get(key);
+        if (diskEntry != null) {
+            byte[] data = readFromDisk(key, now);
+            if (data != null) {
+                diskEntry.lastAccess = now;
+                diskHits.increment();
+                return Optional.of(data);
+            }
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Открывает свежую запись для потоковой отдачи: из памяти — как есть, с диска — через
+     * {@link FileChannel#transferTo} без чтения файла в кучу. В память запись с диска не поднимается.
+     */
+    public Optional<ImageryStream> openStream(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            MemoryEntry entry = memory.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                touchDisk(key, now);
+                memoryHits.increment();
+                return Optional.of(new MemoryStream(entry.data));
+            }
+        }
+
+        DiskEntry diskEntry = diskIndex.get(key);
+        if (diskEntry != null) {
+            FileChannel channel = null;
+            try {
+                // Открытый канал остаётся читаемым, даже если файл тем временем заменят или вытеснят
+                channel = FileChannel.open(fileFor(key), StandardOpenOption.READ);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                if (channel.read(header, 0) == HEADER_BYTES && header.flip().getLong() > now) {
+                    diskEntry.lastAccess = now;
+                    diskHits.increment();
+                    return Optional.of(new FileStream(channel));
+                }
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to open imagery cache file for key {}: {}", key, e.getMessage());
+                closeQuietly(channel);
+            }
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Начинает потоковую запись на диск. Запись появляется в кэше только после {@link Writer#commit()}
+     * и в память не поднимается (потоком пишутся крупные снимки).
+     *
+     * @param ttl Время жизни записи; {@code null} — хранить бессрочно.
+     */
+    public Writer openWriter(String key, Duration ttl) {
+        long expiresAt = ttl == null ? Long.MAX_VALUE : System.currentTimeMillis() + ttl.toMillis();
+        if (diskPath == null) {
+            return new Writer(key, null, OutputStream.nullOutputStream());
+        }
+        try {
+            Path tmp = Files.createTempFile(diskPath, key, ".tmp");
+            OutputStream out = Files.newOutputStream(tmp);
+            out.write(ByteBuffer.allocate(HEADER_BYTES).putLong(expiresAt).array());
+            return new Writer(key, tmp, out);
+        } catch (IOException e) {
+            log.warn("Failed to start imagery cache file for key {}: {}", key, e.getMessage());
+            return new Writer(key, null, OutputStream.nullOutputStream());
+        }
+    }
+
+    /**
+     * Кладёт запись в оба уровня.
+     *
+     * @param ttl Время жизни записи; {@code null} — хранить бессрочно (неизменяемый снимок).
+     */
+    public void put(String key, byte[] data, Duration ttl) {
+        long expiresAt = ttl == null ? Long.MAX_VALUE : System.currentTimeMillis() + ttl.toMillis();
+        putInMemory(key, data, expiresAt);
+        writeToDisk(key, data, expiresAt);
+    }
+
+    /**
+     * Запись независимо от срока годности — для ответа, когда Sentinel Hub недоступен.
+     * В память не поднимается.
+     */
+    public Optional<byte[]> getStale(String key) {
+        synchronized (memory) {
+            MemoryEntry entry = memory.get(key);
+            if (entry != null) {
+                return Optional.of(entry.data);
+            }
+        }
+        if (!diskIndex.containsKey(key)) {
+            return Optional.empty();
+        }
+        try (InputStream in = Files.newInputStream(fileFor(key))) {
+            in.skipNBytes(HEADER_BYTES);
+            return Optional.of(in.readAllBytes());
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    public boolean contains(String key) {
+        return expiresAt(key).orElse(0L) > System.currentTimeMillis();
+    }
+
+    /**
+     * Момент истечения записи (epoch millis; {@link Long#MAX_VALUE} — бессрочно) без чтения её содержимого.
+     * Для истёкшей записи возвращается прошедший момент.
+     */
+    public OptionalLong expiresAt(String key) {
+        synchronized (memory) {
+            MemoryEntry entry = memory.get(key);
+            if (entry != null) {
+                return OptionalLong.of(entry.expiresAt);
+            }
+        }
+        return diskIndex.containsKey(key) ? OptionalLong.of(readExpiry(key)) : OptionalLong.empty();
+    }
+
+    private void putInMemory(String key, byte[] data, long expiresAt) {
+        // Слишком крупные записи не вытесняют из памяти всё остальное — они живут только на диске
+        if (data.length > memoryMaxBytes / 8) {
+            return;
+        }
+        synchronized (memory) {
+            MemoryEntry previous = memory.put(key, new MemoryEntry(data, expiresAt));
+            if (previous != null) {
+                memoryBytes -= previous.data.length;
+            }
+            memoryBytes += data.length;
+            Iterator<Map.Entry<String, MemoryEntry>> it = memory.entrySet().iterator();
+            while (memoryBytes > memoryMaxBytes && it.hasNext()) {
+                Map.Entry<String, MemoryEntry> eldest = it.next();
+                memoryBytes -= eldest.getValue().data.length;
+                it.remove();
+                memoryEvictions.increment();
+            }
+        }
+    }
+
+    // Горячие записи отдаются из памяти, но для вытеснения с диска тоже должны считаться недавно использованными
+    private void touchDisk(String key, long now) {
+        DiskEntry diskEntry = diskIndex.get(key);
+        if (diskEntry != null) {
+            diskEntry.lastAccess = now;
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        MemoryEntry removed = memory.remove(key);
+        if (removed != null) {
+            memoryBytes -= removed.data.length;
+        }
+    }
+
+    private byte[] readFromDisk(String key, long now) {
+        Path file = fileFor(key);
+        try (InputStream in = Files.newInputStream(file)) {
+            long expiresAt = ByteBuffer.wrap(in.readNBytes(HEADER_BYTES)).getLong();
+            if (expiresAt <= now) {
+                // Файл остаётся как устаревшая копия до вытеснения по объёму
+                return null;
+            }
+            byte[] data = in.readAllBytes();
+            putInMemory(key, data, expiresAt);
+            return data;
+        } catch (IOException e) {
+            log.warn("Failed to read imagery cache file {}: {}", file, e.getMessage());
+            removeFromDisk(key);
+            return null;
+        }
+    }
+
+    private long readExpiry(String key) {
+        try (InputStream in = Files.newInputStream(fileFor(key))) {
+            return ByteBuffer.wrap(in.readNBytes(HEADER_BYTES)).getLong();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private void writeToDisk(String key, byte[] data, long expiresAt) {
+        if (diskPath == null) {
+            return;
+        }
+        Path target = fileFor(key);
+        try {
+            Path tmp = Files.createTempFile(diskPath, key, ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                out.write(ByteBuffer.allocate(HEADER_BYTES).putLong(expiresAt).array());
+                out.write(data);
+            }
+            install(key, tmp, (long) HEADER_BYTES + data.length);
+        } catch (IOException e) {
+            log.warn("Failed to write imagery cache file {}: {}", target, e.getMessage());
+        }
+    }
+
+    // Атомарно подменяет файл записи полностью записанным временным файлом
+    private void install(String key, Path tmp, long size) throws IOException {
+        synchronized (diskLock) {
+            Files.move(tmp, fileFor(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            DiskEntry previous = diskIndex.put(key, new DiskEntry(size, System.currentTimeMillis()));
+            diskBytes.addAndGet(previous == null ? size : size - previous.size);
+            evictDiskIfNeeded();
+        }
+    }
+
+    private void evictDiskIfNeeded() {
+        synchronized (diskLock) {
+            if (diskBytes.get() <= diskMaxBytes) {
+                return;
+            }
+            // Время доступа снимается заранее: попадания в других потоках меняют его прямо во время сортировки
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(diskIndex.size());
+            diskIndex.forEach((key, entry) -> entries.add(Map.entry(key, entry.lastAccess)));
+            entries.sort(Map.Entry.comparingByValue());
+            for (Map.Entry<String, Long> entry : entries) {
+                if (diskBytes.get() <= diskMaxBytes) {
+                    break;
+                }
+                removeFromDisk(entry.getKey());
+                diskEvictions.increment();
+            }
+        }
+    }
+
+    private void removeFromDisk(String key) {
+        synchronized (diskLock) {
+            DiskEntry removed = diskIndex.remove(key);
+            if (removed != null) {
+                diskBytes.addAndGet(-removed.size);
+            }
+            try {
+                Files.deleteIfExists(fileFor(key));
+            } catch (IOException e) {
+                log.warn("Failed to delete imagery cache file for key {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    private Path fileFor(String key) {
+        return diskPath.resolve(key + FILE_SUFFIX);
+    }
+
+    private long memoryBytesSnapshot() {
+        synchronized (memory) {
+            return memoryBytes;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Канал только для чтения — терять нечего
+            }
+        }
+    }
+
+    /**
+     * Потоковая запись в дисковый кэш, см. {@link #openWriter}.
+     * Если диск недоступен, данные отбрасываются, а {@link #commit()} ничего не делает.
+     */
+    public final class Writer {
+
+        private final String key;
+        private final Path tmp;
+        private final OutputStream out;
+        private long size = HEADER_BYTES;
+
+        private Writer(String key, Path tmp, OutputStream out) {
+            this.key = key;
+            this.tmp = tmp;
+            this.out = out;
+        }
+
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            size += length;
+        }
+
+        public void commit() {
+            if (tmp == null) {
+                return;
+            }
+            try {
+                out.close();
+                install(key, tmp, size);
+            } catch (IOException e) {
+                log.warn("Failed to write imagery cache file for key {}: {}", key, e.getMessage());
+                abort();
+            }
+        }
+
+        public void abort() {
+            if (tmp == null) {
+                return;
+            }
+            try {
+                out.close();
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                log.warn("Failed to delete imagery cache temp file {}: {}", tmp, e.getMessage());
+            }
+        }
+    }
+
+    private record MemoryStream(byte[] data) implements ImageryStream {
+
+        @Override
+        public long getContentLength() {
+            return data.length;
+        }
+
+        @Override
+        public void transferTo(OutputStream out) throws IOException {
+            out.write(data);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private record FileStream(FileChannel channel) implements ImageryStream {
+
+        @Override
+        public long getContentLength() {
+            try {
+                return channel.size() - HEADER_BYTES;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public void transferTo(OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = HEADER_BYTES;
+            long end = channel.size();
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(channel);
+        }
+    }
+
+    private record MemoryEntry(byte[] data, long expiresAt) {
+    }
+
+    private static final class DiskEntry {
+        private final long size;
+        private volatile long lastAccess;
+
+        private DiskEntry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.PolygonNotificationDto;
+import com.example.backend.entiity.PolygonArea;
+import com.example.backend.model.ResolutionMode;
+import com.example.backend.repository.PolygonAreaRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ночной прогрев кэша снимков: для каждого сохранённого полигона заранее запрашиваются
+ * свежие снимки (по умолчанию NDVI и TRUE_COLOR за последние window-days дней), чтобы утренние
+ * просмотры обслуживались из кэша.
+ * <p>
+ * Полигоны читаются страницами, параллельно выполняется не больше parallelism запросов,
+ * а суммарная оценка processing units за прогон ограничена бюджетом.
+ */
+@Service
+@Slf4j
+public class ImageryPrewarmService {
+
+    // Process API: 1 PU за 512x512 пикселей и до трёх входных каналов; FLOAT32-выход стоит вдвое дороже
+    private static final double PIXELS_PER_PROCESSING_UNIT = 512.0 * 512.0;
+    private static final double MIN_PROCESSING_UNITS = 0.005;
+
+    @Value("${sentinelhub.prewarm.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sentinelhub.prewarm.analysis-types:NDVI,TRUE_COLOR}")
+    private List<String> analysisTypes;
+
+    // Параметры должны совпадать с тем, что запрашивает клиент, иначе ключи кэша не совпадут;
+    // в режиме AUTO размер считается так же, как для клиента, width/height нужны только для FIXED
+    @Value("${sentinelhub.prewarm.window-days:30}")
+    private int windowDays;
+
+    @Value("${sentinelhub.prewarm.resolution-mode:AUTO}")
+    private ResolutionMode resolutionMode;
+
+    @Value("${sentinelhub.prewarm.width:512}")
+    private int width;
+
+    @Value("${sentinelhub.prewarm.height:512}")
+    private int height;
+
+    @Value("${sentinelhub.prewarm.page-size:100}")
+    private int pageSize;
+
+    @Value("${sentinelhub.prewarm.parallelism:4}")
+    private int parallelism;
+
+    @Value("${sentinelhub.prewarm.processing-unit-budget:500}")
+    private double processingUnitBudget;
+
+    // Прогретая запись за текущий интервал должна дожить до утра (обычный mutable-ttl — минуты)
+    @Value("${sentinelhub.prewarm.ttl:PT12H}")
+    private Duration prewarmTtl;
+
+    private final PolygonAreaRepository polygonAreaRepository;
+    private final SentinelHubService sentinelHubService;
+    private final AnalysisTemplateRegistry templateRegistry;
+    private final OutputResolutionPolicy outputResolutionPolicy;
+    private final NotificationService notificationService;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter fetchedCounter;
+    private final Counter skippedCounter;
+    private final Counter failedCounter;
+
+    public ImageryPrewarmService(PolygonAreaRepository polygonAreaRepository, SentinelHubService sentinelHubService,
+                                 AnalysisTemplateRegistry templateRegistry, OutputResolutionPolicy outputResolutionPolicy,
+                                 NotificationService notificationService, MeterRegistry meterRegistry) {
+        this.polygonAreaRepository = polygonAreaRepository;
+        this.sentinelHubService = sentinelHubService;
+        this.templateRegistry = templateRegistry;
+        this.outputResolutionPolicy = outputResolutionPolicy;
+        this.notificationService = notificationService;
+        this.fetchedCounter = Counter.builder("sentinel.prewarm.requests").tag("result", "fetched").register(meterRegistry);
+        this.skippedCounter = Counter.builder("sentinel.prewarm.requests").tag("result", "skipped").register(meterRegistry);
+        this.failedCounter = Counter.builder("sentinel.prewarm.requests").tag("result", "failed").register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${sentinelhub.prewarm.cron:0 0 4 * * *}", zone = "${sentinelhub.prewarm.zone:UTC}")
+    public void prewarm() {
+        if (!enabled) {
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Imagery pre-warm is still running, skipping this trigger");
+            return;
+        }
+        try {
+            run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Imagery pre-warm interrupted");
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void run() throws InterruptedException {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        String dateFrom = today.minusDays(windowDays).toString();
+        String dateTo = today.toString();
+        Semaphore permits = new Semaphore(parallelism);
+        double spent = 0;
+        int polygons = 0;
+        long started = System.currentTimeMillis();
+        log.info("Imagery pre-warm started: types {}, {}..{}, {} resolution, budget {} PU", analysisTypes, dateFrom, dateTo, resolutionMode, processingUnitBudget);
+
+        Page<PolygonArea> page = polygonAreaRepository.findAll(PageRequest.of(0, pageSize, Sort.by("id")));
+        pages:
+        while (true) {
+            for (PolygonArea polygon : page.getContent()) {
+                polygons++;
+                int[] size;
+                try {
+                    size = outputResolutionPolicy.resolve(polygon.getGeoJson(), resolutionMode, width, height, null);
+                } catch (RuntimeException e) {
+                    failedCounter.increment();
+                    log.warn("Pre-warm skipped polygon {}: {}", polygon.getId(), e.getMessage());
+                    continue;
+                }
+                for (String analysisType : analysisTypes) {
+                    double cost = estimateProcessingUnits(analysisType, size);
+                    if (spent + cost > processingUnitBudget) {
+                        log.warn("Imagery pre-warm stopped after {} polygons: processing-unit budget {} exhausted", polygons, processingUnitBudget);
+                        break pages;
+                    }
+                    permits.acquire();
+                    try {
+                        CompletableFuture<Boolean> result = sentinelHubService.prewarmAsync(
+                                polygon.getGeoJson(), analysisType, dateFrom, dateTo, size[0], size[1], prewarmTtl);
+                        // Свежая запись в кэше обнаруживается сразу и бюджет не расходует
+                        boolean cached = result.isDone() && !result.isCompletedExceptionally() && !result.join();
+                        if (!cached) {
+                            spent += cost;
+                        }
+                        result.whenComplete((fetched, error) -> {
+                            permits.release();
+                            if (error != null) {
+                                failedCounter.increment();
+                                log.warn("Pre-warm of {} for polygon {} failed: {}", analysisType, polygon.getId(), error.getMessage());
+                            } else if (fetched) {
+                                fetchedCounter.increment();
+                                notificationService.send(polygon.getUser().getId(), NotificationService.IMAGERY,
+                                        PolygonNotificationDto.builder()
+                                                .polygonId(polygon.getId())
+                                                .analysisType(analysisType)
+                                                .dateFrom(dateFrom)
+                                                .dateTo(dateTo)
+                                                .build());
+                            } else {
+                                skippedCounter.increment();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        permits.release();
+                        failedCounter.increment();
+                        log.warn("Pre-warm of {} for polygon {} failed: {}", analysisType, polygon.getId(), e.getMessage());
+                    }
+                }
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            page = polygonAreaRepository.findAll(page.nextPageable());
+        }
+
+        // Дожидаемся запросов, которые ещё в работе
+        permits.acquire(parallelism);
+        permits.release(parallelism);
+        log.info("Imagery pre-warm finished: {} polygons in {} s, up to {} PU",
+                polygons, (System.currentTimeMillis() - started) / 1000, String.format("%.1f", spent));
+    }
+
+    private double estimateProcessingUnits(String analysisType, int[] size) {
+        double units = Math.max(MIN_PROCESSING_UNITS, (double) size[0] * size[1] / PIXELS_PER_PROCESSING_UNIT);
+        // Индексы при локальной раскраске запрашиваются как FLOAT32
+        return templateRegistry.hasIndex(analysisType) ? units * 2 : units;
+    }
+}
@@ -0,0 +1,357 @@
+package com.example.backend.service;
+
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.JWT.JwtService;
+import com.example.backend.dto.AccessTokenDto;
+import com.example.backend.entiity.PolygonArea;
+import com.example.backend.entiity.User;
+import com.example.backend.model.ColorRamp;
+import com.example.backend.model.ImageryVersion;
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.MapTile;
+import com.example.backend.repository.PolygonAreaRepository;
+import com.example.backend.util.DateUtils;
+import com.example.backend.util.GeometryUtils;
+import com.example.backend.util.RasterUtils;
+import com.example.backend.util.SingleFlight;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Тайлы XYZ с раскрашенным индексом (NDVI, NDWI, ...), замаскированные по полигонам пользователя.
+ * <p>
+ * Пирамида строится снизу вверх. На базовом масштабе (по умолчанию 14 — около 10 м на пиксель, родное
+ * разрешение Sentinel-2) растр индекса тайла берётся из {@link ImageryCache} или одним запросом Process API,
+ * пересчитывается в строки Web Mercator и маскируется. Тайлы мельче базового собираются уменьшением
+ * четырёх дочерних, без новых запросов к Sentinel Hub; обходятся только тайлы, пересекающие полигоны.
+ * Тайлы крупнее базового вырезаются из растра базового тайла. Растры пирамиды хранятся в кэше
+ * по маске пользователя, палитра применяется при каждом запросе.
+ */
+@Service
+@Slf4j
+public class MapTileService {
+
+    @Value("${sentinelhub.tiles.base-zoom:14}")
+    private int baseZoom;
+
+    @Value("${sentinelhub.tiles.min-zoom:11}")
+    private int minZoom;
+
+    @Value("${sentinelhub.tiles.max-zoom:18}")
+    private int maxZoom;
+
+    // Срок кэширования тайла у клиента: маска меняется вместе с полигонами, поэтому не бессрочно
+    @Value("${sentinelhub.tiles.max-age:PT1H}")
+    private Duration maxAge;
+
+    // Сколько маска из полигонов пользователя используется без повторного чтения из базы
+    @Value("${sentinelhub.tiles.mask-ttl:PT30S}")
+    private Duration maskTtl;
+
+    @Value("${sentinelhub.tiles.max-cached-masks:1000}")
+    private int maxCachedMasks;
+
+    // Срок токена тайлов в URL; карта запрашивает новый, когда тайлы начинают отвечать 401/403
+    @Value("${sentinelhub.tiles.token-ttl:PT15M}")
+    private Duration tokenTtl;
+
+    @Value("${sentinelhub.cache.mutable-ttl:PT15M}")
+    private Duration mutableTtl;
+
+    // Интервал, закончившийся в последние settle-days дней, ещё может измениться от поздно загруженных сцен
+    @Value("${sentinelhub.timeseries.settle-days:3}")
+    private int settleDays;
+
+    private final PolygonAreaRepository polygonAreaRepository;
+    private final SentinelHubService sentinelHubService;
+    private final AnalysisTemplateRegistry templateRegistry;
+    private final ImageryCache imageryCache;
+    private final GeometryUtils geometryUtils;
+    private final JwtService jwtService;
+    private final SingleFlight<String, IndexRaster> pyramidSingleFlight;
+    private final Counter pyramidHits;
+    private final Counter pyramidBuilds;
+    private final Counter emptyTiles;
+    private final byte[] emptyTile;
+
+    // ID пользователя -> объединение его полигонов; LRU по доступу
+    private final Map<Long, TileMask> masks = new LinkedHashMap<>(64, 0.75f, true);
+
+    public MapTileService(PolygonAreaRepository polygonAreaRepository, SentinelHubService sentinelHubService,
+                          AnalysisTemplateRegistry templateRegistry, ImageryCache imageryCache,
+                          GeometryUtils geometryUtils, JwtService jwtService, MeterRegistry meterRegistry) {
+        this.polygonAreaRepository = polygonAreaRepository;
+        this.sentinelHubService = sentinelHubService;
+        this.templateRegistry = templateRegistry;
+        this.imageryCache = imageryCache;
+        this.geometryUtils = geometryUtils;
+        this.jwtService = jwtService;
+        this.pyramidSingleFlight = new SingleFlight<>(meterRegistry, "sentinel.tiles.singleflight");
+        this.pyramidHits = Counter.builder("sentinel.tiles.pyramid").tag("result", "hit").register(meterRegistry);
+        this.pyramidBuilds = Counter.builder("sentinel.tiles.pyramid").tag("result", "built").register(meterRegistry);
+        this.emptyTiles = Counter.builder("sentinel.tiles.empty").register(meterRegistry);
+        this.emptyTile = RasterUtils.encodePng(new BufferedImage(MapTile.SIZE, MapTile.SIZE, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    /**
+     * PNG тайла z/x/y: индекс за [dateFrom, dateTo] внутри полигонов пользователя, вне их — прозрачно.
+     *
+     * @param analysisType Индекс: NDVI, NDWI, MOISTURE_INDEX или NDSI.
+     * @param palette Имя шкалы из {@link PaletteRegistry}; null — шкала по умолчанию для индекса.
+     * @param opacity Прозрачность 0..1; null — без изменений.
+     */
+    public CompletableFuture<byte[]> getTileAsync(String analysisType, int z, int x, int y, String dateFrom, String dateTo,
+                                                  String palette, Double opacity, User user) {
+        TileRequest request = resolve(analysisType, z, dateFrom, dateTo, user);
+        MapTile tile = new MapTile(z, x, y);
+        ColorRamp ramp = sentinelHubService.rampFor(request.indexName(), palette, opacity);
+        CompletableFuture<IndexRaster> raster = z > baseZoom ? overzoomRaster(request, tile) : pyramidRaster(request, tile);
+        return raster.thenApply(values -> {
+            if (values == null) {
+                emptyTiles.increment();
+                return emptyTile;
+            }
+            return RasterUtils.encodePng(RasterUtils.render(values, ramp));
+        });
+    }
+
+    /**
+     * Токен для параметра access_token в URL тайлов: загрузчики тайлов карт (&lt;img&gt;) не передают заголовок
+     * Authorization. Токен действует только на адресах тайлов.
+     */
+    public AccessTokenDto issueTileToken(User user) {
+        if (user == null) {
+            throw new SecurityException("Тайлы доступны только после входа в систему.");
+        }
+        Instant expiresAt = Instant.now().plus(tokenTtl);
+        return new AccessTokenDto(jwtService.generateScopedToken(user, JwtService.SCOPE_TILES, tokenTtl.toMillis()), expiresAt);
+    }
+
+    /**
+     * Версия тайла для ETag и Cache-Control. ETag есть только у интервалов, закончившихся раньше settle-days дней
+     * назад: тогда тайл определяется запросом, палитрой и маской. Срок кэширования ограничен max-age, чтобы изменения
+     * полигонов доходили до карты.
+     */
+    public ImageryVersion getTileVersion(String analysisType, int z, int x, int y, String dateFrom, String dateTo,
+                                         String palette, Double opacity, User user) {
+        TileRequest request = resolve(analysisType, z, dateFrom, dateTo, user);
+        MapTile tile = new MapTile(z, x, y);
+        if (request.ttl() != null) {
+            return new ImageryVersion(null, false, mutableTtl.compareTo(maxAge) < 0 ? mutableTtl : maxAge);
+        }
+        ColorRamp ramp = sentinelHubService.rampFor(request.indexName(), palette, opacity);
+        String tag = sha256(request.pyramidKey(tile) + '|' + ramp.getName() + '|' + opacity).substring(0, 32);
+        return new ImageryVersion('"' + tag + '"', false, maxAge);
+    }
+
+    private TileRequest resolve(String analysisType, int z, String dateFrom, String dateTo, User user) {
+        if (user == null) {
+            throw new SecurityException("Тайлы доступны только после входа в систему.");
+        }
+        if (z < minZoom || z > maxZoom) {
+            throw new IllegalArgumentException("Масштаб тайла должен быть от " + minZoom + " до " + maxZoom + ".");
+        }
+        LocalDate from = DateUtils.parseDate(dateFrom);
+        LocalDate to = DateUtils.parseDate(dateTo);
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Дата окончания раньше даты начала.");
+        }
+        String indexName = templateRegistry.getIndex(analysisType).getName();
+        // Давно прошедший интервал не изменится — растры пирамиды храним бессрочно
+        Duration ttl = to.isBefore(LocalDate.now(ZoneOffset.UTC).minusDays(settleDays)) ? null : mutableTtl;
+        return new TileRequest(indexName, from.toString(), to.toString(), maskFor(user), ttl);
+    }
+
+    /**
+     * Замаскированный растр тайла пирамиды (масштаб не больше базового); null — тайл не пересекает полигоны.
+     */
+    private CompletableFuture<IndexRaster> pyramidRaster(TileRequest request, MapTile tile) {
+        if (!request.mask().intersects(tile.getEnvelope())) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String key = request.pyramidKey(tile);
+        Optional<byte[]> cached = imageryCache.get(key);
+        if (cached.isPresent()) {
+            pyramidHits.increment();
+            return CompletableFuture.completedFuture(IndexRaster.fromBytes(cached.get()));
+        }
+        // Соседние тайлы карты запрашиваются одновременно и делят общих потомков
+        return pyramidSingleFlight.executeAsync(key, () -> buildPyramidRaster(request, tile).thenApply(raster -> {
+            imageryCache.put(key, raster.toBytes(), request.ttl());
+            pyramidBuilds.increment();
+            return raster;
+        }));
+    }
+
+    private CompletableFuture<IndexRaster> buildPyramidRaster(TileRequest request, MapTile tile) {
+        if (tile.getZ() == baseZoom) {
+            return baseRaster(request, tile)
+                    .thenApplyAsync(raster -> sample(raster, tile.getEnvelope(), tile, request.mask()));
+        }
+        List<CompletableFuture<IndexRaster>> children = List.of(
+                pyramidRaster(request, tile.child(0, 0)),
+                pyramidRaster(request, tile.child(1, 0)),
+                pyramidRaster(request, tile.child(0, 1)),
+                pyramidRaster(request, tile.child(1, 1)));
+        return CompletableFuture.allOf(children.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(ignored -> RasterUtils.downsampleQuadrants(children.get(0).join(), children.get(1).join(),
+                        children.get(2).join(), children.get(3).join(), MapTile.SIZE));
+    }
+
+    /**
+     * Тайл крупнее базового: ближайшие значения из растра базового тайла, маска — по пикселям самого тайла.
+     * Не кэшируется — это только выборка из уже закэшированного растра.
+     */
+    private CompletableFuture<IndexRaster> overzoomRaster(TileRequest request, MapTile tile) {
+        if (!request.mask().intersects(tile.getEnvelope())) {
+            return CompletableFuture.completedFuture(null);
+        }
+        MapTile base = tile.ancestor(baseZoom);
+        return baseRaster(request, base)
+                .thenApplyAsync(raster -> sample(raster, base.getEnvelope(), tile, request.mask()));
+    }
+
+    /**
+     * Растр индекса базового тайла в EPSG:4326 без маски — общий для всех пользователей.
+     */
+    private CompletableFuture<IndexRaster> baseRaster(TileRequest request, MapTile tile) {
+        return sentinelHubService.getIndexRasterAsync(geometryUtils.envelopeToGeoJson(tile.getEnvelope()),
+                request.indexName(), request.dateFrom(), request.dateTo(), MapTile.SIZE, MapTile.SIZE);
+    }
+
+    /**
+     * Переводит растр с равным шагом по широте (так его возвращает Process API) в пиксели тайла Web Mercator:
+     * значение берётся из ближайшего пикселя, пиксели с центром вне маски становятся NaN.
+     *
+     * @param sourceEnvelope Границы исходного растра в EPSG:4326.
+     */
+    private IndexRaster sample(IndexRaster source, Envelope sourceEnvelope, MapTile tile, TileMask mask) {
+        int size = MapTile.SIZE;
+        double pixelWidth = sourceEnvelope.getWidth() / source.getWidth();
+        double pixelHeight = sourceEnvelope.getHeight() / source.getHeight();
+        double[] longitudes = new double[size];
+        int[] columns = new int[size];
+        for (int x = 0; x < size; x++) {
+            longitudes[x] = tile.longitude(x + 0.5);
+            columns[x] = clamp((int) Math.floor((longitudes[x] - sourceEnvelope.getMinX()) / pixelWidth), source.getWidth());
+        }
+        // Тайл целиком внутри полигонов — проверять каждый пиксель не нужно
+        boolean inside = mask.contains(tile.getEnvelope());
+        IndexedPointInAreaLocator locator = inside ? null : new IndexedPointInAreaLocator(mask.geometry());
+        Coordinate probe = new Coordinate();
+        float[] values = new float[size * size];
+        for (int y = 0; y < size; y++) {
+            probe.y = tile.latitude(y + 0.5);
+            int row = clamp((int) Math.floor((sourceEnvelope.getMaxY() - probe.y) / pixelHeight), source.getHeight());
+            for (int x = 0; x < size; x++) {
+                probe.x = longitudes[x];
+                values[y * size + x] = inside || locator.locate(probe) != Location.EXTERIOR
+                        ? source.get(columns[x], row)
+                        : Float.NaN;
+            }
+        }
+        return new IndexRaster(size, size, values);
+    }
+
+    /**
+     * Объединение полигонов пользователя. Хэш маски входит в ключи пирамиды, поэтому после изменения
+     * полигонов тайлы строятся заново, а не берутся из кэша со старыми границами.
+     */
+    private TileMask maskFor(User user) {
+        long now = System.currentTimeMillis();
+        synchronized (masks) {
+            TileMask cached = masks.get(user.getId());
+            if (cached != null && now - cached.loadedAt() < maskTtl.toMillis()) {
+                return cached;
+            }
+        }
+        List<PolygonArea> polygons = new ArrayList<>(polygonAreaRepository.findByUser_Id(user.getId()));
+        polygons.sort(Comparator.comparing(polygon -> polygon.getId().toString()));
+        StringBuilder fingerprint = new StringBuilder();
+        List<Geometry> geometries = new ArrayList<>(polygons.size());
+        for (PolygonArea polygon : polygons) {
+            fingerprint.append(polygon.getId()).append(':').append(polygon.getGeoJson()).append('\n');
+            Geometry geometry = geometryUtils.fromGeoJson(polygon.getGeoJson());
+            // Самопересекающийся контур нельзя объединить как есть
+            geometries.add(geometry.isValid() ? geometry : geometry.buffer(0));
+        }
+        Geometry union = geometries.isEmpty() ? null : UnaryUnionOp.union(geometries);
+        TileMask mask = new TileMask(union, union == null ? null : PreparedGeometryFactory.prepare(union),
+                sha256(fingerprint.toString()), now);
+        synchronized (masks) {
+            masks.put(user.getId(), mask);
+            if (masks.size() > maxCachedMasks) {
+                masks.remove(masks.keySet().iterator().next());
+            }
+        }
+        log.debug("Tile mask for user {}: {} polygons", user.getId(), polygons.size());
+        return mask;
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @param ttl Время жизни растров пирамиды; null — бессрочно.
+     */
+    private record TileRequest(String indexName, String dateFrom, String dateTo, TileMask mask, Duration ttl) {
+
+        String pyramidKey(MapTile tile) {
+            return sha256("tile|" + indexName + '|' + dateFrom + '|' + dateTo + '|' + tile + '|' + mask.hash());
+        }
+    }
+
+    /**
+     * @param geometry Объединение полигонов; null — у пользователя нет полигонов.
+     */
+    private record TileMask(Geometry geometry, PreparedGeometry prepared, String hash, long loadedAt) {
+
+        boolean intersects(Envelope envelope) {
+            return geometry != null && geometry.getEnvelopeInternal().intersects(envelope)
+                    && prepared.intersects(geometry.getFactory().toGeometry(envelope));
+        }
+
+        boolean contains(Envelope envelope) {
+            return geometry != null && prepared.contains(geometry.getFactory().toGeometry(envelope));
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.backend.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.backend.JWT.JwtService;
+import com.example.backend.dto.AccessTokenDto;
+import com.example.backend.entiity.User;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Push-уведомления пользователю по Server-Sent Events: завершение фонового задания, прогретый снимок,
+ * новая статистика, новый ясный снимок над полигоном.
+ * <p>
+ * Соединение держится асинхронным сервлетом (SseEmitter), поток запроса сразу освобождается.
+ * События пишутся в соединения небольшим общим пулом sender-threads: у каждого соединения своя очередь
+ * на queue-capacity событий, при переполнении (медленный клиент) выбрасываются самые старые — отправитель
+ * события никогда не ждёт клиента. Последние history-size событий пользователя хранятся в памяти и
+ * досылаются при переподключении с заголовком Last-Event-ID. Молчащие соединения получают комментарий-heartbeat,
+ * чтобы прокси не закрывали их по простою, а оборванные обнаруживались.
+ */
+@Service
+@Slf4j
+public class NotificationService {
+
+    public static final String JOB = "job";
+    public static final String IMAGERY = "imagery";
+    public static final String STATISTICS = "statistics";
+    public static final String SCENE = "scene";
+
+    // Соединение закрывается по таймауту; EventSource в браузере сам переподключается с Last-Event-ID
+    @Value("${notifications.timeout:PT30M}")
+    private Duration timeout;
+
+    @Value("${notifications.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${notifications.max-connections-per-user:5}")
+    private int maxConnectionsPerUser;
+
+    @Value("${notifications.history-size:50}")
+    private int historySize;
+
+    @Value("${notifications.sender-threads:4}")
+    private int senderThreads;
+
+    @Value("${notifications.token-ttl:PT15M}")
+    private Duration tokenTtl;
+
+    private final JwtService jwtService;
+    private final MeterRegistry meterRegistry;
+    private final Counter sentCounter;
+    private final Counter droppedCounter;
+    // Отсчёт от времени запуска: ID событий растут и после перезапуска сервера, Last-Event-ID остаётся осмысленным
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+    private final Map<Long, List<Connection>> connections = new ConcurrentHashMap<>();
+    // Последние события пользователей, подключавшихся с момента запуска
+    private final Map<Long, Deque<Event>> history = new ConcurrentHashMap<>();
+    private ExecutorService sender;
+
+    public NotificationService(JwtService jwtService, MeterRegistry meterRegistry) {
+        this.jwtService = jwtService;
+        this.meterRegistry = meterRegistry;
+        this.sentCounter = Counter.builder("notifications.events").tag("result", "sent").register(meterRegistry);
+        this.droppedCounter = Counter.builder("notifications.events").tag("result", "dropped").register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "notification-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("notifications.connections", connections, c -> c.values().stream().mapToInt(List::size).sum())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Закрывает потоки до остановки веб-сервера: иначе плавная остановка ждёт открытые SSE-запросы до таймаута.
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void closeStreams() {
+        connections.values().forEach(list -> list.forEach(connection -> connection.emitter.complete()));
+    }
+
+    @PreDestroy
+    void stop() {
+        sender.shutdownNow();
+    }
+
+    /**
+     * Токен для параметра access_token в URL потока: EventSource в браузере не передаёт заголовок Authorization.
+     * Токен действует только на адресе потока; после expiresAt переподключение EventSource получает 401,
+     * и клиент запрашивает новый токен.
+     */
+    public AccessTokenDto issueStreamToken(User user) {
+        if (user == null) {
+            throw new SecurityException("Уведомления доступны только после входа в систему.");
+        }
+        Instant expiresAt = Instant.now().plus(tokenTtl);
+        return new AccessTokenDto(jwtService.generateScopedToken(user, JwtService.SCOPE_NOTIFICATIONS, tokenTtl.toMillis()), expiresAt);
+    }
+
+    /**
+     * Открывает поток событий пользователя. Сверх max-connections-per-user закрывается самое старое соединение.
+     *
+     * @param lastEventId Заголовок Last-Event-ID при переподключении; события после него досылаются из истории.
+     */
+    public SseEmitter subscribe(Long userId, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Connection connection = new Connection(userId, emitter, queueCapacity);
+        List<Connection> userConnections = connections.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>());
+        userConnections.add(connection);
+        while (userConnections.size() > maxConnectionsPerUser) {
+            Connection oldest = userConnections.get(0);
+            remove(oldest);
+            oldest.emitter.complete();
+        }
+        emitter.onCompletion(() -> remove(connection));
+        emitter.onTimeout(() -> remove(connection));
+        emitter.onError(error -> remove(connection));
+
+        Deque<Event> events = history.computeIfAbsent(userId, id -> new ArrayDeque<>());
+        long after = parseEventId(lastEventId);
+        synchronized (events) {
+            for (Event event : events) {
+                if (event.id > after) {
+                    connection.offer(event);
+                }
+            }
+        }
+        // Первое событие сразу подтверждает клиенту, что поток открыт (и проходит через буферизующие прокси)
+        connection.offer(new Event(0, null, null));
+        schedule(connection);
+        log.debug("Notification stream opened for user {} ({} connections)", userId, userConnections.size());
+        return emitter;
+    }
+
+    /**
+     * Отправляет событие во все соединения пользователя. Не блокируется: если пользователь не подключён,
+     * событие только запоминается в истории (для недавно подключавшихся), если очередь соединения полна —
+     * вытесняет самое старое.
+     *
+     * @param data Тело события; сериализуется в JSON.
+     */
+    public void send(Long userId, String name, Object data) {
+        if (userId == null) {
+            return;
+        }
+        Deque<Event> events = history.get(userId);
+        if (events == null) {
+            return; // Пользователь не подключался — хранить историю не для кого
+        }
+        Event event = new Event(sequence.incrementAndGet(), name, data);
+        synchronized (events) {
+            events.addLast(event);
+            while (events.size() > historySize) {
+                events.removeFirst();
+            }
+        }
+        for (Connection connection : connections.getOrDefault(userId, List.of())) {
+            connection.offer(event);
+            schedule(connection);
+        }
+    }
+
+    /**
+     * Пользователи с открытым потоком событий.
+     */
+    public Set<Long> getConnectedUserIds() {
+        return connections.keySet();
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.heartbeat-interval:PT20S}")
+    public void heartbeat() {
+        for (List<Connection> userConnections : connections.values()) {
+            for (Connection connection : userConnections) {
+                if (connection.queue.isEmpty()) {
+                    connection.offer(new Event(0, null, null));
+                    schedule(connection);
+                }
+            }
+        }
+    }
+
+    private void schedule(Connection connection) {
+        if (!connection.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sender.execute(() -> drain(connection));
+        } catch (RejectedExecutionException e) {
+            connection.draining.set(false);
+        }
+    }
+
+    private void drain(Connection connection) {
+        try {
+            Event event;
+            while ((event = connection.queue.poll()) != null) {
+                if (event.name == null) {
+                    connection.emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    connection.emitter.send(SseEmitter.event()
+                            .id(Long.toString(event.id))
+                            .name(event.name)
+                            .data(event.data, MediaType.APPLICATION_JSON));
+                    sentCounter.increment();
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Клиент отключился или соединение уже закрыто
+            log.debug("Notification stream for user {} closed: {}", connection.userId, e.getMessage());
+            remove(connection);
+            connection.emitter.completeWithError(e);
+            return;
+        } finally {
+            connection.draining.set(false);
+        }
+        // Событие могло прийти после опустошения очереди, но до сброса флага
+        if (!connection.queue.isEmpty()) {
+            schedule(connection);
+        }
+    }
+
+    private void remove(Connection connection) {
+        connection.queue.clear();
+        connections.computeIfPresent(connection.userId, (userId, list) -> {
+            list.remove(connection);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return Long.MAX_VALUE; // Первое подключение: историю не досылаем
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // id = 0 и name = null — комментарий-heartbeat
+    private record Event(long id, String name, Object data) {
+    }
+
+    private final class Connection {
+
+        private final Long userId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        Connection(Long userId, SseEmitter emitter, int capacity) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        // Медленный клиент теряет самые старые события, а не задерживает отправителя
+        void offer(Event event) {
+            while (!queue.offer(event)) {
+                if (queue.poll() != null) {
+                    droppedCounter.increment();
+                }
+            }
+        }
+    }
+}
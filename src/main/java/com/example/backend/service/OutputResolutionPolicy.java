@@ -0,0 +1,115 @@
+package com.example.backend.service;
+
+import org.locationtech.jts.geom.Envelope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.ResolutionMode;
+import com.example.backend.util.GeometryUtils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Выбирает размер выходного изображения Process API.
+ * <p>
+ * В режиме AUTO размер считается по геодезическому охвату полигона и целевому размеру пикселя.
+ * В обоих режимах действуют жёсткие ограничения: пиксель не мельче min-meters-per-pixel
+ * (детальнее, чем снимает Sentinel-2, всё равно не будет), сторона не больше max-side-pixels,
+ * общее число пикселей не больше max-output-pixels (мозаика собирается в памяти) и, если клиент
+ * передал подсказку, не больше maxPixels. Выход больше лимита Process API на сторону
+ * {@link SentinelHubService} запрашивает тайлами. Пропорции сохраняются.
+ */
+@Component
+@Slf4j
+public class OutputResolutionPolicy {
+
+    @Value("${sentinelhub.resolution.target-meters-per-pixel:10}")
+    private double targetMetersPerPixel;
+
+    @Value("${sentinelhub.resolution.min-meters-per-pixel:2.5}")
+    private double minMetersPerPixel;
+
+    @Value("${sentinelhub.resolution.min-side-pixels:16}")
+    private int minSidePixels;
+
+    @Value("${sentinelhub.resolution.max-side-pixels:10000}")
+    private int maxSidePixels;
+
+    @Value("${sentinelhub.resolution.max-output-pixels:25000000}")
+    private long maxOutputPixels;
+
+    private final GeometryPreparer geometryPreparer;
+    private final DistributionSummary autoPixels;
+    private final DistributionSummary fixedPixels;
+
+    public OutputResolutionPolicy(GeometryPreparer geometryPreparer, MeterRegistry meterRegistry) {
+        this.geometryPreparer = geometryPreparer;
+        this.autoPixels = DistributionSummary.builder("sentinel.imagery.output.pixels").tag("mode", "auto").register(meterRegistry);
+        this.fixedPixels = DistributionSummary.builder("sentinel.imagery.output.pixels").tag("mode", "fixed").register(meterRegistry);
+    }
+
+    /**
+     * @param mode      Режим; null — AUTO, если клиент не передал width/height, иначе FIXED.
+     * @param width     Запрошенная ширина (для FIXED).
+     * @param height    Запрошенная высота (для FIXED).
+     * @param maxPixels Необязательная подсказка клиента: предел width * height.
+     * @return {width, height}.
+     */
+    public int[] resolve(String polygonGeoJson, ResolutionMode mode, int width, int height, Integer maxPixels) {
+        if (mode == null) {
+            mode = width > 0 && height > 0 ? ResolutionMode.FIXED : ResolutionMode.AUTO;
+        }
+        if (mode == ResolutionMode.FIXED && (width <= 0 || height <= 0)) {
+            throw new IllegalArgumentException("Для режима FIXED нужны положительные width и height.");
+        }
+        if (maxPixels != null && maxPixels <= 0) {
+            throw new IllegalArgumentException("maxPixels должен быть положительным.");
+        }
+
+        // Охват из кэша подготовки геометрии: тот же GeoJSON дальше разбирать не придётся
+        Envelope envelope = geometryPreparer.envelope(polygonGeoJson);
+        double[] extent = GeometryUtils.extentMeters(envelope);
+        double extentWidth = Math.max(extent[0], 1.0);
+        double extentHeight = Math.max(extent[1], 1.0);
+
+        double w;
+        double h;
+        if (mode == ResolutionMode.AUTO) {
+            w = extentWidth / targetMetersPerPixel;
+            h = extentHeight / targetMetersPerPixel;
+            // Совсем маленький полигон растягиваем до min-side-pixels, но не мельче min-meters-per-pixel
+            double longest = Math.max(w, h);
+            if (longest < minSidePixels) {
+                double finest = Math.max(extentWidth, extentHeight) / minMetersPerPixel;
+                double upscale = Math.min(minSidePixels, finest) / longest;
+                if (upscale > 1) {
+                    w *= upscale;
+                    h *= upscale;
+                }
+            }
+        } else {
+            w = width;
+            h = height;
+        }
+
+        // Не детальнее, чем имеет смысл для снимка Sentinel-2
+        double scale = Math.min(1.0, Math.min(extentWidth / minMetersPerPixel / w, extentHeight / minMetersPerPixel / h));
+        // Сторона и площадь мозаики
+        scale = Math.min(scale, Math.min(maxSidePixels / w, maxSidePixels / h));
+        scale = Math.min(scale, Math.sqrt(maxOutputPixels / (w * h)));
+        if (maxPixels != null) {
+            scale = Math.min(scale, Math.sqrt(maxPixels / (w * h)));
+        }
+        int resultWidth = Math.max(1, Math.min(maxSidePixels, (int) Math.round(w * scale)));
+        int resultHeight = Math.max(1, Math.min(maxSidePixels, (int) Math.round(h * scale)));
+
+        if (mode == ResolutionMode.FIXED && (resultWidth != width || resultHeight != height)) {
+            log.debug("Requested {}x{} capped to {}x{} for a {}x{} m extent",
+                    width, height, resultWidth, resultHeight, Math.round(extentWidth), Math.round(extentHeight));
+        }
+        (mode == ResolutionMode.AUTO ? autoPixels : fixedPixels).record((double) resultWidth * resultHeight);
+        return new int[] {resultWidth, resultHeight};
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.backend.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.example.backend.model.ColorRamp;
+
+/**
+ * Цветовые шкалы для локальной раскраски растров индексов.
+ * Шкалы с именами индексов повторяют палитры evalscript из {@link AnalysisTemplateRegistry},
+ * поэтому локальная раскраска по умолчанию выглядит так же, как раньше отдавал Sentinel Hub.
+ */
+@Component
+public class PaletteRegistry {
+
+    public static final String CHANGE = "CHANGE";
+
+    private final Map<String, ColorRamp> byName = new HashMap<>();
+    private final List<ColorRamp> palettes = new ArrayList<>();
+
+    public PaletteRegistry() {
+        // ColorRampVisualizer из evalscript NDVI
+        register(new ColorRamp("NDVI",
+                new float[] {-1.0f, -0.5f, 0.0f, 0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f, 1.0f},
+                new float[][] {
+                        {0.0f, 0.0f, 0.0f, 0f},
+                        {0.0f, 0.0f, 0.0f, 0f},
+                        {0.9f, 0.9f, 0.9f, 0.5f},
+                        {0.8f, 0.78f, 0.51f, 1f},
+                        {0.57f, 0.75f, 0.32f, 1f},
+                        {0.44f, 0.64f, 0.25f, 1f},
+                        {0.31f, 0.54f, 0.18f, 1f},
+                        {0.19f, 0.43f, 0.11f, 1f},
+                        {0.06f, 0.33f, 0.04f, 1f},
+                        {0.0f, 0.27f, 0.0f, 1f}}));
+
+        register(new ColorRamp("MOISTURE_INDEX",
+                new float[] {-1f, -0.2f, 0f, 0.2f, 0.4f, 0.6f, 0.8f, 1f},
+                new float[][] {
+                        {0f, 0f, 0f, 0f},
+                        {0.9f, 0.9f, 0.9f, 1f},
+                        {0.9f, 0.7f, 0.7f, 1f},
+                        {0.7f, 0.5f, 0.5f, 1f},
+                        {0.5f, 0.3f, 0.3f, 1f},
+                        {0.3f, 0.1f, 0.1f, 1f},
+                        {0.1f, 0.0f, 0.0f, 1f},
+                        {0.0f, 0.0f, 0.0f, 1f}}));
+
+        register(new ColorRamp("NDSI",
+                new float[] {-1f, 0f, 0.2f, 0.4f, 0.6f, 1f},
+                new float[][] {
+                        {0f, 0f, 0f, 0f},
+                        {0.7f, 0.7f, 0.7f, 1f},
+                        {0.5f, 0.8f, 0.9f, 1f},
+                        {0.8f, 0.9f, 1.0f, 1f},
+                        {0.9f, 0.9f, 1.0f, 1f},
+                        {1.0f, 1.0f, 1.0f, 1f}}));
+
+        register(new ColorRamp("NDWI",
+                new float[] {-1f, -0.2f, 0f, 0.2f, 0.4f, 0.6f, 1f},
+                new float[][] {
+                        {0f, 0f, 0f, 0f},
+                        {0.9f, 0.9f, 0.9f, 1f},
+                        {0.7f, 0.7f, 0.9f, 1f},
+                        {0.5f, 0.5f, 0.9f, 1f},
+                        {0.3f, 0.3f, 0.7f, 1f},
+                        {0.1f, 0.1f, 0.5f, 1f},
+                        {0.0f, 0.0f, 0.3f, 1f}}));
+
+        // Общие шкалы, которые можно выбрать для любого индекса
+        register(new ColorRamp("RED_YELLOW_GREEN",
+                new float[] {-1f, 0f, 0.25f, 0.5f, 0.75f, 1f},
+                new float[][] {
+                        {0.65f, 0.0f, 0.15f, 1f},
+                        {0.84f, 0.19f, 0.15f, 1f},
+                        {0.99f, 0.68f, 0.38f, 1f},
+                        {1.0f, 1.0f, 0.75f, 1f},
+                        {0.65f, 0.85f, 0.42f, 1f},
+                        {0.0f, 0.41f, 0.22f, 1f}}));
+
+        register(new ColorRamp("VIRIDIS",
+                new float[] {-1f, -0.5f, 0f, 0.5f, 1f},
+                new float[][] {
+                        {0.27f, 0.0f, 0.33f, 1f},
+                        {0.23f, 0.32f, 0.55f, 1f},
+                        {0.13f, 0.57f, 0.55f, 1f},
+                        {0.37f, 0.79f, 0.38f, 1f},
+                        {0.99f, 0.91f, 0.14f, 1f}}));
+
+        register(new ColorRamp("GRAYSCALE",
+                new float[] {-1f, 1f},
+                new float[][] {
+                        {0f, 0f, 0f, 1f},
+                        {1f, 1f, 1f, 1f}}));
+
+        // Расходящаяся шкала для разности индексов между двумя датами: падение — красный, рост — зелёный,
+        // почти без изменений — полупрозрачный белый
+        register(new ColorRamp(CHANGE,
+                new float[] {-0.5f, -0.25f, -0.05f, 0f, 0.05f, 0.25f, 0.5f},
+                new float[][] {
+                        {0.4f, 0.0f, 0.05f, 1f},
+                        {0.84f, 0.19f, 0.15f, 1f},
+                        {0.99f, 0.86f, 0.78f, 1f},
+                        {1.0f, 1.0f, 1.0f, 0.4f},
+                        {0.85f, 0.94f, 0.83f, 1f},
+                        {0.35f, 0.71f, 0.38f, 1f},
+                        {0.0f, 0.35f, 0.15f, 1f}}));
+    }
+
+    /**
+     * Шкала по имени (регистр не важен).
+     * @throws IllegalArgumentException если шкалы с таким именем нет.
+     */
+    public ColorRamp get(String name) {
+        ColorRamp ramp = name == null ? null : byName.get(name.trim().toUpperCase(Locale.ROOT));
+        if (ramp == null) {
+            throw new IllegalArgumentException("Unknown palette: " + name);
+        }
+        return ramp;
+    }
+
+    /**
+     * Шкала по умолчанию для индекса — та, что была в его evalscript.
+     */
+    public ColorRamp defaultFor(String indexName) {
+        return get(indexName);
+    }
+
+    public List<ColorRamp> getAll() {
+        return Collections.unmodifiableList(palettes);
+    }
+
+    private void register(ColorRamp ramp) {
+        palettes.add(ramp);
+        byName.put(ramp.getName(), ramp);
+    }
+}
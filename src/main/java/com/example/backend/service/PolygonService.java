@@ -1,6 +1,7 @@
 package com.example.backend.service;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 import org.springframework.security.core.Authentication;
@@ -26,6 +27,8 @@ public class PolygonService {
     private final PolygonAreaRepository polygonAreaRepository;
     private final UserRepository userRepository;
     private final ChatMessageRepository chatMessageRepository; // Внедряем ChatMessageRepository
+    private final PolygonStatisticsService polygonStatisticsService;
+    private final TimeSeriesService timeSeriesService;
 
     // Helper method to get the current authenticated user
     private User getCurrentAuthenticatedUser() {
@@ -130,6 +133,32 @@ public class PolygonService {
         }
     }
 
+    // Get a single polygon visible to the given user (owner or ADMIN/SUPER_ADMIN)
+    public PolygonArea getPolygonForUser(UUID polygonId, User user) {
+        if (polygonId == null) {
+            throw new IllegalArgumentException("Не указан полигон.");
+        }
+        PolygonArea polygon = polygonAreaRepository.findById(polygonId)
+                .orElseThrow(() -> new IllegalArgumentException("Полигон не найден."));
+        checkViewAccess(polygon, user);
+        return polygon;
+    }
+
+    // Get several polygons in one query; unknown IDs are skipped, a foreign polygon fails the whole request
+    public List<PolygonArea> getPolygonsForUser(List<UUID> polygonIds, User user) {
+        List<PolygonArea> polygons = polygonAreaRepository.findAllById(polygonIds);
+        polygons.forEach(polygon -> checkViewAccess(polygon, user));
+        return polygons;
+    }
+
+    private void checkViewAccess(PolygonArea polygon, User user) {
+        boolean admin = user != null && ("ADMIN".equals(user.getRole()) || "SUPER_ADMIN".equals(user.getRole()));
+        if (!admin && (user == null || !polygon.getUser().getId().equals(user.getId()))) {
+            log.warn("User {} attempted to view polygon ID: {}. Access denied.", user == null ? null : user.getId(), polygon.getId());
+            throw new SecurityException("У вас нет разрешения на просмотр полигона " + polygon.getId() + ".");
+        }
+    }
+
 
     // Update an existing polygon
     @Transactional
@@ -171,6 +200,11 @@ public class PolygonService {
         existingPolygon.setComment(polygonRequestDto.getComment());
         existingPolygon.setColor(polygonRequestDto.getColor());
         existingPolygon.setCrop(polygonRequestDto.getCrop());
+        if (!Objects.equals(existingPolygon.getGeoJson(), polygonRequestDto.getGeoJson())) {
+            // Статистика и временные ряды считались по старой геометрии
+            polygonStatisticsService.invalidate(polygonId);
+            timeSeriesService.invalidate(polygonId);
+        }
         existingPolygon.setGeoJson(polygonRequestDto.getGeoJson());
         return polygonAreaRepository.save(existingPolygon);
     }
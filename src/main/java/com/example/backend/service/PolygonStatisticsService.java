@@ -0,0 +1,168 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.locationtech.jts.geom.Geometry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.PolygonStatisticsDto;
+import com.example.backend.entiity.PolygonArea;
+import com.example.backend.entiity.PolygonIndexStatistics;
+import com.example.backend.entiity.User;
+import com.example.backend.model.IndexStatistics;
+import com.example.backend.model.PixelGrid;
+import com.example.backend.repository.PolygonIndexStatisticsRepository;
+import com.example.backend.util.DateUtils;
+import com.example.backend.util.GeometryUtils;
+import com.example.backend.util.RasterStatistics;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Статистика индексов (NDVI, NDWI, ...) по полигону: значения FLOAT32 запрашиваются у Sentinel Hub,
+ * статистика считается локально и сохраняется по полигону и интервалу дат.
+ * Интервал, закончившийся до сегодняшнего дня, больше не пересчитывается; текущий — не чаще mutable-ttl.
+ */
+@Service
+@Slf4j
+public class PolygonStatisticsService {
+
+    private static final double DEFAULT_RESOLUTION_METERS = 10.0;
+
+    @Value("${sentinelhub.cache.mutable-ttl:PT15M}")
+    private Duration mutableTtl;
+
+    // Интервал, закончившийся в последние settle-days дней, ещё может измениться от поздно загруженных сцен
+    @Value("${sentinelhub.timeseries.settle-days:3}")
+    private int settleDays;
+
+    private final PolygonService polygonService;
+    private final PolygonIndexStatisticsRepository statisticsRepository;
+    private final SentinelHubService sentinelHubService;
+    private final AnalysisTemplateRegistry templateRegistry;
+    private final GeometryUtils geometryUtils;
+    private final AnalysisGridPolicy analysisGridPolicy;
+    private final NotificationService notificationService;
+
+    // PolygonService сам зависит от этого сервиса (сброс статистики при изменении геометрии), поэтому @Lazy
+    public PolygonStatisticsService(@Lazy PolygonService polygonService,
+                                    PolygonIndexStatisticsRepository statisticsRepository,
+                                    SentinelHubService sentinelHubService, AnalysisTemplateRegistry templateRegistry,
+                                    GeometryUtils geometryUtils, AnalysisGridPolicy analysisGridPolicy,
+                                    NotificationService notificationService) {
+        this.polygonService = polygonService;
+        this.statisticsRepository = statisticsRepository;
+        this.sentinelHubService = sentinelHubService;
+        this.templateRegistry = templateRegistry;
+        this.geometryUtils = geometryUtils;
+        this.analysisGridPolicy = analysisGridPolicy;
+        this.notificationService = notificationService;
+    }
+
+    public CompletableFuture<PolygonStatisticsDto> getStatistics(UUID polygonId, String analysisType, String dateFrom,
+                                                                 String dateTo, Double resolutionMeters, User user) {
+        LocalDate from = DateUtils.parseDate(dateFrom);
+        LocalDate to = DateUtils.parseDate(dateTo);
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Дата окончания раньше даты начала.");
+        }
+        String indexName = templateRegistry.getIndex(analysisType).getName();
+        double resolution = resolutionMeters == null || resolutionMeters <= 0 ? DEFAULT_RESOLUTION_METERS : resolutionMeters;
+        PolygonArea polygon = polygonService.getPolygonForUser(polygonId, user);
+
+        Optional<PolygonIndexStatistics> stored = statisticsRepository
+                .findByPolygonArea_IdAndAnalysisTypeAndDateFromAndDateToAndResolutionMeters(polygonId, indexName, from, to, resolution);
+        if (stored.isPresent() && isFresh(stored.get())) {
+            log.debug("Statistics for polygon {} {} {}..{} served from database", polygonId, indexName, from, to);
+            return CompletableFuture.completedFuture(new PolygonStatisticsDto(stored.get()));
+        }
+
+        Geometry geometry = geometryUtils.fromGeoJson(polygon.getGeoJson());
+        PixelGrid grid = analysisGridPolicy.gridFor(geometry.getEnvelopeInternal(), resolution);
+        return sentinelHubService.getIndexRasterAsync(geometryUtils.envelopeToGeoJson(grid.getEnvelope()), indexName,
+                        dateFrom, dateTo, grid.getWidth(), grid.getHeight())
+                .thenApplyAsync(raster -> {
+                    IndexStatistics statistics = RasterStatistics.compute(raster, grid, geometry);
+                    PolygonIndexStatistics entity = stored.orElseGet(() -> PolygonIndexStatistics.builder()
+                            .polygonArea(polygon)
+                            .analysisType(indexName)
+                            .dateFrom(from)
+                            .dateTo(to)
+                            .resolutionMeters(resolution)
+                            .build());
+                    apply(entity, statistics);
+                    PolygonStatisticsDto result = new PolygonStatisticsDto(save(entity));
+                    // Остальные открытые клиенты владельца (и фоновые задания) узнают о новой статистике без опроса
+                    notificationService.send(polygon.getUser().getId(), NotificationService.STATISTICS, result);
+                    return result;
+                });
+    }
+
+    /**
+     * Все сохранённые результаты по полигону, новые интервалы первыми.
+     */
+    public List<PolygonStatisticsDto> getStoredStatistics(UUID polygonId, User user) {
+        polygonService.getPolygonForUser(polygonId, user);
+        return statisticsRepository.findByPolygonArea_IdOrderByDateFromDesc(polygonId).stream()
+                .map(PolygonStatisticsDto::new)
+                .toList();
+    }
+
+    /**
+     * Удаляет сохранённую статистику полигона — например, после изменения его геометрии.
+     */
+    public void invalidate(UUID polygonId) {
+        statisticsRepository.deleteByPolygonArea_Id(polygonId);
+    }
+
+    private boolean isFresh(PolygonIndexStatistics statistics) {
+        // За интервал, закончившийся раньше settle-days дней назад, новых снимков не будет
+        if (statistics.getDateTo().isBefore(LocalDate.now(ZoneOffset.UTC).minusDays(settleDays))) {
+            return true;
+        }
+        return statistics.getComputedAt().isAfter(LocalDateTime.now(ZoneOffset.UTC).minus(mutableTtl));
+    }
+
+    private void apply(PolygonIndexStatistics entity, IndexStatistics statistics) {
+        double[] percentiles = statistics.getPercentiles();
+        entity.setTotalPixels(statistics.getTotalPixels());
+        entity.setValidPixels(statistics.getValidPixels());
+        entity.setMean(orNull(statistics.getMean()));
+        entity.setMin(orNull(statistics.getMin()));
+        entity.setMax(orNull(statistics.getMax()));
+        entity.setStdDev(orNull(statistics.getStdDev()));
+        entity.setP10(orNull(percentiles[0]));
+        entity.setP25(orNull(percentiles[1]));
+        entity.setP50(orNull(percentiles[2]));
+        entity.setP75(orNull(percentiles[3]));
+        entity.setP90(orNull(percentiles[4]));
+        entity.setHistogram(Arrays.stream(statistics.getHistogram()).mapToObj(String::valueOf).collect(Collectors.joining(",")));
+        entity.setComputedAt(LocalDateTime.now(ZoneOffset.UTC));
+    }
+
+    private PolygonIndexStatistics save(PolygonIndexStatistics entity) {
+        try {
+            return statisticsRepository.save(entity);
+        } catch (DataIntegrityViolationException e) {
+            // Тот же результат параллельно сохранил другой запрос — отдаём посчитанное значение
+            log.debug("Statistics for polygon {} already stored concurrently", entity.getPolygonArea().getId());
+            return entity;
+        }
+    }
+
+    private static Double orNull(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
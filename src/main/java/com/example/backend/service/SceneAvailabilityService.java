@@ -0,0 +1,475 @@
+package com.example.backend.service;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.locationtech.jts.geom.Envelope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.PolygonNotificationDto;
+import com.example.backend.dto.SceneAvailabilityDto;
+import com.example.backend.entiity.PolygonArea;
+import com.example.backend.entiity.SceneAvailability;
+import com.example.backend.entiity.SceneCatalogCoverage;
+import com.example.backend.entiity.User;
+import com.example.backend.exception.NoUsableSceneException;
+import com.example.backend.model.ImageryRequestKey;
+import com.example.backend.model.SceneAcquisition;
+import com.example.backend.repository.PolygonAreaRepository;
+import com.example.backend.repository.SceneAvailabilityRepository;
+import com.example.backend.repository.SceneCatalogCoverageRepository;
+import com.example.backend.util.DateUtils;
+import com.example.backend.util.GeometryUtils;
+import com.example.backend.util.RasterUtils;
+import com.example.backend.util.SingleFlight;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Индекс съёмок Sentinel-2 по области (bbox полигона, округлённый наружу до 0.01°) и дате.
+ * <p>
+ * Даты съёмки и облачность гранулы берутся из Catalog API; просмотренные интервалы дат хранятся в базе,
+ * поэтому повторно запрашиваются только непокрытые дни (и не чаще mutable-ttl — последние settle-days дней).
+ * Облачность над самим полем уточняется по слою SCL: каждый полученный из Process API PNG
+ * SCENE_CLASSIFICATION за один день разбирается локально.
+ * <p>
+ * Если Catalog API недоступен, проверка пропускается: запрос уходит в Process API как раньше.
+ * <p>
+ * Для полигонов пользователей с открытым потоком уведомлений последние notify-days дней каталога
+ * перепроверяются каждые watch-interval; о новых ясных снимках владельцу приходит событие scene.
+ */
+@Service
+@Slf4j
+public class SceneAvailabilityService {
+
+    private static final String SCENE_CLASSIFICATION = "SCENE_CLASSIFICATION";
+    // Шаг округления bbox: соседние запросы по тому же полю попадают в одну область
+    private static final double AREA_STEP_DEGREES = 0.01;
+
+    @Value("${sentinelhub.scenes.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sentinelhub.scenes.max-tile-cloud-cover:0.95}")
+    private double maxTileCloudCover;
+
+    @Value("${sentinelhub.scenes.max-field-cloud-fraction:0.8}")
+    private double maxFieldCloudFraction;
+
+    @Value("${sentinelhub.scenes.search-days:30}")
+    private int searchDays;
+
+    @Value("${sentinelhub.timeseries.settle-days:3}")
+    private int settleDays;
+
+    @Value("${sentinelhub.cache.mutable-ttl:PT15M}")
+    private Duration mutableTtl;
+
+    // О новых ясных снимках старше этого уведомления не отправляются (например, при первом просмотре прошлого сезона)
+    @Value("${sentinelhub.scenes.notify-days:5}")
+    private int notifyDays;
+
+    private final SceneAvailabilityRepository sceneRepository;
+    private final SceneCatalogCoverageRepository coverageRepository;
+    private final SentinelHubService sentinelHubService;
+    private final PolygonService polygonService;
+    private final PolygonAreaRepository polygonAreaRepository;
+    private final NotificationService notificationService;
+    private final GeometryUtils geometryUtils;
+    private final SingleFlight<String, Void> catalogSingleFlight;
+    private final Counter shortCircuitCounter;
+
+    // Ключ области -> момент последней проверки непостоянного хвоста (последние settle-days дней)
+    private final Map<String, Long> tailCheckedAt = new ConcurrentHashMap<>();
+
+    public SceneAvailabilityService(SceneAvailabilityRepository sceneRepository,
+                                    SceneCatalogCoverageRepository coverageRepository,
+                                    SentinelHubService sentinelHubService, PolygonService polygonService,
+                                    PolygonAreaRepository polygonAreaRepository, NotificationService notificationService,
+                                    GeometryUtils geometryUtils, MeterRegistry meterRegistry) {
+        this.sceneRepository = sceneRepository;
+        this.coverageRepository = coverageRepository;
+        this.sentinelHubService = sentinelHubService;
+        this.polygonService = polygonService;
+        this.polygonAreaRepository = polygonAreaRepository;
+        this.notificationService = notificationService;
+        this.geometryUtils = geometryUtils;
+        this.catalogSingleFlight = new SingleFlight<>(meterRegistry, "sentinel.scenes.singleflight");
+        this.shortCircuitCounter = Counter.builder("sentinel.scenes.short-circuit").register(meterRegistry);
+        sentinelHubService.addImageListener(this::onImage);
+    }
+
+    /**
+     * Проверяет, что за [dateFrom, dateTo] над геометрией есть пригодный снимок.
+     * Завершается {@link NoUsableSceneException} с ближайшей ясной датой, если такого нет;
+     * при недоступном Catalog API или некорректных датах — успешно (решает Process API).
+     */
+    public CompletableFuture<Void> requireUsableScene(String polygonGeoJson, String dateFrom, String dateTo) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = LocalDate.parse(dateFrom);
+            to = LocalDate.parse(dateTo);
+        } catch (DateTimeParseException | NullPointerException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (to.isBefore(from)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Envelope area = areaOf(geometryUtils.fromGeoJson(polygonGeoJson).getEnvelopeInternal());
+        return scenesAround(area, from, to).handle((scenes, error) -> {
+            if (error != null) {
+                log.warn("Scene catalog unavailable, skipping availability check: {}", error.getMessage());
+                return null;
+            }
+            if (scenes.stream().anyMatch(scene -> within(scene, from, to) && isUsable(scene))) {
+                return null;
+            }
+            shortCircuitCounter.increment();
+            LocalDate nearest = nearestClearDate(scenes, from, to);
+            throw new NoUsableSceneException("Нет снимка без облаков за " + from + ".." + to
+                    + (nearest != null ? "; ближайшая ясная дата " + nearest : "") + ".", nearest);
+        });
+    }
+
+    /**
+     * Съёмки над полигоном за интервал и ближайшая ясная дата, если пригодных снимков в интервале нет.
+     */
+    public CompletableFuture<SceneAvailabilityDto> getScenes(UUID polygonId, String dateFrom, String dateTo, User user) {
+        LocalDate from = DateUtils.parseDate(dateFrom);
+        LocalDate to = DateUtils.parseDate(dateTo);
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Дата окончания раньше даты начала.");
+        }
+        PolygonArea polygon = polygonService.getPolygonForUser(polygonId, user);
+        Envelope area = areaOf(geometryUtils.fromGeoJson(polygon.getGeoJson()).getEnvelopeInternal());
+        return scenesAround(area, from, to).thenApply(scenes -> {
+            List<SceneAvailability> inRange = scenes.stream().filter(scene -> within(scene, from, to)).toList();
+            int n = inRange.size();
+            LocalDate[] dates = new LocalDate[n];
+            Float[] cloudCover = new Float[n];
+            Float[] fieldCloudFraction = new Float[n];
+            boolean[] usable = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                SceneAvailability scene = inRange.get(i);
+                dates[i] = scene.getAcquisitionDate();
+                cloudCover[i] = scene.getCloudCover();
+                fieldCloudFraction[i] = scene.getFieldCloudFraction();
+                usable[i] = isUsable(scene);
+            }
+            boolean anyUsable = inRange.stream().anyMatch(this::isUsable);
+            return new SceneAvailabilityDto(polygonId, from, to, dates, cloudCover, fieldCloudFraction, usable,
+                    anyUsable ? null : nearestClearDate(scenes, from, to));
+        });
+    }
+
+    /**
+     * Съёмки области за интервал, расширенный на search-days в обе стороны (не дальше сегодняшнего дня),
+     * по возрастанию даты. Недостающие в индексе дни сначала запрашиваются у Catalog API.
+     */
+    private CompletableFuture<List<SceneAvailability>> scenesAround(Envelope area, LocalDate from, LocalDate to) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate searchFrom = from.minusDays(searchDays);
+        LocalDate searchTo = to.plusDays(searchDays).isAfter(today) ? today : to.plusDays(searchDays);
+        String areaKey = areaKey(area);
+        return ensureCatalog(areaKey, area, searchFrom, searchTo)
+                .thenApply(ignored -> sceneRepository
+                        .findByAreaKeyAndAcquisitionDateBetweenOrderByAcquisitionDate(areaKey, searchFrom, searchTo));
+    }
+
+    private CompletableFuture<Void> ensureCatalog(String areaKey, Envelope area, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // Непостоянный хвост, проверенный недавно, считаем покрытым
+        LocalDate settled = LocalDate.now(ZoneOffset.UTC).minusDays(settleDays);
+        Long checkedAt = tailCheckedAt.get(areaKey);
+        boolean tailFresh = checkedAt != null && System.currentTimeMillis() - checkedAt < mutableTtl.toMillis();
+        LocalDate missingUntil = tailFresh && to.isAfter(settled) ? settled : to;
+        List<LocalDate[]> missing = missingRanges(coverageRepository.findByAreaKey(areaKey), from, missingUntil);
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String flightKey = areaKey + missing.stream().map(r -> r[0] + ".." + r[1]).collect(Collectors.joining(",", "[", "]"));
+        return catalogSingleFlight.executeAsync(flightKey, () -> fillCatalog(areaKey, area, missing, settled));
+    }
+
+    private CompletableFuture<Void> fillCatalog(String areaKey, Envelope area, List<LocalDate[]> ranges, LocalDate settled) {
+        List<CompletableFuture<List<SceneAcquisition>>> futures = new ArrayList<>();
+        for (LocalDate[] range : ranges) {
+            futures.add(sentinelHubService.searchScenesAsync(area, range[0], range[1]));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRunAsync(() -> {
+            // Дату могут покрывать несколько гранул — для поля берём наименее облачную, как leastCC в Process API
+            TreeMap<LocalDate, Float> cloudCover = new TreeMap<>();
+            futures.forEach(future -> future.join().forEach(scene ->
+                    cloudCover.merge(scene.getDate(), scene.getCloudCover(), Math::min)));
+
+            List<LocalDate[]> covered = new ArrayList<>();
+            boolean touchedTail = false;
+            for (LocalDate[] range : ranges) {
+                touchedTail |= range[1].isAfter(settled);
+                LocalDate coveredTo = range[1].isAfter(settled) ? settled : range[1];
+                if (!coveredTo.isBefore(range[0])) {
+                    covered.add(new LocalDate[] {range[0], coveredTo});
+                }
+            }
+            List<LocalDate> clear = persist(areaKey, cloudCover, covered);
+            LocalDate notifyFrom = LocalDate.now(ZoneOffset.UTC).minusDays(notifyDays);
+            clear.removeIf(date -> date.isBefore(notifyFrom));
+            if (!clear.isEmpty()) {
+                notifyClearScenes(areaKey, clear);
+            }
+            if (touchedTail) {
+                tailCheckedAt.put(areaKey, System.currentTimeMillis());
+            }
+            log.info("Scene catalog {}: searched {} ranges, {} acquisition dates", areaKey, ranges.size(), cloudCover.size());
+        });
+    }
+
+    /**
+     * @return Даты, впервые попавшие в индекс и пригодные по облачности гранулы.
+     */
+    private List<LocalDate> persist(String areaKey, TreeMap<LocalDate, Float> cloudCover, List<LocalDate[]> covered) {
+        List<LocalDate> clear = new ArrayList<>();
+        try {
+            if (!cloudCover.isEmpty()) {
+                LocalDate min = cloudCover.firstKey();
+                LocalDate max = cloudCover.lastKey();
+                // Облачность по SCL, уже записанная для этих дат, сохраняется
+                Map<LocalDate, SceneAvailability> existing = sceneRepository
+                        .findByAreaKeyAndAcquisitionDateBetweenOrderByAcquisitionDate(areaKey, min, max).stream()
+                        .collect(Collectors.toMap(SceneAvailability::getAcquisitionDate, Function.identity()));
+                LocalDateTime now = LocalDateTime.now();
+                List<SceneAvailability> rows = new ArrayList<>();
+                cloudCover.forEach((date, cover) -> {
+                    SceneAvailability row = existing.getOrDefault(date, SceneAvailability.builder()
+                            .areaKey(areaKey)
+                            .acquisitionDate(date)
+                            .build());
+                    row.setCloudCover(cover);
+                    row.setUpdatedAt(now);
+                    rows.add(row);
+                    if (!existing.containsKey(date) && isUsable(row)) {
+                        clear.add(date);
+                    }
+                });
+                sceneRepository.saveAll(rows);
+            }
+            coverageRepository.saveAll(covered.stream()
+                    .map(range -> SceneCatalogCoverage.builder()
+                            .areaKey(areaKey)
+                            .coveredFrom(range[0])
+                            .coveredTo(range[1])
+                            .build())
+                    .toList());
+        } catch (DataIntegrityViolationException e) {
+            // Те же даты параллельно сохранил другой экземпляр — он и уведомит
+            log.warn("Scenes for area {} already stored concurrently: {}", areaKey, e.getMessage());
+            clear.clear();
+        }
+        return clear;
+    }
+
+    /**
+     * Перепроверяет последние notify-days дней каталога над полигонами подключённых пользователей;
+     * хвост, проверенный позже mutable-ttl назад, повторно не запрашивается.
+     */
+    @Scheduled(fixedDelayString = "${sentinelhub.scenes.watch-interval:PT1H}")
+    public void watchConnectedPolygons() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        Set<String> checked = new HashSet<>();
+        for (Long userId : notificationService.getConnectedUserIds()) {
+            for (PolygonArea polygon : polygonAreaRepository.findByUser_Id(userId)) {
+                try {
+                    Envelope area = areaOf(geometryUtils.fromGeoJson(polygon.getGeoJson()).getEnvelopeInternal());
+                    String areaKey = areaKey(area);
+                    if (checked.add(areaKey)) {
+                        ensureCatalog(areaKey, area, today.minusDays(notifyDays), today).exceptionally(error -> {
+                            log.debug("Scene watch for {} failed: {}", areaKey, error.getMessage());
+                            return null;
+                        });
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Scene watch skipped polygon {}: {}", polygon.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Событие scene владельцам полигонов этой области, подключённым к потоку уведомлений
+    private void notifyClearScenes(String areaKey, List<LocalDate> dates) {
+        for (Long userId : notificationService.getConnectedUserIds()) {
+            for (PolygonArea polygon : polygonAreaRepository.findByUser_Id(userId)) {
+                try {
+                    if (areaKey.equals(areaKey(areaOf(geometryUtils.fromGeoJson(polygon.getGeoJson()).getEnvelopeInternal())))) {
+                        notificationService.send(userId, NotificationService.SCENE,
+                                PolygonNotificationDto.builder().polygonId(polygon.getId()).dates(dates).build());
+                    }
+                } catch (RuntimeException e) {
+                    log.debug("Scene notification skipped polygon {}: {}", polygon.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Уточняет облачность над полем по PNG SCENE_CLASSIFICATION за один день.
+     * Разбор PNG выполняется вне потока пула апстрима.
+     */
+    private void onImage(ImageryRequestKey key, byte[] png) {
+        if (!enabled || !SCENE_CLASSIFICATION.equals(key.getAnalysisType()) || !key.getDateFrom().equals(key.getDateTo())) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            LocalDate date = LocalDate.parse(key.getDateFrom());
+            float fraction = cloudyFraction(RasterUtils.decodePng(png));
+            if (Float.isNaN(fraction)) {
+                return; // Над полем в этот день данных нет
+            }
+            String areaKey = areaKey(areaOf(geometryUtils.fromGeoJson(key.getGeometryJson()).getEnvelopeInternal()));
+            SceneAvailability row = sceneRepository.findByAreaKeyAndAcquisitionDate(areaKey, date)
+                    .orElseGet(() -> SceneAvailability.builder().areaKey(areaKey).acquisitionDate(date).build());
+            row.setFieldCloudFraction(fraction);
+            row.setUpdatedAt(LocalDateTime.now());
+            try {
+                sceneRepository.save(row);
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Scene {} {} stored concurrently: {}", areaKey, date, e.getMessage());
+            }
+            log.debug("Field cloud fraction for {} on {}: {}", areaKey, date, fraction);
+        }).exceptionally(error -> {
+            log.warn("Failed to index SCL image {}: {}", key, error.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Доля облачных пикселей (тени, облака средней и высокой вероятности, перистые) среди непрозрачных.
+     * Цвета — из evalscript SCENE_CLASSIFICATION: серые 0.7 и 0.9. Снег там раскрашен так же, как облака,
+     * и тоже считается облачным — для индексов растительности снимок под снегом всё равно непригоден.
+     *
+     * @return NaN, если непрозрачных пикселей нет.
+     */
+    static float cloudyFraction(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] row = new int[width];
+        int opaque = 0;
+        int cloudy = 0;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int argb : row) {
+                if ((argb >>> 24) == 0) {
+                    continue;
+                }
+                opaque++;
+                int r = (argb >> 16) & 0xFF;
+                int g = (argb >> 8) & 0xFF;
+                int b = argb & 0xFF;
+                // 0.7 * 255 и 0.9 * 255 Sentinel Hub округляет в любую сторону
+                if (r == g && g == b && (r == 178 || r == 179 || r == 229 || r == 230)) {
+                    cloudy++;
+                }
+            }
+        }
+        return opaque == 0 ? Float.NaN : (float) cloudy / opaque;
+    }
+
+    private boolean isUsable(SceneAvailability scene) {
+        if (scene.getFieldCloudFraction() != null) {
+            return scene.getFieldCloudFraction() <= maxFieldCloudFraction;
+        }
+        return scene.getCloudCover() == null || scene.getCloudCover() <= maxTileCloudCover;
+    }
+
+    private LocalDate nearestClearDate(List<SceneAvailability> scenes, LocalDate from, LocalDate to) {
+        return scenes.stream()
+                .filter(this::isUsable)
+                .map(SceneAvailability::getAcquisitionDate)
+                .min(Comparator.comparingLong((LocalDate date) -> distance(date, from, to))
+                        .thenComparing(Comparator.reverseOrder())) // При равенстве — более свежая
+                .orElse(null);
+    }
+
+    private static long distance(LocalDate date, LocalDate from, LocalDate to) {
+        if (date.isBefore(from)) {
+            return ChronoUnit.DAYS.between(date, from);
+        }
+        return date.isAfter(to) ? ChronoUnit.DAYS.between(to, date) : 0;
+    }
+
+    private static boolean within(SceneAvailability scene, LocalDate from, LocalDate to) {
+        return !scene.getAcquisitionDate().isBefore(from) && !scene.getAcquisitionDate().isAfter(to);
+    }
+
+    // Непокрытые интервалы [from, to] при заданных покрытых (покрытые могут пересекаться)
+    private static List<LocalDate[]> missingRanges(List<SceneCatalogCoverage> coverage, LocalDate from, LocalDate to) {
+        List<LocalDate[]> missing = new ArrayList<>();
+        if (to.isBefore(from)) {
+            return missing;
+        }
+        List<SceneCatalogCoverage> sorted = coverage.stream()
+                .sorted(Comparator.comparing(SceneCatalogCoverage::getCoveredFrom))
+                .toList();
+        LocalDate cursor = from;
+        for (SceneCatalogCoverage range : sorted) {
+            if (range.getCoveredTo().isBefore(cursor)) {
+                continue;
+            }
+            if (range.getCoveredFrom().isAfter(to)) {
+                break;
+            }
+            if (range.getCoveredFrom().isAfter(cursor)) {
+                missing.add(new LocalDate[] {cursor, range.getCoveredFrom().minusDays(1)});
+            }
+            cursor = range.getCoveredTo().plusDays(1);
+            if (cursor.isAfter(to)) {
+                return missing;
+            }
+        }
+        missing.add(new LocalDate[] {cursor, to});
+        return missing;
+    }
+
+    // bbox, округлённый наружу до сетки AREA_STEP_DEGREES
+    private static Envelope areaOf(Envelope envelope) {
+        return new Envelope(
+                Math.floor(envelope.getMinX() / AREA_STEP_DEGREES) * AREA_STEP_DEGREES,
+                Math.ceil(envelope.getMaxX() / AREA_STEP_DEGREES) * AREA_STEP_DEGREES,
+                Math.floor(envelope.getMinY() / AREA_STEP_DEGREES) * AREA_STEP_DEGREES,
+                Math.ceil(envelope.getMaxY() / AREA_STEP_DEGREES) * AREA_STEP_DEGREES);
+    }
+
+    private static String areaKey(Envelope area) {
+        return String.format(Locale.ROOT, "%.2f,%.2f,%.2f,%.2f", area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY());
+    }
+}
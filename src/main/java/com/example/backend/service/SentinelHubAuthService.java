@@ -1,9 +1,17 @@
 // src/main/java/com/example/backend/service/SentinelHubAuthService.java
 package com.example.backend.service;
 
+import com.example.backend.util.OkHttpRequestFactory;
+import com.example.backend.util.SingleFlight;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -14,7 +22,11 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -29,25 +41,106 @@ public class SentinelHubAuthService {
     @Value("${sentinelhub.oauth.token-url}")
     private String tokenUrl;
 
-    private String accessToken;
-    private Instant tokenExpiryTime;
-    private final RestTemplate restTemplate = new RestTemplate();
+    // Насколько раньше истечения токена фоновая задача запрашивает новый
+    @Value("${sentinelhub.oauth.refresh-ahead:PT5M}")
+    private Duration refreshAhead;
+
+    // Пауза перед повтором, если фоновое обновление не удалось
+    @Value("${sentinelhub.oauth.retry-delay:PT15S}")
+    private Duration retryDelay;
+
+    // Неизменяемый снимок токена: читается без блокировок, заменяется целиком
+    private volatile AccessToken currentToken;
+
+    private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SingleFlight<String, AccessToken> refreshSingleFlight;
+    private final Timer refreshTimer;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sentinelhub-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SentinelHubAuthService(OkHttpClient httpClient, MeterRegistry meterRegistry) {
+        this.restTemplate = new RestTemplate(new OkHttpRequestFactory(httpClient));
+        this.refreshSingleFlight = new SingleFlight<>(meterRegistry, "sentinel.oauth.refresh.singleflight");
+        this.refreshTimer = Timer.builder("sentinel.oauth.refresh.latency").register(meterRegistry);
+        Gauge.builder("sentinel.oauth.token.age.seconds", this, service -> service.tokenSeconds(true))
+                .register(meterRegistry);
+        Gauge.builder("sentinel.oauth.token.remaining.seconds", this, service -> service.tokenSeconds(false))
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void startRefreshAhead() {
+        // Первый токен получаем в фоне, чтобы не задерживать старт приложения
+        scheduler.execute(this::backgroundRefresh);
+    }
+
+    @PreDestroy
+    void stopRefreshAhead() {
+        scheduler.shutdownNow();
+    }
 
     public String getAccessToken() {
+        AccessToken token = currentToken;
         // Проверяем, действителен ли текущий токен (с запасом в 60 секунд)
-        if (accessToken == null || tokenExpiryTime == null || Instant.now().plusSeconds(60).isAfter(tokenExpiryTime)) {
-            log.info("Access token is missing or expired. Fetching a new one from Sentinel Hub.");
-            fetchNewAccessToken(); // Вызываем метод для получения нового токена
-            log.info("Токен Sentinel Hub обновлен."); // Сообщение об обновлении
+        if (token != null && Instant.now().plusSeconds(60).isBefore(token.expiresAt())) {
+            return token.value();
         }
-        return accessToken;
+        // Сюда попадаем, только если фоновое обновление не успело: параллельные запросы ждут один вызов OAuth
+        log.info("Access token is missing or expired. Fetching a new one from Sentinel Hub.");
+        return refreshSingleFlight.execute("token", this::refresh).value();
+    }
+
+    private void backgroundRefresh() {
+        Duration nextDelay;
+        try {
+            AccessToken token = currentToken;
+            // Токен мог уже обновиться на пути запроса — тогда просто планируем следующий запуск
+            if (token == null || !Instant.now().isBefore(refreshPoint(token))) {
+                token = refreshSingleFlight.execute("token", this::refresh);
+            }
+            nextDelay = Duration.between(Instant.now(), refreshPoint(token));
+        } catch (RuntimeException e) {
+            log.warn("Background Sentinel Hub token refresh failed, retrying in {}: {}", retryDelay, e.getMessage());
+            nextDelay = retryDelay;
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::backgroundRefresh, Math.max(nextDelay.toMillis(), 1000L), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Момент фонового обновления: за refreshAhead до истечения,
+     * но не позже середины срока жизни для короткоживущих токенов.
+     */
+    private Instant refreshPoint(AccessToken token) {
+        Duration halfLife = Duration.between(token.fetchedAt(), token.expiresAt()).dividedBy(2);
+        return token.expiresAt().minus(refreshAhead.compareTo(halfLife) < 0 ? refreshAhead : halfLife);
+    }
+
+    private AccessToken refresh() {
+        AccessToken token = refreshTimer.record(this::fetchNewAccessToken);
+        currentToken = token;
+        log.info("Токен Sentinel Hub обновлен."); // Сообщение об обновлении
+        return token;
+    }
+
+    private double tokenSeconds(boolean age) {
+        AccessToken token = currentToken;
+        if (token == null) {
+            return Double.NaN;
+        }
+        Instant now = Instant.now();
+        return age ? Duration.between(token.fetchedAt(), now).toSeconds() : Duration.between(now, token.expiresAt()).toSeconds();
     }
 
     /**
      * Выполняет запрос к Sentinel Hub OAuth для получения нового Access Token.
      */
-    private void fetchNewAccessToken() {
+    private AccessToken fetchNewAccessToken() {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
 
@@ -62,12 +155,13 @@ public class SentinelHubAuthService {
             String response = restTemplate.postForObject(tokenUrl, request, String.class);
             JsonNode rootNode = objectMapper.readTree(response);
 
-            this.accessToken = rootNode.path("access_token").asText();
+            String accessToken = rootNode.path("access_token").asText();
             long expiresIn = rootNode.path("expires_in").asLong(); // Срок действия в секундах
 
             // --- ОРИГИНАЛЬНАЯ ЛОГИКА ДЛЯ PRODUCTION ---
-            this.tokenExpiryTime = Instant.now().plusSeconds(expiresIn);
+            Instant now = Instant.now();
             log.info("Successfully fetched new Access Token. Expires in {} seconds.", expiresIn);
+            return new AccessToken(accessToken, now, now.plusSeconds(expiresIn));
 
         } catch (HttpClientErrorException e) {
             log.error("HTTP error fetching Sentinel Hub Access Token: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
@@ -77,4 +171,7 @@ public class SentinelHubAuthService {
             throw new RuntimeException("Failed to get Sentinel Hub Access Token", e);
         }
     }
+
+    private record AccessToken(String value, Instant fetchedAt, Instant expiresAt) {
+    }
 }
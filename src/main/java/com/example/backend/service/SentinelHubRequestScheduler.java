@@ -0,0 +1,254 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import com.example.backend.exception.SentinelHubCircuitOpenException;
+import com.example.backend.exception.SentinelHubRateLimitException;
+import com.example.backend.exception.SentinelHubUnavailableException;
+import com.example.backend.util.CircuitBreaker;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Выполняет вызовы Sentinel Hub на отдельном ограниченном пуле потоков, чтобы медленный
+ * апстрим не занимал потоки Tomcat и не блокировал остальные эндпоинты.
+ * <p>
+ * Ответ 429 обрабатывается здесь: учитывается заголовок Retry-After (или экспоненциальная пауза),
+ * и вся очередь приостанавливается до указанного момента, чтобы остальные воркеры не получили тот же 429.
+ * <p>
+ * Все вызовы проходят через {@link CircuitBreaker}: при высокой доле ошибок апстрима (5xx, таймауты)
+ * новые вызовы сразу завершаются {@link SentinelHubCircuitOpenException}, не дожидаясь таймаута.
+ */
+@Component
+@Slf4j
+public class SentinelHubRequestScheduler {
+
+    @Value("${sentinelhub.upstream.max-concurrency:8}")
+    private int maxConcurrency;
+
+    @Value("${sentinelhub.upstream.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${sentinelhub.upstream.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${sentinelhub.upstream.initial-backoff:PT1S}")
+    private Duration initialBackoff;
+
+    @Value("${sentinelhub.upstream.max-backoff:PT30S}")
+    private Duration maxBackoff;
+
+    // Sentinel Hub отдаёт Retry-After в миллисекундах, а не в секундах, как в RFC 9110
+    @Value("${sentinelhub.upstream.retry-after-unit:MILLIS}")
+    private ChronoUnit retryAfterUnit;
+
+    @Value("${sentinelhub.upstream.circuit.window-size:20}")
+    private int circuitWindowSize;
+
+    @Value("${sentinelhub.upstream.circuit.minimum-calls:10}")
+    private int circuitMinimumCalls;
+
+    // Доля ошибок 0..1, при которой автомат размыкается
+    @Value("${sentinelhub.upstream.circuit.failure-rate-threshold:0.5}")
+    private double circuitFailureRateThreshold;
+
+    @Value("${sentinelhub.upstream.circuit.open-duration:PT30S}")
+    private Duration circuitOpenDuration;
+
+    @Value("${sentinelhub.upstream.circuit.half-open-calls:3}")
+    private int circuitHalfOpenCalls;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter rateLimitedCounter;
+    private final Counter retryCounter;
+    private final Counter rejectedCounter;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Момент (epoch millis), до которого новые вызовы не отправляются
+    private final AtomicLong pausedUntil = new AtomicLong();
+    private final List<Consumer<CircuitBreaker.State>> circuitListeners = new CopyOnWriteArrayList<>();
+    private ThreadPoolExecutor executor;
+    private CircuitBreaker circuitBreaker;
+
+    public SentinelHubRequestScheduler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.rateLimitedCounter = Counter.builder("sentinel.upstream.rate-limited").register(meterRegistry);
+        this.retryCounter = Counter.builder("sentinel.upstream.retries").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("sentinel.upstream.rejected").register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "sentinelhub-upstream-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        Gauge.builder("sentinel.upstream.queue.depth", executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("sentinel.upstream.in-flight", inFlight, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("sentinel.upstream.max-concurrency", executor, ThreadPoolExecutor::getMaximumPoolSize).register(meterRegistry);
+        circuitBreaker = new CircuitBreaker("sentinel.upstream.circuit", circuitWindowSize, circuitMinimumCalls,
+                circuitFailureRateThreshold, circuitOpenDuration, circuitHalfOpenCalls, meterRegistry);
+        circuitListeners.forEach(circuitBreaker::addListener);
+    }
+
+    /**
+     * Подписка на смену состояния автомата защиты (например, чтобы обновить устаревшие записи после восстановления).
+     */
+    public void addCircuitListener(Consumer<CircuitBreaker.State> listener) {
+        circuitListeners.add(listener);
+        if (circuitBreaker != null) {
+            circuitBreaker.addListener(listener);
+        }
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Ошибка говорит о неисправности апстрима (5xx, таймаут, обрыв соединения, очередь переполнена),
+     * а не о некорректном запросе (4xx) или ограничении частоты (429).
+     */
+    public static boolean isUpstreamFailure(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof HttpClientErrorException || e instanceof SentinelHubRateLimitException
+                    || e instanceof IllegalArgumentException || e instanceof SecurityException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Ставит вызов в очередь пула апстрима. Если очередь заполнена, future завершается
+     * {@link SentinelHubUnavailableException}, если разомкнут автомат защиты — {@link SentinelHubCircuitOpenException}.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!circuitBreaker.tryAcquire()) {
+            future.completeExceptionally(new SentinelHubCircuitOpenException(
+                    "Sentinel Hub is failing, requests are suspended", circuitBreaker.remainingOpen()));
+            return future;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    T result = callWithRetries(call);
+                    circuitBreaker.onSuccess();
+                    future.complete(result);
+                } catch (Throwable e) {
+                    if (isUpstreamFailure(e)) {
+                        circuitBreaker.onFailure();
+                    } else {
+                        circuitBreaker.onIgnored();
+                    }
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            circuitBreaker.onIgnored();
+            rejectedCounter.increment();
+            future.completeExceptionally(new SentinelHubUnavailableException("Sentinel Hub request queue is full", e));
+        }
+        return future;
+    }
+
+    private <T> T callWithRetries(Supplier<T> call) throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            waitWhilePaused();
+            inFlight.incrementAndGet();
+            try {
+                return call.get();
+            } catch (HttpClientErrorException.TooManyRequests e) {
+                rateLimitedCounter.increment();
+                Duration delay = retryDelay(e.getResponseHeaders(), attempt);
+                pauseFor(delay);
+                if (attempt >= maxRetries) {
+                    log.warn("Sentinel Hub rate limit persists after {} retries", attempt);
+                    throw new SentinelHubRateLimitException("Sentinel Hub rate limit exceeded", delay);
+                }
+                retryCounter.increment();
+                log.info("Sentinel Hub returned 429, retrying in {} ms (attempt {})", delay.toMillis(), attempt + 1);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void waitWhilePaused() throws InterruptedException {
+        long waitMillis;
+        while ((waitMillis = pausedUntil.get() - System.currentTimeMillis()) > 0) {
+            Thread.sleep(waitMillis);
+        }
+    }
+
+    private void pauseFor(Duration delay) {
+        long until = System.currentTimeMillis() + delay.toMillis();
+        pausedUntil.accumulateAndGet(until, Math::max);
+    }
+
+    /**
+     * Пауза перед повтором: Retry-After, если он есть, — ровно столько, сколько просит сервер
+     * (повтор раньше срока снова получит 429), иначе экспоненциальная с джиттером, ограниченная maxBackoff.
+     */
+    private Duration retryDelay(HttpHeaders headers, int attempt) {
+        Duration fromHeader = parseRetryAfter(headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER));
+        if (fromHeader != null) {
+            return fromHeader;
+        }
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempt, 16))
+                .plusMillis(ThreadLocalRandom.current().nextLong(initialBackoff.toMillis() + 1));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+
+    private Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.of(Long.parseLong(value.trim()), retryAfterUnit);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                long millis = at.toInstant().toEpochMilli() - System.currentTimeMillis();
+                return Duration.ofMillis(Math.max(millis, 0));
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
@@ -1,6 +1,35 @@
 // src/main/java/com/example/backend/service/SentinelHubService.java
 package com.example.backend.service;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
@@ -8,15 +37,43 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.DefaultResponseErrorHandler;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import com.example.backend.model.AnalysisTemplate;
+import com.example.backend.model.ColorRamp;
+import com.example.backend.model.ImageryRequestKey;
+import com.example.backend.model.ImageryResult;
+import com.example.backend.model.ImageryStream;
+import com.example.backend.model.ImageryVersion;
+import com.example.backend.model.IndexObservation;
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.RasterFormat;
+import com.example.backend.model.SceneAcquisition;
+import com.example.backend.util.CircuitBreaker;
+import com.example.backend.util.GeometryUtils;
+import com.example.backend.util.IndexRasterCodec;
+import com.example.backend.util.OkHttpRequestFactory;
+import com.example.backend.util.RasterUtils;
+import com.example.backend.util.SingleFlight;
+import com.example.backend.util.TarReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
 
 @Service
 @Slf4j
@@ -25,13 +82,111 @@ public class SentinelHubService {
     @Value("${sentinelhub.process.api-url}")
     private String processApiUrl;
 
+    @Value("${sentinelhub.statistics.api-url:https://services.sentinel-hub.com/api/v1/statistics}")
+    private String statisticsApiUrl;
+
+    @Value("${sentinelhub.catalog.api-url:https://services.sentinel-hub.com/api/v1/catalog/1.0.0/search}")
+    private String catalogApiUrl;
+
+    @Value("${sentinelhub.catalog.page-size:100}")
+    private int catalogPageSize;
+
+    @Value("${sentinelhub.cache.mutable-ttl:PT15M}")
+    private Duration mutableTtl;
+
+    // Снимок за интервал, закончившийся в последние settle-days дней, ещё может измениться от поздно загруженных сцен
+    @Value("${sentinelhub.timeseries.settle-days:3}")
+    private int settleDays;
+
+    // Индексы (NDVI, NDWI, ...) раскрашиваются у нас из закэшированного растра значений
+    @Value("${sentinelhub.render.local:true}")
+    private boolean localRendering;
+
+    @Value("${sentinelhub.upstream.connect-timeout:PT10S}")
+    private Duration connectTimeout;
+
+    @Value("${sentinelhub.upstream.read-timeout:PT60S}")
+    private Duration readTimeout;
+
+    // С какого размера (в пикселях) изображение Process API отдаётся клиенту потоком, а не массивом байтов
+    @Value("${sentinelhub.streaming.min-pixels:1000000}")
+    private long streamingMinPixels;
+
+    // Наибольшая сторона выхода одного запроса Process API; больший выход собирается из тайлов
+    @Value("${sentinelhub.tiling.tile-size:2500}")
+    private int tileSize;
+
+    // При недоступном Sentinel Hub отдавать последний снимок той же геометрии и типа из кэша
+    @Value("${sentinelhub.cache.stale-fallback:true}")
+    private boolean staleFallback;
+
+    @Value("${sentinelhub.cache.max-pending-refreshes:1000}")
+    private int maxPendingRefreshes;
+
     private final SentinelHubAuthService authService;
+    private final ImageryCache imageryCache;
+    private final AnalysisTemplateRegistry templateRegistry;
+    private final PaletteRegistry paletteRegistry;
+    private final SentinelHubRequestScheduler requestScheduler;
+    private final GeometryPreparer geometryPreparer;
+    private final GeometryUtils geometryUtils;
+    private final SingleFlight<String, byte[]> imageSingleFlight;
+    // Мультивыходной tar разбирается один раз в общем этапе; ожидающие получают уже готовые PNG по идентификаторам
+    private final SingleFlight<String, Map<String, byte[]>> multiOutputSingleFlight;
+    private final OkHttpClient httpClient;
     private final RestTemplate restTemplate = new RestTemplate();
+    private final DefaultResponseErrorHandler errorHandler = new DefaultResponseErrorHandler();
+    private ClientHttpRequestFactory requestFactory;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Counter staleServedCounter;
+    private final Counter staleRefreshedCounter;
+
+    // Ключ запроса -> обновление записи, отданной устаревшей; выполняется после восстановления апстрима
+    private final Map<String, Supplier<CompletableFuture<?>>> pendingRefreshes = new LinkedHashMap<>();
+    // Получатели свежих PNG из Process API (например, индекс облачности по слою SCL)
+    private final List<BiConsumer<ImageryRequestKey, byte[]>> imageListeners = new CopyOnWriteArrayList<>();
 
     @Autowired
-    public SentinelHubService(SentinelHubAuthService authService) {
+    public SentinelHubService(SentinelHubAuthService authService, ImageryCache imageryCache,
+                              AnalysisTemplateRegistry templateRegistry, PaletteRegistry paletteRegistry,
+                              SentinelHubRequestScheduler requestScheduler, GeometryPreparer geometryPreparer,
+                              GeometryUtils geometryUtils, OkHttpClient httpClient, MeterRegistry meterRegistry) {
         this.authService = authService;
+        this.httpClient = httpClient;
+        this.imageryCache = imageryCache;
+        this.templateRegistry = templateRegistry;
+        this.paletteRegistry = paletteRegistry;
+        this.requestScheduler = requestScheduler;
+        this.geometryPreparer = geometryPreparer;
+        this.geometryUtils = geometryUtils;
+        this.imageSingleFlight = new SingleFlight<>(meterRegistry, "sentinel.imagery.singleflight");
+        this.multiOutputSingleFlight = new SingleFlight<>(meterRegistry, "sentinel.imagery.multi-output.singleflight");
+        this.staleServedCounter = Counter.builder("sentinel.imagery.stale").tag("result", "served").register(meterRegistry);
+        this.staleRefreshedCounter = Counter.builder("sentinel.imagery.stale").tag("result", "refreshed").register(meterRegistry);
+        requestScheduler.addCircuitListener(state -> {
+            if (state == CircuitBreaker.State.CLOSED) {
+                refreshStale();
+            }
+        });
+    }
+
+    @PostConstruct
+    void configureTimeouts() {
+        // Без таймаутов зависший апстрим держит поток пула бесконечно и автомат защиты не видит ошибок.
+        // Пул соединений и лимит на хост — общие с остальными исходящими вызовами
+        requestFactory = new OkHttpRequestFactory(httpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .build());
+        restTemplate.setRequestFactory(requestFactory);
+    }
+
+    /**
+     * Подписывает на PNG, только что полученные из Process API (из кэша повторно не приходят).
+     * Вызывается на потоке пула апстрима, поэтому тяжёлую обработку слушатель должен уводить в свой пул.
+     */
+    public void addImageListener(BiConsumer<ImageryRequestKey, byte[]> listener) {
+        imageListeners.add(listener);
     }
 
     /**
@@ -46,311 +201,848 @@ public class SentinelHubService {
      * @return Массив байтов изображения (PNG).
      */
     public byte[] getProcessedImage(String polygonGeoJson, String analysisType, String dateFrom, String dateTo, int width, int height) {
-        String accessToken = authService.getAccessToken();
+        try {
+            return getProcessedImageAsync(polygonGeoJson, analysisType, dateFrom, dateTo, width, height).join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Асинхронный вариант {@link #getProcessedImage}: поток вызывающего не ждёт Sentinel Hub,
+     * сам вызов выполняется на ограниченном пуле {@link SentinelHubRequestScheduler}.
+     */
+    public CompletableFuture<byte[]> getProcessedImageAsync(String polygonGeoJson, String analysisType, String dateFrom, String dateTo, int width, int height) {
+        if (localRendering && templateRegistry.hasIndex(analysisType)) {
+            return renderIndexImageAsync(polygonGeoJson, analysisType, dateFrom, dateTo, width, height, null, null);
+        }
+        AnalysisTemplate template = templateRegistry.get(analysisType);
+        ImageryRequestKey key = requestKey(polygonGeoJson, template.getName(), dateFrom, dateTo, width, height);
+        Optional<byte[]> cached = imageryCache.get(key.getHash());
+        if (cached.isPresent()) {
+            log.debug("Imagery cache hit for {}", key);
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        return fetchImage(template, key, cacheTtl(key));
+    }
+
+    /**
+     * Изображение для показа клиенту: индексы раскрашиваются локально (с палитрой и прозрачностью, если заданы),
+     * остальные типы запрашиваются у Process API.
+     * <p>
+     * Если Sentinel Hub недоступен (автомат защиты разомкнут, 5xx, таймаут), отдаётся последний полученный
+     * снимок той же геометрии и типа анализа с отметкой устаревания, а запрос запоминается и повторяется
+     * в фоне после восстановления апстрима.
+     */
+    public CompletableFuture<ImageryResult> getImageAsync(String polygonGeoJson, String analysisType, String dateFrom, String dateTo,
+                                                          int width, int height, String palette, Double opacity) {
+        if (isLocallyRendered(analysisType, palette, opacity)) {
+            AnalysisTemplate template = templateRegistry.getIndex(analysisType);
+            ColorRamp ramp = rampFor(template.getName(), palette, opacity);
+            ImageryRequestKey key = indexRasterKey(template, polygonGeoJson, dateFrom, dateTo, width, height);
+            return withStaleFallback(
+                    getIndexRasterAsync(polygonGeoJson, analysisType, dateFrom, dateTo, width, height)
+                            .thenApply(raster -> RasterUtils.encodePng(RasterUtils.render(raster, ramp))),
+                    key,
+                    raw -> RasterUtils.encodePng(RasterUtils.render(IndexRaster.fromBytes(raw), ramp)),
+                    () -> fetchIndexRaster(template, key, cacheTtl(key)));
+        }
+        AnalysisTemplate template = templateRegistry.get(analysisType);
+        ImageryRequestKey key = requestKey(polygonGeoJson, template.getName(), dateFrom, dateTo, width, height);
+        return withStaleFallback(
+                getProcessedImageAsync(polygonGeoJson, analysisType, dateFrom, dateTo, width, height),
+                key,
+                Function.identity(),
+                () -> fetchImage(template, key, cacheTtl(key)));
+    }
+
+    /**
+     * Растр значений индекса в компактном формате ({@link IndexRasterCodec}) для раскраски на клиенте.
+     * Берётся тот же кэшированный растр FLOAT32, что и для локальной раскраски, так что у Sentinel Hub
+     * он запрашивается один раз для обоих представлений. При недоступном Sentinel Hub — устаревшая копия.
+     *
+     * @param format UINT8 или FLOAT16.
+     */
+    public CompletableFuture<ImageryResult> getIndexRasterImageAsync(String polygonGeoJson, String analysisType, String dateFrom,
+                                                                     String dateTo, int width, int height, RasterFormat format) {
+        AnalysisTemplate template = templateRegistry.getIndex(analysisType);
+        ImageryRequestKey key = indexRasterKey(template, polygonGeoJson, dateFrom, dateTo, width, height);
+        return withStaleFallback(
+                getIndexRasterAsync(polygonGeoJson, analysisType, dateFrom, dateTo, width, height)
+                        .thenApply(raster -> IndexRasterCodec.encode(raster, format)),
+                key,
+                raw -> IndexRasterCodec.encode(IndexRaster.fromBytes(raw), format),
+                () -> fetchIndexRaster(template, key, cacheTtl(key)));
+    }
+
+    /**
+     * Версия изображения, которое вернул бы {@link #getImageAsync} (или {@link #getIndexRasterImageAsync}
+     * для формата UINT8/FLOAT16) с теми же параметрами, — для ETag и Cache-Control.
+     * Для прошедшего интервала ETag определяется самим запросом; для текущего — ещё и моментом истечения
+     * записи в кэше (новая запись — новый ETag), а если записи нет, версия неизвестна.
+     *
+     * @param format Формат ответа; null — PNG.
+     * @param immutableMaxAge Срок кэширования у клиента для прошедших интервалов.
+     */
+    public ImageryVersion getImageVersion(String polygonGeoJson, String analysisType, String dateFrom, String dateTo,
+                                          int width, int height, String palette, Double opacity, RasterFormat format,
+                                          Duration immutableMaxAge) {
+        ImageryRequestKey key = imageKey(polygonGeoJson, analysisType, dateFrom, dateTo, width, height, palette, opacity, format);
+        String variant = "";
+        if (format != null && format != RasterFormat.PNG) {
+            variant = "-" + format.name().toLowerCase(Locale.ROOT);
+        } else if (isLocallyRendered(analysisType, palette, opacity)) {
+            ColorRamp ramp = rampFor(templateRegistry.getIndex(analysisType).getName(), palette, opacity);
+            // Раскраска — часть результата: другая шкала или прозрачность даёт другой ETag
+            variant = "-" + Integer.toHexString((ramp.getName() + '|' + opacity).hashCode());
+        }
+        String tag = key.getHash().substring(0, 32) + variant;
+        if (key.isImmutable(settleDays)) {
+            return new ImageryVersion('"' + tag + '"', true, immutableMaxAge);
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = imageryCache.expiresAt(key.getHash()).orElse(0L);
+        if (expiresAt <= now) {
+            return new ImageryVersion(null, false, Duration.ZERO);
+        }
+        return new ImageryVersion('"' + tag + '-' + Long.toString(expiresAt, 36) + '"', false, Duration.ofMillis(expiresAt - now));
+    }
+
+    /**
+     * Есть ли в кэше непросроченный результат с такими параметрами, то есть будет ли он отдан без запроса
+     * к Process API. Только чтение индекса кэша, без содержимого.
+     */
+    public boolean isImageCached(String polygonGeoJson, String analysisType, String dateFrom, String dateTo,
+                                 int width, int height, String palette, Double opacity, RasterFormat format) {
+        return imageryCache.contains(imageKey(polygonGeoJson, analysisType, dateFrom, dateTo, width, height, palette, opacity, format).getHash());
+    }
+
+    // Ключ кэша, под которым лежит исходник ответа: растр значений для индексов и форматов UINT8/FLOAT16, иначе PNG
+    private ImageryRequestKey imageKey(String polygonGeoJson, String analysisType, String dateFrom, String dateTo,
+                                       int width, int height, String palette, Double opacity, RasterFormat format) {
+        if ((format != null && format != RasterFormat.PNG) || isLocallyRendered(analysisType, palette, opacity)) {
+            return indexRasterKey(templateRegistry.getIndex(analysisType), polygonGeoJson, dateFrom, dateTo, width, height);
+        }
+        return requestKey(polygonGeoJson, templateRegistry.get(analysisType).getName(), dateFrom, dateTo, width, height);
+    }
+
+    /**
+     * Отдаётся ли изображение с такими параметрами потоком ({@link #openImageStreamAsync}):
+     * только крупные изображения Process API, индексы раскрашиваются локально. Выход больше tile-size
+     * собирается из тайлов в памяти, поэтому потоком не отдаётся.
+     */
+    public boolean isStreamable(String analysisType, String palette, Double opacity, int width, int height) {
+        return !isLocallyRendered(analysisType, palette, opacity) && (long) width * height >= streamingMinPixels
+                && !exceedsTileSize(width, height);
+    }
+
+    /**
+     * Изображение Process API для потоковой отдачи клиенту. Запись из кэша передаётся с диска через
+     * FileChannel.transferTo; ответ Sentinel Hub пересылается клиенту по мере получения через буфер
+     * фиксированного размера и одновременно пишется в дисковый кэш. Пик памяти на запрос не зависит
+     * от размера изображения.
+     * <p>
+     * Одинаковые одновременные запросы здесь не объединяются: ответ нельзя раздать нескольким клиентам,
+     * не буферизуя его.
+     */
+    public CompletableFuture<ImageryStream> openImageStreamAsync(String polygonGeoJson, String analysisType, String dateFrom,
+                                                                 String dateTo, int width, int height) {
+        AnalysisTemplate template = templateRegistry.get(analysisType);
+        ImageryRequestKey key = requestKey(polygonGeoJson, template.getName(), dateFrom, dateTo, width, height);
+        Optional<ImageryStream> cached = imageryCache.openStream(key.getHash());
+        if (cached.isPresent()) {
+            log.debug("Imagery cache hit for {} (streaming)", key);
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        String body = template.writeRequest(key.getGeometryJson(), key.getDateFrom(), key.getDateTo(), key.getWidth(), key.getHeight());
+        Duration ttl = cacheTtl(key);
+        // В пуле апстрима — только до заголовков ответа (там же повторы при 429 и автомат защиты), тело читает поток клиента
+        return requestScheduler.submit(() -> openUpstream(processApiUrl, body, MediaType.IMAGE_PNG_VALUE, template.getName()))
+                .thenApply(response -> new UpstreamImageStream(response, key, ttl));
+    }
+
+    private boolean isLocallyRendered(String analysisType, String palette, Double opacity) {
+        return palette != null || opacity != null || (localRendering && templateRegistry.hasIndex(analysisType));
+    }
+
+    private CompletableFuture<ImageryResult> withStaleFallback(CompletableFuture<byte[]> request, ImageryRequestKey key,
+                                                               Function<byte[], byte[]> present,
+                                                               Supplier<CompletableFuture<?>> refresh) {
+        return request.thenApply(ImageryResult::fresh).exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (!staleFallback || !SentinelHubRequestScheduler.isUpstreamFailure(cause)) {
+                throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+            }
+            Optional<byte[]> pointer = imageryCache.getStale(key.getLatestHash());
+            Optional<byte[]> stale = pointer.flatMap(bytes -> imageryCache.getStale(latestDataHash(bytes)));
+            if (stale.isEmpty()) {
+                throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+            }
+            Instant fetchedAt = Instant.ofEpochMilli(ByteBuffer.wrap(pointer.get()).getLong());
+            staleServedCounter.increment();
+            log.warn("Sentinel Hub unavailable ({}), serving {} from {}", cause.getMessage(), key, fetchedAt);
+            synchronized (pendingRefreshes) {
+                pendingRefreshes.put(key.getHash(), refresh);
+                if (pendingRefreshes.size() > maxPendingRefreshes) {
+                    pendingRefreshes.remove(pendingRefreshes.keySet().iterator().next());
+                }
+            }
+            return ImageryResult.stale(present.apply(stale.get()), fetchedAt);
+        });
+    }
+
+    /**
+     * Повторяет запросы, на которые были отданы устаревшие снимки. Вызывается, когда автомат защиты замкнулся.
+     */
+    private void refreshStale() {
+        List<Supplier<CompletableFuture<?>>> refreshes;
+        synchronized (pendingRefreshes) {
+            refreshes = new ArrayList<>(pendingRefreshes.values());
+            pendingRefreshes.clear();
+        }
+        if (refreshes.isEmpty()) {
+            return;
+        }
+        log.info("Sentinel Hub recovered, refreshing {} stale images", refreshes.size());
+        for (Supplier<CompletableFuture<?>> refresh : refreshes) {
+            refresh.get().whenComplete((ignored, error) -> {
+                if (error == null) {
+                    staleRefreshedCounter.increment();
+                } else {
+                    log.debug("Stale image refresh failed: {}", error.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Кладёт снимок в кэш и запоминает его как последний для той же геометрии и типа анализа.
+     * Указатель хранится бессрочно: 8 байт момента получения и ключ записи.
+     */
+    private void store(ImageryRequestKey key, byte[] data, Duration ttl) {
+        imageryCache.put(key.getHash(), data, ttl);
+        rememberLatest(key);
+    }
+
+    private void rememberLatest(ImageryRequestKey key) {
+        byte[] hash = key.getHash().getBytes(StandardCharsets.US_ASCII);
+        imageryCache.put(key.getLatestHash(),
+                ByteBuffer.allocate(Long.BYTES + hash.length).putLong(System.currentTimeMillis()).put(hash).array(), null);
+    }
+
+    private static String latestDataHash(byte[] pointer) {
+        return new String(pointer, Long.BYTES, pointer.length - Long.BYTES, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Запрашивает значения индекса (FLOAT32) для геометрии — основа для статистики, а не для показа.
+     * Пиксели вне dataMask приходят как NaN.
+     *
+     * @param analysisType Тип анализа с числовым индексом (NDVI, NDWI, MOISTURE_INDEX, NDSI).
+     */
+    public CompletableFuture<IndexRaster> getIndexRasterAsync(String polygonGeoJson, String analysisType, String dateFrom, String dateTo, int width, int height) {
+        AnalysisTemplate template = templateRegistry.getIndex(analysisType);
+        ImageryRequestKey key = indexRasterKey(template, polygonGeoJson, dateFrom, dateTo, width, height);
+        Optional<byte[]> cached = imageryCache.get(key.getHash());
+        if (cached.isPresent()) {
+            log.debug("Index raster cache hit for {}", key);
+            return CompletableFuture.completedFuture(IndexRaster.fromBytes(cached.get()));
+        }
+        return fetchIndexRaster(template, key, cacheTtl(key)).thenApply(IndexRaster::fromBytes);
+    }
+
+    /**
+     * Заранее загружает в кэш то, что вернул бы {@link #getProcessedImageAsync} с теми же параметрами.
+     *
+     * @param mutableTtl Время жизни, если интервал захватывает последние settle-days дней (более старые хранятся бессрочно).
+     * @return true — запрос к Sentinel Hub выполнен; false — свежая запись уже была в кэше.
+     */
+    public CompletableFuture<Boolean> prewarmAsync(String polygonGeoJson, String analysisType, String dateFrom, String dateTo,
+                                                   int width, int height, Duration mutableTtl) {
+        boolean index = localRendering && templateRegistry.hasIndex(analysisType);
+        AnalysisTemplate template = index ? templateRegistry.getIndex(analysisType) : templateRegistry.get(analysisType);
+        ImageryRequestKey key = index
+                ? indexRasterKey(template, polygonGeoJson, dateFrom, dateTo, width, height)
+                : requestKey(polygonGeoJson, template.getName(), dateFrom, dateTo, width, height);
+        if (imageryCache.contains(key.getHash())) {
+            return CompletableFuture.completedFuture(false);
+        }
+        Duration ttl = key.isImmutable(settleDays) ? null : mutableTtl;
+        return (index ? fetchIndexRaster(template, key, ttl) : fetchImage(template, key, ttl)).thenApply(ignored -> true);
+    }
+
+    private ImageryRequestKey indexRasterKey(AnalysisTemplate template, String polygonGeoJson, String dateFrom, String dateTo, int width, int height) {
+        return requestKey(polygonGeoJson, template.getName() + ":FLOAT32", dateFrom, dateTo, width, height);
+    }
+
+    /**
+     * Ключ строится по подготовленной геометрии (упрощённой под размер пикселя, с округлёнными координатами) —
+     * она же уходит в тело запроса.
+     */
+    private ImageryRequestKey requestKey(String polygonGeoJson, String name, String dateFrom, String dateTo, int width, int height) {
+        return ImageryRequestKey.of(objectMapper, geometryPreparer.prepare(polygonGeoJson, width, height), name, dateFrom, dateTo, width, height);
+    }
+
+    /**
+     * Запрашивает PNG у Process API и кладёт его в кэш.
+     * @param ttl Время жизни записи; null — бессрочно.
+     */
+    private CompletableFuture<byte[]> fetchImage(AnalysisTemplate template, ImageryRequestKey key, Duration ttl) {
+        String body = template.writeRequest(key.getGeometryJson(), key.getDateFrom(), key.getDateTo(), key.getWidth(), key.getHeight());
+        log.debug("Sentinel Hub Process API Request Body: {}", body);
+        // Одинаковые тела запросов, пришедшие одновременно, разделяют один вызов Sentinel Hub
+        return imageSingleFlight.executeAsync(body, () -> requestImage(template, key, body)
+                .thenApply(image -> {
+                    store(key, image, ttl);
+                    notifyImageListeners(key, image);
+                    return image;
+                }));
+    }
+
+    private CompletableFuture<byte[]> requestImage(AnalysisTemplate template, ImageryRequestKey key, String body) {
+        if (!exceedsTileSize(key.getWidth(), key.getHeight())) {
+            return requestScheduler.submit(() -> exchangeForImage(processApiUrl, body, MediaType.IMAGE_PNG_VALUE, template.getName()));
+        }
+        List<int[]> windows = tileWindows(key.getWidth(), key.getHeight());
+        // Сборка мозаики — работа процессора, не занимаем ею поток пула апстрима
+        return fetchTiles(template, key, MediaType.IMAGE_PNG_VALUE, windows).thenApplyAsync(tiles -> {
+            BufferedImage mosaic = new BufferedImage(key.getWidth(), key.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            for (int i = 0; i < windows.size(); i++) {
+                if (tiles.get(i) != null) {
+                    RasterUtils.paste(mosaic, RasterUtils.decodePng(tiles.get(i)), windows.get(i)[0], windows.get(i)[1]);
+                }
+            }
+            return RasterUtils.encodePng(mosaic);
+        });
+    }
+
+    private void notifyImageListeners(ImageryRequestKey key, byte[] image) {
+        for (BiConsumer<ImageryRequestKey, byte[]> listener : imageListeners) {
+            try {
+                listener.accept(key, image);
+            } catch (RuntimeException e) {
+                // Ошибка слушателя не должна ломать ответ клиенту
+                log.warn("Image listener failed for {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Запрашивает растр индекса (FLOAT32 TIFF) и кладёт в кэш уже раскодированные значения,
+     * чтобы на попадании не разбирать TIFF.
+     */
+    private CompletableFuture<byte[]> fetchIndexRaster(AnalysisTemplate template, ImageryRequestKey key, Duration ttl) {
+        String body = template.writeRequest(key.getGeometryJson(), key.getDateFrom(), key.getDateTo(), key.getWidth(), key.getHeight());
+        log.debug("Sentinel Hub Process API Request Body: {}", body);
+        return imageSingleFlight.executeAsync(body, () -> requestIndexRaster(template, key, body)
+                .thenApply(raster -> {
+                    byte[] raw = raster.toBytes();
+                    store(key, raw, ttl);
+                    return raw;
+                }));
+    }
+
+    private CompletableFuture<IndexRaster> requestIndexRaster(AnalysisTemplate template, ImageryRequestKey key, String body) {
+        if (!exceedsTileSize(key.getWidth(), key.getHeight())) {
+            return requestScheduler.submit(() -> exchangeForImage(processApiUrl, body, "image/tiff", template.getName()))
+                    .thenApply(RasterUtils::decodeFloatTiff);
+        }
+        List<int[]> windows = tileWindows(key.getWidth(), key.getHeight());
+        return fetchTiles(template, key, "image/tiff", windows).thenApplyAsync(tiles -> {
+            // Тайлы вне геометрии не запрашивались — там нет данных
+            float[] values = new float[key.getWidth() * key.getHeight()];
+            Arrays.fill(values, Float.NaN);
+            for (int i = 0; i < windows.size(); i++) {
+                if (tiles.get(i) != null) {
+                    RasterUtils.paste(values, key.getWidth(), RasterUtils.decodeFloatTiff(tiles.get(i)), windows.get(i)[0], windows.get(i)[1]);
+                }
+            }
+            return new IndexRaster(key.getWidth(), key.getHeight(), values);
+        });
+    }
+
+    private boolean exceedsTileSize(int width, int height) {
+        return width > tileSize || height > tileSize;
+    }
+
+    /**
+     * Делит выход width x height на сетку почти равных окон {x, y, width, height} не больше tile-size по стороне.
+     */
+    private List<int[]> tileWindows(int width, int height) {
+        int columns = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+        List<int[]> windows = new ArrayList<>(columns * rows);
+        for (int row = 0; row < rows; row++) {
+            int top = row * height / rows;
+            int bottom = (row + 1) * height / rows;
+            for (int column = 0; column < columns; column++) {
+                int left = column * width / columns;
+                int right = (column + 1) * width / columns;
+                windows.add(new int[] {left, top, right - left, bottom - top});
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Запрашивает окна выхода отдельными вызовами Process API: у каждого тайла bbox — его участок охвата
+     * геометрии, сама геометрия та же. Границы bbox вычисляются по номеру линии пиксельной сетки полного
+     * выхода, поэтому у соседних тайлов общая граница совпадает до бита — без щелей и перекрытий.
+     * Тайлы, не задевающие геометрию, не запрашиваются (null на их месте). Все вызовы идут через
+     * планировщик апстрима, так что одновременно выполняется не больше его лимита.
+     *
+     * @return Ответы в порядке windows.
+     */
+    private CompletableFuture<List<byte[]>> fetchTiles(AnalysisTemplate template, ImageryRequestKey key, String accept,
+                                                       List<int[]> windows) {
+        Geometry geometry = geometryUtils.fromGeoJson(key.getGeometryJson());
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(geometry);
+        Envelope extent = geometry.getEnvelopeInternal();
+        List<CompletableFuture<byte[]>> tiles = new ArrayList<>(windows.size());
+        for (int[] window : windows) {
+            Envelope bbox = new Envelope(
+                    gridLine(extent.getMinX(), extent.getMaxX(), window[0], key.getWidth()),
+                    gridLine(extent.getMinX(), extent.getMaxX(), window[0] + window[2], key.getWidth()),
+                    gridLine(extent.getMaxY(), extent.getMinY(), window[1] + window[3], key.getHeight()),
+                    gridLine(extent.getMaxY(), extent.getMinY(), window[1], key.getHeight()));
+            Geometry tile = geometryUtils.getFactory().toGeometry(bbox);
+            // Касание по границе тайла пикселей полигона в нём не даёт
+            if (!prepared.intersects(tile) || prepared.touches(tile)) {
+                tiles.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            String body = template.writeRequest(key.getGeometryJson(), bbox, key.getDateFrom(), key.getDateTo(), window[2], window[3]);
+            tiles.add(requestScheduler.submit(() -> exchangeForImage(processApiUrl, body, accept, template.getName())));
+        }
+        log.debug("Requesting {}x{} for {} as {} tiles", key.getWidth(), key.getHeight(), key, windows.size());
+        return CompletableFuture.allOf(tiles.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> tiles.stream().map(CompletableFuture::join).toList());
+    }
+
+    // Координата линии index из count пикселей между from и to; крайние линии — ровно границы охвата
+    private static double gridLine(double from, double to, int index, int count) {
+        return index == count ? to : from + (to - from) * index / count;
+    }
+
+    /**
+     * Раскрашивает индекс локально: растр значений берётся из кэша (или один раз из Sentinel Hub),
+     * шкала и прозрачность применяются у нас, поэтому смена палитры не стоит запроса к Sentinel Hub.
+     *
+     * @param palette Имя шкалы из {@link PaletteRegistry}; null — шкала по умолчанию для индекса.
+     * @param opacity Прозрачность 0..1; null — без изменений.
+     */
+    public CompletableFuture<byte[]> renderIndexImageAsync(String polygonGeoJson, String analysisType, String dateFrom, String dateTo,
+                                                           int width, int height, String palette, Double opacity) {
+        String indexName = templateRegistry.getIndex(analysisType).getName();
+        ColorRamp ramp = rampFor(indexName, palette, opacity);
+        return getIndexRasterAsync(polygonGeoJson, indexName, dateFrom, dateTo, width, height)
+                .thenApply(raster -> RasterUtils.encodePng(RasterUtils.render(raster, ramp)));
+    }
+
+    ColorRamp rampFor(String indexName, String palette, Double opacity) {
+        ColorRamp ramp = palette == null ? paletteRegistry.defaultFor(indexName) : paletteRegistry.get(palette);
+        return opacity != null ? ramp.withOpacity(opacity) : ramp;
+    }
+
+    /**
+     * Запрашивает у Statistical API дневную статистику индекса по геометрии за [dateFrom, dateTo].
+     * Дни без снимков или целиком под облаками в результат не попадают.
+     *
+     * @param resolutionX Размер пикселя по долготе в градусах.
+     * @param resolutionY Размер пикселя по широте в градусах.
+     */
+    public CompletableFuture<List<IndexObservation>> getDailyIndexStatisticsAsync(String polygonGeoJson, String analysisType,
+                                                                                  LocalDate dateFrom, LocalDate dateTo,
+                                                                                  double resolutionX, double resolutionY) {
+        String evalscript = templateRegistry.getStatisticalEvalscript(analysisType);
+        String body;
+        try {
+            JsonNode geometry = objectMapper.readTree(geometryPreparer.prepare(polygonGeoJson, Math.min(resolutionX, resolutionY)));
+            ObjectNode request = objectMapper.createObjectNode();
+            ObjectNode input = request.putObject("input");
+            input.putObject("bounds").set("geometry", geometry);
+            input.putArray("data").addObject().put("type", "sentinel-2-l2a");
+            ObjectNode aggregation = request.putObject("aggregation");
+            // Конец интервала — начало следующего дня: иначе последний неполный интервал P1D отбрасывается
+            aggregation.putObject("timeRange")
+                    .put("from", dateFrom + "T00:00:00Z")
+                    .put("to", dateTo.plusDays(1) + "T00:00:00Z");
+            aggregation.putObject("aggregationInterval").put("of", "P1D");
+            aggregation.put("evalscript", evalscript);
+            aggregation.put("resx", resolutionX);
+            aggregation.put("resy", resolutionY);
+            request.putObject("calculations").putObject("default");
+            body = request.toString();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid GeoJSON geometry", e);
+        }
+        log.debug("Sentinel Hub Statistical API Request Body: {}", body);
+        return requestScheduler.submit(() -> exchangeForImage(statisticsApiUrl, body, MediaType.APPLICATION_JSON_VALUE, analysisType + " statistics"))
+                .thenApply(this::readDailyStatistics);
+    }
+
+    /**
+     * Ищет в Catalog API снимки Sentinel-2 L2A, пересекающие bbox, за [dateFrom, dateTo].
+     * Все страницы ответа читаются в одной задаче пула апстрима.
+     *
+     * @return Снимки в порядке ответа Catalog API; за одну дату их может быть несколько (соседние гранулы).
+     */
+    public CompletableFuture<List<SceneAcquisition>> searchScenesAsync(Envelope bbox, LocalDate dateFrom, LocalDate dateTo) {
+        ObjectNode request = objectMapper.createObjectNode();
+        request.putArray("bbox").add(bbox.getMinX()).add(bbox.getMinY()).add(bbox.getMaxX()).add(bbox.getMaxY());
+        request.put("datetime", dateFrom + "T00:00:00Z/" + dateTo + "T23:59:59Z");
+        request.putArray("collections").add("sentinel-2-l2a");
+        request.put("limit", catalogPageSize);
+        ObjectNode fields = request.putObject("fields");
+        fields.putArray("include").add("properties.datetime").add("properties.eo:cloud_cover");
+        fields.putArray("exclude").add("assets").add("links").add("geometry");
+        return requestScheduler.submit(() -> {
+            List<SceneAcquisition> scenes = new ArrayList<>();
+            Integer next = null;
+            do {
+                if (next != null) {
+                    request.put("next", next);
+                }
+                String body = request.toString();
+                log.debug("Sentinel Hub Catalog API Request Body: {}", body);
+                next = readCatalogPage(exchangeForImage(catalogApiUrl, body, MediaType.APPLICATION_JSON_VALUE, "catalog"), scenes);
+            } while (next != null);
+            return scenes;
+        });
+    }
+
+    // Добавляет снимки страницы в scenes; возвращает номер следующей страницы или null
+    private Integer readCatalogPage(byte[] response, List<SceneAcquisition> scenes) {
+        try {
+            JsonNode page = objectMapper.readTree(response);
+            for (JsonNode feature : page.path("features")) {
+                JsonNode properties = feature.path("properties");
+                String datetime = properties.path("datetime").asText("");
+                if (datetime.length() < 10) {
+                    continue;
+                }
+                // eo:cloud_cover — проценты по всей грануле
+                double cloudCover = properties.path("eo:cloud_cover").asDouble(100.0);
+                scenes.add(new SceneAcquisition(LocalDate.parse(datetime.substring(0, 10)), (float) (cloudCover / 100.0)));
+            }
+            JsonNode next = page.path("context").path("next");
+            return next.isNumber() ? next.asInt() : null;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse Sentinel Hub catalog response", e);
+        }
+    }
+
+    private List<IndexObservation> readDailyStatistics(byte[] response) {
+        List<IndexObservation> observations = new ArrayList<>();
+        try {
+            for (JsonNode interval : objectMapper.readTree(response).path("data")) {
+                if (interval.has("error")) {
+                    log.warn("Sentinel Hub statistics interval {} failed: {}", interval.path("interval").path("from").asText(), interval.path("error"));
+                    continue;
+                }
+                JsonNode stats = interval.path("outputs").path("default").path("bands").path("B0").path("stats");
+                double sampleCount = stats.path("sampleCount").asDouble(0);
+                double validCount = sampleCount - stats.path("noDataCount").asDouble(0);
+                double mean = stats.path("mean").asDouble(Double.NaN);
+                if (validCount <= 0 || Double.isNaN(mean)) {
+                    continue;
+                }
+                observations.add(new IndexObservation(
+                        LocalDate.parse(interval.path("interval").path("from").asText().substring(0, 10)),
+                        (float) mean,
+                        (float) stats.path("min").asDouble(),
+                        (float) stats.path("max").asDouble(),
+                        (float) stats.path("stDev").asDouble(),
+                        (float) (validCount / sampleCount)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse Sentinel Hub statistics response", e);
+        }
+        return observations;
+    }
+
+    /**
+     * Запрашивает несколько типов анализа для одного полигона и интервала.
+     * Уже закэшированные типы берутся из кэша, остальные приходят одним вызовом Process API
+     * с несколькими выходами (ответ — tar-архив с PNG на каждый выход).
+     *
+     * @return Тип анализа (как передан клиентом) -> PNG.
+     */
+    public CompletableFuture<Map<String, byte[]>> getProcessedImagesAsync(String polygonGeoJson, List<String> analysisTypes,
+                                                                       String dateFrom, String dateTo, int width, int height) {
+        Map<String, CompletableFuture<byte[]>> local = new LinkedHashMap<>();
+        List<String> upstream = new ArrayList<>();
+        for (String analysisType : new LinkedHashSet<>(analysisTypes)) {
+            if (localRendering && templateRegistry.hasIndex(analysisType)) {
+                local.put(analysisType, renderIndexImageAsync(polygonGeoJson, analysisType, dateFrom, dateTo, width, height, null, null));
+            } else {
+                upstream.add(analysisType);
+            }
+        }
+        if (local.isEmpty()) {
+            return getUpstreamImagesAsync(polygonGeoJson, upstream, dateFrom, dateTo, width, height);
+        }
+        CompletableFuture<Map<String, byte[]>> remote = upstream.isEmpty()
+                ? CompletableFuture.completedFuture(Map.of())
+                : getUpstreamImagesAsync(polygonGeoJson, upstream, dateFrom, dateTo, width, height);
+        return CompletableFuture.allOf(local.values().toArray(new CompletableFuture[0]))
+                .thenCombine(remote, (ignored, remoteImages) -> {
+                    // Порядок — как в запросе клиента
+                    Map<String, byte[]> result = new LinkedHashMap<>();
+                    for (String analysisType : new LinkedHashSet<>(analysisTypes)) {
+                        CompletableFuture<byte[]> rendered = local.get(analysisType);
+                        result.put(analysisType, rendered != null ? rendered.join() : remoteImages.get(analysisType));
+                    }
+                    return result;
+                });
+    }
+
+    private CompletableFuture<Map<String, byte[]>> getUpstreamImagesAsync(String polygonGeoJson, List<String> analysisTypes,
+                                                                        String dateFrom, String dateTo, int width, int height) {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        Map<String, ImageryRequestKey> missing = new LinkedHashMap<>();
+        String geometryJson = geometryPreparer.prepare(polygonGeoJson, width, height);
+        for (String analysisType : analysisTypes) {
+            String name = templateRegistry.get(analysisType).getName();
+            ImageryRequestKey key = ImageryRequestKey.of(objectMapper, geometryJson, name, dateFrom, dateTo, width, height);
+            Optional<byte[]> cached = imageryCache.get(key.getHash());
+            if (cached.isPresent()) {
+                result.put(analysisType, cached.get());
+            } else {
+                missing.put(analysisType, key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+        if (missing.size() == 1 || exceedsTileSize(width, height)) {
+            // Один тип — обычный запрос; выход больше tile-size собирается из тайлов по каждому типу отдельно
+            Map<String, CompletableFuture<byte[]>> fetches = new LinkedHashMap<>();
+            for (String analysisType : missing.keySet()) {
+                fetches.put(analysisType, getProcessedImageAsync(polygonGeoJson, analysisType, dateFrom, dateTo, width, height));
+            }
+            return CompletableFuture.allOf(fetches.values().toArray(new CompletableFuture[0]))
+                    .thenApply(ignored -> {
+                        fetches.forEach((analysisType, image) -> result.put(analysisType, image.join()));
+                        return result;
+                    });
+        }
+
+        List<String> types = new ArrayList<>(missing.keySet());
+        List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < types.size(); i++) {
+            identifiers.add("out" + i);
+        }
+        ImageryRequestKey anyKey = missing.values().iterator().next();
+        AnalysisTemplate combined = new AnalysisTemplate(String.join(",", types), buildMultiOutputEvalscript(types, identifiers), identifiers);
+        String body = combined.writeRequest(anyKey.getGeometryJson(), anyKey.getDateFrom(), anyKey.getDateTo(), width, height);
+        return multiOutputSingleFlight.executeAsync(body, () -> requestScheduler.submit(() -> exchangeForImage(processApiUrl, body, "application/x-tar", String.join(",", types)))
+                        .thenApply(tar -> {
+                            // Каждый выход кладём в кэш под ключом одиночного запроса этого типа
+                            Map<String, byte[]> files = readMultiOutput(tar, identifiers);
+                            for (int i = 0; i < types.size(); i++) {
+                                ImageryRequestKey key = missing.get(types.get(i));
+                                store(key, files.get(identifiers.get(i)), cacheTtl(key));
+                                notifyImageListeners(key, files.get(identifiers.get(i)));
+                            }
+                            return files;
+                        }))
+                .thenApply(files -> {
+                    for (int i = 0; i < types.size(); i++) {
+                        result.put(types.get(i), files.get(identifiers.get(i)));
+                    }
+                    return result;
+                });
+    }
+
+    private Map<String, byte[]> readMultiOutput(byte[] tar, List<String> identifiers) {
+        Map<String, byte[]> files = TarReader.read(tar);
+        Map<String, byte[]> outputs = new LinkedHashMap<>();
+        for (String identifier : identifiers) {
+            byte[] png = files.get(identifier + ".png");
+            if (png == null) {
+                throw new RuntimeException("Sentinel Hub multi-output response is missing output: " + identifier);
+            }
+            outputs.put(identifier, png);
+        }
+        return outputs;
+    }
+
+    /**
+     * Собирает один evalscript с несколькими выходами из скриптов отдельных типов (см. {@link AnalysisTemplateRegistry}).
+     * Каждый исходный скрипт оборачивается в функцию, чтобы его setup/evaluatePixel и константы
+     * не конфликтовали; входные каналы объединяются, выход i получает результат i-го скрипта.
+     */
+    private String buildMultiOutputEvalscript(List<String> analysisTypes, List<String> identifiers) {
+        StringBuilder script = new StringBuilder("//VERSION=3\n");
+        script.append("const outputs = [\n");
+        for (int i = 0; i < analysisTypes.size(); i++) {
+            script.append("  { id: \"").append(identifiers.get(i)).append("\", script: (function() {\n")
+                    .append(templateRegistry.get(analysisTypes.get(i)).getEvalscript())
+                    .append("\nreturn { setup: setup, evaluatePixel: evaluatePixel };\n})() },\n");
+        }
+        script.append("];\n" +
+                "function setup() {\n" +
+                "  const bands = [];\n" +
+                "  for (const o of outputs) {\n" +
+                "    for (const item of o.script.setup().input) {\n" +
+                "      for (const band of (typeof item === \"string\" ? [item] : item.bands)) {\n" +
+                "        if (bands.indexOf(band) < 0) bands.push(band);\n" +
+                "      }\n" +
+                "    }\n" +
+                "  }\n" +
+                "  return {\n" +
+                "    input: [{ bands: bands }],\n" +
+                "    output: outputs.map(o => ({ id: o.id, bands: 4, sampleType: \"UINT8\" }))\n" +
+                "  };\n" +
+                "}\n" +
+                "function evaluatePixel(samples) {\n" +
+                "  const result = {};\n" +
+                "  for (const o of outputs) {\n" +
+                "    const value = o.script.evaluatePixel(samples);\n" +
+                "    result[o.id] = Array.isArray(value) ? value : value.default;\n" +
+                "  }\n" +
+                "  return result;\n" +
+                "}");
+        return script.toString();
+    }
+
+    // Снимок за давно прошедший интервал не изменится — храним бессрочно, иначе только короткое время
+    private Duration cacheTtl(ImageryRequestKey key) {
+        return key.isImmutable(settleDays) ? null : mutableTtl;
+    }
+
+    /**
+     * Отправляет POST-запрос в Process API и ожидает массив байтов изображения (или tar для нескольких выходов).
+     * Выполняется на потоке пула апстрима; 429 пробрасывается как есть — повтор делает планировщик.
+     */
+    private byte[] exchangeForImage(String url, String body, String accept, String analysisType) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(accessToken);
-        // Явно указываем Accept header для получения PNG изображения
-        headers.set(HttpHeaders.ACCEPT, MediaType.IMAGE_PNG_VALUE); 
+        headers.setBearerAuth(authService.getAccessToken());
+        // Явно указываем Accept header: PNG для одного выхода, tar для нескольких
+        headers.set(HttpHeaders.ACCEPT, accept);
 
+        ResponseEntity<byte[]> response;
         try {
-            // Создаем JSON-тело запроса для Process API
-            ObjectNode requestBody = objectMapper.createObjectNode();
-
-            // Input section
-            ObjectNode inputNode = requestBody.putObject("input");
-            ObjectNode boundsNode = inputNode.putObject("bounds");
-            boundsNode.set("geometry", objectMapper.readTree(polygonGeoJson)); // Вставляем GeoJSON геометрию полигона
-
-            ObjectNode dataArrayNode = inputNode.putArray("data").addObject();
-            dataArrayNode.put("type", "sentinel-2-l2a"); // Используем данные Sentinel-2 L2A
-
-            ObjectNode dataFilterNode = dataArrayNode.putObject("dataFilter");
-            ObjectNode timeRangeNode = dataFilterNode.putObject("timeRange");
-            timeRangeNode.put("from", dateFrom + "T00:00:00Z");
-            timeRangeNode.put("to", dateTo + "T23:59:59Z");
-            dataFilterNode.put("mosaickingOrder", "leastCC"); // Выбираем наименее облачный снимок
-
-            // Output section
-            ObjectNode outputNode = requestBody.putObject("output");
-            outputNode.put("width", width);
-            outputNode.put("height", height);
-
-            // responses должен быть массивом объектов, а format - объектом
-            ArrayNode responsesArray = objectMapper.createArrayNode();
-            ObjectNode formatObject = objectMapper.createObjectNode();
-            formatObject.put("type", "image/png"); 
-            
-            responsesArray.addObject()
-                    .put("identifier", "default")
-                    .set("format", formatObject); 
-            outputNode.set("responses", responsesArray); 
-
-            // Evalscript section based on analysisType
-            String evalscript = getEvalscriptForAnalysisType(analysisType);
-            requestBody.put("evalscript", evalscript);
-
-            log.debug("Sentinel Hub Process API Request Body: {}", requestBody.toPrettyString());
-
-            HttpEntity<String> request = new HttpEntity<>(requestBody.toString(), headers);
-
-            // Отправляем POST-запрос и ожидаем массив байтов изображения
-            ResponseEntity<byte[]> response = restTemplate.exchange(
-                    processApiUrl,
+            response = restTemplate.exchange(
+                    url,
                     HttpMethod.POST,
-                    request,
+                    new HttpEntity<>(body, headers),
                     byte[].class
             );
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            throw e;
+        } catch (HttpClientErrorException e) {
+            log.error("HTTP error fetching Sentinel Hub image: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
+            throw new RuntimeException("Failed to get Sentinel Hub image: " + e.getResponseBodyAsString(), e);
+        } catch (RestClientException e) {
+            log.error("Error fetching Sentinel Hub image: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to get Sentinel Hub image", e);
+        }
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                log.info("Successfully fetched processed image for analysis type: {}", analysisType);
-                return response.getBody();
-            } else {
-                log.error("Failed to fetch processed image. Status: {}", response.getStatusCode());
-                // Попытка прочитать тело ответа для более детальной ошибки от Sentinel Hub
-                String errorBody = response.getBody() != null ? new String(response.getBody()) : "[no body]";
-                throw new RuntimeException("Failed to fetch processed image from Sentinel Hub. Response: " + errorBody);
-            }
+        if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+            log.info("Successfully fetched processed image for analysis type: {}", analysisType);
+            return response.getBody();
+        } else {
+            log.error("Failed to fetch processed image. Status: {}", response.getStatusCode());
+            // Попытка прочитать тело ответа для более детальной ошибки от Sentinel Hub
+            String errorBody = response.getBody() != null ? new String(response.getBody()) : "[no body]";
+            throw new RuntimeException("Failed to fetch processed image from Sentinel Hub. Response: " + errorBody);
+        }
+    }
 
+    /**
+     * Отправляет POST и возвращает ответ с ещё не прочитанным телом; ошибки HTTP — как у {@link #exchangeForImage}.
+     */
+    private ClientHttpResponse openUpstream(String url, String body, String accept, String analysisType) {
+        URI uri = URI.create(url);
+        try {
+            ClientHttpRequest request = requestFactory.createRequest(uri, HttpMethod.POST);
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            request.getHeaders().setBearerAuth(authService.getAccessToken());
+            request.getHeaders().set(HttpHeaders.ACCEPT, accept);
+            request.getBody().write(body.getBytes(StandardCharsets.UTF_8));
+            ClientHttpResponse response = request.execute();
+            if (errorHandler.hasError(response)) {
+                try {
+                    errorHandler.handleError(uri, HttpMethod.POST, response);
+                } finally {
+                    response.close();
+                }
+            }
+            log.info("Streaming processed image for analysis type: {}", analysisType);
+            return response;
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            throw e;
         } catch (HttpClientErrorException e) {
             log.error("HTTP error fetching Sentinel Hub image: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
             throw new RuntimeException("Failed to get Sentinel Hub image: " + e.getResponseBodyAsString(), e);
-        } catch (Exception e) {
-                log.error("Error fetching Sentinel Hub image: {}", e.getMessage(), e);
-                throw new RuntimeException("Failed to get Sentinel Hub image", e);
+        } catch (RestClientException e) {
+            log.error("Error fetching Sentinel Hub image: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to get Sentinel Hub image", e);
+        } catch (IOException e) {
+            log.error("Error fetching Sentinel Hub image: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to get Sentinel Hub image", new ResourceAccessException(e.getMessage(), e));
         }
     }
 
     /**
-     * Возвращает evalscript для различных типов анализа.
-     * @param analysisType Тип анализа (например, "NDVI", "TRUE_COLOR").
-     * @return Строка evalscript.
+     * Тело ответа Process API, которое по мере чтения уходит клиенту и в дисковый кэш.
+     * В кэш запись попадает, только если ответ прочитан целиком.
      */
-    private String getEvalscriptForAnalysisType(String analysisType) {
-        switch (analysisType.toUpperCase()) {
-            case "NDVI":
-            case "3_NDVI":
-            case "3_NDVI-L1C":
-                // Evalscript для NDVI с цветовой палитрой и явной прозрачностью
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [\"B04\", \"B08\", \"dataMask\"],\n" + // Используем dataMask\n" +
-                       "    output: [\n" +
-                       "      { id: \"default\", bands: 4, sampleType: \"UINT8\" } // RGBA, 8-bit unsigned integer\n" +
-                       "    ]\n" +
-                       "  };\n" +
-                       "}\n" +
-                       "\n" +
-                       "// Плавный градиент NDVI с явным альфа-каналом\n" +
-                       "const ramp = [\n" +
-                       "  [-1.0, [0.0, 0.0, 0.0, 0]], // Полностью прозрачный для значений < -0.5\n" +
-                       "  [-0.5, [0.0, 0.0, 0.0, 0]], // Полностью прозрачный для значений < -0.5\n" +
-                       "  [ 0.0, [0.9, 0.9, 0.9, 0.5]], // Полупрозрачный серый для голой почвы/воды\n" +
-                       "  [ 0.1, [0.8, 0.78,0.51, 1]], // Светло-желтый для редкой растительности\n" +
-                       "  [ 0.2, [0.57,0.75,0.32, 1]],\n" +
-                       "  [ 0.3, [0.44,0.64,0.25, 1]],\n" +
-                       "  [ 0.4, [0.31,0.54,0.18, 1]],\n" +
-                       "  [ 0.5, [0.19,0.43,0.11, 1]],\n" +
-                       "  [ 0.6, [0.06,0.33,0.04, 1]],\n" +
-                       "  [ 1.0, [0.0, 0.27, 0.0, 1]]\n" +
-                       "];\n" +
-                       "const visualizer = new ColorRampVisualizer(ramp);\n" +
-                       "\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  let ndvi = index(samples.B08, samples.B04);\n" +
-                       "  let rgb_with_alpha = visualizer.process(ndvi); // Получаем RGBA от visualizer\n" +
-                       "  \n" +
-                       "  // Финальный альфа-канал: произведение альфа из visualizer и dataMask, масштабированное до 0-255\n" +
-                       "  let finalAlpha = rgb_with_alpha[3] * samples.dataMask * 255;\n" +
-                       "\n" +
-                       "  return {\n" +
-                       "    default: [rgb_with_alpha[0] * 255, rgb_with_alpha[1] * 255, rgb_with_alpha[2] * 255, finalAlpha] // Масштабируем RGB на 255\n" +
-                       "  };\n" +
-                       "}";
-            case "TRUE_COLOR":
-            case "1_TRUE_COLOR":
-            case "1_TRUE-COLOR-L1C":
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [{ bands: [\"B02\", \"B03\", \"B04\", \"dataMask\"] }],\n" +
-                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
-                       "  };\n" +
-                       "}\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  // Масштабирование для лучшей визуализации (умножаем на 255)\n" +
-                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
-                       "  return [samples.B04 * 255, samples.B03 * 255, samples.B02 * 255, samples.dataMask * 255];\n" +
-                       "}";
-            case "FALSE_COLOR":
-            case "2_FALSE_COLOR":
-            case "2_FALSE-COLOR-L1C":
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [{ bands: [\"B08\", \"B04\", \"B03\", \"dataMask\"] }],\n" +
-                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
-                       "  };\n" +
-                       "}\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  // Масштабирование для лучшей визуализации (умножаем на 255)\n" +
-                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
-                       "  return [samples.B08 * 255, samples.B04 * 255, samples.B03 * 255, samples.dataMask * 255];\n" +
-                       "}";
-            case "FALSE_COLOR_URBAN":
-            case "4-FALSE-COLOR-URBAN":
-            case "4-FALSE-COLOR-URBAN-L1C":
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [{ bands: [\"B11\", \"B08\", \"B04\", \"dataMask\"] }],\n" +
-                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
-                       "  };\n" +
-                       "}\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  // Масштабирование для лучшей визуализации (умножаем на 255)\n" +
-                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
-                       "  return [samples.B11 * 255, samples.B08 * 255, samples.B04 * 255, samples.dataMask * 255];\n" +
-                       "}";
-            case "MOISTURE_INDEX":
-            case "5-MOISTURE-INDEX1":
-            case "5-MOISTURE-INDEX1-L1C":
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [{ bands: [\"B08\", \"B11\", \"dataMask\"] }],\n" +
-                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
-                       "  };\n" +
-                       "}\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  let val = (samples.B08 - samples.B11) / (samples.B08 + samples.B11);\n" +
-                       "  // Цветовая палитра для индекса влажности (пример)\n" +
-                       "  let color = colorBlend(val, [-1, -0.2, 0, 0.2, 0.4, 0.6, 0.8, 1], [\n" +
-                       "    [0, 0, 0, 0], // Прозрачный\n" +
-                       "    [0.9, 0.9, 0.9, 1], // Белый (сухо)\n" +
-                       "    [0.9, 0.7, 0.7, 1], // Розовый\n" +
-                       "    [0.7, 0.5, 0.5, 1], // Светло-красный\n" +
-                       "    [0.5, 0.3, 0.3, 1], // Красный\n" +
-                       "    [0.3, 0.1, 0.1, 1], // Темно-красный\n" +
-                       "    [0.1, 0.0, 0.0, 1], // Очень темно-красный\n" +
-                       "    [0.0, 0.0, 0.0, 1]  // Черный (очень влажно)\n" +
-                       "  ]);\n" +
-                       "  // Умножаем альфа-канал от colorBlend на samples.dataMask для финальной прозрачности\n" +
-                       "  return [color[0] * 255, color[1] * 255, color[2] * 255, color[3] * samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
-                       "}";
-            case "NDSI":
-            case "8-NDSI":
-            case "8-NDSI-L1C":
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [{ bands: [\"B03\", \"B11\", \"dataMask\"] }],\n" +
-                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
-                       "  };\n" +
-                       "}\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  let val = (samples.B03 - samples.B11) / (samples.B03 + samples.B11);\n" +
-                       "  // Цветовая палитра для NDSI (пример: от снега к отсутствию снега)\n" +
-                       "  let color = colorBlend(val, [-1, 0, 0.2, 0.4, 0.6, 1], [\n" +
-                       "    [0, 0, 0, 0], // Прозрачный\n" +
-                       "    [0.7, 0.7, 0.7, 1], // Серый (вода)\n" +
-                       "    [0.5, 0.8, 0.9, 1], // Голубоватый (не снег)\n" +
-                       "    [0.8, 0.9, 1.0, 1], // Светло-голубой (возможен снег)\n" +
-                       "    [0.9, 0.9, 1.0, 1], // Белый (снег)\n" +
-                       "    [1.0, 1.0, 1.0, 1]  // Ярко-белый (чистый снег)\n" +
-                       "  ]);\n" +
-                       "  // Умножаем альфа-канал от colorBlend на samples.dataMask для финальной прозрачности\n" +
-                       "  return [color[0] * 255, color[1] * 255, color[2] * 255, color[3] * samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
-                       "}";
-            case "NDWI":
-            case "7-NDWI":
-            case "7-NDWI-L1C":
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [{ bands: [\"B03\", \"B08\", \"dataMask\"] }],\n" +
-                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
-                       "  };\n" +
-                       "}\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  let val = (samples.B03 - samples.B08) / (samples.B03 + samples.B08);\n" +
-                       "  // Цветовая палитра для NDWI (пример: от воды к суше)\n" +
-                       "  let color = colorBlend(val, [-1, -0.2, 0, 0.2, 0.4, 0.6, 1], [\n" +
-                       "    [0, 0, 0, 0], // Прозрачный\n" +
-                       "    [0.9, 0.9, 0.9, 1], // Белый (суша)\n" +
-                       "    [0.7, 0.7, 0.9, 1], // Светло-синий\n" +
-                       "    [0.5, 0.5, 0.9, 1], // Средне-синий\n" +
-                       "    [0.3, 0.3, 0.7, 1], // Темно-синий\n" +
-                       "    [0.1, 0.1, 0.5, 1], // Очень темно-синий\n" +
-                       "    [0.0, 0.0, 0.3, 1]  // Самый темный синий (чистая вода)\n" +
-                       "  ]);\n" +
-                       "  // Умножаем альфа-канал от colorBlend на samples.dataMask для финальной прозрачности\n" +
-                       "  return [color[0] * 255, color[1] * 255, color[2] * 255, color[3] * samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
-                       "}";
-            case "SWIR":
-            case "6-SWIR":
-            case "6-SWIR-L1C":
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [{ bands: [\"B12\", \"B11\", \"B08\", \"dataMask\"] }],\n" +
-                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
-                       "  };\n" +
-                       "}\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  // Масштабирование для лучшей визуализации (умножаем на 255)\n" +
-                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
-                       "  return [samples.B12 * 255, samples.B11 * 255, samples.B08 * 255, samples.dataMask * 255];\n" +
-                       "}";
-            case "SCENE_CLASSIFICATION":
-            case "SCENE-CLASSIFICATION":
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [{ bands: [\"SCL\", \"dataMask\"] }],\n" + // Добавил dataMask в input
-                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
-                       "  };\n" +
-                       "}\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  let scl = samples.SCL;\n" +
-                       "  let color = [0, 0, 0, 0]; // Прозрачный по умолчанию\n" +
-                       "  if (scl === 1) color = [0.65, 0.65, 0.65, 1]; // Saturated / Defective\n" +
-                       "  else if (scl === 2) color = [0.8, 0.8, 0.8, 1]; // Dark Area Pixels\n" +
-                       "  else if (scl === 3) color = [0.9, 0.9, 0.9, 1]; // Cloud Shadows\n" +
-                       "  else if (scl === 4) color = [0.1, 0.5, 0.1, 1]; // Vegetation\n" +
-                       "  else if (scl === 5) color = [0.8, 0.6, 0.2, 1]; // Not-Vegetated\n" +
-                       "  else if (scl === 6) color = [0.1, 0.1, 0.8, 1]; // Water\n" +
-                       "  else if (scl === 7) color = [0.9, 0.9, 0.1, 1]; // Unclassified\n" +
-                       "  else if (scl === 8) color = [0.7, 0.7, 0.7, 1]; // Medium Probability Clouds\n" +
-                       "  else if (scl === 9) color = [0.9, 0.9, 0.9, 1]; // High Probability Clouds\n" +
-                       "  else if (scl === 10) color = [0.9, 0.9, 0.9, 1]; // Cirrus\n" +
-                       "  else if (scl === 11) color = [0.9, 0.9, 0.9, 1]; // Snow / Ice\n" +
-                       "  // Умножаем альфа-канал от SCL на samples.dataMask для финальной прозрачности\n" +
-                       "  return [color[0] * 255, color[1] * 255, color[2] * 255, color[3] * samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
-                       "}";
-            // Highlight Optimized Natural Color (2_TONEMAPPED_NATURAL_COLOR)
-            case "HIGHLIGHT_OPTIMIZED_NATURAL_COLOR":
-            case "2_TONEMAPPED_NATURAL_COLOR":
-            case "2_TONEMAPPED-NATURAL-COLOR-L1C":
-                // Используем тот же evalscript, что и для True Color,
-                // так как тональная компрессия обычно делается на стороне клиента или
-                // требует более сложного evalscript, который выходит за рамки простого примера.
-                // Для базового представления, это будет выглядеть как Natural Color.
-                return "//VERSION=3\n" +
-                       "function setup() {\n" +
-                       "  return {\n" +
-                       "    input: [{ bands: [\"B02\", \"B03\", \"B04\", \"dataMask\"] }],\n" +
-                       "    output: { bands: 4, sampleType: \"UINT8\" }\n" + // Явно UINT8
-                       "  };\n" +
-                       "}\n" +
-                       "function evaluatePixel(samples) {\n" +
-                       "  // Альфа-канал явно из dataMask, масштабированный до 0-255\n" +
-                       "  return [samples.B04 * 255, samples.B03 * 255, samples.B02 * 255, samples.dataMask * 255]; // Масштабируем RGB на 255\n" +
-                       "}";
-
-            default:
-                throw new IllegalArgumentException("Unsupported analysis type: " + analysisType);
+    private final class UpstreamImageStream implements ImageryStream {
+
+        private static final int BUFFER_BYTES = 64 * 1024;
+
+        private final ClientHttpResponse response;
+        private final ImageryRequestKey key;
+        private final Duration ttl;
+
+        private UpstreamImageStream(ClientHttpResponse response, ImageryRequestKey key, Duration ttl) {
+            this.response = response;
+            this.key = key;
+            this.ttl = ttl;
+        }
+
+        @Override
+        public long getContentLength() {
+            try {
+                return response.getHeaders().getContentLength();
+            } catch (RuntimeException e) {
+                return -1;
+            }
         }
+
+        @Override
+        public void transferTo(OutputStream out) throws IOException {
+            ImageryCache.Writer writer = imageryCache.openWriter(key.getHash(), ttl);
+            boolean complete = false;
+            try (InputStream in = response.getBody()) {
+                byte[] buffer = new byte[BUFFER_BYTES];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                    writer.write(buffer, 0, read);
+                }
+                complete = true;
+            } finally {
+                if (complete) {
+                    writer.commit();
+                    rememberLatest(key);
+                } else {
+                    writer.abort();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        return e.getCause() instanceof RuntimeException cause ? cause : e;
     }
 }
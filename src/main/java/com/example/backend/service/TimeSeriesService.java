@@ -0,0 +1,280 @@
+package com.example.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.locationtech.jts.geom.Envelope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.TimeSeriesDto;
+import com.example.backend.entiity.PolygonArea;
+import com.example.backend.entiity.PolygonIndexObservation;
+import com.example.backend.entiity.PolygonTimeSeriesCoverage;
+import com.example.backend.entiity.User;
+import com.example.backend.model.IndexObservation;
+import com.example.backend.model.PixelGrid;
+import com.example.backend.model.TimeSeries;
+import com.example.backend.repository.PolygonIndexObservationRepository;
+import com.example.backend.repository.PolygonTimeSeriesCoverageRepository;
+import com.example.backend.util.DateUtils;
+import com.example.backend.util.GeometryUtils;
+import com.example.backend.util.SingleFlight;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Инкрементальные временные ряды индексов по полигонам.
+ * <p>
+ * Наблюдения хранятся в базе по полигону и дате съёмки, а в памяти — в колоночном {@link TimeSeries}.
+ * На запрос диапазона у Sentinel Hub (Statistical API, интервал P1D) запрашиваются только
+ * непокрытые даты. Последние settle-days дней не считаются покрытыми, пока Sentinel Hub может
+ * досчитать снимки, но перепроверяются не чаще mutable-ttl.
+ */
+@Service
+@Slf4j
+public class TimeSeriesService {
+
+    private static final double RESOLUTION_METERS = 10.0;
+    // Один запрос Statistical API покрывает не больше квартала, чтобы не упираться в таймаут
+    private static final int MAX_DAYS_PER_REQUEST = 92;
+
+    @Value("${sentinelhub.timeseries.settle-days:3}")
+    private int settleDays;
+
+    @Value("${sentinelhub.timeseries.max-cached-series:10000}")
+    private int maxCachedSeries;
+
+    @Value("${sentinelhub.cache.mutable-ttl:PT15M}")
+    private Duration mutableTtl;
+
+    private final PolygonService polygonService;
+    private final PolygonIndexObservationRepository observationRepository;
+    private final PolygonTimeSeriesCoverageRepository coverageRepository;
+    private final SentinelHubService sentinelHubService;
+    private final AnalysisTemplateRegistry templateRegistry;
+    private final GeometryUtils geometryUtils;
+    private final AnalysisGridPolicy analysisGridPolicy;
+    private final SingleFlight<String, TimeSeries> fillSingleFlight;
+    private final Counter upstreamCounter;
+
+    // polygonId:тип -> ряд; LRU по доступу
+    private final Map<String, TimeSeries> series = new LinkedHashMap<>(256, 0.75f, true);
+    // polygonId:тип -> момент последней проверки непостоянного хвоста (последние settle-days дней)
+    private final Map<String, Long> tailCheckedAt = new ConcurrentHashMap<>();
+
+    // PolygonService сам зависит от этого сервиса (сброс ряда при изменении геометрии), поэтому @Lazy
+    public TimeSeriesService(@Lazy PolygonService polygonService,
+                             PolygonIndexObservationRepository observationRepository,
+                             PolygonTimeSeriesCoverageRepository coverageRepository,
+                             SentinelHubService sentinelHubService, AnalysisTemplateRegistry templateRegistry,
+                             GeometryUtils geometryUtils, AnalysisGridPolicy analysisGridPolicy,
+                             MeterRegistry meterRegistry) {
+        this.polygonService = polygonService;
+        this.observationRepository = observationRepository;
+        this.coverageRepository = coverageRepository;
+        this.sentinelHubService = sentinelHubService;
+        this.templateRegistry = templateRegistry;
+        this.geometryUtils = geometryUtils;
+        this.analysisGridPolicy = analysisGridPolicy;
+        this.fillSingleFlight = new SingleFlight<>(meterRegistry, "sentinel.timeseries.singleflight");
+        this.upstreamCounter = Counter.builder("sentinel.timeseries.upstream-requests").register(meterRegistry);
+    }
+
+    public CompletableFuture<TimeSeriesDto> getTimeSeries(UUID polygonId, String analysisType, String dateFrom,
+                                                          String dateTo, User user) {
+        LocalDate from = DateUtils.parseDate(dateFrom);
+        LocalDate to = DateUtils.parseDate(dateTo);
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Дата окончания раньше даты начала.");
+        }
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        if (to.isAfter(today)) {
+            to = today;
+        }
+        LocalDate end = to;
+        String indexName = templateRegistry.getIndex(analysisType).getName();
+        PolygonArea polygon = polygonService.getPolygonForUser(polygonId, user);
+        String key = polygonId + ":" + indexName;
+        TimeSeries current = loadSeries(key, polygonId, indexName);
+
+        // Непостоянный хвост, проверенный недавно, считаем покрытым
+        LocalDate settled = today.minusDays(settleDays);
+        Long checkedAt = tailCheckedAt.get(key);
+        boolean tailFresh = checkedAt != null && System.currentTimeMillis() - checkedAt < mutableTtl.toMillis();
+        LocalDate missingUntil = tailFresh && end.isAfter(settled) ? settled : end;
+        List<LocalDate[]> missing = missingUntil.isBefore(from) ? List.of() : current.missingRanges(from, missingUntil);
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(toDto(polygonId, indexName, current.slice(from, end), 0));
+        }
+
+        List<LocalDate[]> chunks = split(missing);
+        String flightKey = key + chunks.stream().map(c -> c[0] + ".." + c[1]).collect(Collectors.joining(",", "[", "]"));
+        return fillSingleFlight.executeAsync(flightKey, () -> fill(polygon, key, indexName, chunks, settled))
+                .thenApply(updated -> toDto(polygonId, indexName, updated.slice(from, end), chunks.size()));
+    }
+
+    /**
+     * Забывает ряды полигона (в памяти и в базе) — например, после изменения его геометрии.
+     */
+    public void invalidate(UUID polygonId) {
+        String prefix = polygonId + ":";
+        synchronized (series) {
+            series.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+        tailCheckedAt.keySet().removeIf(key -> key.startsWith(prefix));
+        observationRepository.deleteByPolygonArea_Id(polygonId);
+        coverageRepository.deleteByPolygonArea_Id(polygonId);
+    }
+
+    private CompletableFuture<TimeSeries> fill(PolygonArea polygon, String key, String indexName,
+                                               List<LocalDate[]> chunks, LocalDate settled) {
+        Envelope envelope = geometryUtils.fromGeoJson(polygon.getGeoJson()).getEnvelopeInternal();
+        PixelGrid grid = analysisGridPolicy.gridFor(envelope, RESOLUTION_METERS);
+
+        List<CompletableFuture<List<IndexObservation>>> futures = new ArrayList<>();
+        for (LocalDate[] chunk : chunks) {
+            upstreamCounter.increment();
+            futures.add(sentinelHubService.getDailyIndexStatisticsAsync(polygon.getGeoJson(), indexName, chunk[0], chunk[1],
+                    grid.getPixelWidth(), grid.getPixelHeight()));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApplyAsync(ignored -> {
+            List<IndexObservation> observations = new ArrayList<>();
+            futures.forEach(future -> observations.addAll(future.join()));
+
+            // Покрытыми считаются только дни, по которым Sentinel Hub уже не досчитает новых снимков
+            List<LocalDate[]> covered = new ArrayList<>();
+            boolean touchedTail = false;
+            for (LocalDate[] chunk : chunks) {
+                touchedTail |= chunk[1].isAfter(settled);
+                LocalDate coveredTo = chunk[1].isAfter(settled) ? settled : chunk[1];
+                if (!coveredTo.isBefore(chunk[0])) {
+                    covered.add(new LocalDate[] {chunk[0], coveredTo});
+                }
+            }
+            persist(polygon, indexName, observations, covered);
+            if (touchedTail) {
+                tailCheckedAt.put(key, System.currentTimeMillis());
+            }
+            log.info("Time series {}: fetched {} ranges, {} observations", key, chunks.size(), observations.size());
+            synchronized (series) {
+                TimeSeries merged = series.getOrDefault(key, TimeSeries.EMPTY).merge(observations, covered);
+                putSeries(key, merged);
+                return merged;
+            }
+        });
+    }
+
+    private void persist(PolygonArea polygon, String indexName, List<IndexObservation> observations, List<LocalDate[]> covered) {
+        try {
+            if (!observations.isEmpty()) {
+                LocalDate min = observations.stream().map(IndexObservation::getDate).min(LocalDate::compareTo).get();
+                LocalDate max = observations.stream().map(IndexObservation::getDate).max(LocalDate::compareTo).get();
+                // Свежие значения за уже сохранённые даты (непостоянный хвост) обновляют строки, а не дублируют их
+                Map<LocalDate, PolygonIndexObservation> existing = observationRepository
+                        .findByPolygonArea_IdAndAnalysisTypeAndAcquisitionDateBetween(polygon.getId(), indexName, min, max).stream()
+                        .collect(Collectors.toMap(PolygonIndexObservation::getAcquisitionDate, Function.identity()));
+                List<PolygonIndexObservation> rows = new ArrayList<>();
+                for (IndexObservation o : observations) {
+                    PolygonIndexObservation row = existing.getOrDefault(o.getDate(), PolygonIndexObservation.builder()
+                            .polygonArea(polygon)
+                            .analysisType(indexName)
+                            .acquisitionDate(o.getDate())
+                            .build());
+                    row.setMean(o.getMean());
+                    row.setMin(o.getMin());
+                    row.setMax(o.getMax());
+                    row.setStdDev(o.getStdDev());
+                    row.setValidFraction(o.getValidFraction());
+                    rows.add(row);
+                }
+                observationRepository.saveAll(rows);
+            }
+            coverageRepository.saveAll(covered.stream()
+                    .map(range -> PolygonTimeSeriesCoverage.builder()
+                            .polygonArea(polygon)
+                            .analysisType(indexName)
+                            .coveredFrom(range[0])
+                            .coveredTo(range[1])
+                            .build())
+                    .toList());
+        } catch (DataIntegrityViolationException e) {
+            // Те же даты параллельно сохранил другой экземпляр — в памяти ряд всё равно актуален
+            log.warn("Time series observations for polygon {} already stored concurrently: {}", polygon.getId(), e.getMessage());
+        }
+    }
+
+    private TimeSeries loadSeries(String key, UUID polygonId, String indexName) {
+        synchronized (series) {
+            TimeSeries cached = series.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<IndexObservation> observations = observationRepository
+                .findByPolygonArea_IdAndAnalysisTypeOrderByAcquisitionDate(polygonId, indexName).stream()
+                .map(row -> new IndexObservation(row.getAcquisitionDate(), row.getMean(), row.getMin(), row.getMax(),
+                        row.getStdDev(), row.getValidFraction()))
+                .toList();
+        List<LocalDate[]> covered = coverageRepository.findByPolygonArea_IdAndAnalysisType(polygonId, indexName).stream()
+                .map(row -> new LocalDate[] {row.getCoveredFrom(), row.getCoveredTo()})
+                .toList();
+        TimeSeries loaded = TimeSeries.EMPTY.merge(observations, covered);
+        synchronized (series) {
+            // Пока читали базу, ряд мог дополнить параллельный запрос — его версия новее
+            TimeSeries raced = series.get(key);
+            if (raced != null) {
+                return raced;
+            }
+            putSeries(key, loaded);
+        }
+        return loaded;
+    }
+
+    // Вызывается под блокировкой series
+    private void putSeries(String key, TimeSeries value) {
+        series.put(key, value);
+        if (series.size() > maxCachedSeries) {
+            series.remove(series.keySet().iterator().next());
+        }
+    }
+
+    private static List<LocalDate[]> split(List<LocalDate[]> ranges) {
+        List<LocalDate[]> chunks = new ArrayList<>();
+        for (LocalDate[] range : ranges) {
+            LocalDate start = range[0];
+            while (!start.isAfter(range[1])) {
+                LocalDate end = start.plusDays(MAX_DAYS_PER_REQUEST - 1);
+                if (end.isAfter(range[1])) {
+                    end = range[1];
+                }
+                chunks.add(new LocalDate[] {start, end});
+                start = end.plusDays(1);
+            }
+        }
+        return chunks;
+    }
+
+    private static TimeSeriesDto toDto(UUID polygonId, String indexName, TimeSeries slice, int upstreamRequests) {
+        LocalDate[] dates = new LocalDate[slice.size()];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = slice.getDate(i);
+        }
+        return new TimeSeriesDto(polygonId, indexName, dates, slice.getMean(), slice.getMin(), slice.getMax(),
+                slice.getStdDev(), slice.getValidFraction(), upstreamRequests);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.backend.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.locationtech.jts.geom.Geometry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.backend.dto.ZoneDto;
+import com.example.backend.dto.ZoningDto;
+import com.example.backend.entiity.PolygonArea;
+import com.example.backend.entiity.User;
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.PixelGrid;
+import com.example.backend.model.ZoneMap;
+import com.example.backend.util.DateUtils;
+import com.example.backend.util.GeometryUtils;
+import com.example.backend.util.RasterZoning;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Зоны управления поля для дифференцированного внесения: пиксели индекса на дату делятся k-means
+ * на заданное число зон, зоны сглаживаются и переводятся в полигоны с площадью.
+ * <p>
+ * Растр значений запрашивается по той же выровненной сетке, что и статистика и изменение индекса,
+ * поэтому уже закэшированный растр переиспользуется. Расчёт идёт в общем пуле fork-join.
+ */
+@Service
+@Slf4j
+public class ZoningService {
+
+    private static final double DEFAULT_RESOLUTION_METERS = 10.0;
+    private static final double SQUARE_METERS_PER_HECTARE = 10_000.0;
+
+    @Value("${sentinelhub.zoning.default-zones:3}")
+    private int defaultZones;
+
+    @Value("${sentinelhub.zoning.max-zones:7}")
+    private int maxZones;
+
+    @Value("${sentinelhub.zoning.window-days:5}")
+    private int defaultWindowDays;
+
+    @Value("${sentinelhub.zoning.max-window-days:31}")
+    private int maxWindowDays;
+
+    @Value("${sentinelhub.zoning.max-iterations:50}")
+    private int maxIterations;
+
+    @Value("${sentinelhub.zoning.smoothing-passes:1}")
+    private int smoothingPasses;
+
+    private final PolygonService polygonService;
+    private final SentinelHubService sentinelHubService;
+    private final AnalysisTemplateRegistry templateRegistry;
+    private final GeometryUtils geometryUtils;
+    private final AnalysisGridPolicy analysisGridPolicy;
+
+    public ZoningService(PolygonService polygonService, SentinelHubService sentinelHubService,
+                         AnalysisTemplateRegistry templateRegistry, GeometryUtils geometryUtils,
+                         AnalysisGridPolicy analysisGridPolicy) {
+        this.polygonService = polygonService;
+        this.sentinelHubService = sentinelHubService;
+        this.templateRegistry = templateRegistry;
+        this.geometryUtils = geometryUtils;
+        this.analysisGridPolicy = analysisGridPolicy;
+    }
+
+    /**
+     * @param analysisType Индекс; null — NDVI.
+     * @param windowDays Длина интервала снимка; null — sentinelhub.zoning.window-days.
+     * @param zones Число зон; null — sentinelhub.zoning.default-zones.
+     */
+    public CompletableFuture<ZoningDto> delineate(UUID polygonId, String analysisType, String date, Integer windowDays,
+                                                  Integer zones, Double resolutionMeters, User user) {
+        LocalDate to = DateUtils.parseDate(date);
+        int window = windowDays == null ? defaultWindowDays : windowDays;
+        if (window < 1 || window > maxWindowDays) {
+            throw new IllegalArgumentException("Интервал снимка должен быть от 1 до " + maxWindowDays + " дней.");
+        }
+        int zoneCount = zones == null ? defaultZones : zones;
+        if (zoneCount < 2 || zoneCount > maxZones) {
+            throw new IllegalArgumentException("Число зон должно быть от 2 до " + maxZones + ".");
+        }
+        String indexName = templateRegistry.getIndex(analysisType == null ? "NDVI" : analysisType).getName();
+        double resolution = resolutionMeters == null || resolutionMeters <= 0 ? DEFAULT_RESOLUTION_METERS : resolutionMeters;
+        PolygonArea polygon = polygonService.getPolygonForUser(polygonId, user);
+
+        Geometry geometry = geometryUtils.fromGeoJson(polygon.getGeoJson());
+        PixelGrid grid = analysisGridPolicy.gridFor(geometry.getEnvelopeInternal(), resolution);
+        LocalDate from = to.minusDays(window - 1);
+        return sentinelHubService.getIndexRasterAsync(geometryUtils.envelopeToGeoJson(grid.getEnvelope()), indexName,
+                        from.toString(), to.toString(), grid.getWidth(), grid.getHeight())
+                .thenApplyAsync(raster -> {
+                    long started = System.nanoTime();
+                    ZoneMap map = RasterZoning.cluster(raster, grid, geometry, zoneCount, maxIterations);
+                    RasterZoning.smooth(map, smoothingPasses);
+                    Geometry[] shapes = RasterZoning.polygonize(map, grid, geometry);
+                    ZoningDto result = ZoningDto.builder()
+                            .polygonId(polygonId)
+                            .analysisType(indexName)
+                            .dateFrom(from)
+                            .dateTo(to)
+                            .resolutionMeters(grid.getPixelHeight() * GeometryUtils.METERS_PER_DEGREE)
+                            .totalPixels(map.getTotalPixels())
+                            .validPixels(countLabelled(map))
+                            .zones(describe(map, raster, shapes))
+                            .build();
+                    log.debug("Zoning for polygon {} {} {}..{}: {} zones from {} pixels in {} ms", polygonId, indexName,
+                            from, to, result.getZones().size(), result.getValidPixels(), (System.nanoTime() - started) / 1_000_000);
+                    return result;
+                });
+    }
+
+    /**
+     * Сводка по каждой зоне: значения индекса считаются по пикселям после сглаживания.
+     */
+    private List<ZoneDto> describe(ZoneMap map, IndexRaster raster, Geometry[] shapes) {
+        int zoneCount = map.getZoneCount();
+        int[] pixels = new int[zoneCount + 1];
+        double[] sums = new double[zoneCount + 1];
+        float[] min = new float[zoneCount + 1];
+        float[] max = new float[zoneCount + 1];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        byte[] labels = map.getLabels();
+        float[] values = raster.getValues();
+        for (int y = 0; y < map.getHeight(); y++) {
+            int rowOffset = (map.getY0() + y) * raster.getWidth() + map.getX0();
+            for (int x = 0; x < map.getWidth(); x++) {
+                int zone = labels[y * map.getWidth() + x];
+                if (zone == 0) {
+                    continue;
+                }
+                float value = values[rowOffset + x];
+                pixels[zone]++;
+                sums[zone] += value;
+                min[zone] = Math.min(min[zone], value);
+                max[zone] = Math.max(max[zone], value);
+            }
+        }
+        List<ZoneDto> zones = new ArrayList<>(zoneCount);
+        for (int zone = 1; zone <= zoneCount; zone++) {
+            if (pixels[zone] == 0) {
+                continue;
+            }
+            Geometry shape = shapes[zone - 1];
+            zones.add(ZoneDto.builder()
+                    .zone(zone)
+                    .centroid(map.getCentroids()[zone - 1])
+                    .meanIndex(sums[zone] / pixels[zone])
+                    .minIndex(min[zone])
+                    .maxIndex(max[zone])
+                    .pixels(pixels[zone])
+                    .hectares(hectares(shape))
+                    .geoJson(shape.isEmpty() ? null : geometryUtils.toGeoJson(shape))
+                    .build());
+        }
+        return zones;
+    }
+
+    private static int countLabelled(ZoneMap map) {
+        int count = 0;
+        for (byte label : map.getLabels()) {
+            if (label != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Площадь геометрии в EPSG:4326 на широте её центра
+    private static double hectares(Geometry geometry) {
+        if (geometry.isEmpty()) {
+            return 0.0;
+        }
+        double latitude = geometry.getEnvelopeInternal().centre().y;
+        double squareMetersPerSquareDegree = GeometryUtils.METERS_PER_DEGREE * GeometryUtils.METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(latitude));
+        return geometry.getArea() * squareMetersPerSquareDegree / SQUARE_METERS_PER_HECTARE;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.backend.util;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Автомат защиты для вызовов внешнего сервиса.
+ * <p>
+ * CLOSED — вызовы идут, исходы последних windowSize вызовов запоминаются; когда доля ошибок
+ * (при не менее minimumCalls вызовах) достигает порога, автомат размыкается.
+ * OPEN — вызовы сразу отклоняются в течение openDuration.
+ * HALF_OPEN — пропускается halfOpenCalls пробных вызовов: все успешны — CLOSED, любая ошибка — снова OPEN.
+ * <p>
+ * Вызывающий получает разрешение через {@link #tryAcquire()} и обязан сообщить исход:
+ * {@link #onSuccess()}, {@link #onFailure()} или {@link #onIgnored()} (исход не говорит о здоровье сервиса).
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final String name;
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final List<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+    private final Counter rejected;
+
+    private State state = State.CLOSED;
+    private int recorded;
+    private int position;
+    private int failures;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    /**
+     * @param failureRateThreshold Доля ошибок 0..1, при которой автомат размыкается.
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          Duration openDuration, int halfOpenCalls, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openDuration.toMillis();
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.rejected = Counter.builder(name + ".rejected").register(meterRegistry);
+        Gauge.builder(name + ".state", this, breaker -> breaker.getState().ordinal()).register(meterRegistry);
+    }
+
+    /**
+     * Подписка на смену состояния. Слушатель вызывается вне блокировки, на потоке, сообщившем исход.
+     */
+    public void addListener(Consumer<State> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return true — вызов можно выполнять (исход нужно сообщить); false — автомат разомкнут.
+     */
+    public boolean tryAcquire() {
+        State changed = null;
+        boolean permitted;
+        synchronized (this) {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+                changed = transition(State.HALF_OPEN);
+            }
+            if (state == State.CLOSED) {
+                permitted = true;
+            } else if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls) {
+                halfOpenPermits++;
+                permitted = true;
+            } else {
+                permitted = false;
+            }
+        }
+        if (!permitted) {
+            rejected.increment();
+        }
+        notifyListeners(changed);
+        return permitted;
+    }
+
+    public void onSuccess() {
+        State changed = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                if (++halfOpenSuccesses >= halfOpenCalls) {
+                    changed = transition(State.CLOSED);
+                }
+            } else if (state == State.CLOSED) {
+                record(false);
+            }
+        }
+        notifyListeners(changed);
+    }
+
+    public void onFailure() {
+        State changed = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                changed = transition(State.OPEN);
+            } else if (state == State.CLOSED) {
+                record(true);
+                if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+                    changed = transition(State.OPEN);
+                }
+            }
+        }
+        notifyListeners(changed);
+    }
+
+    /**
+     * Разрешение использовано, но исход ни о чём не говорит (например, ошибка запроса клиента).
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Сколько ещё автомат будет разомкнут; ноль, если он не в состоянии OPEN.
+     */
+    public synchronized Duration remainingOpen() {
+        return state == State.OPEN
+                ? Duration.ofMillis(Math.max(0, openMillis - (System.currentTimeMillis() - openedAt)))
+                : Duration.ZERO;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == window.length) {
+            if (window[position]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[position] = failure;
+        if (failure) {
+            failures++;
+        }
+        position = (position + 1) % window.length;
+    }
+
+    private State transition(State target) {
+        log.warn("Circuit breaker {}: {} -> {}", name, state, target);
+        state = target;
+        recorded = 0;
+        position = 0;
+        failures = 0;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+        if (target == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        }
+        return target;
+    }
+
+    private void notifyListeners(State changed) {
+        if (changed != null) {
+            listeners.forEach(listener -> listener.accept(changed));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.backend.util;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Разбор дат из параметров запросов.
+ */
+public final class DateUtils {
+
+    private DateUtils() {
+    }
+
+    /**
+     * Дата в формате YYYY-MM-DD; неверная или отсутствующая дата — IllegalArgumentException (ответ 400).
+     */
+    public static LocalDate parseDate(String date) {
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new IllegalArgumentException("Дата должна быть в формате YYYY-MM-DD: " + date);
+        }
+    }
+}
@@ -3,12 +3,22 @@ package com.example.backend.util;
 import org.locationtech.jts.geom.*;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import java.util.List;
 
 @Component
 public class GeometryUtils {
 
+    // Длина одного градуса широты в метрах (сферическое приближение WGS84)
+    public static final double METERS_PER_DEGREE = 111_320.0;
+
     private final GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     public Polygon convertToPolygon(List<List<List<Double>>> coordinates) {
         List<Coordinate> coords = coordinates.get(0).stream()
@@ -23,4 +33,113 @@ public class GeometryUtils {
 
         return factory.createPolygon(factory.createLinearRing(coords.toArray(new Coordinate[0])));
     }
+
+    public GeometryFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Читает GeoJSON геометрию (Polygon или MultiPolygon; Feature разворачивается) в JTS.
+     */
+    public Geometry fromGeoJson(String geoJson) {
+        try {
+            JsonNode node = objectMapper.readTree(geoJson);
+            if (node.has("geometry")) {
+                node = node.get("geometry");
+            }
+            String type = node.path("type").asText();
+            JsonNode coordinates = node.path("coordinates");
+            switch (type) {
+                case "Polygon":
+                    return readPolygon(coordinates);
+                case "MultiPolygon":
+                    Polygon[] polygons = new Polygon[coordinates.size()];
+                    for (int i = 0; i < polygons.length; i++) {
+                        polygons[i] = readPolygon(coordinates.get(i));
+                    }
+                    return factory.createMultiPolygon(polygons);
+                default:
+                    throw new IllegalArgumentException("Unsupported GeoJSON geometry type: " + type);
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid GeoJSON geometry", e);
+        }
+    }
+
+    /**
+     * Записывает Polygon или MultiPolygon в GeoJSON (только геометрия, не Feature).
+     */
+    public String toGeoJson(Geometry geometry) {
+        ObjectNode node = objectMapper.createObjectNode();
+        if (geometry instanceof Polygon polygon) {
+            node.put("type", "Polygon");
+            writePolygon(node.putArray("coordinates"), polygon);
+        } else if (geometry instanceof MultiPolygon multiPolygon) {
+            node.put("type", "MultiPolygon");
+            ArrayNode polygons = node.putArray("coordinates");
+            for (int i = 0; i < multiPolygon.getNumGeometries(); i++) {
+                writePolygon(polygons.addArray(), (Polygon) multiPolygon.getGeometryN(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported geometry type: " + geometry.getGeometryType());
+        }
+        return node.toString();
+    }
+
+    /**
+     * Геодезические размеры охвата геометрии в метрах: {ширина по параллели, высота по меридиану}.
+     * Ширина берётся по широте, ближайшей к экватору, — там градус долготы самый длинный.
+     */
+    public static double[] extentMeters(Envelope envelope) {
+        double widestLatitude = envelope.getMinY() <= 0 && envelope.getMaxY() >= 0
+                ? 0.0 : Math.min(Math.abs(envelope.getMinY()), Math.abs(envelope.getMaxY()));
+        double width = envelope.getWidth() * METERS_PER_DEGREE * Math.cos(Math.toRadians(widestLatitude));
+        double height = envelope.getHeight() * METERS_PER_DEGREE;
+        return new double[] {width, height};
+    }
+
+    /**
+     * Прямоугольник охвата как GeoJSON Polygon — Process API для такой геометрии
+     * возвращает ровно этот bbox.
+     */
+    public String envelopeToGeoJson(Envelope envelope) {
+        return toGeoJson(factory.toGeometry(envelope));
+    }
+
+    private Polygon readPolygon(JsonNode rings) {
+        LinearRing shell = readRing(rings.get(0));
+        LinearRing[] holes = new LinearRing[rings.size() - 1];
+        for (int i = 1; i < rings.size(); i++) {
+            holes[i - 1] = readRing(rings.get(i));
+        }
+        return factory.createPolygon(shell, holes);
+    }
+
+    private LinearRing readRing(JsonNode ring) {
+        int size = ring.size();
+        boolean closed = size > 0 && ring.get(0).get(0).asDouble() == ring.get(size - 1).get(0).asDouble()
+                && ring.get(0).get(1).asDouble() == ring.get(size - 1).get(1).asDouble();
+        Coordinate[] coords = new Coordinate[closed ? size : size + 1];
+        for (int i = 0; i < size; i++) {
+            coords[i] = new Coordinate(ring.get(i).get(0).asDouble(), ring.get(i).get(1).asDouble());
+        }
+        // замыкаем контур, если не замкнут
+        if (!closed) {
+            coords[size] = coords[0].copy();
+        }
+        return factory.createLinearRing(coords);
+    }
+
+    private void writePolygon(ArrayNode rings, Polygon polygon) {
+        writeRing(rings.addArray(), polygon.getExteriorRing());
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            writeRing(rings.addArray(), polygon.getInteriorRingN(i));
+        }
+    }
+
+    private void writeRing(ArrayNode target, LineString ring) {
+        for (Coordinate c : ring.getCoordinates()) {
+            target.addArray().add(c.x).add(c.y);
+        }
+    }
 }
@@ -0,0 +1,126 @@
+package com.example.backend.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.RasterFormat;
+
+/**
+ * Компактный одноканальный растр индекса для клиентов, раскрашивающих его сами.
+ * <p>
+ * Все числа little-endian (как типизированные массивы в браузере), заголовок 24 байта:
+ * <pre>
+ *  0  "IDXR"            4 байта ASCII
+ *  4  версия            uint8 (1)
+ *  5  формат            uint8: 1 — UINT8, 2 — FLOAT16
+ *  6  резерв            uint16 (0)
+ *  8  ширина            uint32
+ * 12  высота            uint32
+ * 16  scale             float32
+ * 20  offset            float32
+ * 24  пиксели           по строкам сверху вниз
+ * </pre>
+ * UINT8: 1 байт на пиксель, 0 — нет данных (вне полигона, облака, dataMask = 0), иначе значение
+ * = offset + scale * q. Диапазон [-1, 1] нормализованных индексов делится на 254 ступени (~0.008).
+ * FLOAT16: 2 байта на пиксель (IEEE 754 binary16), NaN — нет данных; scale = 1, offset = 0.
+ */
+public final class IndexRasterCodec {
+
+    public static final int HEADER_BYTES = 24;
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = "IDXR".getBytes(StandardCharsets.US_ASCII);
+    private static final float INDEX_MIN = -1f;
+    private static final float INDEX_MAX = 1f;
+    private static final int LEVELS = 254;
+    private static final float UINT8_SCALE = (INDEX_MAX - INDEX_MIN) / LEVELS;
+    private static final short HALF_NAN = 0x7E00;
+
+    private IndexRasterCodec() {
+    }
+
+    public static byte[] encode(IndexRaster raster, RasterFormat format) {
+        return switch (format) {
+            case UINT8 -> encodeUint8(raster);
+            case FLOAT16 -> encodeFloat16(raster);
+            default -> throw new IllegalArgumentException("Not a single-band raster format: " + format);
+        };
+    }
+
+    private static byte[] encodeUint8(IndexRaster raster) {
+        float[] values = raster.getValues();
+        ByteBuffer buffer = header(raster, 1, values.length, UINT8_SCALE, INDEX_MIN - UINT8_SCALE);
+        byte[] out = buffer.array();
+        for (int i = 0; i < values.length; i++) {
+            float value = values[i];
+            if (Float.isNaN(value)) {
+                continue; // 0 — нет данных
+            }
+            float clamped = Math.max(INDEX_MIN, Math.min(INDEX_MAX, value));
+            out[HEADER_BYTES + i] = (byte) (1 + Math.round((clamped - INDEX_MIN) / UINT8_SCALE));
+        }
+        return out;
+    }
+
+    private static byte[] encodeFloat16(IndexRaster raster) {
+        float[] values = raster.getValues();
+        ByteBuffer buffer = header(raster, 2, values.length * 2, 1f, 0f);
+        for (float value : values) {
+            buffer.putShort(toHalf(value));
+        }
+        return buffer.array();
+    }
+
+    private static ByteBuffer header(IndexRaster raster, int format, int dataBytes, float scale, float offset) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC)
+                .put((byte) VERSION)
+                .put((byte) format)
+                .putShort((short) 0)
+                .putInt(raster.getWidth())
+                .putInt(raster.getHeight())
+                .putFloat(scale)
+                .putFloat(offset);
+        return buffer;
+    }
+
+    /**
+     * float -> binary16 с округлением к ближайшему чётному (Float.floatToFloat16 появился только в Java 20).
+     */
+    static short toHalf(float value) {
+        if (Float.isNaN(value)) {
+            return HALF_NAN;
+        }
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent >= 0x1F) {
+            return (short) (sign | 0x7C00); // Переполнение — бесконечность
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign; // Меньше наименьшего денормализованного — ноль
+            }
+            // Денормализованное число: явная единица и сдвиг на недостающий порядок
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int midpoint = 1 << (shift - 1);
+            if (remainder > midpoint || (remainder == midpoint && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (exponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        // Перенос из мантиссы в порядок даёт верный результат, в том числе переход в бесконечность
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.backend.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Адаптер {@link OkHttpClient} для RestTemplate: соединения, лимиты и метрики общего клиента,
+ * обработка ошибок (HttpClientErrorException и т. п.) — как у RestTemplate.
+ * Тело ответа не буферизуется: {@link ClientHttpResponse#getBody()} читает прямо из сокета.
+ */
+public class OkHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private final OkHttpClient client;
+
+    public OkHttpRequestFactory(OkHttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new OkHttpRequest(client, uri, httpMethod);
+    }
+
+    private static final class OkHttpRequest extends AbstractClientHttpRequest {
+
+        private final OkHttpClient client;
+        private final URI uri;
+        private final HttpMethod method;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+        private OkHttpRequest(OkHttpClient client, URI uri, HttpMethod method) {
+            this.client = client;
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            byte[] content = body.toByteArray();
+            String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+            // POST/PUT/PATCH в OkHttp обязаны иметь тело, GET/HEAD — не могут
+            boolean needsBody = method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.PATCH;
+            RequestBody requestBody = needsBody || content.length > 0
+                    ? RequestBody.create(content, contentType != null ? MediaType.parse(contentType) : null)
+                    : null;
+            Request.Builder request = new Request.Builder().url(uri.toURL()).method(method.name(), requestBody);
+            headers.forEach((name, values) -> {
+                if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                    values.forEach(value -> request.addHeader(name, value));
+                }
+            });
+            return new OkHttpResponse(client.newCall(request.build()).execute());
+        }
+    }
+
+    private static final class OkHttpResponse implements ClientHttpResponse {
+
+        private final Response response;
+        private HttpHeaders headers;
+
+        private OkHttpResponse(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return HttpStatusCode.valueOf(response.code());
+        }
+
+        @Override
+        public String getStatusText() {
+            return response.message();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            if (headers == null) {
+                HttpHeaders copy = new HttpHeaders();
+                for (String name : response.headers().names()) {
+                    copy.put(name, response.headers(name));
+                }
+                headers = copy;
+            }
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            ResponseBody body = response.body();
+            return body != null ? body.byteStream() : InputStream.nullInputStream();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+}
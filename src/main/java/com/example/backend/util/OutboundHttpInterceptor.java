@@ -0,0 +1,121 @@
+package com.example.backend.util;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Ограничивает число одновременных запросов к одному хосту и измеряет их.
+ * <p>
+ * Разрешение держится до закрытия тела ответа, а не до прихода заголовков: потоковая передача
+ * большого снимка тоже занимает соединение. Если разрешение не получено за acquireTimeout,
+ * запрос завершается IOException, не дойдя до сети.
+ * <p>
+ * Метрики: outbound.http.requests (гистограмма полной длительности по хосту и статусу),
+ * outbound.http.in-flight и outbound.http.waiting (по хосту), outbound.http.rejected.
+ */
+public class OutboundHttpInterceptor implements Interceptor {
+
+    private final int maxPerHost;
+    private final Duration acquireTimeout;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, HostLimit> hosts = new ConcurrentHashMap<>();
+
+    public OutboundHttpInterceptor(int maxPerHost, Duration acquireTimeout, MeterRegistry meterRegistry) {
+        this.maxPerHost = maxPerHost;
+        this.acquireTimeout = acquireTimeout;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String host = chain.request().url().host();
+        HostLimit limit = hosts.computeIfAbsent(host, this::register);
+        limit.waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = limit.permits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection to " + host, e);
+        } finally {
+            limit.waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            limit.rejected.increment();
+            throw new IOException("Too many concurrent requests to " + host);
+        }
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            limit.permits.release();
+            record(host, "IO_ERROR", start);
+            throw e;
+        }
+        String status = String.valueOf(response.code());
+        ResponseBody body = response.body();
+        if (body == null) {
+            limit.permits.release();
+            record(host, status, start);
+            return response;
+        }
+        // Разрешение освобождается и длительность записывается один раз — при закрытии тела
+        AtomicBoolean released = new AtomicBoolean();
+        ForwardingSource source = new ForwardingSource(body.source()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        limit.permits.release();
+                        record(host, status, start);
+                    }
+                }
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(Okio.buffer(source), body.contentType(), body.contentLength()))
+                .build();
+    }
+
+    private void record(String host, String status, long start) {
+        Timer.builder("outbound.http.requests")
+                .tag("host", host)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private HostLimit register(String host) {
+        HostLimit limit = new HostLimit(new Semaphore(maxPerHost, true), new AtomicInteger(),
+                Counter.builder("outbound.http.rejected").tag("host", host).register(meterRegistry));
+        Gauge.builder("outbound.http.in-flight", limit, l -> maxPerHost - l.permits.availablePermits())
+                .tag("host", host).register(meterRegistry);
+        Gauge.builder("outbound.http.waiting", limit.waiting, AtomicInteger::get)
+                .tag("host", host).register(meterRegistry);
+        return limit;
+    }
+
+    private record HostLimit(Semaphore permits, AtomicInteger waiting, Counter rejected) {
+    }
+}
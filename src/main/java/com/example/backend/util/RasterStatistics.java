@@ -0,0 +1,163 @@
+package com.example.backend.util;
+
+import java.util.Arrays;
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
+
+import com.example.backend.model.IndexChange;
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.IndexStatistics;
+import com.example.backend.model.PixelGrid;
+
+/**
+ * Зональная статистика по растру индекса: всё считается по примитивным массивам float,
+ * без упаковки значений в объекты.
+ */
+public final class RasterStatistics {
+
+    private RasterStatistics() {
+    }
+
+    /**
+     * Считает статистику по пикселям растра, центр которых лежит внутри geometry.
+     * Пиксели без данных (NaN) учитываются только в общем числе пикселей полигона.
+     *
+     * @param raster Растр индекса, снятый по сетке grid.
+     */
+    public static IndexStatistics compute(IndexRaster raster, PixelGrid grid, Geometry geometry) {
+        int[] window = grid.window(geometry.getEnvelopeInternal());
+        int x0 = window[0];
+        int y0 = window[1];
+        int width = Math.min(window[2], raster.getWidth() - x0);
+        int height = Math.min(window[3], raster.getHeight() - y0);
+
+        float[] values = raster.getValues();
+        float[] valid = new float[Math.max(0, width * height)];
+        int[] histogram = new int[IndexStatistics.HISTOGRAM_BINS];
+        float binScale = IndexStatistics.HISTOGRAM_BINS / (IndexStatistics.HISTOGRAM_MAX - IndexStatistics.HISTOGRAM_MIN);
+        int total = 0;
+        int count = 0;
+        double sum = 0;
+        double sumSquares = 0;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+
+        IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(geometry);
+        Coordinate probe = new Coordinate();
+        for (int y = y0; y < y0 + height; y++) {
+            probe.y = grid.centerY(y);
+            int rowOffset = y * raster.getWidth();
+            for (int x = x0; x < x0 + width; x++) {
+                probe.x = grid.centerX(x);
+                if (locator.locate(probe) == Location.EXTERIOR) {
+                    continue;
+                }
+                total++;
+                float value = values[rowOffset + x];
+                if (Float.isNaN(value)) {
+                    continue;
+                }
+                valid[count++] = value;
+                sum += value;
+                sumSquares += (double) value * value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                int bin = (int) ((value - IndexStatistics.HISTOGRAM_MIN) * binScale);
+                histogram[Math.max(0, Math.min(IndexStatistics.HISTOGRAM_BINS - 1, bin))]++;
+            }
+        }
+
+        double[] percentiles = new double[IndexStatistics.PERCENTILES.length];
+        if (count == 0) {
+            Arrays.fill(percentiles, Double.NaN);
+            return new IndexStatistics(total, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, percentiles, histogram);
+        }
+        Arrays.sort(valid, 0, count);
+        for (int i = 0; i < percentiles.length; i++) {
+            percentiles[i] = percentile(valid, count, IndexStatistics.PERCENTILES[i]);
+        }
+        double mean = sum / count;
+        double variance = Math.max(0.0, sumSquares / count - mean * mean);
+        return new IndexStatistics(total, count, mean, min, max, Math.sqrt(variance), percentiles, histogram);
+    }
+
+    /**
+     * Разность двух растров одной сетки (after − before) по пикселям, центр которых лежит внутри geometry.
+     * Растр разности покрывает только окно полигона в сетке grid.
+     *
+     * @param threshold Изменение (по модулю), начиная с которого пиксель считается изменившимся; строго больше нуля.
+     */
+    public static IndexChange difference(IndexRaster before, IndexRaster after, PixelGrid grid, Geometry geometry,
+                                         float threshold) {
+        if (!(threshold > 0)) {
+            throw new IllegalArgumentException("Change threshold must be positive: " + threshold);
+        }
+        if (before.getWidth() != after.getWidth() || before.getHeight() != after.getHeight()) {
+            throw new IllegalArgumentException("Rasters differ in size: " + before.getWidth() + "x" + before.getHeight()
+                    + " vs " + after.getWidth() + "x" + after.getHeight());
+        }
+        int[] window = grid.window(geometry.getEnvelopeInternal());
+        int x0 = window[0];
+        int y0 = window[1];
+        int width = Math.max(0, Math.min(window[2], before.getWidth() - x0));
+        int height = Math.max(0, Math.min(window[3], before.getHeight() - y0));
+
+        float[] beforeValues = before.getValues();
+        float[] afterValues = after.getValues();
+        float[] delta = new float[width * height];
+        Arrays.fill(delta, Float.NaN);
+        int total = 0;
+        int count = 0;
+        int increased = 0;
+        int decreased = 0;
+        double sum = 0;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+
+        IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(geometry);
+        Coordinate probe = new Coordinate();
+        for (int y = 0; y < height; y++) {
+            probe.y = grid.centerY(y0 + y);
+            int rowOffset = (y0 + y) * before.getWidth() + x0;
+            for (int x = 0; x < width; x++) {
+                probe.x = grid.centerX(x0 + x);
+                if (locator.locate(probe) == Location.EXTERIOR) {
+                    continue;
+                }
+                total++;
+                float value = afterValues[rowOffset + x] - beforeValues[rowOffset + x];
+                // NaN хотя бы на одном снимке даёт NaN
+                if (Float.isNaN(value)) {
+                    continue;
+                }
+                delta[y * width + x] = value;
+                count++;
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                if (value >= threshold) {
+                    increased++;
+                } else if (value <= -threshold) {
+                    decreased++;
+                }
+            }
+        }
+        IndexRaster difference = new IndexRaster(width, height, delta);
+        if (count == 0) {
+            return new IndexChange(difference, total, 0, Double.NaN, Double.NaN, Double.NaN, 0, 0);
+        }
+        return new IndexChange(difference, total, count, sum / count, min, max, increased, decreased);
+    }
+
+    // Линейная интерполяция между соседними рангами отсортированного массива
+    private static double percentile(float[] sorted, int count, double percentile) {
+        double rank = percentile / 100.0 * (count - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = Math.min(count - 1, lower + 1);
+        double fraction = rank - lower;
+        return sorted[lower] + (sorted[upper] - sorted[lower]) * fraction;
+    }
+}
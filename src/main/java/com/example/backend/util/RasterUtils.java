@@ -0,0 +1,207 @@
+package com.example.backend.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
+
+import com.example.backend.model.ColorRamp;
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.PixelGrid;
+
+/**
+ * Вспомогательные операции над растрами, полученными от Sentinel Hub.
+ */
+public final class RasterUtils {
+
+    private RasterUtils() {
+    }
+
+    public static BufferedImage decodePng(byte[] png) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+            if (image == null) {
+                throw new IllegalArgumentException("Response is not a readable image");
+            }
+            return image;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode PNG", e);
+        }
+    }
+
+    /**
+     * Читает одноканальный FLOAT32 TIFF, который Process API возвращает для значений индекса.
+     */
+    public static IndexRaster decodeFloatTiff(byte[] tiff) {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(tiff));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode TIFF", e);
+        }
+        if (image == null) {
+            throw new IllegalArgumentException("Response is not a readable TIFF");
+        }
+        Raster raster = image.getRaster();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        float[] values = raster.getSamples(0, 0, width, height, 0, new float[width * height]);
+        return new IndexRaster(width, height, values);
+    }
+
+    /**
+     * Раскрашивает растр индекса шкалой ramp (пиксели NaN остаются прозрачными).
+     */
+    public static BufferedImage render(IndexRaster raster, ColorRamp ramp) {
+        BufferedImage image = new BufferedImage(raster.getWidth(), raster.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        // Пишем прямо в буфер изображения, минуя setRGB с его преобразованием цвета на каждый пиксель
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        float[] values = raster.getValues();
+        for (int i = 0; i < values.length; i++) {
+            pixels[i] = ramp.colorOf(values[i]);
+        }
+        return image;
+    }
+
+    /**
+     * Собирает растр из четырёх соседних растров того же размера (северо-запад, северо-восток, юго-запад, юго-восток),
+     * уменьшая их вдвое: пиксель результата — среднее непустых значений блока 2×2. Отсутствующая четверть (null)
+     * и блок целиком из NaN дают NaN.
+     */
+    public static IndexRaster downsampleQuadrants(IndexRaster northWest, IndexRaster northEast,
+                                                  IndexRaster southWest, IndexRaster southEast, int size) {
+        float[] values = new float[size * size];
+        Arrays.fill(values, Float.NaN);
+        IndexRaster[] quadrants = {northWest, northEast, southWest, southEast};
+        int half = size / 2;
+        for (int q = 0; q < 4; q++) {
+            IndexRaster source = quadrants[q];
+            if (source == null) {
+                continue;
+            }
+            if (source.getWidth() != size || source.getHeight() != size) {
+                throw new IllegalArgumentException("Quadrant size mismatch: " + source.getWidth() + "x" + source.getHeight());
+            }
+            float[] src = source.getValues();
+            int offsetX = (q % 2) * half;
+            int offsetY = (q / 2) * half;
+            for (int y = 0; y < half; y++) {
+                int top = 2 * y * size;
+                int bottom = top + size;
+                for (int x = 0; x < half; x++) {
+                    int i = 2 * x;
+                    values[(offsetY + y) * size + offsetX + x] =
+                            meanOfValid(src[top + i], src[top + i + 1], src[bottom + i], src[bottom + i + 1]);
+                }
+            }
+        }
+        return new IndexRaster(size, size, values);
+    }
+
+    private static float meanOfValid(float a, float b, float c, float d) {
+        float sum = 0;
+        int count = 0;
+        if (!Float.isNaN(a)) {
+            sum += a;
+            count++;
+        }
+        if (!Float.isNaN(b)) {
+            sum += b;
+            count++;
+        }
+        if (!Float.isNaN(c)) {
+            sum += c;
+            count++;
+        }
+        if (!Float.isNaN(d)) {
+            sum += d;
+            count++;
+        }
+        return count > 0 ? sum / count : Float.NaN;
+    }
+
+    /**
+     * Копирует растр tile в массив значений target шириной targetWidth, начиная с пикселя (x, y).
+     */
+    public static void paste(float[] target, int targetWidth, IndexRaster tile, int x, int y) {
+        float[] source = tile.getValues();
+        for (int row = 0; row < tile.getHeight(); row++) {
+            System.arraycopy(source, row * tile.getWidth(), target, (y + row) * targetWidth + x, tile.getWidth());
+        }
+    }
+
+    /**
+     * Копирует изображение tile в target, начиная с пикселя (x, y), построчно.
+     */
+    public static void paste(BufferedImage target, BufferedImage tile, int x, int y) {
+        int width = tile.getWidth();
+        int[] row = new int[width];
+        for (int line = 0; line < tile.getHeight(); line++) {
+            tile.getRGB(0, line, width, 1, row, 0, width);
+            target.setRGB(x, y + line, width, 1, row, 0, width);
+        }
+    }
+
+    /**
+     * Горизонтальная полоса легенды: слева минимум шкалы, справа максимум.
+     */
+    public static BufferedImage renderLegend(ColorRamp ramp, float min, float max, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int x = 0; x < width; x++) {
+            int color = ramp.colorOf(min + (max - min) * x / Math.max(1, width - 1));
+            for (int y = 0; y < height; y++) {
+                pixels[y * width + x] = color;
+            }
+        }
+        return image;
+    }
+
+    public static byte[] encodePng(BufferedImage image) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode PNG", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Вырезает из растра сетки grid окно {x, y, width, height} и делает прозрачными пиксели,
+     * центр которых лежит вне geometry (так же, как dataMask в Process API для запроса по геометрии).
+     */
+    public static BufferedImage cropAndMask(BufferedImage source, PixelGrid grid, int[] window, Geometry geometry) {
+        int x0 = window[0];
+        int y0 = window[1];
+        int width = window[2];
+        int height = window[3];
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] row = new int[width];
+        IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(geometry);
+        Coordinate probe = new Coordinate();
+        for (int y = 0; y < height; y++) {
+            source.getRGB(x0, y0 + y, width, 1, row, 0, width);
+            probe.y = grid.centerY(y0 + y);
+            for (int x = 0; x < width; x++) {
+                probe.x = grid.centerX(x0 + x);
+                if (locator.locate(probe) == Location.EXTERIOR) {
+                    row[x] = 0;
+                }
+            }
+            result.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,556 @@
+package com.example.backend.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.locationtech.jts.algorithm.PointLocation;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.util.PolygonExtracter;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.PixelGrid;
+import com.example.backend.model.ZoneMap;
+
+/**
+ * Зоны управления полигона: кластеризация значений индекса k-means и перевод растра зон в полигоны.
+ * Всё считается по примитивным массивам; рабочие массивы выделяются один раз на вызов, а не на итерацию.
+ */
+public final class RasterZoning {
+
+    // Значений на одну задачу назначения k-means
+    private static final int CHUNK = 8192;
+
+    // Направления рёбер контура в координатах растра (строки сверху вниз)
+    private static final int EAST = 0;
+    private static final int SOUTH = 1;
+    private static final int WEST = 2;
+    private static final int NORTH = 3;
+
+    private RasterZoning() {
+    }
+
+    /**
+     * Делит пиксели растра с данными, центр которых лежит внутри geometry, на zones кластеров по значению индекса.
+     * Если пикселей с данными меньше, чем zones, зон столько, сколько пикселей.
+     */
+    public static ZoneMap cluster(IndexRaster raster, PixelGrid grid, Geometry geometry, int zones, int maxIterations) {
+        int[] window = grid.window(geometry.getEnvelopeInternal());
+        int x0 = window[0];
+        int y0 = window[1];
+        int width = Math.max(0, Math.min(window[2], raster.getWidth() - x0));
+        int height = Math.max(0, Math.min(window[3], raster.getHeight() - y0));
+
+        float[] source = raster.getValues();
+        float[] values = new float[width * height];
+        int[] positions = new int[width * height];
+        int count = 0;
+        int total = 0;
+        IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(geometry);
+        Coordinate probe = new Coordinate();
+        for (int y = 0; y < height; y++) {
+            probe.y = grid.centerY(y0 + y);
+            int rowOffset = (y0 + y) * raster.getWidth() + x0;
+            for (int x = 0; x < width; x++) {
+                probe.x = grid.centerX(x0 + x);
+                if (locator.locate(probe) == Location.EXTERIOR) {
+                    continue;
+                }
+                total++;
+                float value = source[rowOffset + x];
+                if (!Float.isNaN(value)) {
+                    values[count] = value;
+                    positions[count] = y * width + x;
+                    count++;
+                }
+            }
+        }
+
+        int k = Math.min(zones, count);
+        byte[] assignment = new byte[count];
+        double[] centroids = k == 0 ? new double[0] : kMeans(values, count, k, maxIterations, assignment);
+
+        // Номера зон — по возрастанию центра: зона 1 самая слабая
+        int[] order = new int[k];
+        for (int i = 0; i < k; i++) {
+            order[i] = i;
+        }
+        for (int i = 1; i < k; i++) {
+            for (int j = i; j > 0 && centroids[order[j]] < centroids[order[j - 1]]; j--) {
+                int swap = order[j];
+                order[j] = order[j - 1];
+                order[j - 1] = swap;
+            }
+        }
+        byte[] zoneOf = new byte[k];
+        double[] sorted = new double[k];
+        for (int i = 0; i < k; i++) {
+            zoneOf[order[i]] = (byte) (i + 1);
+            sorted[i] = centroids[order[i]];
+        }
+        byte[] labels = new byte[width * height];
+        for (int i = 0; i < count; i++) {
+            labels[positions[i]] = zoneOf[assignment[i]];
+        }
+        return new ZoneMap(x0, y0, width, height, labels, sorted, total);
+    }
+
+    /**
+     * Одномерный k-means (алгоритм Ллойда) по values[0..count). Начальные центры — квантили значений,
+     * поэтому результат детерминирован. Шаг назначения выполняется кусками по {@value #CHUNK} значений
+     * параллельно в общем пуле fork-join; частичные суммы каждого куска пишутся в свою строку заранее
+     * выделенных массивов и сводятся после шага, так что итерация ничего не выделяет.
+     *
+     * @param assignment Выход: номер кластера 0..k-1 для каждого значения.
+     * @return Центры кластеров в порядке номеров; кластер, оставшийся без значений, сохраняет прежний центр.
+     */
+    public static double[] kMeans(float[] values, int count, int k, int maxIterations, byte[] assignment) {
+        if (k < 1 || k > Byte.MAX_VALUE || count < k) {
+            throw new IllegalArgumentException("Cannot split " + count + " values into " + k + " clusters");
+        }
+        double[] centroids = initialCentroids(values, count, k);
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        double[] sums = new double[chunks * k];
+        int[] counts = new int[chunks * k];
+        int[] moved = new int[chunks];
+        Arrays.fill(assignment, 0, count, (byte) -1);
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            IntStream tasks = IntStream.range(0, chunks);
+            (chunks > 1 ? tasks.parallel() : tasks)
+                    .forEach(chunk -> assignChunk(values, count, centroids, assignment, chunk, sums, counts, moved));
+            int changed = 0;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                changed += moved[chunk];
+            }
+            if (changed == 0) {
+                break;
+            }
+            for (int c = 0; c < k; c++) {
+                double sum = 0;
+                long members = 0;
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    sum += sums[chunk * k + c];
+                    members += counts[chunk * k + c];
+                }
+                if (members > 0) {
+                    centroids[c] = sum / members;
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static double[] initialCentroids(float[] values, int count, int k) {
+        float[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        double[] centroids = new double[k];
+        for (int c = 0; c < k; c++) {
+            centroids[c] = sorted[(int) ((c + 0.5) * count / k)];
+        }
+        return centroids;
+    }
+
+    private static void assignChunk(float[] values, int count, double[] centroids, byte[] assignment, int chunk,
+                                    double[] sums, int[] counts, int[] moved) {
+        int k = centroids.length;
+        int from = chunk * CHUNK;
+        int to = Math.min(count, from + CHUNK);
+        int row = chunk * k;
+        Arrays.fill(sums, row, row + k, 0.0);
+        Arrays.fill(counts, row, row + k, 0);
+        int changed = 0;
+        for (int i = from; i < to; i++) {
+            float value = values[i];
+            int best = 0;
+            double bestDistance = Math.abs(value - centroids[0]);
+            for (int c = 1; c < k; c++) {
+                double distance = Math.abs(value - centroids[c]);
+                if (distance < bestDistance) {
+                    best = c;
+                    bestDistance = distance;
+                }
+            }
+            if (assignment[i] != best) {
+                assignment[i] = (byte) best;
+                changed++;
+            }
+            sums[row + best] += value;
+            counts[row + best]++;
+        }
+        moved[chunk] = changed;
+    }
+
+    /**
+     * Сглаживает зоны мажоритарным фильтром 3×3: пиксель получает зону, которой больше всего среди него
+     * и соседей внутри полигона (при равенстве остаётся своя). Убирает одиночные пиксели, которые
+     * для дифференцированного внесения бесполезны и раздувают полигоны зон.
+     */
+    public static void smooth(ZoneMap map, int passes) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        byte[] labels = map.getLabels();
+        byte[] next = new byte[labels.length];
+        int[] votes = new int[map.getZoneCount() + 1];
+        for (int pass = 0; pass < passes; pass++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = y * width + x;
+                    int label = labels[i];
+                    if (label == 0) {
+                        next[i] = 0;
+                        continue;
+                    }
+                    Arrays.fill(votes, 0);
+                    for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+                        for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                            votes[labels[ny * width + nx]]++;
+                        }
+                    }
+                    int best = label;
+                    for (int zone = 1; zone < votes.length; zone++) {
+                        if (votes[zone] > votes[best]) {
+                            best = zone;
+                        }
+                    }
+                    next[i] = (byte) best;
+                }
+            }
+            System.arraycopy(next, 0, labels, 0, labels.length);
+        }
+    }
+
+    /**
+     * Переводит растр зон в полигоны, обрезанные по границе поля.
+     * <p>
+     * Контуры прослеживаются прямо по сторонам пикселей: сторона пикселя зоны, за которой другая зона
+     * или край окна, — ребро контура, направленное так, что зона справа. Рёбра сцепляются в кольца
+     * за один проход по вершинам сетки, без объединения геометрий. Кольцо, прошедшее через вершину
+     * дважды (зона касается себя углом), сразу разрезается в этой вершине, поэтому все кольца простые
+     * и полигоны валидны. Кольца по часовой стрелке (в координатах растра) — внешние границы, против — дыры.
+     * Соседние зоны получают одни и те же вершины на общей границе, без щелей и перекрытий.
+     *
+     * @return Геометрия зоны n — элемент n - 1 (пустой MultiPolygon, если пикселей у зоны не осталось).
+     */
+    public static Geometry[] polygonize(ZoneMap map, PixelGrid grid, Geometry field) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        byte[] labels = coverEdge(map.getLabels(), width, height);
+        GeometryFactory factory = field.getFactory();
+        PreparedGeometry preparedField = PreparedGeometryFactory.prepare(field);
+        boolean[] interior = interiorPixels(map, grid, field);
+        int stride = width + 1;
+        int vertices = stride * (height + 1);
+        // Исходящие рёбра вершины: бит направления (E, S, W, N)
+        byte[] outgoing = new byte[vertices];
+        int[] path = new int[vertices + 1];
+        int[] positionOf = new int[vertices];
+        Arrays.fill(positionOf, -1);
+        int[] step = {1, stride, -1, -stride};
+
+        Geometry[] zones = new Geometry[map.getZoneCount()];
+        for (int zone = 1; zone <= zones.length; zone++) {
+            boolean any = false;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (labels[y * width + x] != zone) {
+                        continue;
+                    }
+                    any = true;
+                    int corner = y * stride + x;
+                    if (y == 0 || labels[(y - 1) * width + x] != zone) {
+                        outgoing[corner] |= 1 << EAST;
+                    }
+                    if (x == width - 1 || labels[y * width + x + 1] != zone) {
+                        outgoing[corner + 1] |= 1 << SOUTH;
+                    }
+                    if (y == height - 1 || labels[(y + 1) * width + x] != zone) {
+                        outgoing[corner + stride + 1] |= 1 << WEST;
+                    }
+                    if (x == 0 || labels[y * width + x - 1] != zone) {
+                        outgoing[corner + stride] |= 1 << NORTH;
+                    }
+                }
+            }
+            if (!any) {
+                zones[zone - 1] = factory.createMultiPolygon();
+                continue;
+            }
+
+            Rings rings = new Rings();
+            for (int start = 0; start < vertices; start++) {
+                while (outgoing[start] != 0) {
+                    int length = 0;
+                    int vertex = start;
+                    int direction = Integer.numberOfTrailingZeros(outgoing[start]);
+                    path[length] = vertex;
+                    positionOf[vertex] = length++;
+                    while (true) {
+                        outgoing[vertex] &= ~(1 << direction);
+                        vertex += step[direction];
+                        int seen = positionOf[vertex];
+                        if (seen >= 0) {
+                            // Петля замкнулась в вершине пути: отрезаем её в отдельное кольцо
+                            emitRing(path, seen, length, stride, map, grid, interior, factory, rings);
+                            for (int i = seen + 1; i < length; i++) {
+                                positionOf[path[i]] = -1;
+                            }
+                            length = seen + 1;
+                            if (length == 1 && outgoing[vertex] == 0) {
+                                positionOf[vertex] = -1;
+                                break;
+                            }
+                        } else {
+                            path[length] = vertex;
+                            positionOf[vertex] = length++;
+                        }
+                        if (outgoing[vertex] == 0) {
+                            // Начальная вершина с отрезанным кольцом, но с рёбрами следующего кольца
+                            for (int i = 0; i < length; i++) {
+                                positionOf[path[i]] = -1;
+                            }
+                            break;
+                        }
+                        direction = nextDirection(outgoing[vertex], direction);
+                    }
+                }
+            }
+            // Обрезаем по полю только части, внешняя граница которых проходит у границы поля
+            List<Polygon> clipped = new ArrayList<>();
+            Polygon[] polygons = rings.assemble(factory);
+            for (int i = 0; i < polygons.length; i++) {
+                Polygon polygon = polygons[i];
+                if (rings.shellInside.get(i) || preparedField.contains(polygon)) {
+                    clipped.add(polygon);
+                } else if (preparedField.intersects(polygon)) {
+                    clipped.addAll(polygonsOf(polygon.intersection(field)));
+                }
+            }
+            zones[zone - 1] = clipped.size() == 1 ? clipped.get(0) : factory.createMultiPolygon(clipped.toArray(new Polygon[0]));
+        }
+        return zones;
+    }
+
+    // Из двух рёбер в вершине касания углом выбираем поворот направо, затем прямо, затем налево
+    private static int nextDirection(byte outgoing, int incoming) {
+        int right = (incoming + 1) & 3;
+        if ((outgoing & (1 << right)) != 0) {
+            return right;
+        }
+        if ((outgoing & (1 << incoming)) != 0) {
+            return incoming;
+        }
+        return (incoming + 3) & 3;
+    }
+
+    /**
+     * Кольцо из вершин path[from..to) с замыканием в path[from]; вершины на прямых участках пропускаются.
+     * Внешняя граница помечается лежащей внутри поля, если все пиксели у её вершин — в маске interior.
+     */
+    private static void emitRing(int[] path, int from, int to, int stride, ZoneMap map, PixelGrid grid,
+                                 boolean[] interior, GeometryFactory factory, Rings rings) {
+        int count = to - from;
+        int width = map.getWidth();
+        List<Coordinate> coordinates = new ArrayList<>(count + 1);
+        long doubledArea = 0;
+        boolean inside = true;
+        for (int i = 0; i < count; i++) {
+            int previous = path[from + (i + count - 1) % count];
+            int current = path[from + i];
+            int next = path[from + (i + 1) % count];
+            int cx = current % stride;
+            int cy = current / stride;
+            int nx = next % stride;
+            int ny = next / stride;
+            doubledArea += (long) cx * ny - (long) nx * cy;
+            // Вершина на краю окна всегда у границы поля
+            inside = inside && cx > 0 && cy > 0 && cx < width && cy < map.getHeight()
+                    && interior[(cy - 1) * width + cx - 1] && interior[(cy - 1) * width + cx]
+                    && interior[cy * width + cx - 1] && interior[cy * width + cx];
+            if (current - previous != next - current) {
+                coordinates.add(new Coordinate(
+                        grid.getMinX() + (map.getX0() + cx) * grid.getPixelWidth(),
+                        grid.getMaxY() - (map.getY0() + cy) * grid.getPixelHeight()));
+            }
+        }
+        coordinates.add(new Coordinate(coordinates.get(0)));
+        LinearRing ring = factory.createLinearRing(coordinates.toArray(new Coordinate[0]));
+        if (doubledArea > 0) {
+            rings.shells.add(ring);
+            rings.shellAreas.add(doubledArea);
+            rings.shellInside.add(inside);
+        } else {
+            // Пиксель зоны справа от первого ребра дыры лежит внутри её внешней границы
+            int a = path[from];
+            int b = path[from + 1 < to ? from + 1 : from];
+            int ax = a % stride;
+            int ay = a / stride;
+            int px = b - a == 1 ? ax : b - a == stride ? ax - 1 : b - a == -1 ? ax - 1 : ax;
+            int py = b - a == 1 ? ay : b - a == stride ? ay : b - a == -1 ? ay - 1 : ay - 1;
+            rings.holes.add(ring);
+            rings.holeProbes.add(new Coordinate(grid.centerX(map.getX0() + px), grid.centerY(map.getY0() + py)));
+        }
+    }
+
+    /**
+     * Пиксели окна зон, целиком лежащие внутри поля: центр внутри и граница поля не проходит ни через сам
+     * пиксель, ни через соседние (запас на погрешность). Для поля с дырами маска пустая — замкнутое кольцо
+     * внутри такой маски может охватывать дыру поля.
+     */
+    private static boolean[] interiorPixels(ZoneMap map, PixelGrid grid, Geometry field) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        boolean[] interior = new boolean[width * height];
+        for (int i = 0; i < field.getNumGeometries(); i++) {
+            Geometry part = field.getGeometryN(i);
+            if (!(part instanceof Polygon) || ((Polygon) part).getNumInteriorRing() > 0) {
+                return interior;
+            }
+        }
+        boolean[] crossed = new boolean[width * height];
+        for (int i = 0; i < field.getNumGeometries(); i++) {
+            Coordinate[] ring = ((Polygon) field.getGeometryN(i)).getExteriorRing().getCoordinates();
+            for (int j = 1; j < ring.length; j++) {
+                markSegment(crossed, width, height,
+                        (ring[j - 1].x - grid.getMinX()) / grid.getPixelWidth() - map.getX0(),
+                        (grid.getMaxY() - ring[j - 1].y) / grid.getPixelHeight() - map.getY0(),
+                        (ring[j].x - grid.getMinX()) / grid.getPixelWidth() - map.getX0(),
+                        (grid.getMaxY() - ring[j].y) / grid.getPixelHeight() - map.getY0());
+            }
+        }
+        IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(field);
+        Coordinate probe = new Coordinate();
+        for (int y = 0; y < height; y++) {
+            probe.y = grid.centerY(map.getY0() + y);
+            for (int x = 0; x < width; x++) {
+                if (crossedNear(crossed, width, height, x, y)) {
+                    continue;
+                }
+                probe.x = grid.centerX(map.getX0() + x);
+                interior[y * width + x] = locator.locate(probe) != Location.EXTERIOR;
+            }
+        }
+        return interior;
+    }
+
+    // Помечает пиксели, через которые проходит отрезок (координаты в пикселях окна), по столбцам
+    private static void markSegment(boolean[] crossed, int width, int height, double ax, double ay, double bx, double by) {
+        double minX = Math.min(ax, bx);
+        double maxX = Math.max(ax, bx);
+        for (int column = (int) Math.floor(minX); column <= (int) Math.floor(maxX); column++) {
+            double left = Math.max(minX, column);
+            double right = Math.min(maxX, column + 1);
+            double top;
+            double bottom;
+            if (ax == bx) {
+                top = Math.min(ay, by);
+                bottom = Math.max(ay, by);
+            } else {
+                double yLeft = ay + (by - ay) * (left - ax) / (bx - ax);
+                double yRight = ay + (by - ay) * (right - ax) / (bx - ax);
+                top = Math.min(yLeft, yRight);
+                bottom = Math.max(yLeft, yRight);
+            }
+            if (column < 0 || column >= width) {
+                continue;
+            }
+            for (int row = Math.max(0, (int) Math.floor(top)); row <= Math.min(height - 1, (int) Math.floor(bottom)); row++) {
+                crossed[row * width + column] = true;
+            }
+        }
+    }
+
+    private static boolean crossedNear(boolean[] crossed, int width, int height, int x, int y) {
+        for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                if (crossed[ny * width + nx]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Кольца одной зоны. Полигоны собираются из внешних границ и дыр: дыра достаётся самой маленькой внешней
+     * границе, содержащей пиксель зоны у её края (внешние границы зоны могут быть вложены друг в друга через дыры).
+     */
+    private static final class Rings {
+
+        private final List<LinearRing> shells = new ArrayList<>();
+        private final List<Long> shellAreas = new ArrayList<>();
+        private final List<Boolean> shellInside = new ArrayList<>();
+        private final List<LinearRing> holes = new ArrayList<>();
+        private final List<Coordinate> holeProbes = new ArrayList<>();
+
+        Polygon[] assemble(GeometryFactory factory) {
+            List<List<LinearRing>> holesOf = new ArrayList<>(shells.size());
+            STRtree index = new STRtree();
+            for (int s = 0; s < shells.size(); s++) {
+                holesOf.add(new ArrayList<>());
+                index.insert(shells.get(s).getEnvelopeInternal(), s);
+            }
+            for (int h = 0; h < holes.size(); h++) {
+                Coordinate probe = holeProbes.get(h);
+                int owner = -1;
+                for (Object candidate : index.query(new Envelope(probe))) {
+                    int s = (Integer) candidate;
+                    if ((owner < 0 || shellAreas.get(s) < shellAreas.get(owner))
+                            && PointLocation.isInRing(probe, shells.get(s).getCoordinates())) {
+                        owner = s;
+                    }
+                }
+                if (owner >= 0) {
+                    holesOf.get(owner).add(holes.get(h));
+                }
+            }
+            Polygon[] polygons = new Polygon[shells.size()];
+            for (int s = 0; s < polygons.length; s++) {
+                polygons[s] = factory.createPolygon(shells.get(s), holesOf.get(s).toArray(new LinearRing[0]));
+            }
+            return polygons;
+        }
+    }
+
+    /**
+     * Копия зон, где пиксели без зоны рядом с зоной (по стороне) получают зону соседа. Пиксели на границе поля,
+     * центр которых снаружи, иначе остались бы щелью между зонами и границей после обрезки по полю.
+     */
+    private static byte[] coverEdge(byte[] labels, int width, int height) {
+        byte[] covered = labels.clone();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (labels[i] != 0) {
+                    continue;
+                }
+                if (y > 0 && labels[i - width] != 0) {
+                    covered[i] = labels[i - width];
+                } else if (x > 0 && labels[i - 1] != 0) {
+                    covered[i] = labels[i - 1];
+                } else if (x < width - 1 && labels[i + 1] != 0) {
+                    covered[i] = labels[i + 1];
+                } else if (y < height - 1 && labels[i + width] != 0) {
+                    covered[i] = labels[i + width];
+                }
+            }
+        }
+        return covered;
+    }
+
+    // Пересечение с границей поля может дать линии и точки касания — оставляем только площадную часть
+    @SuppressWarnings("unchecked")
+    private static List<Polygon> polygonsOf(Geometry geometry) {
+        return PolygonExtracter.getPolygons(geometry);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.backend.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Объединяет одновременные вызовы с одинаковым ключом: первый вызов ("лидер") выполняет работу,
+ * остальные ждут и получают тот же результат (или то же исключение).
+ * После завершения ключ освобождается — это не кэш, а только схлопывание параллельных запросов.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter coalesced;
+
+    public SingleFlight(MeterRegistry meterRegistry, String name) {
+        this.leaders = Counter.builder(name + ".calls").tag("role", "leader").register(meterRegistry);
+        this.coalesced = Counter.builder(name + ".calls").tag("role", "coalesced").register(meterRegistry);
+        Gauge.builder(name + ".in-flight", inFlight, ConcurrentHashMap::size).register(meterRegistry);
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        leaders.increment();
+        try {
+            V value = loader.get();
+            own.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * Асинхронный вариант: лидер запускает loader, остальные получают тот же future.
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+
+        leaders.increment();
+        try {
+            loader.get().whenComplete((value, error) -> {
+                inFlight.remove(key, own);
+                if (error != null) {
+                    own.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                } else {
+                    own.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, own);
+            own.completeExceptionally(e);
+        }
+        return own;
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.backend.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Минимальный разбор tar-архива (формат ustar), в котором Process API возвращает
+ * несколько выходов одного запроса. Поддерживаются только обычные файлы.
+ */
+public final class TarReader {
+
+    private static final int BLOCK = 512;
+
+    private TarReader() {
+    }
+
+    /**
+     * @return Имя файла внутри архива -> содержимое, в порядке следования.
+     */
+    public static Map<String, byte[]> read(byte[] tar) {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        int offset = 0;
+        while (offset + BLOCK <= tar.length) {
+            String name = readString(tar, offset, 100);
+            if (name.isEmpty()) {
+                break; // два нулевых блока в конце архива
+            }
+            String prefix = readString(tar, offset + 345, 155);
+            String sizeField = readString(tar, offset + 124, 12).trim();
+            long size = sizeField.isEmpty() ? 0 : Long.parseLong(sizeField, 8);
+            byte type = tar[offset + 156];
+            int dataStart = offset + BLOCK;
+            if (dataStart + size > tar.length) {
+                throw new IllegalArgumentException("Truncated tar entry: " + name);
+            }
+            if (type == '0' || type == 0) {
+                byte[] data = new byte[(int) size];
+                System.arraycopy(tar, dataStart, data, 0, (int) size);
+                files.put(prefix.isEmpty() ? name : prefix + "/" + name, data);
+            }
+            offset = dataStart + (int) ((size + BLOCK - 1) / BLOCK) * BLOCK;
+        }
+        return files;
+    }
+
+    private static String readString(byte[] buffer, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && buffer[end] != 0) {
+            end++;
+        }
+        return new String(buffer, offset, end - offset, StandardCharsets.US_ASCII);
+    }
+}
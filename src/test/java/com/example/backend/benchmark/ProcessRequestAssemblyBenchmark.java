@@ -0,0 +1,104 @@
+package com.example.backend.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.example.backend.model.AnalysisTemplate;
+import com.example.backend.service.AnalysisTemplateRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Сравнение сборки тела запроса Process API: прежний вариант через дерево Jackson
+ * (разбор геометрии + toPrettyString для лога) против {@link AnalysisTemplate}.
+ * <p>
+ * Запуск: {@code mvn test-compile} и затем main этого класса с тестовым classpath.
+ * GC-профайлер показывает выделения памяти на операцию (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessRequestAssemblyBenchmark {
+
+    @Param({"NDVI", "HIGHLIGHT_OPTIMIZED_NATURAL_COLOR"})
+    private String analysisType;
+
+    // Число вершин внешнего контура полигона
+    @Param({"16", "1000"})
+    private int vertices;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private AnalysisTemplate template;
+    private String geometryJson;
+
+    @Setup
+    public void setUp() {
+        template = new AnalysisTemplateRegistry().get(analysisType);
+        StringBuilder coordinates = new StringBuilder();
+        for (int i = 0; i <= vertices; i++) {
+            double angle = 2 * Math.PI * (i % vertices) / vertices;
+            if (i > 0) {
+                coordinates.append(',');
+            }
+            coordinates.append('[').append(71.43 + 0.01 * Math.cos(angle))
+                    .append(',').append(51.12 + 0.01 * Math.sin(angle)).append(']');
+        }
+        geometryJson = "{\"type\":\"Polygon\",\"coordinates\":[[" + coordinates + "]]}";
+    }
+
+    @Benchmark
+    public String jacksonTree() throws Exception {
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        ObjectNode inputNode = requestBody.putObject("input");
+        inputNode.putObject("bounds").set("geometry", objectMapper.readTree(geometryJson));
+        ObjectNode dataNode = inputNode.putArray("data").addObject();
+        dataNode.put("type", "sentinel-2-l2a");
+        ObjectNode dataFilterNode = dataNode.putObject("dataFilter");
+        ObjectNode timeRangeNode = dataFilterNode.putObject("timeRange");
+        timeRangeNode.put("from", "2024-06-01T00:00:00Z");
+        timeRangeNode.put("to", "2024-06-30T23:59:59Z");
+        dataFilterNode.put("mosaickingOrder", "leastCC");
+        ObjectNode outputNode = requestBody.putObject("output");
+        outputNode.put("width", 512);
+        outputNode.put("height", 512);
+        ObjectNode response = outputNode.putArray("responses").addObject();
+        response.put("identifier", "default");
+        response.putObject("format").put("type", "image/png");
+        requestBody.put("evalscript", template.getEvalscript());
+        // Прежний код всегда строил pretty-строку для debug-лога
+        requestBody.toPrettyString();
+        return requestBody.toString();
+    }
+
+    @Benchmark
+    public String precompiledTemplate() {
+        return template.writeRequest(geometryJson, "2024-06-01", "2024-06-30", 512, 512);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProcessRequestAssemblyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
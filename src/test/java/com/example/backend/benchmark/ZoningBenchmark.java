@@ -0,0 +1,107 @@
+package com.example.backend.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.PixelGrid;
+import com.example.backend.model.ZoneMap;
+import com.example.backend.util.GeometryUtils;
+import com.example.backend.util.RasterZoning;
+
+/**
+ * Зоны управления для поля заданной площади при 10 м/пиксель: только k-means по пикселям полигона
+ * и полный расчёт эндпоинта /zones (k-means, сглаживание, полигоны зон).
+ * <p>
+ * Поле — неровный многоугольник, NDVI — плавный рельеф с шумом, как у реального снимка.
+ * Запуск: {@code mvn test-compile} и затем main этого класса с тестовым classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZoningBenchmark {
+
+    private static final double RESOLUTION_METERS = 10.0;
+    private static final double LATITUDE = 51.12;
+
+    @Param({"50", "500"})
+    private int hectares;
+
+    @Param({"3", "5"})
+    private int zones;
+
+    private Geometry field;
+    private PixelGrid grid;
+    private IndexRaster raster;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        // Многоугольник площадью ~hectares: круг со случайно изрезанной границей
+        double radius = Math.sqrt(hectares * 10_000.0 / Math.PI);
+        int vertices = 200;
+        Coordinate[] ring = new Coordinate[vertices + 1];
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * i / vertices;
+            double r = radius * (0.9 + 0.2 * random.nextDouble());
+            ring[i] = new Coordinate(
+                    71.43 + r * Math.cos(angle) / (GeometryUtils.METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE))),
+                    LATITUDE + r * Math.sin(angle) / GeometryUtils.METERS_PER_DEGREE);
+        }
+        ring[vertices] = ring[0];
+        field = new GeometryFactory().createPolygon(ring);
+        grid = PixelGrid.aligned(field.getEnvelopeInternal(), RESOLUTION_METERS, field.getEnvelopeInternal().centre().y);
+
+        float[] values = new float[grid.getWidth() * grid.getHeight()];
+        for (int y = 0; y < grid.getHeight(); y++) {
+            for (int x = 0; x < grid.getWidth(); x++) {
+                double relief = 0.5 + 0.2 * Math.sin(x / 17.0) * Math.cos(y / 23.0) + 0.1 * Math.sin((x + y) / 41.0);
+                values[y * grid.getWidth() + x] = (float) (relief + 0.05 * random.nextGaussian());
+            }
+        }
+        raster = new IndexRaster(grid.getWidth(), grid.getHeight(), values);
+    }
+
+    @Benchmark
+    public ZoneMap cluster() {
+        return RasterZoning.cluster(raster, grid, field, zones, 50);
+    }
+
+    @Benchmark
+    public Geometry[] delineate() {
+        ZoneMap map = RasterZoning.cluster(raster, grid, field, zones, 50);
+        RasterZoning.smooth(map, 1);
+        return RasterZoning.polygonize(map, grid, field);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ZoningBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.backend.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * LRU обоих уровней, срок годности и устаревшие записи.
+ * Записи по 10 байт; файл на диске — 8 байт заголовка плюс данные.
+ */
+class ImageryCacheTest {
+
+    private static final int ENTRY_BYTES = 10;
+    private static final long FILE_BYTES = Long.BYTES + ENTRY_BYTES;
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void memoryEvictsLeastRecentlyUsed() {
+        // В память помещается 8 записей (крупнее max/8 туда не кладутся)
+        ImageryCache cache = cache(8 * ENTRY_BYTES, Long.MAX_VALUE);
+        for (int i = 0; i < 8; i++) {
+            cache.put("k" + i, data(i), Duration.ofHours(1));
+        }
+        cache.get("k0");
+        cache.put("k8", data(8), Duration.ofHours(1));
+
+        double before = hits("memory");
+        cache.get("k0");
+        assertEquals(before + 1, hits("memory"), 1e-9, "недавно прочитанная запись вытеснена из памяти");
+        before = hits("disk");
+        assertArrayEquals(data(1), cache.get("k1").orElseThrow());
+        assertEquals(before + 1, hits("disk"), 1e-9, "самая старая запись должна читаться уже с диска");
+    }
+
+    @Test
+    void expiredEntryIsMissButStaysAvailableAsStale() {
+        ImageryCache cache = cache(1024, Long.MAX_VALUE);
+        cache.put("k", data(1), Duration.ofMillis(-1));
+
+        assertFalse(cache.contains("k"));
+        assertTrue(cache.get("k").isEmpty());
+        assertTrue(cache.openStream("k").isEmpty());
+        assertArrayEquals(data(1), cache.getStale("k").orElseThrow());
+        assertTrue(Files.exists(dir.resolve("k.bin")), "истёкший файл удаляется только вытеснением");
+    }
+
+    @Test
+    void entryWithoutTtlNeverExpires() {
+        ImageryCache cache = cache(1024, Long.MAX_VALUE);
+        cache.put("k", data(1), null);
+
+        assertEquals(OptionalLong.of(Long.MAX_VALUE), cache.expiresAt("k"));
+        assertTrue(cache.contains("k"));
+    }
+
+    @Test
+    void diskKeepsEntriesServedFromMemory() throws InterruptedException {
+        ImageryCache cache = cache(1024, 3 * FILE_BYTES);
+        cache.put("hot", data(0), Duration.ofHours(1));
+        Thread.sleep(5);
+        cache.put("cold", data(1), Duration.ofHours(1));
+        Thread.sleep(5);
+        cache.put("warm", data(2), Duration.ofHours(1));
+        Thread.sleep(5);
+        // Попадание в память должно продлить жизнь и файлу на диске
+        cache.get("hot");
+        Thread.sleep(5);
+        cache.put("new", data(3), Duration.ofHours(1));
+
+        assertTrue(Files.exists(dir.resolve("hot.bin")));
+        assertFalse(Files.exists(dir.resolve("cold.bin")));
+        assertTrue(Files.exists(dir.resolve("warm.bin")));
+        assertTrue(Files.exists(dir.resolve("new.bin")));
+    }
+
+    @Test
+    void diskIndexSurvivesRestart() {
+        cache(1024, Long.MAX_VALUE).put("k", data(7), Duration.ofHours(1));
+
+        ImageryCache restarted = cache(1024, Long.MAX_VALUE);
+        assertArrayEquals(data(7), restarted.get("k").orElseThrow());
+    }
+
+    private ImageryCache cache(long memoryMaxBytes, long diskMaxBytes) {
+        ImageryCache cache = new ImageryCache(registry);
+        ReflectionTestUtils.setField(cache, "memoryMaxBytes", memoryMaxBytes);
+        ReflectionTestUtils.setField(cache, "diskDir", dir.toString());
+        ReflectionTestUtils.setField(cache, "diskMaxBytes", diskMaxBytes);
+        cache.loadDiskIndex();
+        return cache;
+    }
+
+    private double hits(String tier) {
+        return registry.get("sentinel.imagery.cache.hits").tag("tier", tier).counter().count();
+    }
+
+    private static byte[] data(int seed) {
+        byte[] data = new byte[ENTRY_BYTES];
+        Arrays.fill(data, (byte) seed);
+        return data;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.backend.standin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.example.backend.service.SentinelHubService;
+
+/**
+ * Нагрузочный прогон {@link SentinelHubService} против {@link SentinelHubStandIn} вместо настоящего Sentinel Hub.
+ * Каждый запрос — своя геометрия, поэтому кэш не помогает и все вызовы доходят до апстрима.
+ * <p>
+ * В обычной сборке не запускается. Запуск:
+ * {@code mvn test -Dtest=SentinelHubServiceLoadTest -Dloadtest=true}
+ * (плюс настройки БД, как для остальных тестов). Параметры — системные свойства:
+ * loadtest.requests (по умолчанию 2000), loadtest.concurrency (64), loadtest.latency-ms (300),
+ * loadtest.jitter-ms (200), loadtest.error-rate (0), loadtest.rate-limit-rate (0.02),
+ * loadtest.analysis-type (TRUE_COLOR; NDVI — путь FLOAT32 с локальной раскраской).
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class SentinelHubServiceLoadTest {
+
+    private static final SentinelHubStandIn STAND_IN = new SentinelHubStandIn()
+            .latency(Duration.ofMillis(Long.getLong("loadtest.latency-ms", 300)), Duration.ofMillis(Long.getLong("loadtest.jitter-ms", 200)))
+            .errorRate(Double.parseDouble(System.getProperty("loadtest.error-rate", "0")))
+            .rateLimitRate(Double.parseDouble(System.getProperty("loadtest.rate-limit-rate", "0.02")))
+            .seed(42)
+            .start();
+
+    @Autowired
+    private SentinelHubService sentinelHubService;
+
+    @DynamicPropertySource
+    static void sentinelHubProperties(DynamicPropertyRegistry registry) throws IOException {
+        Path cacheDir = Files.createTempDirectory("imagery-cache-load");
+        registry.add("sentinelhub.oauth.token-url", STAND_IN::getTokenUrl);
+        registry.add("sentinelhub.process.api-url", STAND_IN::getProcessUrl);
+        registry.add("sentinelhub.statistics.api-url", STAND_IN::getStatisticsUrl);
+        registry.add("sentinelhub.cache.disk.dir", cacheDir::toString);
+        registry.add("sentinelhub.prewarm.enabled", () -> "false");
+    }
+
+    @AfterAll
+    static void stopStandIn() {
+        STAND_IN.close();
+    }
+
+    @Test
+    void imageryThroughputAndLatency() throws Exception {
+        int requests = Integer.getInteger("loadtest.requests", 2000);
+        int concurrency = Integer.getInteger("loadtest.concurrency", 64);
+        String analysisType = System.getProperty("loadtest.analysis-type", "TRUE_COLOR");
+
+        long[] latencies = new long[requests];
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore clients = new Semaphore(concurrency);
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(requests);
+        long started = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            clients.acquire();
+            int index = i;
+            long requestStarted = System.nanoTime();
+            CompletableFuture<byte[]> future;
+            try {
+                future = sentinelHubService.getProcessedImageAsync(polygon(i), analysisType, "2024-06-01", "2024-06-30", 256, 256);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            futures.add(future.whenComplete((image, error) -> {
+                latencies[index] = System.nanoTime() - requestStarted;
+                if (error != null) {
+                    failures.incrementAndGet();
+                }
+                clients.release();
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("Load test: %d %s requests, %d concurrent clients%n", requests, analysisType, concurrency);
+        System.out.printf("  throughput %.1f req/s, latency p50 %d ms, p95 %d ms, p99 %d ms, max %d ms%n",
+                requests / seconds, percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                latencies[requests - 1] / 1_000_000);
+        System.out.printf("  failures %d, upstream calls %d, 429 %d, 5xx %d, token requests %d%n",
+                failures.get(), STAND_IN.getProcessRequests(), STAND_IN.getRateLimited(), STAND_IN.getFailed(),
+                STAND_IN.getTokenRequests());
+
+        if (STAND_IN.getFailed() == 0) {
+            // 429 повторяет планировщик, поэтому без 5xx все запросы должны завершиться успешно
+            assertEquals(0, failures.get(), "Requests failed without injected upstream errors");
+        }
+        assertTrue(STAND_IN.getProcessRequests() >= requests, "Every distinct geometry should reach the upstream");
+    }
+
+    /**
+     * Квадрат ~1 км, свой для каждого номера — чтобы запросы не совпадали в кэше и single-flight.
+     */
+    private static String polygon(int i) {
+        double lon = 71.0 + (i % 100) * 0.02;
+        double lat = 51.0 + (i / 100) * 0.02;
+        double size = 0.01;
+        return "{\"type\":\"Polygon\",\"coordinates\":[[[" + lon + "," + lat + "],[" + (lon + size) + "," + lat + "],["
+                + (lon + size) + "," + (lat + size) + "],[" + lon + "," + (lat + size) + "],[" + lon + "," + lat + "]]]}";
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000;
+    }
+}
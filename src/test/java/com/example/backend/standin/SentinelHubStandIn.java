@@ -0,0 +1,612 @@
+package com.example.backend.standin;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Локальная замена Sentinel Hub для нагрузочных тестов: OAuth (/oauth/token), Process API (/api/v1/process),
+ * Statistical API (/api/v1/statistics) и Catalog API (/api/v1/catalog/1.0.0/search).
+ * <p>
+ * Ответы берутся из каталога записей (имя файла — SHA-256 тела запроса) или синтезируются детерминированно
+ * из геометрии и размера: одинаковый запрос всегда даёт одинаковые байты. В режиме записи промахи
+ * проксируются в настоящий Sentinel Hub и сохраняются в каталог.
+ * Задержка, доля ошибок 5xx и доля ответов 429 настраиваются.
+ * <pre>
+ * SentinelHubStandIn standIn = new SentinelHubStandIn()
+ *         .latency(Duration.ofMillis(300), Duration.ofMillis(200))
+ *         .rateLimitRate(0.02)
+ *         .start();
+ * // sentinelhub.oauth.token-url = standIn.getTokenUrl(), sentinelhub.process.api-url = standIn.getProcessUrl(), ...
+ * </pre>
+ */
+public class SentinelHubStandIn implements AutoCloseable {
+
+    private static final String TOKEN_PATH = "/oauth/token";
+    private static final String PROCESS_PATH = "/api/v1/process";
+    private static final String STATISTICS_PATH = "/api/v1/statistics";
+    private static final String CATALOG_PATH = "/api/v1/catalog/1.0.0/search";
+    private static final int TAR_BLOCK = 512;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger processRequests = new AtomicInteger();
+    private final AtomicInteger statisticsRequests = new AtomicInteger();
+    private final AtomicInteger catalogRequests = new AtomicInteger();
+    private final AtomicInteger rateLimited = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger replayed = new AtomicInteger();
+    private final AtomicLong tokenCounter = new AtomicLong();
+
+    private Duration latency = Duration.ZERO;
+    private Duration latencyJitter = Duration.ZERO;
+    private double errorRate;
+    private double rateLimitRate;
+    private Duration retryAfter = Duration.ofMillis(200);
+    private long tokenLifetimeSeconds = 3600;
+    private int threads = 64;
+    private Long seed;
+    private Path recordingsDir;
+    private String recordUpstream;
+
+    private Random random;
+    private HttpServer server;
+    private ExecutorService executor;
+    private HttpClient upstreamClient;
+
+    /**
+     * Задержка каждого ответа Process/Statistical API: base + равномерно [0, jitter).
+     */
+    public SentinelHubStandIn latency(Duration base, Duration jitter) {
+        this.latency = base;
+        this.latencyJitter = jitter;
+        return this;
+    }
+
+    /**
+     * Доля запросов (0..1), на которые отвечается 500.
+     */
+    public SentinelHubStandIn errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Доля запросов (0..1), на которые отвечается 429 с заголовком Retry-After (в миллисекундах, как у Sentinel Hub).
+     */
+    public SentinelHubStandIn rateLimitRate(double rateLimitRate) {
+        this.rateLimitRate = rateLimitRate;
+        return this;
+    }
+
+    public SentinelHubStandIn retryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    public SentinelHubStandIn tokenLifetime(Duration lifetime) {
+        this.tokenLifetimeSeconds = lifetime.toSeconds();
+        return this;
+    }
+
+    /**
+     * Число потоков сервера — предел одновременно обрабатываемых запросов.
+     */
+    public SentinelHubStandIn threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Фиксирует генератор для ошибок и задержек, чтобы прогоны были воспроизводимы.
+     */
+    public SentinelHubStandIn seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Каталог записанных ответов; при отсутствии записи ответ синтезируется.
+     */
+    public SentinelHubStandIn replayFrom(Path recordingsDir) {
+        this.recordingsDir = recordingsDir;
+        return this;
+    }
+
+    /**
+     * Режим записи: промахи (и запрос токена) проксируются в upstreamBaseUrl
+     * (например, https://services.sentinel-hub.com), ответы сохраняются в recordingsDir.
+     */
+    public SentinelHubStandIn recordFrom(String upstreamBaseUrl, Path recordingsDir) {
+        this.recordUpstream = upstreamBaseUrl.replaceAll("/+$", "");
+        this.recordingsDir = recordingsDir;
+        return this;
+    }
+
+    public SentinelHubStandIn start() {
+        random = seed == null ? null : new Random(seed);
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start Sentinel Hub stand-in", e);
+        }
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sentinelhub-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (recordUpstream != null) {
+            upstreamClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        }
+        server.setExecutor(executor);
+        server.createContext(TOKEN_PATH, exchange -> handle(exchange, this::token));
+        server.createContext(PROCESS_PATH, exchange -> handle(exchange, this::process));
+        server.createContext(STATISTICS_PATH, exchange -> handle(exchange, this::statistics));
+        server.createContext(CATALOG_PATH, exchange -> handle(exchange, this::catalog));
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String getTokenUrl() {
+        return getBaseUrl() + TOKEN_PATH;
+    }
+
+    public String getProcessUrl() {
+        return getBaseUrl() + PROCESS_PATH;
+    }
+
+    public String getStatisticsUrl() {
+        return getBaseUrl() + STATISTICS_PATH;
+    }
+
+    public String getCatalogUrl() {
+        return getBaseUrl() + CATALOG_PATH;
+    }
+
+    public int getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public int getProcessRequests() {
+        return processRequests.get();
+    }
+
+    public int getStatisticsRequests() {
+        return statisticsRequests.get();
+    }
+
+    public int getCatalogRequests() {
+        return catalogRequests.get();
+    }
+
+    public int getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getReplayed() {
+        return replayed.get();
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "Method not allowed".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            Response response = handler.handle(exchange, body);
+            response.headers.forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+            send(exchange, response.status, response.contentType, response.body);
+        } catch (Exception e) {
+            send(exchange, 500, "application/json",
+                    ("{\"error\":{\"status\":500,\"reason\":\"" + e.getClass().getSimpleName() + "\"}}").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private Response token(HttpExchange exchange, byte[] body) throws Exception {
+        tokenRequests.incrementAndGet();
+        if (recordUpstream != null) {
+            return forward(TOKEN_PATH, exchange, body);
+        }
+        ObjectNode token = objectMapper.createObjectNode()
+                .put("access_token", "stand-in-" + tokenCounter.incrementAndGet())
+                .put("token_type", "Bearer")
+                .put("expires_in", tokenLifetimeSeconds);
+        return Response.json(200, objectMapper.writeValueAsBytes(token));
+    }
+
+    private Response process(HttpExchange exchange, byte[] body) throws Exception {
+        processRequests.incrementAndGet();
+        Response fault = simulateUpstream(exchange);
+        if (fault != null) {
+            return fault;
+        }
+        JsonNode request = objectMapper.readTree(body);
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        Response recorded = replayOrRecord(PROCESS_PATH, exchange, body, extensionFor(accept));
+        if (recorded != null) {
+            return recorded;
+        }
+
+        JsonNode output = request.path("output");
+        int width = output.path("width").asInt(256);
+        int height = output.path("height").asInt(256);
+        long geometrySeed = hash(request.path("input").path("bounds").path("geometry").toString());
+        JsonNode responses = output.path("responses");
+        if (responses.size() > 1 || "application/x-tar".equals(accept)) {
+            Map<String, byte[]> files = new LinkedHashMap<>();
+            for (JsonNode response : responses) {
+                String identifier = response.path("identifier").asText("default");
+                files.put(identifier + ".png", png(width, height, geometrySeed ^ hash(identifier)));
+            }
+            return new Response(200, "application/x-tar", tar(files));
+        }
+        String format = responses.path(0).path("format").path("type").asText("image/png");
+        if ("image/tiff".equals(format)) {
+            return new Response(200, "image/tiff", floatTiff(width, height, geometrySeed));
+        }
+        return new Response(200, "image/png", png(width, height, geometrySeed));
+    }
+
+    private Response statistics(HttpExchange exchange, byte[] body) throws Exception {
+        statisticsRequests.incrementAndGet();
+        Response fault = simulateUpstream(exchange);
+        if (fault != null) {
+            return fault;
+        }
+        Response recorded = replayOrRecord(STATISTICS_PATH, exchange, body, "json");
+        if (recorded != null) {
+            return recorded;
+        }
+
+        JsonNode request = objectMapper.readTree(body);
+        JsonNode timeRange = request.path("aggregation").path("timeRange");
+        LocalDate from = LocalDate.parse(timeRange.path("from").asText().substring(0, 10));
+        LocalDate to = LocalDate.parse(timeRange.path("to").asText().substring(0, 10));
+        long geometrySeed = hash(request.path("input").path("bounds").path("geometry").toString());
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode data = root.putArray("data");
+        // Снимок Sentinel-2 над точкой примерно раз в 5 дней; фаза зависит от геометрии
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            if (Math.floorMod(day.toEpochDay() + geometrySeed, 5) != 0) {
+                continue;
+            }
+            double mean = 0.2 + 0.5 * Math.sin(Math.PI * day.getDayOfYear() / 366.0);
+            ObjectNode interval = data.addObject();
+            interval.putObject("interval").put("from", day + "T00:00:00Z").put("to", day.plusDays(1) + "T00:00:00Z");
+            interval.putObject("outputs").putObject("default").putObject("bands").putObject("B0").putObject("stats")
+                    .put("min", mean - 0.3).put("max", mean + 0.3).put("mean", mean).put("stDev", 0.08)
+                    .put("sampleCount", 10000).put("noDataCount", Math.floorMod(geometrySeed + day.toEpochDay(), 3000));
+        }
+        root.put("status", "OK");
+        return Response.json(200, objectMapper.writeValueAsBytes(root));
+    }
+
+    private Response catalog(HttpExchange exchange, byte[] body) throws Exception {
+        catalogRequests.incrementAndGet();
+        Response fault = simulateUpstream(exchange);
+        if (fault != null) {
+            return fault;
+        }
+        Response recorded = replayOrRecord(CATALOG_PATH, exchange, body, "json");
+        if (recorded != null) {
+            return recorded;
+        }
+
+        JsonNode request = objectMapper.readTree(body);
+        String[] datetime = request.path("datetime").asText().split("/");
+        LocalDate from = LocalDate.parse(datetime[0].substring(0, 10));
+        LocalDate to = LocalDate.parse(datetime[1].substring(0, 10));
+        int limit = request.path("limit").asInt(10);
+        int offset = request.path("next").asInt(0);
+        long bboxSeed = hash(request.path("bbox").toString());
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode features = root.putArray("features");
+        // Та же периодичность съёмки, что и в statistics; облачность гранулы — псевдослучайная по bbox и дате
+        int index = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            if (Math.floorMod(day.toEpochDay() + bboxSeed, 5) != 0) {
+                continue;
+            }
+            if (index++ < offset || features.size() == limit) {
+                continue;
+            }
+            features.addObject().putObject("properties")
+                    .put("datetime", day + "T10:15:00Z")
+                    .put("eo:cloud_cover", Math.floorMod(hash(request.path("bbox") + "|" + day), 101));
+        }
+        ObjectNode context = root.putObject("context").put("limit", limit).put("returned", features.size());
+        if (offset + features.size() < index) {
+            context.put("next", offset + features.size());
+        }
+        return Response.json(200, objectMapper.writeValueAsBytes(root));
+    }
+
+    /**
+     * Задержка и внедрённые сбои; null — запрос обрабатывается как обычно.
+     */
+    private Response simulateUpstream(HttpExchange exchange) throws InterruptedException {
+        Random generator = random != null ? random : ThreadLocalRandom.current();
+        double roll;
+        long jitter;
+        synchronized (generator) {
+            roll = generator.nextDouble();
+            jitter = latencyJitter.isZero() ? 0 : (long) (generator.nextDouble() * latencyJitter.toMillis());
+        }
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return Response.json(401, "{\"error\":{\"status\":401,\"reason\":\"Unauthorized\"}}".getBytes(StandardCharsets.UTF_8));
+        }
+        if (roll < rateLimitRate) {
+            // 429 отвечается сразу, как у настоящего ограничителя частоты
+            rateLimited.incrementAndGet();
+            Response response = Response.json(429, "{\"error\":{\"status\":429,\"reason\":\"Too Many Requests\"}}".getBytes(StandardCharsets.UTF_8));
+            response.headers.put("Retry-After", String.valueOf(retryAfter.toMillis()));
+            return response;
+        }
+        long delay = latency.toMillis() + jitter;
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+        if (roll < rateLimitRate + errorRate) {
+            failed.incrementAndGet();
+            return Response.json(500, "{\"error\":{\"status\":500,\"reason\":\"Internal Server Error\"}}".getBytes(StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+
+    private Response replayOrRecord(String path, HttpExchange exchange, byte[] body, String extension) throws Exception {
+        if (recordingsDir == null) {
+            return null;
+        }
+        Path file = recordingsDir.resolve(sha256(body) + "." + extension);
+        if (Files.exists(file)) {
+            replayed.incrementAndGet();
+            return new Response(200, contentTypeFor(extension), Files.readAllBytes(file));
+        }
+        if (recordUpstream == null) {
+            return null;
+        }
+        Response response = forward(path, exchange, body);
+        if (response.status == 200) {
+            Files.createDirectories(recordingsDir);
+            Files.write(file, response.body);
+        }
+        return response;
+    }
+
+    private Response forward(String path, HttpExchange exchange, byte[] body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(recordUpstream + path))
+                .timeout(Duration.ofSeconds(120))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        for (String header : new String[] {"Content-Type", "Accept", "Authorization"}) {
+            String value = exchange.getRequestHeaders().getFirst(header);
+            if (value != null) {
+                request.header(header, value);
+            }
+        }
+        HttpResponse<byte[]> response = upstreamClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        Response result = new Response(response.statusCode(),
+                response.headers().firstValue("Content-Type").orElse("application/octet-stream"), response.body());
+        response.headers().firstValue("Retry-After").ifPresent(value -> result.headers.put("Retry-After", value));
+        return result;
+    }
+
+    /**
+     * PNG RGBA с плавным «полем», зависящим от геометрии; край снимка прозрачный, как вне dataMask.
+     */
+    static byte[] png(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float value = field(x, y, width, height, seed);
+                int green = (int) (80 + 150 * (value + 1) / 2);
+                pixels[y * width + x] = Float.isNaN(value) ? 0 : 0xFF000000 | (60 << 16) | (green << 8) | 40;
+            }
+        }
+        return write(image, "png");
+    }
+
+    /**
+     * Однополосный FLOAT32 TIFF со значениями индекса в [-1, 1] и NaN вне «поля».
+     */
+    static byte[] floatTiff(int width, int height, long seed) {
+        float[] values = new float[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                values[y * width + x] = field(x, y, width, height, seed);
+            }
+        }
+        WritableRaster raster = Raster.createWritableRaster(
+                new PixelInterleavedSampleModel(DataBuffer.TYPE_FLOAT, width, height, 1, width, new int[] {0}),
+                new DataBufferFloat(values, values.length), null);
+        ComponentColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY),
+                false, false, Transparency.OPAQUE, DataBuffer.TYPE_FLOAT);
+        return write(new BufferedImage(colorModel, raster, false, null), "tiff");
+    }
+
+    private static float field(int x, int y, int width, int height, long seed) {
+        // Внешние 5% по краям — «нет данных»
+        if (x < width / 20 || y < height / 20 || x >= width - width / 20 || y >= height - height / 20) {
+            return Float.NaN;
+        }
+        double phaseX = (seed & 0xFFFF) / 65536.0 * 2 * Math.PI;
+        double phaseY = ((seed >>> 16) & 0xFFFF) / 65536.0 * 2 * Math.PI;
+        return (float) (0.6 * Math.sin(phaseX + 6.0 * x / width) * Math.cos(phaseY + 5.0 * y / height) + 0.2);
+    }
+
+    private static byte[] write(BufferedImage image, String format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!ImageIO.write(image, format, out)) {
+                throw new IllegalStateException("No ImageIO writer for " + format);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * ustar-архив из обычных файлов — как ответ Process API с несколькими выходами.
+     */
+    static byte[] tar(Map<String, byte[]> files) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            byte[] header = new byte[TAR_BLOCK];
+            putString(header, 0, 100, file.getKey());
+            putString(header, 100, 8, "0000644");
+            putString(header, 108, 8, "0000000");
+            putString(header, 116, 8, "0000000");
+            putString(header, 124, 12, String.format("%011o", file.getValue().length));
+            putString(header, 136, 12, String.format("%011o", 0));
+            header[156] = '0';
+            putString(header, 257, 6, "ustar");
+            putString(header, 263, 2, "00");
+            // Контрольная сумма считается при поле, заполненном пробелами
+            for (int i = 148; i < 156; i++) {
+                header[i] = ' ';
+            }
+            int checksum = 0;
+            for (byte b : header) {
+                checksum += b & 0xFF;
+            }
+            putString(header, 148, 8, String.format("%06o", checksum) + "\0 ");
+            out.writeBytes(header);
+            out.writeBytes(file.getValue());
+            out.writeBytes(new byte[(TAR_BLOCK - file.getValue().length % TAR_BLOCK) % TAR_BLOCK]);
+        }
+        out.writeBytes(new byte[2 * TAR_BLOCK]);
+        return out.toByteArray();
+    }
+
+    private static void putString(byte[] buffer, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, buffer, offset, Math.min(bytes.length, length));
+    }
+
+    private static String extensionFor(String accept) {
+        if ("image/tiff".equals(accept)) {
+            return "tiff";
+        }
+        return "application/x-tar".equals(accept) ? "tar" : "png";
+    }
+
+    private static String contentTypeFor(String extension) {
+        return switch (extension) {
+            case "tiff" -> "image/tiff";
+            case "tar" -> "application/x-tar";
+            case "json" -> "application/json";
+            default -> "image/png";
+        };
+    }
+
+    private static long hash(String value) {
+        byte[] digest = digest(value.getBytes(StandardCharsets.UTF_8));
+        long result = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            result = (result << 8) | (digest[i] & 0xFF);
+        }
+        return result;
+    }
+
+    private static String sha256(byte[] value) {
+        return HexFormat.of().formatHex(digest(value));
+    }
+
+    private static byte[] digest(byte[] value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Response handle(HttpExchange exchange, byte[] body) throws Exception;
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        private Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        private static Response json(int status, byte[] body) {
+            return new Response(status, "application/json", body);
+        }
+    }
+}
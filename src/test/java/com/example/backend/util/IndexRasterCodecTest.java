@@ -0,0 +1,99 @@
+package com.example.backend.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.backend.model.IndexRaster;
+import com.example.backend.model.RasterFormat;
+
+/**
+ * Граничные случаи binary16 и обратимость UINT8 по scale/offset из заголовка.
+ */
+class IndexRasterCodecTest {
+
+    @Test
+    void toHalfKeepsSignOfZero() {
+        assertEquals(0x0000, half(0f));
+        assertEquals(0x8000, half(-0f));
+    }
+
+    @Test
+    void toHalfEncodesLargestFiniteValue() {
+        assertEquals(0x7BFF, half(65504f));
+        assertEquals(0xFBFF, half(-65504f));
+    }
+
+    @Test
+    void toHalfOverflowsToInfinity() {
+        assertEquals(0x7C00, half(65536f));
+        assertEquals(0x7C00, half(1e10f));
+        assertEquals(0xFC00, half(-1e10f));
+        assertEquals(0x7C00, half(Float.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void toHalfEncodesSmallestSubnormal() {
+        assertEquals(0x0001, half(0x1p-24f));
+        assertEquals(0x8001, half(-0x1p-24f));
+        // Ровно половина наименьшего денормализованного — к чётному, то есть к нулю; чуть больше — вверх
+        assertEquals(0x0000, half(0x1p-25f));
+        assertEquals(0x0001, half(Math.nextUp(0x1p-25f)));
+        assertEquals(0x0000, half(0x1p-26f));
+    }
+
+    @Test
+    void toHalfRoundsTiesToEven() {
+        // 1 + 2^-11 — ровно посередине между 1 (0x3C00) и 1 + 2^-10 (0x3C01)
+        assertEquals(0x3C00, half(1f + 0x1p-11f));
+        // 1 + 3 * 2^-11 — посередине между 0x3C01 и 0x3C02, чётная — 0x3C02
+        assertEquals(0x3C02, half(1f + 3 * 0x1p-11f));
+        assertEquals(0x3C01, half(Math.nextUp(1f + 0x1p-11f)));
+        // Середина между 65504 и 65536 округляется к чётной мантиссе — в бесконечность
+        assertEquals(0x7C00, half(65520f));
+        assertEquals(0x7BFF, half(Math.nextDown(65520f)));
+    }
+
+    @Test
+    void toHalfEncodesNaN() {
+        assertEquals(0x7E00, half(Float.NaN));
+    }
+
+    @Test
+    void uint8DecodesBackWithHeaderScaleAndOffset() {
+        float[] values = {-1f, -0.5f, 0f, 0.3f, 0.999f, 1f, Float.NaN, 1.7f, -3f};
+        byte[] encoded = IndexRasterCodec.encode(new IndexRaster(3, 3, values), RasterFormat.UINT8);
+
+        ByteBuffer buffer = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals('I', buffer.get(0));
+        assertEquals(IndexRasterCodec.VERSION, buffer.get(4));
+        assertEquals(1, buffer.get(5));
+        assertEquals(3, buffer.getInt(8));
+        assertEquals(3, buffer.getInt(12));
+        float scale = buffer.getFloat(16);
+        float offset = buffer.getFloat(20);
+        assertEquals(IndexRasterCodec.HEADER_BYTES + values.length, encoded.length);
+
+        for (int i = 0; i < values.length; i++) {
+            int q = Byte.toUnsignedInt(encoded[IndexRasterCodec.HEADER_BYTES + i]);
+            if (Float.isNaN(values[i])) {
+                assertEquals(0, q, "нет данных кодируется нулём");
+                continue;
+            }
+            assertTrue(q >= 1 && q <= 255, "значение " + values[i] + " -> " + q);
+            float expected = Math.max(-1f, Math.min(1f, values[i]));
+            float decoded = offset + scale * q;
+            assertEquals(expected, decoded, scale / 2 + 1e-6f, "пиксель " + i);
+        }
+        assertEquals(1, Byte.toUnsignedInt(encoded[IndexRasterCodec.HEADER_BYTES]));
+        assertEquals(255, Byte.toUnsignedInt(encoded[IndexRasterCodec.HEADER_BYTES + 5]));
+    }
+
+    private static int half(float value) {
+        return Short.toUnsignedInt(IndexRasterCodec.toHalf(value));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.backend.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+import com.example.backend.model.PixelGrid;
+import com.example.backend.model.ZoneMap;
+
+/**
+ * Полигоны зон на топологически неудобных растрах: каждая зона валидна, зоны без щелей и перекрытий покрывают поле.
+ * Сетка — пиксели 1×1 с началом в (0, 0), строки сверху вниз.
+ */
+class RasterZoningTest {
+
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
+    @Test
+    void checkerboardZonesTouchingByCornerAreValid() {
+        ZoneMap map = zoneMap(2, 2, new int[] {
+                1, 2,
+                2, 1});
+
+        Geometry[] zones = RasterZoning.polygonize(map, grid(2, 2), square(0, 0, 2, 2));
+
+        assertZonesCoverField(zones, square(0, 0, 2, 2));
+        assertEquals(2, zones[0].getArea(), 1e-9);
+        assertEquals(2, zones[1].getArea(), 1e-9);
+    }
+
+    @Test
+    void zoneWithIslandOfAnotherZoneGetsHole() {
+        // Зона 2 — кольцо внутри зоны 1, в центре снова остров зоны 1
+        ZoneMap map = zoneMap(5, 5, new int[] {
+                1, 1, 1, 1, 1,
+                1, 2, 2, 2, 1,
+                1, 2, 1, 2, 1,
+                1, 2, 2, 2, 1,
+                1, 1, 1, 1, 1});
+
+        Geometry[] zones = RasterZoning.polygonize(map, grid(5, 5), square(0, 0, 5, 5));
+
+        assertZonesCoverField(zones, square(0, 0, 5, 5));
+        assertEquals(17, zones[0].getArea(), 1e-9);
+        assertEquals(8, zones[1].getArea(), 1e-9);
+        assertEquals(2, zones[0].getNumGeometries());
+        Polygon ring = (Polygon) zones[1];
+        assertEquals(1, ring.getNumInteriorRing());
+    }
+
+    @Test
+    void fieldWithHoleIsCoveredWithoutTheHole() {
+        // Дыра не по границам пикселей: пиксели с центром в дыре без зоны, остальное режется по границе поля
+        Polygon field = FACTORY.createPolygon(ring(0, 0, 6, 6), new LinearRing[] {ring(2.2, 2.2, 3.8, 3.8)});
+        PixelGrid grid = grid(6, 6);
+        int[] labels = new int[36];
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 6; x++) {
+                boolean inField = field.contains(FACTORY.createPoint(new Coordinate(grid.centerX(x), grid.centerY(y))));
+                labels[y * 6 + x] = !inField ? 0 : x < 3 ? 1 : 2;
+            }
+        }
+
+        Geometry[] zones = RasterZoning.polygonize(zoneMap(6, 6, labels), grid, field);
+
+        assertZonesCoverField(zones, field);
+        for (Geometry zone : zones) {
+            assertTrue(zone.intersection(field.getInteriorRingN(0)).getArea() < 1e-9, "зона заходит в дыру поля");
+        }
+    }
+
+    private static void assertZonesCoverField(Geometry[] zones, Geometry field) {
+        double total = 0;
+        for (int i = 0; i < zones.length; i++) {
+            assertTrue(zones[i].isValid(), "зона " + (i + 1) + " невалидна: " + zones[i]);
+            assertTrue(zones[i].getArea() > 0, "зона " + (i + 1) + " пустая");
+            total += zones[i].getArea();
+        }
+        assertEquals(field.getArea(), total, 1e-9);
+        assertEquals(field.getArea(), FACTORY.createGeometryCollection(zones).union().getArea(), 1e-9);
+    }
+
+    private static ZoneMap zoneMap(int width, int height, int[] labels) {
+        byte[] bytes = new byte[labels.length];
+        int zoneCount = 0;
+        for (int i = 0; i < labels.length; i++) {
+            bytes[i] = (byte) labels[i];
+            zoneCount = Math.max(zoneCount, labels[i]);
+        }
+        return new ZoneMap(0, 0, width, height, bytes, new double[zoneCount], labels.length);
+    }
+
+    private static PixelGrid grid(int width, int height) {
+        return new PixelGrid(0, height, 1, 1, width, height);
+    }
+
+    private static Polygon square(double minX, double minY, double maxX, double maxY) {
+        return FACTORY.createPolygon(ring(minX, minY, maxX, maxY));
+    }
+
+    private static LinearRing ring(double minX, double minY, double maxX, double maxY) {
+        return FACTORY.createLinearRing(new Coordinate[] {
+                new Coordinate(minX, minY), new Coordinate(maxX, minY), new Coordinate(maxX, maxY),
+                new Coordinate(minX, maxY), new Coordinate(minX, minY)});
+    }
+}